@@ -29,7 +29,21 @@ public class OAuthConverter {
     public static OAuthAccessor createOAuthAccessor(ServiceProviderToken token) {
         requireNonNull(token, "token");
 
-        OAuthAccessor accessor = new OAuthAccessor(OAuthConverter.toOAuthConsumer(token.getConsumer()));
+        return createOAuthAccessor(token, token.getConsumer());
+    }
+
+    /**
+     * Creates an OAuth Accessor for the input token, signed by the given consumer rather than the one the token holds
+     *
+     * @param token    input token
+     * @param consumer the consumer the token was issued to, as currently held by the consumer store
+     * @return Oauth accessor
+     */
+    public static OAuthAccessor createOAuthAccessor(ServiceProviderToken token, Consumer consumer) {
+        requireNonNull(token, "token");
+        requireNonNull(consumer, "consumer");
+
+        OAuthAccessor accessor = new OAuthAccessor(OAuthConverter.toOAuthConsumer(consumer));
         setTokenData(accessor, token);
         return accessor;
     }
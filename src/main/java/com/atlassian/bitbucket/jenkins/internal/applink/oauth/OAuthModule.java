@@ -1,5 +1,6 @@
 package com.atlassian.bitbucket.jenkins.internal.applink.oauth;
 
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth.ReplayProtectingOAuthValidator;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth.SecurityModeChecker;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth.TrustedUnderlyingSystemAuthorizerFilter;
 import com.atlassian.bitbucket.jenkins.internal.jenkins.auth.JenkinsSecurityModeChecker;
@@ -8,7 +9,6 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Singleton;
 import hudson.Extension;
 import net.oauth.OAuthValidator;
-import net.oauth.SimpleOAuthValidator;
 
 import java.time.Clock;
 
@@ -21,7 +21,7 @@ public class OAuthModule extends AbstractModule {
     @Override
     protected void configure() {
         bind(Clock.class).toInstance(Clock.systemUTC());
-        bind(OAuthValidator.class).to(SimpleOAuthValidator.class).in(Singleton.class);
+        bind(OAuthValidator.class).to(ReplayProtectingOAuthValidator.class).in(Singleton.class);
         bind(TrustedUnderlyingSystemAuthorizerFilter.class).to(TrustedJenkinsAuthorizer.class).in(Singleton.class);
         bind(SecurityModeChecker.class).to(JenkinsSecurityModeChecker.class).in(Singleton.class);
     }
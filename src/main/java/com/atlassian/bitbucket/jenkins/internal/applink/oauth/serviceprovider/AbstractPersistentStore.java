@@ -6,42 +6,121 @@ import com.google.common.annotations.VisibleForTesting;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.extended.NamedMapConverter;
 import hudson.BulkChange;
-import hudson.CopyOnWrite;
 import hudson.XmlFile;
 import hudson.model.Saveable;
-import hudson.util.CopyOnWriteMap;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import hudson.util.Secret;
 import hudson.util.XStream2;
 import jenkins.model.Jenkins;
 import jenkins.util.io.OnMaster;
 
 import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.PersistentEntityCodec.readString;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.PersistentEntityCodec.writeString;
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
 import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.removeEnd;
 
+/**
+ * Base class for the stores that keep their entities in memory and persist them to an XML file in the Jenkins home
+ * directory.
+ * <p>
+ * Entities are read from a concurrent map, so reads never wait for writes. All writes are left to a single background
+ * writer. Single changes are appended to a journal, and the changes made while the writer is busy are appended together
+ * with a single flush to disk. Saves of the whole store are coalesced into at most one write per interval. The methods
+ * that write return a future for callers that need to know when their changes are on disk; {@link #save()} waits for
+ * it.
+ * <p>
+ * The store is saved as XML by default. Large stores can instead be saved in a compact format, a gzipped binary file
+ * where the fields of each entity are written directly by its {@link PersistentEntityCodec}, without any XML.
+ */
 public abstract class AbstractPersistentStore<T> implements Saveable, OnMaster {
 
     private static final Logger log = Logger.getLogger(AbstractPersistentStore.class.getName());
 
     private static final int PRIORITY = 100;
+    /**
+     * The number of changes recorded in the journal after which the whole store is saved and the journal is started
+     * over, so that it does not grow forever. Defaults to 1000.
+     */
+    private static final long JOURNAL_COMPACTION_THRESHOLD =
+            parsePositiveLongFromSystemProperty("bitbucket.oauth.store.journal.compaction.threshold", 1000);
+    private static final String JOURNAL_PUT = "P";
+    private static final String JOURNAL_REMOVE = "R";
+    /**
+     * The minimum time between two writes of the same store, saves requested in between are written together.
+     * Defaults to 100ms.
+     */
+    private static final long WRITE_INTERVAL =
+            parsePositiveLongFromSystemProperty("bitbucket.oauth.store.write.interval", 100);
+    /**
+     * Set to {@code compact} to save the stores as gzipped, length-prefixed records instead of XML. Stores saved in
+     * the other format are migrated when they are loaded.
+     */
+    private static final boolean COMPACT_SNAPSHOT =
+            "compact".equalsIgnoreCase(System.getProperty("bitbucket.oauth.store.format"));
+    private static final int SNAPSHOT_MAGIC = 0x4242534f;
+    /**
+     * Version 1 held the XML of each entity, version 2 holds the fields written by the codec
+     */
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int SNAPSHOT_VERSION_XML = 1;
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "BitbucketOAuthStoreWriter"));
 
     @VisibleForTesting
     protected final transient XStream2 xStream;
 
-    @CopyOnWrite
     protected volatile Map<String, T> entityMap;
 
     private final String configFileName;
+    private final transient PersistentEntityCodec<T> entityCodec;
+    /**
+     * Guards the journal and the scheduling of writes
+     */
+    private final transient Object writeLock = new Object();
+
+    private transient PersistentStoreJournal journal;
+    private transient long lastWriteStarted;
+    private transient CompletableFuture<Void> pendingJournalWrite;
+    private transient List<String> pendingRecords = new ArrayList<>();
+    private transient CompletableFuture<Void> pendingWrite;
 
-    protected AbstractPersistentStore(String configFileName, Converter entityConverter) {
+    protected AbstractPersistentStore(String configFileName, Converter entityConverter,
+                                      PersistentEntityCodec<T> entityCodec) {
         this.configFileName = requireNonNull(configFileName, "configFileName");
+        this.entityCodec = requireNonNull(entityCodec, "entityCodec");
         xStream = new XStream2();
         xStream.registerConverter(new NamedMapConverter(xStream.getMapper(), getStoreEntryName(),
                 getStoreKeyName(), String.class, getStoreValueName(), getEntityClass()), PRIORITY);
@@ -54,31 +133,111 @@ public abstract class AbstractPersistentStore<T> implements Saveable, OnMaster {
         }
 
         XmlFile configFile = getConfigFile();
-        if (configFile.exists()) {
-            try {
+        File snapshotFile = getSnapshotFile();
+        // Whichever format is selected, the store is loaded from the other one if that is all there is, and then
+        // migrated by saving it in the selected format
+        boolean migrate = false;
+        try {
+            if (isCompactSnapshotEnabled() && snapshotFile.exists()) {
+                entityMap = readSnapshot(snapshotFile);
+            } else if (configFile.exists()) {
                 configFile.unmarshal(this);
-            } catch (IOException e) {
-                log.log(SEVERE, "Failed to load items from disk", e);
-                throw new StoreException("Failed to load from disk", e);
+                migrate = isCompactSnapshotEnabled();
+            } else if (snapshotFile.exists()) {
+                entityMap = readSnapshot(snapshotFile);
+                migrate = true;
             }
+        } catch (IOException e) {
+            log.log(SEVERE, "Failed to load items from disk", e);
+            throw new StoreException("Failed to load from disk", e);
         }
         // storedMap will be unmarshalled as a HashMap if the config file exists, otherwise will be null. Either
-        // way, we convert it to the Jenkins-provided concurrent copy-on-write Map that will be copied on each save and
-        // written to disk, until the next Jenkins restart
-        entityMap = new CopyOnWriteMap.Hash<>(entityMap != null ? entityMap : emptyMap());
+        // way, we convert it to a concurrent Map that is changed in place and written to disk, until the next Jenkins
+        // restart
+        Map<String, T> loadedMap = new HashMap<>(entityMap != null ? entityMap : emptyMap());
+        replayJournal(loadedMap);
+        entityMap = new ConcurrentHashMap<>(loadedMap);
+        onLoad();
+        if (migrate) {
+            requestSave();
+        }
     }
 
+    /**
+     * Saves the whole store and waits until it has been written. Callers should not hold the lock of the store while
+     * waiting, so other changes can be made in the meantime.
+     *
+     * @throws StoreException if the store could not be written
+     */
     @Override
-    public synchronized void save() {
+    public void save() {
         if (BulkChange.contains(this)) {
             return;
         }
 
+        waitFor(requestSave());
+    }
+
+    /**
+     * Asks the background writer to save the whole store. All of the changes made before this is called are written
+     * by the time the returned future completes; the future completes exceptionally with a {@link StoreException} if
+     * they could not be written.
+     *
+     * @return a future that completes once the store has been written
+     */
+    protected CompletableFuture<Void> requestSave() {
+        synchronized (writeLock) {
+            if (pendingWrite == null) {
+                pendingWrite = new CompletableFuture<>();
+                long delay = Math.max(0L, lastWriteStarted + WRITE_INTERVAL - System.currentTimeMillis());
+                writer.schedule(this::write, delay, MILLISECONDS);
+            }
+            return pendingWrite;
+        }
+    }
+
+    /**
+     * Persists an entity that has been put into the {@link #entityMap} by appending it to the journal, rather than
+     * saving the whole store. The journal is replayed on top of the file when the store is next loaded.
+     * <p>
+     * Changes are journaled in the order this is called, so callers should call it while holding the lock they make
+     * the change under, and wait for the returned future after releasing it.
+     *
+     * @param key    the key of the entity
+     * @param entity the entity
+     * @return a future that completes once the change is on disk, see {@link #waitFor(CompletableFuture)}
+     */
+    protected CompletableFuture<Void> journalPut(String key, T entity) {
+        String entityXml = marshalEntity(entity);
+        return appendToJournal(JOURNAL_PUT + ' ' + encrypt(key) + ' ' +
+                               Base64.getEncoder().encodeToString(entityXml.getBytes(UTF_8)));
+    }
+
+    /**
+     * Persists the removal of an entity from the {@link #entityMap} by appending it to the journal, rather than saving
+     * the whole store.
+     *
+     * @param key the key of the entity
+     * @return a future that completes once the change is on disk, see {@link #waitFor(CompletableFuture)}
+     */
+    protected CompletableFuture<Void> journalRemove(String key) {
+        return appendToJournal(JOURNAL_REMOVE + ' ' + encrypt(key));
+    }
+
+    /**
+     * Waits for changes to be written.
+     *
+     * @param write the future returned when the changes were made
+     * @throws StoreException if the changes could not be written
+     */
+    protected static void waitFor(CompletableFuture<Void> write) {
         try {
-            getConfigFile().write(this);
-        } catch (IOException e) {
-            log.log(SEVERE, "Failed to persist items to disk", e);
-            throw new StoreException("Failed to persist to disk", e);
+            write.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof StoreException) {
+                throw (StoreException) e.getCause();
+            }
+            throw new StoreException("Failed to persist to disk", e.getCause());
         }
     }
 
@@ -90,6 +249,32 @@ public abstract class AbstractPersistentStore<T> implements Saveable, OnMaster {
         return new XmlFile(xStream, new File(Jenkins.get().getRootDir(), configFileName));
     }
 
+    /**
+     * The file where changes are journaled between saves
+     */
+    @VisibleForTesting
+    protected File getJournalFile() {
+        File configFile = getConfigFile().getFile();
+        return new File(configFile.getParentFile(), configFile.getName() + ".journal");
+    }
+
+    /**
+     * The file where the store is saved in the compact format
+     */
+    @VisibleForTesting
+    protected File getSnapshotFile() {
+        File configFile = getConfigFile().getFile();
+        return new File(configFile.getParentFile(), removeEnd(configFile.getName(), ".xml") + ".dat");
+    }
+
+    /**
+     * Whether the store is saved in the compact format instead of XML
+     */
+    @VisibleForTesting
+    protected boolean isCompactSnapshotEnabled() {
+        return COMPACT_SNAPSHOT;
+    }
+
     @Nullable
     protected static String encrypt(@Nullable String unencryptedValue) {
         if (isBlank(unencryptedValue)) {
@@ -106,6 +291,13 @@ public abstract class AbstractPersistentStore<T> implements Saveable, OnMaster {
         return Secret.toString(Secret.decrypt(encryptedValue));
     }
 
+    /**
+     * Called, while holding the lock of the store, once the entities have been loaded from disk. Stores that keep
+     * anything derived from the entities should rebuild it here.
+     */
+    protected void onLoad() {
+    }
+
     protected abstract Class<T> getEntityClass();
 
     protected abstract String getStoreValueName();
@@ -113,4 +305,175 @@ public abstract class AbstractPersistentStore<T> implements Saveable, OnMaster {
     protected abstract String getStoreKeyName();
 
     protected abstract String getStoreEntryName();
+
+    private CompletableFuture<Void> appendToJournal(String record) {
+        synchronized (writeLock) {
+            pendingRecords.add(record);
+            if (pendingJournalWrite == null) {
+                pendingJournalWrite = new CompletableFuture<>();
+                writer.execute(this::writeJournal);
+            }
+            return pendingJournalWrite;
+        }
+    }
+
+    private PersistentStoreJournal getJournal() {
+        synchronized (writeLock) {
+            if (journal == null) {
+                journal = new PersistentStoreJournal(getJournalFile());
+            }
+            return journal;
+        }
+    }
+
+    private void replayJournal(Map<String, T> entities) {
+        List<String> records;
+        try {
+            records = getJournal().read();
+        } catch (IOException e) {
+            log.log(SEVERE, "Failed to load items from disk", e);
+            throw new StoreException("Failed to load from disk", e);
+        }
+        for (String record : records) {
+            try {
+                replayRecord(entities, record);
+            } catch (RuntimeException e) {
+                // Skip the record rather than lose everything else in the store
+                log.log(WARNING, "Failed to replay a change from the journal, it is ignored", e);
+            }
+        }
+    }
+
+    /**
+     * Appends all of the records journaled since the last append. Runs on the background writer, so the records
+     * journaled while it was busy go to disk together.
+     */
+    private void writeJournal() {
+        List<String> records;
+        CompletableFuture<Void> write;
+        synchronized (writeLock) {
+            records = pendingRecords;
+            pendingRecords = new ArrayList<>();
+            write = pendingJournalWrite;
+            pendingJournalWrite = null;
+        }
+        PersistentStoreJournal journal = getJournal();
+        try {
+            journal.append(records);
+            write.complete(null);
+        } catch (IOException | RuntimeException e) {
+            log.log(SEVERE, "Failed to persist items to disk", e);
+            write.completeExceptionally(new StoreException("Failed to persist to disk", e));
+            return;
+        }
+        if (journal.size() >= JOURNAL_COMPACTION_THRESHOLD) {
+            // The records are already on disk, so there is no need to wait for the whole store to be written
+            requestSave();
+        }
+    }
+
+    /**
+     * Writes the whole store. Runs on the background writer, so only one write happens at a time.
+     */
+    private void write() {
+        CompletableFuture<Void> write;
+        int journaledChanges;
+        synchronized (writeLock) {
+            // Saves requested from now on need another write, as their changes may be missed by this one
+            write = pendingWrite;
+            pendingWrite = null;
+            lastWriteStarted = System.currentTimeMillis();
+            journaledChanges = getJournal().size();
+        }
+        try {
+            // Only one format is kept, so a store that has been migrated is not loaded from the old format again
+            if (isCompactSnapshotEnabled()) {
+                writeSnapshot(getSnapshotFile());
+                Files.deleteIfExists(getConfigFile().getFile().toPath());
+            } else {
+                getConfigFile().write(this);
+                Files.deleteIfExists(getSnapshotFile().toPath());
+            }
+            synchronized (writeLock) {
+                // Changes journaled before the write started are in the file now. Later ones may or may not be, so
+                // they are kept to be replayed on top of it.
+                getJournal().truncate(journaledChanges);
+            }
+            write.complete(null);
+        } catch (IOException | RuntimeException e) {
+            log.log(SEVERE, "Failed to persist items to disk", e);
+            write.completeExceptionally(new StoreException("Failed to persist to disk", e));
+        }
+    }
+
+    private String marshalEntity(T entity) {
+        return xStream.toXML(entity);
+    }
+
+    private T unmarshalEntity(String entityXml) {
+        return getEntityClass().cast(xStream.fromXML(entityXml));
+    }
+
+    private Map<String, T> readSnapshot(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not an OAuth store snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION && version != SNAPSHOT_VERSION_XML) {
+                throw new IOException("Unsupported OAuth store snapshot version " + version + ": " + file);
+            }
+            int count = in.readInt();
+            Map<String, T> entities = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+            for (int i = 0; i < count; i++) {
+                String key = decrypt(readString(in));
+                if (isBlank(key)) {
+                    throw new IOException("OAuth store snapshot has an entity without a key: " + file);
+                }
+                // Snapshots written before the codec was added are still read, and rewritten on the next save
+                entities.put(key, version == SNAPSHOT_VERSION ? entityCodec.read(key, in) :
+                        unmarshalEntity(readString(in)));
+            }
+            return entities;
+        }
+    }
+
+    private void writeSnapshot(File file) throws IOException {
+        // The map may change while it is written, so take the entries first to get the count right
+        List<Map.Entry<String, T>> entries = new ArrayList<>(entityMap.entrySet());
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+            GZIPOutputStream gzipOut = new GZIPOutputStream(fileOut);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzipOut));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, T> entry : entries) {
+                writeString(out, encrypt(entry.getKey()));
+                entityCodec.write(out, entry.getValue());
+            }
+            out.flush();
+            gzipOut.finish();
+            fileOut.getChannel().force(false);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void replayRecord(Map<String, T> entities, String record) {
+        String[] fields = record.split(" ", 3);
+        String key = fields.length > 1 ? decrypt(fields[1]) : null;
+        if (isBlank(key)) {
+            throw new StoreException("Journal record has no key");
+        }
+        if (JOURNAL_PUT.equals(fields[0]) && fields.length == 3) {
+            String entityXml = new String(Base64.getDecoder().decode(fields[2]), UTF_8);
+            entities.put(key, unmarshalEntity(entityXml));
+        } else if (JOURNAL_REMOVE.equals(fields[0])) {
+            entities.remove(key);
+        } else {
+            throw new StoreException("Unknown journal record type: " + fields[0]);
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider;
+
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes the fields of an entity to the compact snapshot of an {@link AbstractPersistentStore}, and reads them back,
+ * without going through XML. The key of the entity is written by the store, so it is left out of the fields.
+ * <p>
+ * Fields are read back in the order they were written, so fields may only be added at the end, along with a new
+ * snapshot version.
+ *
+ * @param <T> the type of entity
+ */
+public interface PersistentEntityCodec<T> {
+
+    /**
+     * @param key the key the entity is stored under
+     * @param in  the snapshot, positioned at the first field of the entity
+     * @return the entity
+     * @throws IOException if the entity could not be read
+     */
+    T read(String key, DataInput in) throws IOException;
+
+    /**
+     * @param out    the snapshot
+     * @param entity the entity to write
+     * @throws IOException if the entity could not be written
+     */
+    void write(DataOutput out, T entity) throws IOException;
+
+    @Nullable
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Writes a string of any length, unlike {@link DataOutput#writeUTF(String)}, or {@code null}.
+     */
+    static void writeString(DataOutput out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,170 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * An append-only file of single-line records, used by {@link AbstractPersistentStore} to persist each change as it is
+ * made instead of rewriting the whole store. Every record is forced to disk before {@link #append(List)} returns.
+ * <p>
+ * If Jenkins stops while a record is being written, the file ends with an incomplete record. Such a record is left out
+ * when the file is read, and the next record is started on a new line so the two cannot run together. Once other
+ * records follow it, it is read like any other record, so readers must ignore records they cannot make sense of.
+ */
+final class PersistentStoreJournal {
+
+    private static final Logger log = Logger.getLogger(PersistentStoreJournal.class.getName());
+
+    private static final char RECORD_SEPARATOR = '\n';
+
+    private final File file;
+
+    private boolean needsSeparator;
+    private FileOutputStream out;
+    private int size;
+
+    PersistentStoreJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Appends the record and forces it to disk.
+     *
+     * @param record the record to append, which must not contain line breaks
+     * @throws IOException if the record could not be written
+     */
+    void append(String record) throws IOException {
+        append(Collections.singletonList(record));
+    }
+
+    /**
+     * Appends the records and forces them to disk with a single write, so a batch of changes costs one flush.
+     *
+     * @param records the records to append, in order, which must not contain line breaks
+     * @throws IOException if the records could not be written
+     */
+    synchronized void append(List<String> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        if (needsSeparator) {
+            lines.append(RECORD_SEPARATOR);
+        }
+        for (String record : records) {
+            lines.append(record).append(RECORD_SEPARATOR);
+        }
+        try {
+            if (out == null) {
+                out = new FileOutputStream(file, true);
+            }
+            out.write(lines.toString().getBytes(UTF_8));
+            out.getChannel().force(false);
+        } catch (IOException e) {
+            // Part of the records may have been written, so start over on a new line
+            needsSeparator = true;
+            close();
+            throw e;
+        }
+        needsSeparator = false;
+        size += records.size();
+    }
+
+    /**
+     * Reads all of the complete records in the order they were appended.
+     *
+     * @return the records
+     * @throws IOException if the file could not be read
+     */
+    synchronized List<String> read() throws IOException {
+        if (!file.exists()) {
+            size = 0;
+            return Collections.emptyList();
+        }
+        String content = new String(Files.readAllBytes(file.toPath()), UTF_8);
+        List<String> records = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = content.indexOf(RECORD_SEPARATOR, start)) != -1) {
+            if (end > start) {
+                records.add(content.substring(start, end));
+            }
+            start = end + 1;
+        }
+        needsSeparator = start < content.length();
+        if (needsSeparator) {
+            log.log(WARNING, "Ignoring an incomplete record at the end of " + file);
+        }
+        size = records.size();
+        return records;
+    }
+
+    /**
+     * @return the number of records in the journal
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Removes all of the records. This must only be done once everything they record has been saved elsewhere.
+     *
+     * @throws IOException if the file could not be removed
+     */
+    synchronized void truncate() throws IOException {
+        close();
+        Files.deleteIfExists(file.toPath());
+        needsSeparator = false;
+        size = 0;
+    }
+
+    /**
+     * Removes the given number of records from the start of the journal, keeping the records appended after them. This
+     * must only be done once everything the removed records record has been saved elsewhere.
+     *
+     * @param count the number of records to remove
+     * @throws IOException if the file could not be rewritten
+     */
+    synchronized void truncate(int count) throws IOException {
+        if (count >= size) {
+            truncate();
+            return;
+        }
+        List<String> records = read();
+        close();
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        StringBuilder content = new StringBuilder();
+        for (String record : records.subList(Math.min(count, records.size()), records.size())) {
+            content.append(record).append(RECORD_SEPARATOR);
+        }
+        try (FileOutputStream tempOut = new FileOutputStream(tempFile)) {
+            tempOut.write(content.toString().getBytes(UTF_8));
+            tempOut.getChannel().force(false);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        needsSeparator = false;
+        size = Math.max(0, records.size() - count);
+    }
+
+    private void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.log(WARNING, "Failed to close " + file, e);
+            }
+            out = null;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
 
-import com.atlassian.bitbucket.jenkins.internal.applink.oauth.OAuthConverter;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.Consumer;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.ServiceProviderConsumerStore;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.exception.InvalidTokenException;
@@ -31,6 +30,7 @@ import java.util.logging.Logger;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.OAuthRequestUtils.isOAuthAccessAttempt;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.OAuthProblemUtils.logOAuthProblem;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.OAuthProblemUtils.logOAuthRequest;
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.String.format;
 import static java.util.logging.Level.*;
@@ -52,6 +52,14 @@ public class OAuth1aRequestFilter implements Filter {
 
     private static final Logger log = Logger.getLogger(OAuth1aRequestFilter.class.getName());
 
+    /**
+     * The maximum number of prepared {@link net.oauth.OAuthAccessor accessors} kept. Defaults to 1000.
+     */
+    private static final int ACCESSOR_CACHE_SIZE = (int) Math.min(Integer.MAX_VALUE,
+            parsePositiveLongFromSystemProperty("bitbucket.oauth.accessor.cache.size", 1000L));
+
+    private final OAuthAccessorCache accessorCache = new OAuthAccessorCache(ACCESSOR_CACHE_SIZE);
+
     private final ServiceProviderConsumerStore consumerStore;
     private final ServiceProviderTokenStore tokenStore;
     private final OAuthValidator validator;
@@ -80,13 +88,20 @@ public class OAuth1aRequestFilter implements Filter {
         HttpServletRequest req = (HttpServletRequest) request;
         HttpServletResponse resp = (HttpServletResponse) response;
 
+        // This filter sees every request made to Jenkins, so rule out the ones without an OAuth Authorization header
+        // before doing anything else
+        if (!hasOAuthAuthorizationHeader(req)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
         if (!securityChecker.isSecurityEnabled()) {
             // Security is not enabled, so it can't be an oauth request. Continue the filter chain
             chain.doFilter(request, response);
             return;
         }
 
-        if (!isOauthRequest(req)) {
+        if (!isOAuthAccessAttempt(req)) {
             // Not an oauth request. Continue the filter chain
             chain.doFilter(request, response);
             return;
@@ -184,8 +199,8 @@ public class OAuth1aRequestFilter implements Filter {
 
             throw new OAuthProblemException(TOKEN_EXPIRED);
         }
-        validate3LOMessage(message, token);
-        validateConsumer(message);
+        Consumer consumer = validateConsumer(message);
+        validate3LOMessage(message, token, consumer);
         return token.getUser();
     }
 
@@ -203,9 +218,8 @@ public class OAuth1aRequestFilter implements Filter {
         }
     }
 
-    private boolean isOauthRequest(HttpServletRequest request) {
-        String authorization = request.getHeader(AUTHORIZATION);
-        return startsWithIgnoreCase(authorization, AUTH_SCHEME) && isOAuthAccessAttempt(request);
+    private static boolean hasOAuthAuthorizationHeader(HttpServletRequest request) {
+        return startsWithIgnoreCase(request.getHeader(AUTHORIZATION), AUTH_SCHEME);
     }
 
     private void printMessageToDebug(OAuthMessage message) throws IOException {
@@ -279,11 +293,11 @@ public class OAuth1aRequestFilter implements Filter {
         }
     }
 
-    private void validate3LOMessage(OAuthMessage message, ServiceProviderToken token)
+    private void validate3LOMessage(OAuthMessage message, ServiceProviderToken token, Consumer consumer)
             throws OAuthException, IOException, URISyntaxException {
         printMessageToDebug(message);
 
-        validator.validateMessage(message, OAuthConverter.createOAuthAccessor(token));
+        validator.validateMessage(message, accessorCache.getAccessor(token, consumer));
     }
 
     private static String getBaseUrl(HttpServletRequest request) {
@@ -0,0 +1,101 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
+
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.OAuthConverter;
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.Consumer;
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken;
+import net.oauth.OAuthAccessor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Caches the {@link OAuthAccessor accessors} used to validate the OAuth requests made with an access token, so the
+ * consumer and token are not converted again for every request. Bitbucket signs every application link request with
+ * the same token, so the same accessor is used over and over.
+ * <p>
+ * {@link ServiceProviderToken Tokens} and {@link Consumer consumers} are immutable, and the stores replace them with a
+ * new instance whenever they change. An accessor is therefore only used while both the token and the consumer it was
+ * created for are the very instances returned by the stores; otherwise it is created again. The accessor is always
+ * created with the consumer from the consumer store, as the consumer held by the token may be out of date.
+ */
+class OAuthAccessorCache {
+
+    private final Map<CacheKey, CacheEntry> entries;
+
+    /**
+     * @param maxEntries the maximum number of accessors kept, the least recently used are dropped first
+     */
+    OAuthAccessorCache(int maxEntries) {
+        entries = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns an accessor for the token. The accessor is a copy of the cached one, so callers are free to change it.
+     *
+     * @param token    the token, as currently held by the token store
+     * @param consumer the consumer the token was issued to, as currently held by the consumer store
+     * @return the accessor
+     */
+    OAuthAccessor getAccessor(ServiceProviderToken token, Consumer consumer) {
+        CacheKey key = new CacheKey(consumer.getKey(), token.getToken());
+        CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null || entry.token != token || entry.consumer != consumer) {
+            entry = new CacheEntry(token, consumer, OAuthConverter.createOAuthAccessor(token, consumer));
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+        }
+        return entry.accessor.clone();
+    }
+
+    private static final class CacheEntry {
+
+        private final OAuthAccessor accessor;
+        private final Consumer consumer;
+        private final ServiceProviderToken token;
+
+        private CacheEntry(ServiceProviderToken token, Consumer consumer, OAuthAccessor accessor) {
+            this.accessor = accessor;
+            this.consumer = consumer;
+            this.token = token;
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final String consumerKey;
+        private final String token;
+
+        private CacheKey(String consumerKey, String token) {
+            this.consumerKey = consumerKey;
+            this.token = token;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return Objects.equals(consumerKey, cacheKey.consumerKey) &&
+                   Objects.equals(token, cacheKey.token);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(consumerKey, token);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers the nonces of the OAuth requests made within a window of time, so a request cannot be replayed while its
+ * timestamp is still accepted. Once the timestamp falls out of the window the request is refused for its timestamp
+ * anyway, so the nonce can be forgotten.
+ * <p>
+ * Nonces are grouped into buckets by the timestamp of their request, and the buckets are kept in a ring that covers
+ * the whole window. A bucket is dropped as a whole once all of its timestamps have fallen out of the window, so no
+ * nonce is ever looked at again to expire it. Each bucket is a concurrent set, so requests with timestamps in the same
+ * bucket do not contend on a single lock.
+ * <p>
+ * The number of nonces kept is limited, so memory stays bounded no matter how many requests are made. Once the limit
+ * is reached the bucket with the oldest timestamps is dropped early, and from then on requests with timestamps up to
+ * the end of that bucket are refused as if they were outside the window. This keeps accepting new requests while
+ * making sure none of the forgotten nonces can be replayed.
+ */
+final class OAuthNonceStore {
+
+    private final long bucketMillis;
+    private final AtomicReferenceArray<Bucket> buckets;
+    /**
+     * The newest bucket dropped before its timestamps fell out of the window. Timestamps up to the end of it are
+     * refused.
+     */
+    private final AtomicLong evictedEpoch = new AtomicLong(Long.MIN_VALUE);
+    private final long maxNonces;
+    private final AtomicLong size = new AtomicLong();
+    private final long windowMillis;
+
+    /**
+     * @param windowMillis how far the timestamp of a request may be from the current time, in ms
+     * @param bucketMillis the range of timestamps grouped into one bucket, in ms
+     * @param maxNonces    the maximum number of nonces kept
+     */
+    OAuthNonceStore(long windowMillis, long bucketMillis, long maxNonces) {
+        this.bucketMillis = Math.max(1L, bucketMillis);
+        this.maxNonces = maxNonces;
+        this.windowMillis = windowMillis;
+        // Timestamps up to the window either side of now are accepted; one extra bucket on each end covers the
+        // partially filled buckets at the edges of the window
+        long bucketCount = 2 * windowMillis / this.bucketMillis + 3;
+        buckets = new AtomicReferenceArray<>((int) Math.min(Integer.MAX_VALUE - 8, bucketCount));
+    }
+
+    /**
+     * Adds the nonce of a request, unless it was already used.
+     *
+     * @param nonce           the nonce, combined with anything else that must be unique along with it
+     * @param timestampMillis the timestamp of the request, in ms
+     * @param now             the current time, in ms
+     * @return {@code true} if the nonce was added, or {@code false} if it was used before or its timestamp is no
+     *         longer accepted
+     */
+    boolean add(String nonce, long timestampMillis, long now) {
+        if (!isTimestampAccepted(timestampMillis, now)) {
+            return false;
+        }
+        if (size.get() >= maxNonces) {
+            evict(now);
+        }
+        long epoch = getEpoch(timestampMillis);
+        int slot = getSlot(epoch);
+        while (true) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket != null && bucket.epoch > epoch) {
+                // The slot already holds newer timestamps, so the time moved on while this request was checked
+                return false;
+            }
+            if (bucket == null || bucket.epoch != epoch) {
+                Bucket newBucket = new Bucket(epoch);
+                if (buckets.compareAndSet(slot, bucket, newBucket) && bucket != null) {
+                    drop(bucket);
+                }
+                continue;
+            }
+            if (!bucket.reserve()) {
+                // The bucket was dropped while this request was checked
+                continue;
+            }
+            size.incrementAndGet();
+            // Checked after reserving, so a nonce can only go into a bucket being evicted if its timestamp is refused
+            // from then on
+            if (epoch > evictedEpoch.get() && bucket.nonces.add(nonce)) {
+                return true;
+            }
+            if (bucket.release()) {
+                size.decrementAndGet();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param nonce           the nonce, combined with anything else that must be unique along with it
+     * @param timestampMillis the timestamp of the request, in ms
+     * @return {@code true} if the nonce has already been added
+     */
+    boolean contains(String nonce, long timestampMillis) {
+        long epoch = getEpoch(timestampMillis);
+        Bucket bucket = buckets.get(getSlot(epoch));
+        return bucket != null && bucket.epoch == epoch && bucket.nonces.contains(nonce);
+    }
+
+    /**
+     * @param timestampMillis the timestamp of a request, in ms
+     * @param now             the current time, in ms
+     * @return {@code true} if the timestamp is close enough to the current time for the request to be accepted, and
+     *         the nonces of its bucket have not been dropped to make room
+     */
+    boolean isTimestampAccepted(long timestampMillis, long now) {
+        return Math.abs(timestampMillis - now) <= windowMillis && getEpoch(timestampMillis) > evictedEpoch.get();
+    }
+
+    /**
+     * @return the number of nonces kept, including any in buckets which have expired but not been dropped yet
+     */
+    long size() {
+        return size.get();
+    }
+
+    private void drop(Bucket bucket) {
+        size.addAndGet(-bucket.close());
+    }
+
+    /**
+     * Makes room for new nonces. Expired buckets are dropped first, and only if that is not enough are the buckets
+     * with the oldest timestamps dropped while they are still in the window.
+     */
+    private synchronized void evict(long now) {
+        while (size.get() >= maxNonces) {
+            int oldestSlot = -1;
+            Bucket oldest = null;
+            for (int slot = 0; slot < buckets.length(); slot++) {
+                Bucket bucket = buckets.get(slot);
+                if (bucket == null) {
+                    continue;
+                }
+                if ((bucket.epoch + 1) * bucketMillis <= now - windowMillis) {
+                    if (buckets.compareAndSet(slot, bucket, null)) {
+                        drop(bucket);
+                    }
+                } else if (oldest == null || bucket.epoch < oldest.epoch) {
+                    oldest = bucket;
+                    oldestSlot = slot;
+                }
+            }
+            if (oldest == null || size.get() < maxNonces) {
+                return;
+            }
+            // Refuse the timestamps of the bucket before it is dropped, so its nonces cannot be replayed in between
+            long epoch = oldest.epoch;
+            evictedEpoch.accumulateAndGet(epoch, Math::max);
+            if (buckets.compareAndSet(oldestSlot, oldest, null)) {
+                drop(oldest);
+            }
+        }
+    }
+
+    private long getEpoch(long timestampMillis) {
+        return Math.floorDiv(timestampMillis, bucketMillis);
+    }
+
+    private int getSlot(long epoch) {
+        return (int) Math.floorMod(epoch, (long) buckets.length());
+    }
+
+    private static final class Bucket {
+
+        private static final int CLOSED = -1;
+
+        /**
+         * The number of nonces counted for this bucket, or {@link #CLOSED} once the bucket has been dropped and its
+         * nonces taken off the size of the store.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+        private final long epoch;
+        private final Set<String> nonces = ConcurrentHashMap.newKeySet();
+
+        private Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+
+        /**
+         * @return the number of nonces to take off the size of the store, which is 0 if the bucket was already closed
+         */
+        private int close() {
+            while (true) {
+                int current = count.get();
+                if (current == CLOSED) {
+                    return 0;
+                }
+                if (count.compareAndSet(current, CLOSED)) {
+                    return current;
+                }
+            }
+        }
+
+        /**
+         * @return {@code true} if the nonce that was counted should also be taken off the size of the store, which is
+         *         not the case if the bucket was closed since, as closing it took off all of its nonces
+         */
+        private boolean release() {
+            while (true) {
+                int current = count.get();
+                if (current == CLOSED) {
+                    return false;
+                }
+                if (count.compareAndSet(current, current - 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return {@code true} if a nonce was counted for this bucket, or {@code false} if it has been closed
+         */
+        private boolean reserve() {
+            while (true) {
+                int current = count.get();
+                if (current == CLOSED) {
+                    return false;
+                }
+                if (count.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
+
+import com.google.common.annotations.VisibleForTesting;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthException;
+import net.oauth.OAuthMessage;
+import net.oauth.OAuthProblemException;
+import net.oauth.SimpleOAuthValidator;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.String.format;
+import static java.util.logging.Level.FINE;
+import static net.oauth.OAuth.Problems.NONCE_USED;
+import static net.oauth.OAuth.Problems.TIMESTAMP_REFUSED;
+
+/**
+ * Validates OAuth messages like {@link SimpleOAuthValidator}, but keeps track of the nonces it has seen in an
+ * {@link OAuthNonceStore} so that the memory used stays bounded and expired nonces are dropped without going through
+ * them one by one.
+ * <p>
+ * The number of nonces kept and the number of requests refused are shown to administrators, so a store that keeps
+ * filling up or a client that keeps replaying requests can be spotted.
+ */
+public class ReplayProtectingOAuthValidator extends SimpleOAuthValidator {
+
+    private static final Logger log = Logger.getLogger(ReplayProtectingOAuthValidator.class.getName());
+
+    /**
+     * How far the timestamp of a request may be from the current time. Defaults to 5 minutes in ms.
+     */
+    private static final long TIMESTAMP_WINDOW = parsePositiveLongFromSystemProperty(
+            "bitbucket.oauth.timestamp.window", TimeUnit.MINUTES.toMillis(5));
+    /**
+     * The range of timestamps whose nonces are grouped and expired together. Defaults to 10 seconds in ms.
+     */
+    private static final long NONCE_BUCKET_SIZE = parsePositiveLongFromSystemProperty(
+            "bitbucket.oauth.nonce.bucket.size", TimeUnit.SECONDS.toMillis(10));
+    /**
+     * The maximum number of nonces kept. Defaults to 100000.
+     */
+    private static final long MAX_NONCES = parsePositiveLongFromSystemProperty("bitbucket.oauth.nonce.max", 100000L);
+
+    private final Clock clock;
+    private final OAuthNonceStore nonceStore;
+    private final AtomicLong nonceReusedCount = new AtomicLong();
+    private final AtomicLong timestampRefusedCount = new AtomicLong();
+
+    @Inject
+    public ReplayProtectingOAuthValidator(Clock clock) {
+        this(clock, new OAuthNonceStore(TIMESTAMP_WINDOW, NONCE_BUCKET_SIZE, MAX_NONCES));
+    }
+
+    @VisibleForTesting
+    ReplayProtectingOAuthValidator(Clock clock, OAuthNonceStore nonceStore) {
+        this.clock = clock;
+        this.nonceStore = nonceStore;
+    }
+
+    /**
+     * @return the number of nonces kept, including any which have expired but not been dropped yet
+     */
+    public long getNonceCount() {
+        return nonceStore.size();
+    }
+
+    /**
+     * @return the number of requests refused because their nonce was used before, since Jenkins started
+     */
+    public long getNonceReusedCount() {
+        return nonceReusedCount.get();
+    }
+
+    /**
+     * @return the number of requests refused because their timestamp was not accepted, since Jenkins started
+     */
+    public long getTimestampRefusedCount() {
+        return timestampRefusedCount.get();
+    }
+
+    /**
+     * Validates the message like {@link SimpleOAuthValidator}, but only records its nonce once the signature has been
+     * checked. Otherwise anyone could use up the nonces of genuine requests, or fill the store, without knowing any
+     * secrets.
+     */
+    @Override
+    public void validateMessage(OAuthMessage message, OAuthAccessor accessor)
+            throws OAuthException, IOException, URISyntaxException {
+        checkSingleParameters(message);
+        validateVersion(message);
+        validateTimestampAndNonce(message);
+        validateSignature(message, accessor);
+        long timestampMillis = getTimestampMillis(message);
+        long now = clock.millis();
+        if (!nonceStore.add(getNonce(message), timestampMillis, now)) {
+            throw refused(message, timestampMillis, now);
+        }
+    }
+
+    /**
+     * Refuses messages whose timestamp is not accepted or whose nonce has already been used, without recording the
+     * nonce.
+     */
+    @Override
+    protected void validateTimestampAndNonce(OAuthMessage message) throws IOException, OAuthProblemException {
+        message.requireParameters(OAuth.OAUTH_TIMESTAMP, OAuth.OAUTH_NONCE);
+        long timestampMillis = getTimestampMillis(message);
+        long now = clock.millis();
+        if (!nonceStore.isTimestampAccepted(timestampMillis, now) ||
+            nonceStore.contains(getNonce(message), timestampMillis)) {
+            throw refused(message, timestampMillis, now);
+        }
+    }
+
+    private static String getNonce(OAuthMessage message) throws IOException {
+        return OAuth.percentEncode(message.getConsumerKey()) + '&' + OAuth.percentEncode(message.getToken()) + '&' +
+               OAuth.percentEncode(message.getParameter(OAuth.OAUTH_TIMESTAMP)) + '&' +
+               OAuth.percentEncode(message.getParameter(OAuth.OAUTH_NONCE));
+    }
+
+    private long getTimestampMillis(OAuthMessage message) throws IOException, OAuthProblemException {
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(message.getParameter(OAuth.OAUTH_TIMESTAMP)));
+        } catch (NumberFormatException e) {
+            timestampRefusedCount.incrementAndGet();
+            throw new OAuthProblemException(TIMESTAMP_REFUSED);
+        }
+    }
+
+    private OAuthProblemException refused(OAuthMessage message, long timestampMillis, long now) throws IOException {
+        boolean isTimestampAccepted = nonceStore.isTimestampAccepted(timestampMillis, now);
+        (isTimestampAccepted ? nonceReusedCount : timestampRefusedCount).incrementAndGet();
+        if (log.isLoggable(FINE)) {
+            log.log(FINE, format("OAuth request from consumer [%s] refused because its %s, %d nonces kept",
+                    message.getConsumerKey(), isTimestampAccepted ? "nonce was used before" : "timestamp is not accepted",
+                    nonceStore.size()));
+        }
+        return new OAuthProblemException(isTimestampAccepted ? NONCE_USED : TIMESTAMP_REFUSED);
+    }
+}
@@ -1,6 +1,7 @@
 package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer;
 
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.AbstractPersistentStore;
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.PersistentEntityCodec;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.Consumer.SignatureMethod;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.exception.StoreException;
 import com.google.common.annotations.VisibleForTesting;
@@ -13,6 +14,9 @@ import hudson.model.Saveable;
 import hudson.util.XStream2;
 
 import javax.inject.Singleton;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.net.URI;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
@@ -24,6 +28,8 @@ import java.security.spec.X509EncodedKeySpec;
 import java.util.*;
 import java.util.logging.Logger;
 
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.PersistentEntityCodec.readString;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.PersistentEntityCodec.writeString;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 import static java.util.logging.Level.WARNING;
@@ -49,7 +55,7 @@ public class PersistentServiceProviderConsumerStore extends AbstractPersistentSt
     private static final String CONSUMER_STORE_VALUE_NAME = "consumer-details";
 
     public PersistentServiceProviderConsumerStore() {
-        super("oauth-consumers.xml", new ConsumerConverter());
+        super("oauth-consumers.xml", new ConsumerConverter(), new ConsumerCodec());
     }
 
     @VisibleForTesting
@@ -124,6 +130,78 @@ public class PersistentServiceProviderConsumerStore extends AbstractPersistentSt
         return CONSUMER_STORE_VALUE_NAME;
     }
 
+    /**
+     * Writes the fields of a consumer to the compact snapshot
+     */
+    private static final class ConsumerCodec implements PersistentEntityCodec<Consumer> {
+
+        @Override
+        public Consumer read(String key, DataInput in) throws IOException {
+            Consumer.Builder builder = new Consumer.Builder(key);
+            String name = readString(in);
+            if (name != null) {
+                builder.name(name);
+            }
+            String description = readString(in);
+            if (description != null) {
+                builder.description(description);
+            }
+            String callback = readString(in);
+            if (callback != null) {
+                builder.callback(URI.create(callback));
+            }
+            builder.signatureMethod(SignatureMethod.valueOf(readString(in)));
+            String consumerSecret = readString(in);
+            if (consumerSecret != null) {
+                builder.consumerSecret(consumerSecret);
+            }
+            if (in.readBoolean()) {
+                builder.publicKey(readPublicKey(in));
+            }
+            return builder.build();
+        }
+
+        @Override
+        public void write(DataOutput out, Consumer consumer) throws IOException {
+            writeString(out, consumer.getName());
+            writeString(out, consumer.getDescription().orElse(null));
+            writeString(out, consumer.getCallback().map(URI::toString).orElse(null));
+            writeString(out, consumer.getSignatureMethod().name());
+            writeString(out, consumer.getConsumerSecret().orElse(null));
+            Optional<PublicKey> publicKey = consumer.getPublicKey();
+            out.writeBoolean(publicKey.isPresent());
+            if (publicKey.isPresent()) {
+                writeString(out, publicKey.get().getAlgorithm());
+                writeString(out, publicKey.get().getFormat());
+                byte[] encoded = publicKey.get().getEncoded();
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+        }
+
+        private static PublicKey readPublicKey(DataInput in) throws IOException {
+            String algorithm = readString(in);
+            String format = readString(in);
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            KeySpec keySpec;
+            if ("X.509".equals(format)) {
+                keySpec = new X509EncodedKeySpec(encoded);
+            } else if ("PKCS#8".equals(format)) {
+                keySpec = new PKCS8EncodedKeySpec(encoded);
+            } else {
+                log.warning("Unknown public key format: " + format);
+                throw new StoreException("Failed to read OAuth consumer");
+            }
+            try {
+                return KeyFactory.getInstance(algorithm).generatePublic(keySpec);
+            } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+                log.log(WARNING, "Failed to read OAuth consumer", e);
+                throw new StoreException("Failed to read OAuth consumer", e);
+            }
+        }
+    }
+
     private static final class ConsumerConverter implements Converter {
 
         private static final String CONSUMER_KEY = "key";
@@ -0,0 +1,41 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+
+/**
+ * Periodically removes the expired tokens and sessions from the {@link ServiceProviderTokenStore}. A request token is
+ * created every time a user starts authorizing Bitbucket, so without this they would pile up forever.
+ */
+@Extension
+public class ExpiredTokenSweeper extends AsyncPeriodicWork {
+
+    /**
+     * How often expired tokens are removed. Defaults to 1 hour in ms.
+     */
+    private static final long SWEEP_INTERVAL = parsePositiveLongFromSystemProperty(
+            "bitbucket.oauth.token.sweep.interval", TimeUnit.HOURS.toMillis(1));
+
+    @Inject
+    private ServiceProviderTokenStore tokenStore;
+
+    public ExpiredTokenSweeper() {
+        super("Bitbucket OAuth expired token removal");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return SWEEP_INTERVAL;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        tokenStore.removeExpiredTokensAndSessions();
+    }
+}
@@ -1,6 +1,7 @@
 package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token;
 
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.AbstractPersistentStore;
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.PersistentEntityCodec;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.Consumer;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.ServiceProviderConsumerStore;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.exception.StoreException;
@@ -18,18 +19,28 @@ import hudson.util.XStream2;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.net.URI;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.PersistentEntityCodec.readString;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.PersistentEntityCodec.writeString;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.Authorization.AUTHORIZED;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.Authorization.DENIED;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newAccessToken;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newRequestToken;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderTokenUtils.isTokenExpired;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderTokenUtils.isTokenSessionExpired;
+import static java.lang.System.currentTimeMillis;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 import static java.util.logging.Level.SEVERE;
@@ -39,6 +50,11 @@ import static java.util.stream.Collectors.toList;
  * A {@link ServiceProviderTokenStore} implementation that persists the {@link ServiceProviderToken tokens} to an XML
  * file
  * <p>
+ * Tokens are put and removed on every OAuth dance, so single changes are appended to a journal instead of rewriting the
+ * whole file, and the changes made at the same time are flushed to disk together. Changes that affect many tokens at
+ * once save the whole file, which also empties the journal. The lock of the store is released while waiting for either
+ * to be written.
+ * <p>
  * Only one instance of this class must be created per Jenkins instance.
  *
  * @see Saveable
@@ -54,15 +70,19 @@ public class PersistentServiceProviderTokenStore extends AbstractPersistentStore
     private static final String TOKEN_STORE_KEY_NAME = "token-value";
     private static final String TOKEN_STORE_VALUE_NAME = "token-details";
 
+    private transient volatile ServiceProviderTokenIndex index = new ServiceProviderTokenIndex();
+
     @Inject
     public PersistentServiceProviderTokenStore(ServiceProviderConsumerStore consumerStore) {
-        super("oauth-tokens.xml", new ServiceProviderTokenConverter(consumerStore));
+        super("oauth-tokens.xml", new ServiceProviderTokenConverter(consumerStore),
+                new ServiceProviderTokenCodec(consumerStore));
     }
 
     @VisibleForTesting
     PersistentServiceProviderTokenStore(ServiceProviderConsumerStore ServiceProviderConsumerStore, Map<String, ServiceProviderToken> tokenMap) {
         this(ServiceProviderConsumerStore);
         this.entityMap = tokenMap;
+        onLoad();
     }
 
     @Override
@@ -76,15 +96,39 @@ public class PersistentServiceProviderTokenStore extends AbstractPersistentStore
     public Iterable<ServiceProviderToken> getAccessTokensForUser(String username) {
         requireNonNull(username, "username");
         load();
-        return entityMap.values().stream().filter(token -> Objects.equals(username, token.getUser())).collect(toList());
+        return index.getTokensForUser(username).stream()
+                .map(entityMap::get)
+                // The index is not updated in step with reads, so check the token still belongs to the user
+                .filter(token -> token != null && Objects.equals(username, token.getUser()))
+                .collect(toList());
+    }
+
+    @Override
+    public List<ServiceProviderToken> getAccessTokensForUser(String username, int start, int limit) {
+        requireNonNull(username, "username");
+        load();
+        // The index keeps the tokens of each user in order, so only the tokens on the page are looked up
+        return index.getTokensForUser(username).stream()
+                .map(entityMap::get)
+                .filter(token -> token != null && Objects.equals(username, token.getUser()))
+                .skip(start)
+                .limit(limit)
+                .collect(toList());
     }
 
     @Override
     public ServiceProviderToken put(ServiceProviderToken token) {
         requireNonNull(token, "token");
         load();
-        entityMap.put(token.getToken(), token);
-        save();
+        CompletableFuture<Void> written;
+        synchronized (this) {
+            // A request token is put again once it has been authorized, so it may move to another user
+            index.remove(entityMap.put(token.getToken(), token));
+            index.add(token);
+            written = journalPut(token.getToken(), token);
+        }
+        // Wait for the change to be on disk without holding the lock, so other changes can be written along with it
+        waitFor(written);
         return token;
     }
 
@@ -92,7 +136,32 @@ public class PersistentServiceProviderTokenStore extends AbstractPersistentStore
     public void remove(String token) {
         requireNonNull(token, "token");
         load();
-        if (entityMap.remove(token) != null) {
+        CompletableFuture<Void> written;
+        synchronized (this) {
+            ServiceProviderToken removed = entityMap.remove(token);
+            if (removed == null) {
+                return;
+            }
+            index.remove(removed);
+            written = journalRemove(token);
+        }
+        waitFor(written);
+    }
+
+    @Override
+    public void removeAll(Collection<String> tokens) {
+        requireNonNull(tokens, "tokens");
+        load();
+        boolean removed = false;
+        synchronized (this) {
+            for (String token : tokens) {
+                if (removeFromMap(token)) {
+                    removed = true;
+                }
+            }
+        }
+        // A single write for all of the tokens, rather than a journal entry for each of them
+        if (removed) {
             save();
         }
     }
@@ -100,13 +169,12 @@ public class PersistentServiceProviderTokenStore extends AbstractPersistentStore
     @Override
     public void removeExpiredTokens() {
         load();
-        boolean needToSave = false;
-        for (ServiceProviderToken token : entityMap.values()) {
-            if (isTokenExpired(token) && entityMap.remove(token.getToken()) != null) {
-                needToSave = true;
-            }
+        boolean removed;
+        synchronized (this) {
+            removed = removeExpiredTokens(currentTimeMillis());
         }
-        if (needToSave) {
+        // Wait for the write without holding the lock, so tokens can be put in the meantime
+        if (removed) {
             save();
         }
     }
@@ -114,13 +182,25 @@ public class PersistentServiceProviderTokenStore extends AbstractPersistentStore
     @Override
     public void removeExpiredSessions() {
         load();
-        boolean needToSave = false;
-        for (ServiceProviderToken token : entityMap.values()) {
-            if (isTokenSessionExpired(token) && entityMap.remove(token.getToken()) != null) {
-                needToSave = true;
-            }
+        boolean removed;
+        synchronized (this) {
+            removed = removeExpiredSessions(currentTimeMillis());
         }
-        if (needToSave) {
+        if (removed) {
+            save();
+        }
+    }
+
+    @Override
+    public void removeExpiredTokensAndSessions() {
+        load();
+        long now = currentTimeMillis();
+        boolean removed;
+        synchronized (this) {
+            // Don't short-circuit, both need to be removed
+            removed = removeExpiredTokens(now) | removeExpiredSessions(now);
+        }
+        if (removed) {
             save();
         }
     }
@@ -130,11 +210,11 @@ public class PersistentServiceProviderTokenStore extends AbstractPersistentStore
         requireNonNull(consumerKey, "consumerKey");
         load();
         boolean needToSave = false;
-        for (ServiceProviderToken token : entityMap.values()) {
-            Consumer consumer = token.getConsumer();
-            if (consumer != null && Objects.equals(consumerKey, consumer.getKey()) &&
-                entityMap.remove(token.getToken()) != null) {
-                needToSave = true;
+        synchronized (this) {
+            for (String tokenValue : index.getTokensForConsumer(consumerKey)) {
+                if (removeFromMap(tokenValue)) {
+                    needToSave = true;
+                }
             }
         }
         if (needToSave) {
@@ -142,6 +222,11 @@ public class PersistentServiceProviderTokenStore extends AbstractPersistentStore
         }
     }
 
+    @Override
+    protected void onLoad() {
+        index = ServiceProviderTokenIndex.of(entityMap.values());
+    }
+
     @Override
     protected Class<ServiceProviderToken> getEntityClass() {
         return ServiceProviderToken.class;
@@ -162,6 +247,142 @@ public class PersistentServiceProviderTokenStore extends AbstractPersistentStore
         return TOKEN_STORE_ENTRY_NAME;
     }
 
+    private boolean removeExpiredSessions(long now) {
+        boolean removed = false;
+        for (String tokenValue : index.getSessionsExpiredBefore(now)) {
+            ServiceProviderToken token = entityMap.get(tokenValue);
+            if (token != null && isTokenSessionExpired(token) && removeFromMap(tokenValue)) {
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    private boolean removeExpiredTokens(long now) {
+        boolean removed = false;
+        for (String tokenValue : index.getTokensExpiredBefore(now)) {
+            ServiceProviderToken token = entityMap.get(tokenValue);
+            if (token != null && isTokenExpired(token) && removeFromMap(tokenValue)) {
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    private boolean removeFromMap(String token) {
+        ServiceProviderToken removed = entityMap.remove(token);
+        index.remove(removed);
+        return removed != null;
+    }
+
+    /**
+     * Writes the fields of a token to the compact snapshot. Secrets are encrypted just as they are in the XML.
+     */
+    private static final class ServiceProviderTokenCodec implements PersistentEntityCodec<ServiceProviderToken> {
+
+        private final ServiceProviderConsumerStore consumerStore;
+
+        private ServiceProviderTokenCodec(ServiceProviderConsumerStore consumerStore) {
+            this.consumerStore = consumerStore;
+        }
+
+        @Override
+        public ServiceProviderToken read(String key, DataInput in) throws IOException {
+            boolean accessToken = in.readBoolean();
+            String tokenSecret = decrypt(readString(in));
+            String consumerKey = readString(in);
+            Authorization authorization = Authorization.valueOf(readString(in));
+            String user = readString(in);
+            String verifier = decrypt(readString(in));
+            String callback = readString(in);
+            long creationTime = in.readLong();
+            long timeToLive = in.readLong();
+            Map<String, String> properties = readProperties(in);
+            ServiceProviderToken.Session session = readSession(in);
+
+            Consumer consumer = consumerStore.get(consumerKey).orElseThrow(() -> {
+                log.warning("Consumer not found: " + consumerKey);
+                return new StoreException("Consumer not found");
+            });
+            ServiceProviderToken.ServiceProviderTokenBuilder tokenBuilder =
+                    (accessToken ? newAccessToken(key) : newRequestToken(key))
+                            .tokenSecret(tokenSecret)
+                            .callback(callback == null ? null : URI.create(callback))
+                            .session(session)
+                            .properties(properties)
+                            .verifier(verifier)
+                            .creationTime(creationTime)
+                            .timeToLive(timeToLive)
+                            .consumer(consumer);
+            if (AUTHORIZED == authorization && user != null) {
+                tokenBuilder.authorizedBy(user);
+            } else if (DENIED == authorization) {
+                tokenBuilder.deniedBy(user);
+            }
+            return tokenBuilder.build();
+        }
+
+        @Override
+        public void write(DataOutput out, ServiceProviderToken token) throws IOException {
+            out.writeBoolean(token.isAccessToken());
+            writeString(out, encrypt(token.getTokenSecret()));
+            writeString(out, token.getConsumer() == null ? null : token.getConsumer().getKey());
+            writeString(out, token.getAuthorization().name());
+            writeString(out, token.getUser());
+            writeString(out, encrypt(token.getVerifier()));
+            writeString(out, token.getCallback() == null ? null : token.getCallback().toString());
+            out.writeLong(token.getCreationTime());
+            out.writeLong(token.getTimeToLive());
+            writeProperties(out, token.getProperties());
+            writeSession(out, token.getSession());
+        }
+
+        private static Map<String, String> readProperties(DataInput in) throws IOException {
+            int count = in.readInt();
+            Map<String, String> properties = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                properties.put(readString(in), readString(in));
+            }
+            return properties;
+        }
+
+        @Nullable
+        private static ServiceProviderToken.Session readSession(DataInput in) throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            return ServiceProviderToken.Session.newSession(decrypt(readString(in)))
+                    .creationTime(in.readLong())
+                    .lastRenewalTime(in.readLong())
+                    .timeToLive(in.readLong())
+                    .build();
+        }
+
+        private static void writeProperties(DataOutput out, @Nullable Map<String, String> properties)
+                throws IOException {
+            if (properties == null) {
+                out.writeInt(0);
+                return;
+            }
+            out.writeInt(properties.size());
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                writeString(out, property.getKey());
+                writeString(out, property.getValue());
+            }
+        }
+
+        private static void writeSession(DataOutput out, @Nullable ServiceProviderToken.Session session)
+                throws IOException {
+            out.writeBoolean(session != null);
+            if (session != null) {
+                writeString(out, encrypt(session.getHandle()));
+                out.writeLong(session.getCreationTime());
+                out.writeLong(session.getLastRenewalTime());
+                out.writeLong(session.getTimeToLive());
+            }
+        }
+    }
+
     private static final class ServiceProviderTokenConverter implements Converter {
 
         private static final String ACCESS_TOKEN = "access-token";
@@ -0,0 +1,79 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token;
+
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.Randomizer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * Keeps a bounded number of {@link Randomizer#randomUrlSafeString(int) random URL-safe strings} generated ahead of time,
+ * so that issuing tokens does not have to wait on the random number generator while many users authorize at once. The
+ * pool is refilled in the background once it runs low, and strings are generated on the spot when it is empty.
+ * <p>
+ * Every string is generated by the same {@link Randomizer} either way, and is handed out once only, so pooled strings
+ * are as random as the ones generated on the spot.
+ */
+final class RandomStringPool {
+
+    private static final Logger log = Logger.getLogger(RandomStringPool.class.getName());
+
+    private final int capacity;
+    private final Executor executor;
+    private final int length;
+    private final BlockingQueue<String> pool;
+    private final Randomizer randomizer;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    /**
+     * @param randomizer generates the strings
+     * @param length     the length of the strings, in chars
+     * @param capacity   the maximum number of strings kept
+     * @param executor   runs the refills
+     */
+    RandomStringPool(Randomizer randomizer, int length, int capacity, Executor executor) {
+        this.capacity = Math.max(1, capacity);
+        this.executor = executor;
+        this.length = length;
+        this.randomizer = randomizer;
+        pool = new ArrayBlockingQueue<>(this.capacity);
+    }
+
+    /**
+     * @return a random string that has not been returned before
+     */
+    String next() {
+        String value = pool.poll();
+        if (pool.size() <= capacity / 2) {
+            refill();
+        }
+        return value == null ? randomizer.randomUrlSafeString(length) : value;
+    }
+
+    private void refill() {
+        if (!refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    while (pool.remainingCapacity() > 0) {
+                        if (!pool.offer(randomizer.randomUrlSafeString(length))) {
+                            break;
+                        }
+                    }
+                } finally {
+                    refilling.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.log(FINE, "Failed to refill the pool of random strings, they are generated on the spot instead", e);
+            refilling.set(false);
+        }
+    }
+}
@@ -3,16 +3,20 @@ package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.t
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.Randomizer;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.Consumer;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.exception.InvalidTokenException;
+import com.google.common.annotations.VisibleForTesting;
+import hudson.model.Computer;
 import net.oauth.OAuthMessage;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.net.URI;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newAccessToken;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newRequestToken;
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
 import static java.lang.System.currentTimeMillis;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
@@ -22,21 +26,35 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 
 /**
  * Implementation of {@link ServiceProviderTokenFactory} that uses {@link Randomizer randomly generated values} to
- * generate request and access tokens.
+ * generate request and access tokens. Token secrets and session handles are taken from a {@link RandomStringPool pool}
+ * that is filled in the background.
  */
 @Singleton
 public class ServiceProviderTokenFactoryImpl implements ServiceProviderTokenFactory {
 
     private static final int ACCESS_TOKEN_SESSION_LENGTH_BYTES = 80;
     private static final int TOKEN_SECRET_LENGTH_BYTES = 80;
+    /**
+     * The maximum number of token secrets and session handles generated ahead of time. Defaults to 64.
+     */
+    private static final int SECRET_POOL_SIZE = (int) Math.min(Integer.MAX_VALUE,
+            parsePositiveLongFromSystemProperty("bitbucket.oauth.secret.pool.size", 64L));
 
     private static final Logger log = Logger.getLogger(ServiceProviderTokenFactoryImpl.class.getName());
 
-    private final Randomizer randomizer;
+    private final RandomStringPool sessionHandlePool;
+    private final RandomStringPool tokenSecretPool;
 
     @Inject
     public ServiceProviderTokenFactoryImpl(Randomizer randomizer) {
-        this.randomizer = randomizer;
+        this(randomizer, Computer.threadPoolForRemoting);
+    }
+
+    @VisibleForTesting
+    ServiceProviderTokenFactoryImpl(Randomizer randomizer, Executor executor) {
+        sessionHandlePool =
+                new RandomStringPool(randomizer, ACCESS_TOKEN_SESSION_LENGTH_BYTES, SECRET_POOL_SIZE, executor);
+        tokenSecretPool = new RandomStringPool(randomizer, TOKEN_SECRET_LENGTH_BYTES, SECRET_POOL_SIZE, executor);
     }
 
     @Override
@@ -61,7 +79,7 @@ public class ServiceProviderTokenFactoryImpl implements ServiceProviderTokenFact
                 .callback(requestToken.getCallback())
                 .consumer(requestToken.getConsumer())
                 .creationTime(currentTimeMillis())
-                .tokenSecret(randomizer.randomUrlSafeString(TOKEN_SECRET_LENGTH_BYTES))
+                .tokenSecret(tokenSecretPool.next())
                 .authorizedBy(requestToken.getUser())
                 .verifier(requestToken.getVerifier())
                 .session(newSession(requestToken))
@@ -74,7 +92,7 @@ public class ServiceProviderTokenFactoryImpl implements ServiceProviderTokenFact
         return newRequestToken(randomUUID().toString())
                 .consumer(consumer)
                 .creationTime(currentTimeMillis())
-                .tokenSecret(randomizer.randomUrlSafeString(TOKEN_SECRET_LENGTH_BYTES))
+                .tokenSecret(tokenSecretPool.next())
                 .build();
     }
 
@@ -86,13 +104,13 @@ public class ServiceProviderTokenFactoryImpl implements ServiceProviderTokenFact
                 .callback(callback)
                 .consumer(consumer)
                 .creationTime(currentTimeMillis())
-                .tokenSecret(randomizer.randomUrlSafeString(TOKEN_SECRET_LENGTH_BYTES))
+                .tokenSecret(tokenSecretPool.next())
                 .build();
     }
 
     private ServiceProviderToken.Session newSession(ServiceProviderToken token) {
         ServiceProviderToken.Session.Builder builder =
-                ServiceProviderToken.Session.newSession(randomizer.randomUrlSafeString(ACCESS_TOKEN_SESSION_LENGTH_BYTES));
+                ServiceProviderToken.Session.newSession(sessionHandlePool.next());
         if (token.getSession() != null) {
             builder.creationTime(token.getSession().getCreationTime());
         }
@@ -0,0 +1,150 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token;
+
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.Consumer;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Supplier;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Indexes the {@link ServiceProviderToken tokens} of a {@link PersistentServiceProviderTokenStore} by the user who
+ * authorized them and by the key of the consumer they were issued to, so the tokens of a user or consumer can be found
+ * without going through every token in the store. Tokens are also ordered by the time they or their session expire, so
+ * expired tokens can be found without looking at the ones that are still valid. The tokens of a user are kept sorted, so
+ * they can be listed a page at a time.
+ * <p>
+ * Only the token values are indexed; the tokens themselves are still read from the store. Changes to the index must be
+ * made while holding the lock of the store, so they happen in step with the changes to the tokens. Lookups can be made
+ * at any time.
+ */
+final class ServiceProviderTokenIndex {
+
+    private final NavigableMap<Long, Set<String>> sessionsByExpiry = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<String>> tokensByConsumer = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, Set<String>> tokensByExpiry = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<String>> tokensByUser = new ConcurrentHashMap<>();
+
+    static ServiceProviderTokenIndex of(Collection<ServiceProviderToken> tokens) {
+        ServiceProviderTokenIndex index = new ServiceProviderTokenIndex();
+        tokens.forEach(index::add);
+        return index;
+    }
+
+    void add(ServiceProviderToken token) {
+        Consumer consumer = token.getConsumer();
+        if (consumer != null) {
+            add(tokensByConsumer, consumer.getKey(), token.getToken());
+        }
+        add(tokensByUser, token.getUser(), token.getToken(), ConcurrentSkipListSet::new);
+        ServiceProviderToken.Session session = token.getSession();
+        if (session == null) {
+            add(tokensByExpiry, getTokenExpiry(token), token.getToken());
+        } else {
+            add(sessionsByExpiry, getSessionExpiry(session), token.getToken());
+        }
+    }
+
+    /**
+     * Returns the values of the tokens whose session expired before the given time. The result is a copy, so the
+     * tokens can be removed while going through it.
+     */
+    Collection<String> getSessionsExpiredBefore(long time) {
+        return getExpiredBefore(sessionsByExpiry, time);
+    }
+
+    /**
+     * Returns the values of the tokens issued to the consumer. The result is a copy, so the tokens can be removed
+     * while going through it.
+     */
+    Collection<String> getTokensForConsumer(String consumerKey) {
+        return get(tokensByConsumer, consumerKey);
+    }
+
+    /**
+     * Returns the values of the tokens without a session which expired before the given time. Tokens with a session
+     * are left until their session expires. The result is a copy, so the tokens can be removed while going through it.
+     */
+    Collection<String> getTokensExpiredBefore(long time) {
+        return getExpiredBefore(tokensByExpiry, time);
+    }
+
+    /**
+     * Returns the values of the tokens authorized by the user, in order. The result is a copy, so the tokens can be
+     * removed while going through it.
+     */
+    Collection<String> getTokensForUser(String username) {
+        return get(tokensByUser, username);
+    }
+
+    void remove(@Nullable ServiceProviderToken token) {
+        if (token == null) {
+            return;
+        }
+        Consumer consumer = token.getConsumer();
+        if (consumer != null) {
+            remove(tokensByConsumer, consumer.getKey(), token.getToken());
+        }
+        remove(tokensByUser, token.getUser(), token.getToken());
+        ServiceProviderToken.Session session = token.getSession();
+        if (session == null) {
+            remove(tokensByExpiry, getTokenExpiry(token), token.getToken());
+        } else {
+            remove(sessionsByExpiry, getSessionExpiry(session), token.getToken());
+        }
+    }
+
+    private static <K> void add(Map<K, Set<String>> index, @Nullable K key, String token) {
+        add(index, key, token, ConcurrentHashMap::newKeySet);
+    }
+
+    private static <K> void add(Map<K, Set<String>> index, @Nullable K key, String token,
+                                Supplier<Set<String>> setFactory) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> setFactory.get()).add(token);
+        }
+    }
+
+    private static Collection<String> get(Map<String, Set<String>> index, String key) {
+        Set<String> tokens = index.get(key);
+        return tokens == null ? emptyList() : new ArrayList<>(tokens);
+    }
+
+    private static Collection<String> getExpiredBefore(NavigableMap<Long, Set<String>> index, long time) {
+        List<String> tokens = new ArrayList<>();
+        index.headMap(time, false).values().forEach(tokens::addAll);
+        return tokens;
+    }
+
+    private static long getExpiry(long start, long timeToLive) {
+        long expiry = start + timeToLive;
+        // A time to live that is effectively forever must not wrap around to the past
+        return expiry < start ? Long.MAX_VALUE : expiry;
+    }
+
+    private static long getSessionExpiry(ServiceProviderToken.Session session) {
+        return getExpiry(session.getLastRenewalTime(), session.getTimeToLive());
+    }
+
+    private static long getTokenExpiry(ServiceProviderToken token) {
+        return getExpiry(token.getCreationTime(), token.getTimeToLive());
+    }
+
+    private static <K> void remove(Map<K, Set<String>> index, @Nullable K key, String token) {
+        if (key != null) {
+            index.computeIfPresent(key, (k, tokens) -> {
+                tokens.remove(token);
+                return tokens.isEmpty() ? null : tokens;
+            });
+        }
+    }
+}
@@ -4,7 +4,12 @@ import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.ex
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.exception.StoreException;
 import com.google.inject.ImplementedBy;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.StreamSupport;
+
+import static java.util.stream.Collectors.toList;
 
 /**
  * Provides persistent storage for OAuth tokens. The implementation of this store should only concern itself
@@ -35,6 +40,23 @@ public interface ServiceProviderTokenStore {
      */
     Iterable<ServiceProviderToken> getAccessTokensForUser(String username);
 
+    /**
+     * Retrieves a page of the access tokens the user has approved. Tokens are returned in the same order every time,
+     * so consecutive pages can be retrieved by moving {@code start} on by {@code limit}.
+     * Implementations should override this if they can do so without retrieving all of the user's tokens.
+     *
+     * @param username the user that approved the access tokens to retrieve
+     * @param start    the number of tokens to skip
+     * @param limit    the maximum number of tokens to retrieve
+     * @return up to {@code limit} access tokens the user has approved
+     */
+    default List<ServiceProviderToken> getAccessTokensForUser(String username, int start, int limit) {
+        return StreamSupport.stream(getAccessTokensForUser(username).spliterator(), false)
+                .skip(start)
+                .limit(limit)
+                .collect(toList());
+    }
+
     /**
      * Put the token in the store.
      *
@@ -54,6 +76,17 @@ public interface ServiceProviderTokenStore {
      */
     void remove(String token);
 
+    /**
+     * Remove all of the {@code ServiceProviderToken}s whose {@code token} attribute value is one of the given values.
+     * Implementations should override this if they can persist the removals together.
+     *
+     * @param tokens token values of the {@code ServiceProviderToken}s to remove
+     * @throws StoreException thrown if there is a problem removing the {@code ServiceProviderToken}s
+     */
+    default void removeAll(Collection<String> tokens) {
+        tokens.forEach(this::remove);
+    }
+
     /**
      * Remove all {@code ServiceProviderToken}s from the store that do not have sessions and whose {@code timeToLive}
      * has been exceeded.  {@code ServiceProviderToken}s with session information should be left as-is, to be removed
@@ -78,6 +111,17 @@ public interface ServiceProviderTokenStore {
      */
     void removeExpiredSessions();
 
+    /**
+     * Remove everything that {@link #removeExpiredTokens} and {@link #removeExpiredSessions} would remove, in one go.
+     * Implementations should override this if they can do so more efficiently than calling both methods.
+     *
+     * @throws StoreException thrown if there is a problem removing the {@code ServiceProviderToken}s
+     */
+    default void removeExpiredTokensAndSessions() {
+        removeExpiredTokens();
+        removeExpiredSessions();
+    }
+
     /**
      * Remove all the {@code ServiceProviderToken}s created by the consumer.
      *
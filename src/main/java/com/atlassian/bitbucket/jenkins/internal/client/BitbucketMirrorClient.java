@@ -3,7 +3,8 @@ package com.atlassian.bitbucket.jenkins.internal.client;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.*;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepository;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryDescriptor;
-import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
+
+import java.util.stream.Stream;
 
 /**
  * Client to do the mirror related operation for a given repository
@@ -11,7 +12,8 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
 public interface BitbucketMirrorClient {
 
     /**
-     * Retrieve a page of mirrored repository descriptors for the given repository ID
+     * Retrieve the mirrored repository descriptors for the given repository ID. Pages are fetched lazily as the
+     * returned stream is consumed.
      *
      * @return The mirrored repository descriptors for the given repository
      * @throws AuthorizationException     if the credentials did not allow access to the given url
@@ -22,7 +24,7 @@ public interface BitbucketMirrorClient {
      * @throws ServerErrorException       if the server failed to process the request
      * @throws BitbucketClientException   for all errors not already captured
      */
-    BitbucketPage<BitbucketMirroredRepositoryDescriptor> getMirroredRepositoryDescriptors();
+    Stream<BitbucketMirroredRepositoryDescriptor> getMirroredRepositoryDescriptors();
 
     /**
      * Returns the mirrored repository details for the given repository url.
@@ -1,12 +1,18 @@
 package com.atlassian.bitbucket.jenkins.internal.client;
 
 import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.client.paging.BitbucketPageStreamUtil;
+import com.atlassian.bitbucket.jenkins.internal.client.paging.NextPageFetcher;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepository;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryDescriptor;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
 import com.fasterxml.jackson.core.type.TypeReference;
 import okhttp3.HttpUrl;
 
+import java.util.Collection;
+import java.util.stream.Stream;
+
+import static java.lang.String.valueOf;
 import static java.util.Objects.requireNonNull;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 
@@ -22,7 +28,7 @@ public class BitbucketMirrorClientImpl implements BitbucketMirrorClient {
     }
 
     @Override
-    public BitbucketPage<BitbucketMirroredRepositoryDescriptor> getMirroredRepositoryDescriptors() {
+    public Stream<BitbucketMirroredRepositoryDescriptor> getMirroredRepositoryDescriptors() {
         HttpUrl url =
                 bitbucketRequestExecutor.getBaseUrl().newBuilder()
                         .addPathSegment("rest")
@@ -32,8 +38,11 @@ public class BitbucketMirrorClientImpl implements BitbucketMirrorClient {
                         .addPathSegment(String.valueOf(repositoryId))
                         .addPathSegment("mirrors")
                         .build();
-        return bitbucketRequestExecutor.makeGetRequest(url,
-                new TypeReference<BitbucketPage<BitbucketMirroredRepositoryDescriptor>>() {}).getBody();
+        BitbucketPage<BitbucketMirroredRepositoryDescriptor> firstPage =
+                bitbucketRequestExecutor.makeGetRequest(url,
+                        new TypeReference<BitbucketPage<BitbucketMirroredRepositoryDescriptor>>() {}).getBody();
+        return BitbucketPageStreamUtil.toStream(firstPage, new NextPageFetcherImpl(url, bitbucketRequestExecutor))
+                .map(BitbucketPage::getValues).flatMap(Collection::stream);
     }
 
     @Override
@@ -51,4 +60,31 @@ public class BitbucketMirrorClientImpl implements BitbucketMirrorClient {
 
         return bitbucketRequestExecutor.makeGetRequest(mirrorUrl, BitbucketMirroredRepository.class).getBody();
     }
+
+    static class NextPageFetcherImpl implements NextPageFetcher<BitbucketMirroredRepositoryDescriptor> {
+
+        private final HttpUrl url;
+        private final BitbucketRequestExecutor bitbucketRequestExecutor;
+
+        NextPageFetcherImpl(HttpUrl url,
+                            BitbucketRequestExecutor bitbucketRequestExecutor) {
+            this.url = url;
+            this.bitbucketRequestExecutor = bitbucketRequestExecutor;
+        }
+
+        @Override
+        public BitbucketPage<BitbucketMirroredRepositoryDescriptor> next(
+                BitbucketPage<BitbucketMirroredRepositoryDescriptor> previous) {
+            if (previous.isLastPage()) {
+                throw new IllegalArgumentException("Last page does not have next page");
+            }
+            return bitbucketRequestExecutor.makeGetRequest(
+                    nextPageUrl(previous),
+                    new TypeReference<BitbucketPage<BitbucketMirroredRepositoryDescriptor>>() {}).getBody();
+        }
+
+        private HttpUrl nextPageUrl(BitbucketPage<BitbucketMirroredRepositoryDescriptor> previous) {
+            return url.newBuilder().addQueryParameter("start", valueOf(previous.getNextPageStart())).build();
+        }
+    }
 }
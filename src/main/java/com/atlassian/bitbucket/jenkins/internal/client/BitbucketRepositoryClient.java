@@ -1,14 +1,68 @@
 package com.atlassian.bitbucket.jenkins.internal.client;
 
 import com.atlassian.bitbucket.jenkins.internal.client.exception.*;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketChange;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketCommit;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefDetails;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
 
+import java.util.stream.Stream;
+
 /**
  * Repository client, used to interact with a remote repository for all operations except cloning
  * source code.
  */
 public interface BitbucketRepositoryClient {
 
+    /**
+     * Lists the branches of the repository. Pages are only retrieved as the stream is consumed.
+     *
+     * @return the branches of the repository, along with the commit each points to
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the requested url does not exist
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    Stream<BitbucketRefDetails> getBranches();
+
+    /**
+     * Lists the files changed by the commits reachable from one commit but not from another, such as the commits
+     * pushed to a branch. Pages are only retrieved as the stream is consumed.
+     *
+     * @param sinceCommit the ID of the commit the changes are made after, such as the previous head of a branch
+     * @param untilCommit the ID of the commit the changes are made up to, such as the new head of a branch
+     * @return the changed files
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the requested url does not exist
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    Stream<BitbucketChange> getChanges(String sinceCommit, String untilCommit);
+
+    /**
+     * Get a commit of the repository.
+     *
+     * @param commitId the ID of the commit
+     * @return the commit
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the requested url does not exist
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    BitbucketCommit getCommit(String commitId);
+
+    /**
+     * Lists the open pull requests targeting the repository. Pages are only retrieved as the stream is consumed.
+     *
+     * @return the open pull requests, along with the commits their source and target branches point to
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the requested url does not exist
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    Stream<BitbucketPullRequest> getPullRequests();
+
     /**
      * Make the call out to Bitbucket and read the response.
      *
@@ -23,6 +77,17 @@ public interface BitbucketRepositoryClient {
      */
     BitbucketRepository getRepository();
 
+    /**
+     * Lists the tags of the repository. Pages are only retrieved as the stream is consumed.
+     *
+     * @return the tags of the repository, along with the commit each points to
+     * @throws AuthorizationException if the credentials did not allow access to the given url
+     * @throws ConnectionFailureException if the server did not respond
+     * @throws NotFoundException if the requested url does not exist
+     * @throws BitbucketClientException for all errors not already captured
+     */
+    Stream<BitbucketRefDetails> getTags();
+
     /**
      * A client for performing various webhook related operations.
      *
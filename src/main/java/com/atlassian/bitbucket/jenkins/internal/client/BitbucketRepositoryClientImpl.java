@@ -1,13 +1,38 @@
 package com.atlassian.bitbucket.jenkins.internal.client;
 
+import com.atlassian.bitbucket.jenkins.internal.client.paging.BitbucketPageStreamUtil;
+import com.atlassian.bitbucket.jenkins.internal.client.paging.NextPageFetcher;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketChange;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketCommit;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefDetails;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
 import okhttp3.HttpUrl;
 
+import java.util.Collection;
+import java.util.stream.Stream;
+
+import static java.lang.String.valueOf;
 import static java.util.Objects.requireNonNull;
 import static org.apache.commons.lang3.StringUtils.stripToNull;
 
 public class BitbucketRepositoryClientImpl implements BitbucketRepositoryClient {
 
+    /**
+     * The number of branches or tags asked for in each page. Bitbucket lowers this to its own maximum page size.
+     */
+    private static final int REF_PAGE_LIMIT = 1000;
+    /**
+     * The number of changed files asked for in each page. Bitbucket lowers this to its own maximum page size.
+     */
+    private static final int CHANGE_PAGE_LIMIT = 1000;
+    /**
+     * The number of pull requests asked for in each page. Bitbucket lowers this to its own maximum page size.
+     */
+    private static final int PULL_REQUEST_PAGE_LIMIT = 100;
+
     private final BitbucketRequestExecutor bitbucketRequestExecutor;
     private final String projectKey;
     private final String repositorySlug;
@@ -18,19 +43,105 @@ public class BitbucketRepositoryClientImpl implements BitbucketRepositoryClient
         this.repositorySlug = requireNonNull(stripToNull(repositorySlug), "repositorySlug");
     }
 
+    @Override
+    public Stream<BitbucketRefDetails> getBranches() {
+        return getRefs("branches");
+    }
+
+    @Override
+    public Stream<BitbucketChange> getChanges(String sinceCommit, String untilCommit) {
+        // The compare resource takes the commits the other way round: changes "from" the new commit "to" the old one
+        HttpUrl url = getRepositoryUrl()
+                .addPathSegment("compare")
+                .addPathSegment("changes")
+                .addQueryParameter("from", requireNonNull(stripToNull(untilCommit), "untilCommit"))
+                .addQueryParameter("to", requireNonNull(stripToNull(sinceCommit), "sinceCommit"))
+                .addQueryParameter("limit", valueOf(CHANGE_PAGE_LIMIT))
+                .build();
+        return getPaged(url, new TypeReference<BitbucketPage<BitbucketChange>>() {});
+    }
+
+    @Override
+    public BitbucketCommit getCommit(String commitId) {
+        HttpUrl url = getRepositoryUrl()
+                .addPathSegment("commits")
+                .addPathSegment(requireNonNull(stripToNull(commitId), "commitId"))
+                .build();
+        return bitbucketRequestExecutor.makeGetRequest(url, BitbucketCommit.class).getBody();
+    }
+
+    @Override
+    public Stream<BitbucketPullRequest> getPullRequests() {
+        HttpUrl url = getRepositoryUrl()
+                .addPathSegment("pull-requests")
+                .addQueryParameter("state", "OPEN")
+                .addQueryParameter("limit", valueOf(PULL_REQUEST_PAGE_LIMIT))
+                .build();
+        return getPaged(url, new TypeReference<BitbucketPage<BitbucketPullRequest>>() {});
+    }
+
     @Override
     public BitbucketRepository getRepository() {
-        HttpUrl.Builder urlBuilder = bitbucketRequestExecutor.getCoreRestPath().newBuilder()
-                .addPathSegment("projects")
-                .addPathSegment(projectKey)
-                .addPathSegment("repos")
-                .addPathSegment(repositorySlug);
+        return bitbucketRequestExecutor.makeGetRequest(getRepositoryUrl().build(), BitbucketRepository.class).getBody();
+    }
 
-        return bitbucketRequestExecutor.makeGetRequest(urlBuilder.build(), BitbucketRepository.class).getBody();
+    @Override
+    public Stream<BitbucketRefDetails> getTags() {
+        return getRefs("tags");
     }
 
     @Override
     public BitbucketWebhookClient getWebhookClient() {
         return new BitbucketWebhookClientImpl(bitbucketRequestExecutor, projectKey, repositorySlug);
     }
+
+    private Stream<BitbucketRefDetails> getRefs(String resource) {
+        HttpUrl url = getRepositoryUrl()
+                .addPathSegment(resource)
+                .addQueryParameter("limit", valueOf(REF_PAGE_LIMIT))
+                .build();
+        return getPaged(url, new TypeReference<BitbucketPage<BitbucketRefDetails>>() {});
+    }
+
+    private <T> Stream<T> getPaged(HttpUrl url, TypeReference<BitbucketPage<T>> pageType) {
+        BitbucketPage<T> firstPage = bitbucketRequestExecutor.makeGetRequest(url, pageType).getBody();
+        return BitbucketPageStreamUtil.toStream(firstPage,
+                new NextPageFetcherImpl<>(url, pageType, bitbucketRequestExecutor))
+                .map(BitbucketPage::getValues).flatMap(Collection::stream);
+    }
+
+    private HttpUrl.Builder getRepositoryUrl() {
+        return bitbucketRequestExecutor.getCoreRestPath().newBuilder()
+                .addPathSegment("projects")
+                .addPathSegment(projectKey)
+                .addPathSegment("repos")
+                .addPathSegment(repositorySlug);
+    }
+
+    static class NextPageFetcherImpl<T> implements NextPageFetcher<T> {
+
+        private final BitbucketRequestExecutor bitbucketRequestExecutor;
+        private final TypeReference<BitbucketPage<T>> pageType;
+        private final HttpUrl url;
+
+        NextPageFetcherImpl(HttpUrl url,
+                            TypeReference<BitbucketPage<T>> pageType,
+                            BitbucketRequestExecutor bitbucketRequestExecutor) {
+            this.url = url;
+            this.pageType = pageType;
+            this.bitbucketRequestExecutor = bitbucketRequestExecutor;
+        }
+
+        @Override
+        public BitbucketPage<T> next(BitbucketPage<T> previous) {
+            if (previous.isLastPage()) {
+                throw new IllegalArgumentException("Last page does not have next page");
+            }
+            return bitbucketRequestExecutor.makeGetRequest(nextPageUrl(previous), pageType).getBody();
+        }
+
+        private HttpUrl nextPageUrl(BitbucketPage<T> previous) {
+            return url.newBuilder().addQueryParameter("start", valueOf(previous.getNextPageStart())).build();
+        }
+    }
 }
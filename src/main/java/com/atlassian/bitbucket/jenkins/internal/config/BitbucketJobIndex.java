@@ -0,0 +1,149 @@
+package com.atlassian.bitbucket.jenkins.internal.config;
+
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import jenkins.branch.MultiBranchProject;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+
+import javax.inject.Inject;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of the jobs and multibranch projects using each Bitbucket Server, so that when a server changes only
+ * the items using it have to be visited. The index is built by going through every item the first time it is used,
+ * and from then on is kept up to date as items are created, saved, renamed and deleted.
+ */
+@Extension
+public class BitbucketJobIndex extends ItemListener {
+
+    private boolean built;
+    private final Map<String, Set<String>> itemNamesByServerId = new HashMap<>();
+    private final Map<String, Set<String>> serverIdsByItemName = new HashMap<>();
+
+    /**
+     * Returns the items using any of the given servers. The caller needs to be allowed to see every item, as the index
+     * is built from them the first time it is used.
+     *
+     * @param serverIds the IDs of the servers
+     * @return the items using the servers
+     */
+    public List<Item> getItems(Collection<String> serverIds) {
+        Set<String> itemNames = new TreeSet<>();
+        synchronized (this) {
+            if (!built) {
+                Jenkins.get().getAllItems().forEach(this::put);
+                built = true;
+            }
+            serverIds.forEach(serverId ->
+                    itemNames.addAll(itemNamesByServerId.getOrDefault(serverId, Collections.emptySet())));
+        }
+        return itemNames.stream()
+                .map(itemName -> Jenkins.get().getItemByFullName(itemName))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void onCreated(Item item) {
+        index(item);
+    }
+
+    @Override
+    public synchronized void onDeleted(Item item) {
+        remove(item.getFullName());
+    }
+
+    @Override
+    public synchronized void onLocationChanged(Item item, String oldFullName, String newFullName) {
+        remove(oldFullName);
+        index(item);
+    }
+
+    @Override
+    public void onUpdated(Item item) {
+        index(item);
+    }
+
+    synchronized void index(Item item) {
+        // Until the index is built there is nothing to keep up to date, building it will pick up the item
+        if (built) {
+            remove(item.getFullName());
+            put(item);
+        }
+    }
+
+    private static Set<String> getServerIds(Item item) {
+        if (item instanceof AbstractProject && ((AbstractProject<?, ?>) item).getScm() instanceof BitbucketSCM) {
+            return serverIds(Collections.singleton(((BitbucketSCM) ((AbstractProject<?, ?>) item).getScm()).getServerId()));
+        } else if (item instanceof WorkflowJob &&
+                   ((WorkflowJob) item).getDefinition() instanceof CpsScmFlowDefinition &&
+                   ((CpsScmFlowDefinition) ((WorkflowJob) item).getDefinition()).getScm() instanceof BitbucketSCM) {
+            CpsScmFlowDefinition definition = (CpsScmFlowDefinition) ((WorkflowJob) item).getDefinition();
+            return serverIds(Collections.singleton(((BitbucketSCM) definition.getScm()).getServerId()));
+        } else if (item instanceof MultiBranchProject) {
+            return serverIds(((MultiBranchProject<?, ?>) item).getSCMSources().stream()
+                    .filter(source -> source instanceof BitbucketSCMSource)
+                    .map(source -> ((BitbucketSCMSource) source).getServerId())
+                    .collect(Collectors.toList()));
+        }
+        return Collections.emptySet();
+    }
+
+    private static Set<String> serverIds(Collection<String> serverIds) {
+        return serverIds.stream()
+                .filter(StringUtils::isNotBlank)
+                .collect(Collectors.toSet());
+    }
+
+    private void put(Item item) {
+        Set<String> serverIds = getServerIds(item);
+        if (serverIds.isEmpty()) {
+            return;
+        }
+        String itemName = item.getFullName();
+        serverIdsByItemName.put(itemName, serverIds);
+        serverIds.forEach(serverId -> itemNamesByServerId.computeIfAbsent(serverId, key -> new HashSet<>()).add(itemName));
+    }
+
+    private void remove(String itemName) {
+        Set<String> serverIds = serverIdsByItemName.remove(itemName);
+        if (serverIds == null) {
+            return;
+        }
+        serverIds.forEach(serverId -> {
+            Set<String> itemNames = itemNamesByServerId.get(serverId);
+            if (itemNames != null && itemNames.remove(itemName) && itemNames.isEmpty()) {
+                itemNamesByServerId.remove(serverId);
+            }
+        });
+    }
+
+    /**
+     * Items are not always saved through their configuration page, for instance when their SCM is replaced, so the
+     * index is also updated every time an item is saved.
+     */
+    @Extension
+    public static class SaveListener extends SaveableListener {
+
+        @Inject
+        private BitbucketJobIndex jobIndex;
+
+        @Override
+        public void onChange(Saveable saveable, XmlFile file) {
+            if (saveable instanceof Item) {
+                jobIndex.index((Item) saveable);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.atlassian.bitbucket.jenkins.internal.config;
+
+import hudson.Extension;
+import hudson.model.AdministrativeMonitor;
+
+/**
+ * Tells administrators that the jobs using a Bitbucket Server are still being updated after its base URL changed, and
+ * how far along the update is, as the update runs in the background after the global configuration is saved.
+ */
+@Extension
+public class BitbucketJobUpdateMonitor extends AdministrativeMonitor {
+
+    private int failed;
+    private int total;
+    private int updated;
+
+    @Override
+    public String getDisplayName() {
+        return Messages.BitbucketJobUpdateMonitor_displayname();
+    }
+
+    /**
+     * @return the number of items that could not be updated
+     */
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the number of items to update
+     */
+    public synchronized int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the number of items updated so far, including those that could not be updated
+     */
+    public synchronized int getUpdated() {
+        return updated;
+    }
+
+    @Override
+    public synchronized boolean isActivated() {
+        return updated < total;
+    }
+
+    /**
+     * Records that an item has been visited.
+     *
+     * @param success {@code false} if the item could not be updated
+     */
+    synchronized void itemUpdated(boolean success) {
+        updated++;
+        if (!success) {
+            failed++;
+        }
+    }
+
+    /**
+     * Records that an update has started. The counts start over unless another update is still running.
+     *
+     * @param items the number of items the update will visit
+     */
+    synchronized void started(int items) {
+        if (!isActivated()) {
+            failed = 0;
+            total = 0;
+            updated = 0;
+        }
+        total += items;
+    }
+}
@@ -0,0 +1,159 @@
+package com.atlassian.bitbucket.jenkins.internal.config;
+
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.NamingThreadFactory;
+import jenkins.branch.BranchSource;
+import jenkins.branch.MultiBranchProject;
+import jenkins.scm.api.SCMSource;
+import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.String.format;
+
+/**
+ * Updates the jobs and multibranch projects using a Bitbucket Server after its base URL changes, so they clone from
+ * and link to the new URL. Only the items using the server are visited, as found by the {@link BitbucketJobIndex},
+ * and they are updated in the background, a few at a time, so saving the global configuration does not wait for
+ * them. Where possible the URLs are moved to the new base URL as they are, otherwise they are looked up in Bitbucket
+ * again. The progress of the update is shown to administrators by the {@link BitbucketJobUpdateMonitor}.
+ */
+final class BitbucketJobUpdater {
+
+    /**
+     * How many items are updated at the same time. Defaults to 4.
+     */
+    private static final long UPDATE_THREADS = parsePositiveLongFromSystemProperty("bitbucket.config.update.threads", 4L);
+    private static final Executor DEFAULT_EXECUTOR = createExecutor();
+    private static final Logger LOGGER = Logger.getLogger(BitbucketJobUpdater.class.getName());
+
+    private final Executor executor;
+    private final BitbucketJobIndex jobIndex;
+    private final BitbucketJobUpdateMonitor monitor;
+
+    BitbucketJobUpdater(BitbucketJobIndex jobIndex, BitbucketJobUpdateMonitor monitor) {
+        this(jobIndex, monitor, DEFAULT_EXECUTOR);
+    }
+
+    BitbucketJobUpdater(BitbucketJobIndex jobIndex, BitbucketJobUpdateMonitor monitor, Executor executor) {
+        this.executor = executor;
+        this.jobIndex = jobIndex;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Starts updating the items using the servers whose base URLs changed.
+     *
+     * @param oldBaseUrls the base URLs the servers had, by server ID
+     * @param newBaseUrls the base URLs the servers have now, by server ID
+     * @return completes once every item has been updated
+     */
+    CompletableFuture<Void> update(Map<String, String> oldBaseUrls, Map<String, String> newBaseUrls) {
+        List<Item> items;
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+            items = jobIndex.getItems(newBaseUrls.keySet());
+        }
+        if (items.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        LOGGER.info(format("Updating %d items for the changed base URLs of Bitbucket Server instances %s",
+                items.size(), newBaseUrls.keySet()));
+        monitor.started(items.size());
+        long start = System.currentTimeMillis();
+        return CompletableFuture.allOf(items.stream()
+                .map(item -> CompletableFuture.runAsync(() -> {
+                    boolean success = false;
+                    try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+                        update(item, oldBaseUrls, newBaseUrls);
+                        success = true;
+                        LOGGER.fine(format("Updated %s", item.getFullName()));
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.log(Level.SEVERE, format("Error updating configuration for %s.", item.getFullName()), e);
+                    } finally {
+                        monitor.itemUpdated(success);
+                    }
+                }, executor))
+                .toArray(CompletableFuture[]::new))
+                // Updates run one after another, so the counts of the monitor are those of this update
+                .whenComplete((result, e) -> LOGGER.info(format("Updated %d items in %d ms, %d failed", items.size(),
+                        System.currentTimeMillis() - start, monitor.getFailed())));
+    }
+
+    private static Executor createExecutor() {
+        int threads = (int) Math.max(1L, Math.min(UPDATE_THREADS, 64L));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(Executors.defaultThreadFactory(), "BitbucketJobUpdater"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static BitbucketSCM rebase(BitbucketSCM scm, Map<String, String> oldBaseUrls,
+                                       Map<String, String> newBaseUrls) {
+        return scm.withBaseUrl(oldBaseUrls.get(scm.getServerId()), newBaseUrls.get(scm.getServerId()))
+                .orElseGet(() -> new BitbucketSCM(scm));
+    }
+
+    private static void update(Item item, Map<String, String> oldBaseUrls,
+                               Map<String, String> newBaseUrls) throws IOException {
+        if (item instanceof AbstractProject && ((AbstractProject<?, ?>) item).getScm() instanceof BitbucketSCM) {
+            AbstractProject<?, ?> project = (AbstractProject<?, ?>) item;
+            BitbucketSCM bitbucketSCM = (BitbucketSCM) project.getScm();
+            if (newBaseUrls.containsKey(bitbucketSCM.getServerId())) {
+                project.setScm(rebase(bitbucketSCM, oldBaseUrls, newBaseUrls));
+            }
+        } else if (item instanceof WorkflowJob &&
+                   ((WorkflowJob) item).getDefinition() instanceof CpsScmFlowDefinition &&
+                   ((CpsScmFlowDefinition) ((WorkflowJob) item).getDefinition()).getScm() instanceof BitbucketSCM) {
+            WorkflowJob workflowJob = (WorkflowJob) item;
+            CpsScmFlowDefinition definition = (CpsScmFlowDefinition) workflowJob.getDefinition();
+            BitbucketSCM bitbucketSCM = (BitbucketSCM) definition.getScm();
+            if (newBaseUrls.containsKey(bitbucketSCM.getServerId())) {
+                workflowJob.setDefinition(new CpsScmFlowDefinition(rebase(bitbucketSCM, oldBaseUrls, newBaseUrls),
+                        definition.getScriptPath()));
+            }
+        } else if (item instanceof MultiBranchProject) {
+            MultiBranchProject<?, ?> project = (MultiBranchProject<?, ?>) item;
+            boolean changed = false;
+            List<BranchSource> sources = new ArrayList<>();
+            for (BranchSource branchSource : project.getSources()) {
+                SCMSource source = branchSource.getSource();
+                if (source instanceof BitbucketSCMSource &&
+                    newBaseUrls.containsKey(((BitbucketSCMSource) source).getServerId())) {
+                    BitbucketSCMSource bitbucketSource = (BitbucketSCMSource) source;
+                    String serverId = bitbucketSource.getServerId();
+                    BranchSource updatedSource = new BranchSource(
+                            bitbucketSource.withBaseUrl(oldBaseUrls.get(serverId), newBaseUrls.get(serverId))
+                                    .orElseGet(() -> new BitbucketSCMSource(bitbucketSource)),
+                            branchSource.getStrategy());
+                    updatedSource.setBuildStrategies(branchSource.getBuildStrategies());
+                    sources.add(updatedSource);
+                    changed = true;
+                } else {
+                    sources.add(branchSource);
+                }
+            }
+            if (changed) {
+                project.setSourcesList(sources);
+            }
+        }
+    }
+}
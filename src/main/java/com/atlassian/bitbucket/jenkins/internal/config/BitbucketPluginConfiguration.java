@@ -1,33 +1,26 @@
 package com.atlassian.bitbucket.jenkins.internal.config;
 
-import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
-import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
+import com.google.common.annotations.VisibleForTesting;
 import hudson.Extension;
-import hudson.model.AbstractProject;
-import hudson.security.ACL;
-import hudson.security.ACLContext;
+import hudson.ExtensionList;
+import hudson.init.Initializer;
 import hudson.util.FormValidation;
 import hudson.util.FormValidation.Kind;
-import jenkins.branch.MultiBranchProject;
 import jenkins.model.GlobalConfiguration;
-import jenkins.model.Jenkins;
-import jenkins.model.ParameterizedJobMixIn;
-import jenkins.scm.api.SCMSource;
 import net.sf.json.JSONObject;
-import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
-import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.kohsuke.stapler.StaplerRequest;
 
 import javax.annotation.CheckForNull;
-import java.io.IOException;
 import java.util.*;
-import java.util.logging.Level;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import static hudson.init.InitMilestone.JOB_LOADED;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.empty;
-import static java.util.stream.Collectors.toSet;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 @Extension
@@ -37,10 +30,17 @@ public class BitbucketPluginConfiguration extends GlobalConfiguration {
 
     private static final Logger LOGGER = Logger.getLogger(BitbucketPluginConfiguration.class.getName());
 
+    /**
+     * The job updates that have not finished yet, oldest first, so they can be finished after a restart
+     */
+    private List<PendingJobUpdate> pendingJobUpdates = new ArrayList<>();
     private List<BitbucketServerConfiguration> serverList = new ArrayList<>();
+    private transient volatile CompletableFuture<Void> jobUpdate = CompletableFuture.completedFuture(null);
+    private transient volatile Map<String, BitbucketServerConfiguration> serversById;
 
     public BitbucketPluginConfiguration() {
         getConfigFile().getXStream().alias("atl-bbs-configuration", BitbucketServerConfiguration.class);
+        getConfigFile().getXStream().alias("atl-bbs-job-update", PendingJobUpdate.class);
         load();
     }
 
@@ -69,21 +69,44 @@ public class BitbucketPluginConfiguration extends GlobalConfiguration {
         if (isBlank(serverId)) {
             return empty();
         }
-        return serverList.stream().filter(server -> server.getId().equals(serverId)).findFirst();
+        return Optional.ofNullable(getServersById().get(serverId));
     }
 
     /**
      * Returns a list of all servers that have been configured by the user. This can include incorrectly or illegally
-     * defined servers.
+     * defined servers. The list cannot be changed, use {@link #setServerList(List)} instead.
      *
      * @return a list of all configured servers
      */
     public List<BitbucketServerConfiguration> getServerList() {
-        return serverList;
+        return Collections.unmodifiableList(serverList);
     }
 
     public void setServerList(List<BitbucketServerConfiguration> serverList) {
-        this.serverList = requireNonNull(serverList);
+        this.serverList = new ArrayList<>(requireNonNull(serverList));
+        serversById = null;
+    }
+
+    @Override
+    public synchronized void load() {
+        super.load();
+        if (pendingJobUpdates == null) {
+            pendingJobUpdates = new ArrayList<>();
+        }
+        serversById = null;
+    }
+
+    /**
+     * Finishes the job updates that were still running when Jenkins stopped. They are run again from the start, which
+     * leaves the jobs they had already updated as they are.
+     */
+    @Initializer(after = JOB_LOADED)
+    public synchronized void resumeJobUpdates() {
+        if (!pendingJobUpdates.isEmpty()) {
+            LOGGER.info(String.format("Resuming %d unfinished updates of the jobs using Bitbucket Server instances",
+                    pendingJobUpdates.size()));
+            new ArrayList<>(pendingJobUpdates).forEach(this::scheduleJobUpdate);
+        }
     }
 
     /**
@@ -107,61 +130,67 @@ public class BitbucketPluginConfiguration extends GlobalConfiguration {
         return serverList.stream().anyMatch(server -> server.validate().kind == Kind.ERROR);
     }
 
-    private void updateJobs(Map<String, String> oldBaseUrls) {
-        Set<String> changedServerIds = serverList.stream()
+    /**
+     * @return the update of the jobs after the last change of base URLs, which may still be running. It only starts
+     *         once the updates for the changes before it have finished.
+     */
+    @VisibleForTesting
+    Future<Void> getJobUpdate() {
+        return jobUpdate;
+    }
+
+    private Map<String, BitbucketServerConfiguration> getServersById() {
+        Map<String, BitbucketServerConfiguration> servers = serversById;
+        if (servers == null) {
+            // Should there be more than one server with the same ID, the first one is used like before
+            servers = serverList.stream()
+                    .collect(Collectors.toMap(BitbucketServerConfiguration::getId, Function.identity(),
+                            (first, second) -> first, HashMap::new));
+            serversById = servers;
+        }
+        return servers;
+    }
+
+    private synchronized void jobUpdateFinished(PendingJobUpdate update) {
+        pendingJobUpdates.remove(update);
+        save();
+    }
+
+    private synchronized void scheduleJobUpdate(PendingJobUpdate update) {
+        BitbucketJobUpdater updater = new BitbucketJobUpdater(ExtensionList.lookupSingleton(BitbucketJobIndex.class),
+                ExtensionList.lookupSingleton(BitbucketJobUpdateMonitor.class));
+        // The jobs only have the old base URLs once the previous update has moved them there, so wait for it
+        jobUpdate = jobUpdate
+                .handle((result, e) -> null)
+                .thenCompose(ignored -> updater.update(update.oldBaseUrls, update.newBaseUrls))
+                .whenComplete((result, e) -> jobUpdateFinished(update));
+    }
+
+    private synchronized void updateJobs(Map<String, String> oldBaseUrls) {
+        Map<String, String> newBaseUrls = serverList.stream()
                 .filter(serverConfig -> !serverConfig.getBaseUrl().equalsIgnoreCase(oldBaseUrls.get(serverConfig.getId())))
-                .map(BitbucketServerConfiguration::getId)
-                .collect(toSet());
-        if (!changedServerIds.isEmpty()) {
-            try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
-                Jenkins.get().getAllItems(ParameterizedJobMixIn.ParameterizedJob.class)
-                        .forEach(job -> {
-                            if (job instanceof AbstractProject && ((AbstractProject) job).getScm() instanceof BitbucketSCM) {
-                                AbstractProject<?, ?> project = (AbstractProject<?, ?>) job;
-                                BitbucketSCM bitbucketSCM = (BitbucketSCM) project.getScm();
-                                if (changedServerIds.contains(bitbucketSCM.getServerId())) {
-                                    try {
-                                        // This server has had its base URL updated so we need to recalculate the clone URL
-                                        project.setScm(new BitbucketSCM(bitbucketSCM));
-                                    } catch (IOException e) {
-                                        LOGGER.log(Level.SEVERE, String.format("Error updating configuration for Job %s.",
-                                                project.getName()), e);
-                                    }
-                                }
-                            } else if (job instanceof WorkflowJob &&
-                                       ((WorkflowJob) job).getDefinition() instanceof CpsScmFlowDefinition &&
-                                       ((CpsScmFlowDefinition) ((WorkflowJob) job).getDefinition()).getScm() instanceof BitbucketSCM) {
-                                WorkflowJob workflowJob = (WorkflowJob) job;
-                                CpsScmFlowDefinition definition = (CpsScmFlowDefinition) workflowJob.getDefinition();
-                                BitbucketSCM bitbucketSCM = (BitbucketSCM) definition.getScm();
-                                if (changedServerIds.contains(bitbucketSCM.getServerId())) {
-                                    // This server has had its base URL updated so we need to recalculate the clone URL
-                                    workflowJob.setDefinition(new CpsScmFlowDefinition(new BitbucketSCM(bitbucketSCM), definition.getScriptPath()));
-                                }
-                            }
-                        });
-                Jenkins.get().getAllItems(MultiBranchProject.class)
-                        .forEach(project -> processMultiBranchProject(project, changedServerIds));
-            }
+                .collect(Collectors.toMap(BitbucketServerConfiguration::getId, BitbucketServerConfiguration::getBaseUrl));
+        if (!newBaseUrls.isEmpty()) {
+            Map<String, String> changedOldBaseUrls = new HashMap<>(oldBaseUrls);
+            changedOldBaseUrls.keySet().retainAll(newBaseUrls.keySet());
+            PendingJobUpdate update = new PendingJobUpdate(changedOldBaseUrls, newBaseUrls);
+            pendingJobUpdates.add(update);
+            save();
+            scheduleJobUpdate(update);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void processMultiBranchProject(MultiBranchProject project, Set<String> changedServerIds) {
-        List<SCMSource> sources = (List<SCMSource>) project.getSources().stream().map(scm -> {
-            if (scm instanceof BitbucketSCMSource) {
-                BitbucketSCMSource src = (BitbucketSCMSource) scm;
-                if (changedServerIds.contains(src.getServerId())) {
-                    return new BitbucketSCMSource(src);
-                }
-            }
-            return scm;
-        }).collect(Collectors.toList());
-        try {
-            project.setSourcesList(sources);
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, String.format("Error updating configuration for MultiBranchProject %s.",
-                    project.getName()), e);
+    /**
+     * An update of the jobs after the base URLs of some servers changed, kept in the configuration until it finishes.
+     */
+    private static final class PendingJobUpdate {
+
+        private final Map<String, String> newBaseUrls;
+        private final Map<String, String> oldBaseUrls;
+
+        private PendingJobUpdate(Map<String, String> oldBaseUrls, Map<String, String> newBaseUrls) {
+            this.newBaseUrls = new HashMap<>(newBaseUrls);
+            this.oldBaseUrls = new HashMap<>(oldBaseUrls);
         }
     }
 }
@@ -1,5 +1,6 @@
 package com.atlassian.bitbucket.jenkins.internal.config;
 
+import antlr.ANTLRException;
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.AuthorizationException;
@@ -13,14 +14,20 @@ import com.atlassian.bitbucket.jenkins.internal.model.AtlassianServerCapabilitie
 import com.cloudbees.plugins.credentials.Credentials;
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
 import com.google.inject.Guice;
 import hudson.Extension;
+import hudson.XmlFile;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 import hudson.model.Item;
+import hudson.model.Label;
+import hudson.model.Saveable;
+import hudson.model.labels.LabelAtom;
+import hudson.model.listeners.SaveableListener;
 import hudson.security.ACL;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
@@ -36,12 +43,12 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
 import static com.cloudbees.plugins.credentials.CredentialsMatchers.firstOrNull;
 import static com.cloudbees.plugins.credentials.CredentialsMatchers.withId;
 import static com.cloudbees.plugins.credentials.CredentialsProvider.lookupCredentials;
@@ -55,11 +62,23 @@ public class BitbucketServerConfiguration
         extends AbstractDescribableImpl<BitbucketServerConfiguration> {
 
     private static final Logger log = Logger.getLogger(BitbucketServerConfiguration.class.getName());
+    /**
+     * Changes every time the global credentials are saved, so validation results from before then are not used.
+     */
+    private static final AtomicLong credentialsVersion = new AtomicLong();
+    /**
+     * How long a validation result is used for. Credentials from providers other than the global store can change
+     * without notice, so the result is not kept forever. Defaults to 1 minute in ms.
+     */
+    private static final long VALIDATION_TTL = parsePositiveLongFromSystemProperty(
+            "bitbucket.config.validation.ttl", TimeUnit.MINUTES.toMillis(1));
 
     private final String adminCredentialsId;
     private final String id;
     private String baseUrl;
+    private String mirrorPreferences;
     private String serverName;
+    private transient volatile Validation validation;
 
     @DataBoundConstructor
     public BitbucketServerConfiguration(
@@ -115,6 +134,24 @@ public class BitbucketServerConfiguration
         return baseUrl;
     }
 
+    /**
+     * Moves a URL of a server from its old base URL to its new one. The URLs of a server all start with its base URL,
+     * so when only the base URL changes the other URLs can be worked out without asking the server for them again.
+     *
+     * @param url        a URL of the server, such as an HTTP clone URL
+     * @param oldBaseUrl the base URL the server had
+     * @param newBaseUrl the base URL the server has now
+     * @return the URL under the new base URL, or {@link Optional#empty()} if the URL is not under the old base URL
+     */
+    public static Optional<String> replaceBaseUrl(@Nullable String url, String oldBaseUrl, String newBaseUrl) {
+        String oldPrefix = removeEnd(oldBaseUrl, "/");
+        if (isBlank(url) || isBlank(oldPrefix) || isBlank(newBaseUrl) ||
+            !(url.equals(oldPrefix) || url.startsWith(oldPrefix + "/"))) {
+            return Optional.empty();
+        }
+        return Optional.of(removeEnd(newBaseUrl, "/") + url.substring(oldPrefix.length()));
+    }
+
     /**
      * Sets the URL location of the server instance
      *
@@ -123,12 +160,65 @@ public class BitbucketServerConfiguration
     @DataBoundSetter
     public void setBaseUrl(String baseUrl) {
         this.baseUrl = trimToEmpty(baseUrl);
+        validation = null;
     }
 
     public String getId() {
         return id;
     }
 
+    /**
+     * Returns the mirrors preferred by agents, one {@code label expression=mirror name} entry per line
+     *
+     * @return the mirror preferences
+     */
+    @Nullable
+    public String getMirrorPreferences() {
+        return mirrorPreferences;
+    }
+
+    /**
+     * Sets the mirrors preferred by agents, one {@code label expression=mirror name} entry per line
+     *
+     * @param mirrorPreferences the mirror preferences
+     */
+    @DataBoundSetter
+    public void setMirrorPreferences(String mirrorPreferences) {
+        this.mirrorPreferences = trimToEmpty(mirrorPreferences);
+        validation = null;
+    }
+
+    /**
+     * Returns the names of the mirrors preferred by an agent with the given labels, in the order they are configured.
+     * Entries with an invalid label expression are ignored.
+     *
+     * @param labels the labels of the agent
+     * @return the names of the preferred mirrors
+     */
+    public List<String> getPreferredMirrorNames(Collection<LabelAtom> labels) {
+        if (isBlank(mirrorPreferences)) {
+            return Collections.emptyList();
+        }
+        List<String> mirrorNames = new ArrayList<>();
+        for (String preference : mirrorPreferences.split("\\R")) {
+            if (isBlank(preference)) {
+                continue;
+            }
+            int separator = preference.indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            try {
+                if (Label.parseExpression(preference.substring(0, separator).trim()).matches(labels)) {
+                    mirrorNames.add(preference.substring(separator + 1).trim());
+                }
+            } catch (ANTLRException e) {
+                log.log(FINE, "Ignoring invalid mirror preference: " + preference, e);
+            }
+        }
+        return mirrorNames;
+    }
+
     /**
      * Returns the name assigned to the server in Jenkins
      *
@@ -147,15 +237,28 @@ public class BitbucketServerConfiguration
     @DataBoundSetter
     public void setServerName(String serverName) {
         this.serverName = trimToEmpty(serverName);
+        validation = null;
     }
 
     /**
-     * Checks that the configuration is valid
+     * Checks that the configuration is valid. The result is kept until the configuration or the global credentials
+     * change, or for at most {@code bitbucket.config.validation.ttl} ms, as this is checked every time a job page is
+     * shown.
      *
      * @return true if valid; false otherwise
      */
     public FormValidation validate() {
-        return FormValidation.aggregate(Arrays.asList(checkBaseUrl(baseUrl), checkServerName(serverName), checkAdminCredentialsId(adminCredentialsId)));
+        long version = credentialsVersion.get();
+        long now = System.currentTimeMillis();
+        Validation cached = validation;
+        if (cached != null && cached.credentialsVersion == version && now - cached.validatedAt < VALIDATION_TTL) {
+            return cached.result;
+        }
+        FormValidation result = FormValidation.aggregate(Arrays.asList(checkBaseUrl(baseUrl),
+                checkServerName(serverName), checkAdminCredentialsId(adminCredentialsId),
+                checkMirrorPreferences(mirrorPreferences)));
+        validation = new Validation(result, version, now);
+        return result;
     }
 
     /**
@@ -209,6 +312,37 @@ public class BitbucketServerConfiguration
         return FormValidation.ok();
     }
 
+    /**
+     * Validates that each mirror preference has a valid label expression and a mirror name. Invalid entries are
+     * ignored rather than stopping the configuration from being saved.
+     *
+     * @param mirrorPreferences the mirror preferences to check
+     * @return FormValidation with Kind.ok if valid; Kind.warning otherwise
+     */
+    private static FormValidation checkMirrorPreferences(@Nullable String mirrorPreferences) {
+        if (isBlank(mirrorPreferences)) {
+            return FormValidation.ok();
+        }
+        for (String preference : mirrorPreferences.split("\\R")) {
+            if (isBlank(preference)) {
+                continue;
+            }
+            int separator = preference.indexOf('=');
+            if (separator < 0 || isBlank(preference.substring(separator + 1))) {
+                return FormValidation.warning(
+                        format("'%s' will be ignored. Enter each preference as 'label expression=mirror name'.",
+                                preference.trim()));
+            }
+            try {
+                Label.parseExpression(preference.substring(0, separator).trim());
+            } catch (ANTLRException e) {
+                return FormValidation.warning(format("'%s' will be ignored. The label expression is invalid: %s",
+                        preference.trim(), e.getMessage()));
+            }
+        }
+        return FormValidation.ok();
+    }
+
     /**
      * Validates that the provided serverName is appropriate
      *
@@ -232,6 +366,21 @@ public class BitbucketServerConfiguration
                 withId(trimToEmpty(adminCredentialsId)));
     }
 
+    /**
+     * Drops the validation results of every server configuration when the global credentials are saved, as the admin
+     * credentials of a server may have been added or removed.
+     */
+    @Extension
+    public static class CredentialsListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable saveable, XmlFile file) {
+            if (saveable instanceof SystemCredentialsProvider) {
+                credentialsVersion.incrementAndGet();
+            }
+        }
+    }
+
     @Symbol("BbS")
     @Extension
     public static class DescriptorImpl extends Descriptor<BitbucketServerConfiguration> {
@@ -254,6 +403,13 @@ public class BitbucketServerConfiguration
             return checkBaseUrl(value);
         }
 
+        @SuppressWarnings("MethodMayBeStatic")
+        @POST
+        public FormValidation doCheckMirrorPreferences(@QueryParameter String value) {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            return checkMirrorPreferences(value);
+        }
+
         @SuppressWarnings("MethodMayBeStatic")
         @POST
         public FormValidation doCheckServerName(@QueryParameter String value) {
@@ -363,4 +519,17 @@ public class BitbucketServerConfiguration
             this.jenkinsToBitbucketCredentials = jenkinsToBitbucketCredentials;
         }
     }
+
+    private static final class Validation {
+
+        private final long credentialsVersion;
+        private final FormValidation result;
+        private final long validatedAt;
+
+        private Validation(FormValidation result, long credentialsVersion, long validatedAt) {
+            this.credentialsVersion = credentialsVersion;
+            this.result = result;
+            this.validatedAt = validatedAt;
+        }
+    }
 }
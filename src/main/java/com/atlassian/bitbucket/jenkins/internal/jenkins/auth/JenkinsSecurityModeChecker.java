@@ -2,12 +2,37 @@ package com.atlassian.bitbucket.jenkins.internal.jenkins.auth;
 
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth.SecurityModeChecker;
 import hudson.security.SecurityMode;
+import hudson.security.SecurityRealm;
 import jenkins.model.Jenkins;
 
+/**
+ * Checks the security mode of Jenkins. The mode only depends on the {@link SecurityRealm}, which is replaced whenever
+ * the security configuration changes, so the answer is kept until Jenkins has a different realm.
+ */
 public class JenkinsSecurityModeChecker implements SecurityModeChecker {
 
+    private volatile SecurityModeDecision decision;
+
     @Override
     public boolean isSecurityEnabled() {
-        return !(Jenkins.get().getSecurity() == SecurityMode.UNSECURED);
+        Jenkins jenkins = Jenkins.get();
+        SecurityRealm realm = jenkins.getSecurityRealm();
+        SecurityModeDecision current = decision;
+        if (current == null || current.realm != realm) {
+            current = new SecurityModeDecision(realm, !(jenkins.getSecurity() == SecurityMode.UNSECURED));
+            decision = current;
+        }
+        return current.securityEnabled;
+    }
+
+    private static final class SecurityModeDecision {
+
+        private final SecurityRealm realm;
+        private final boolean securityEnabled;
+
+        private SecurityModeDecision(SecurityRealm realm, boolean securityEnabled) {
+            this.realm = realm;
+            this.securityEnabled = securityEnabled;
+        }
     }
 }
@@ -1,5 +1,6 @@
 package com.atlassian.bitbucket.jenkins.internal.jenkins.oauth.consumer;
 
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth.ReplayProtectingOAuthValidator;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.ServiceProviderConsumerStore;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderTokenStore;
 import com.atlassian.bitbucket.jenkins.internal.jenkins.oauth.servlet.AuthorizeConfirmationConfig.AuthorizeConfirmationConfigDescriptor;
@@ -10,6 +11,7 @@ import hudson.model.Descriptor;
 import hudson.model.Descriptor.FormException;
 import hudson.model.ManagementLink;
 import jenkins.model.Jenkins;
+import net.oauth.OAuthValidator;
 import org.kohsuke.stapler.StaplerRequest;
 
 import javax.annotation.CheckForNull;
@@ -30,11 +32,23 @@ public class OAuthGlobalConfiguration extends ManagementLink implements Describa
     private ServiceProviderTokenStore serviceProviderTokenStore;
     @Inject
     private AuthorizeConfirmationConfigDescriptor authorizeConfirmationConfigDescriptor;
+    @Inject
+    private OAuthValidator oAuthValidator;
 
     public Collection<OAuthConsumerEntry> getConsumers() {
         return stream(consumerStore.getAll().spliterator(), false).map(OAuthConsumerEntry::getOAuthConsumerForUpdate).collect(toList());
     }
 
+    /**
+     * @return the validator of OAuth requests, for the number of nonces it keeps and the requests it refused, or
+     *         {@code null} if requests are validated some other way
+     */
+    @CheckForNull
+    public ReplayProtectingOAuthValidator getReplayProtection() {
+        return oAuthValidator instanceof ReplayProtectingOAuthValidator ?
+                (ReplayProtectingOAuthValidator) oAuthValidator : null;
+    }
+
     /**
      * Creates a new update action with an empty consumer that can be created and added
      *
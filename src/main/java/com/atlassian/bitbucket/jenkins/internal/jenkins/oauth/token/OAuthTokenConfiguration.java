@@ -9,6 +9,7 @@ import hudson.model.User;
 import jenkins.model.Jenkins;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.interceptor.RequirePOST;
 
@@ -18,9 +19,16 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
 
+import static java.util.stream.Collectors.toList;
+
 public class OAuthTokenConfiguration implements Action, Describable<OAuthGlobalConfiguration> {
 
+    /**
+     * The maximum number of tokens shown on one page.
+     */
+    public static final int PAGE_SIZE = 25;
     public static final String REVOKE_BUTTON_NAME = "Revoke";
+    static final String START_PARAMETER = "start";
 
     private Clock clock;
     private ServiceProviderTokenStore tokenStore;
@@ -37,12 +45,16 @@ public class OAuthTokenConfiguration implements Action, Describable<OAuthGlobalC
 
     @RequirePOST
     public HttpResponse doRevoke(StaplerRequest request) {
-        request.getParameterMap()
+        List<String> tokens = request.getParameterMap()
                 .entrySet()
                 .stream()
                 .filter(e -> e.getValue().length == 1 && e.getValue()[0].equals(REVOKE_BUTTON_NAME))
                 .map(Entry::getKey)
-                .forEach(t -> tokenStore.remove(t));
+                .collect(toList());
+        // Revoke the tokens together, so the store is only written once
+        if (!tokens.isEmpty()) {
+            tokenStore.removeAll(tokens);
+        }
         return HttpResponses.redirectToDot();
     }
 
@@ -64,14 +76,36 @@ public class OAuthTokenConfiguration implements Action, Describable<OAuthGlobalC
     }
 
     @SuppressWarnings("unused") // Stapler
-    public List<DisplayAccessToken> getTokens() {
+    public TokenPage getTokenPage() {
+        StaplerRequest request = Stapler.getCurrentRequest();
+        int start = 0;
+        if (request != null) {
+            try {
+                start = Math.max(0, Integer.parseInt(request.getParameter(START_PARAMETER)));
+            } catch (NumberFormatException e) {
+                // Show the first page
+            }
+        }
+        return getTokenPage(start);
+    }
+
+    /**
+     * Returns the tokens on the page starting at the given token. One token more than fits on the page is retrieved,
+     * to find out whether there is a next page without counting all the tokens of the user.
+     */
+    TokenPage getTokenPage(int start) {
         List<DisplayAccessToken> tokenList = new ArrayList<>();
         user.checkPermission(Jenkins.ADMINISTER);
 
-        tokenStore.getAccessTokensForUser(user.getId())
+        tokenStore.getAccessTokensForUser(user.getId(), start, PAGE_SIZE + 1)
                 .forEach(token -> tokenList.add(new DisplayAccessToken(token, clock)));
 
-        return tokenList;
+        boolean hasNextPage = tokenList.size() > PAGE_SIZE;
+        return new TokenPage(hasNextPage ? tokenList.subList(0, PAGE_SIZE) : tokenList, start, hasNextPage);
+    }
+
+    public List<DisplayAccessToken> getTokens() {
+        return getTokenPage().getTokens();
     }
 
     @CheckForNull
@@ -79,4 +113,37 @@ public class OAuthTokenConfiguration implements Action, Describable<OAuthGlobalC
     public String getUrlName() {
         return "tokens";
     }
+
+    public static final class TokenPage {
+
+        private final boolean hasNextPage;
+        private final int start;
+        private final List<DisplayAccessToken> tokens;
+
+        private TokenPage(List<DisplayAccessToken> tokens, int start, boolean hasNextPage) {
+            this.hasNextPage = hasNextPage;
+            this.start = start;
+            this.tokens = tokens;
+        }
+
+        public int getNextStart() {
+            return start + PAGE_SIZE;
+        }
+
+        public int getPreviousStart() {
+            return Math.max(0, start - PAGE_SIZE);
+        }
+
+        public List<DisplayAccessToken> getTokens() {
+            return tokens;
+        }
+
+        public boolean isFirstPage() {
+            return start == 0;
+        }
+
+        public boolean isLastPage() {
+            return !hasNextPage;
+        }
+    }
 }
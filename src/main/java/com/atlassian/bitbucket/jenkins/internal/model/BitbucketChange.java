@@ -0,0 +1,36 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.annotation.CheckForNull;
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A file changed between two commits. Files that were moved or copied also have the path they came from.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketChange {
+
+    private final BitbucketPath path;
+    private final BitbucketPath srcPath;
+
+    @JsonCreator
+    public BitbucketChange(
+            @JsonProperty(value = "path", required = true) BitbucketPath path,
+            @CheckForNull @JsonProperty(value = "srcPath") BitbucketPath srcPath) {
+        this.path = requireNonNull(path, "path");
+        this.srcPath = srcPath;
+    }
+
+    public BitbucketPath getPath() {
+        return path;
+    }
+
+    public Optional<BitbucketPath> getSrcPath() {
+        return Optional.ofNullable(srcPath);
+    }
+}
@@ -0,0 +1,30 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static java.util.Objects.requireNonNull;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketCommit {
+
+    private final long committerTimestamp;
+    private final String id;
+
+    @JsonCreator
+    public BitbucketCommit(
+            @JsonProperty(value = "id", required = true) String id,
+            @JsonProperty(value = "committerTimestamp") long committerTimestamp) {
+        this.id = requireNonNull(id, "id");
+        this.committerTimestamp = committerTimestamp;
+    }
+
+    public long getCommitterTimestamp() {
+        return committerTimestamp;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
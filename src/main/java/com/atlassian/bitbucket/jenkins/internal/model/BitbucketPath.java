@@ -0,0 +1,30 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The path of a file in a repository, relative to the root of the repository and separated with {@code /}.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketPath {
+
+    private final String path;
+
+    @JsonCreator
+    public BitbucketPath(@JsonProperty(value = "toString", required = true) String path) {
+        this.path = requireNonNull(path, "path");
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -0,0 +1,44 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static java.util.Objects.requireNonNull;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketPullRequest {
+
+    private final BitbucketPullRequestRef fromRef;
+    private final long id;
+    private final String title;
+    private final BitbucketPullRequestRef toRef;
+
+    @JsonCreator
+    public BitbucketPullRequest(
+            @JsonProperty(value = "id", required = true) long id,
+            @JsonProperty(value = "title") String title,
+            @JsonProperty(value = "fromRef", required = true) BitbucketPullRequestRef fromRef,
+            @JsonProperty(value = "toRef", required = true) BitbucketPullRequestRef toRef) {
+        this.id = id;
+        this.title = title;
+        this.fromRef = requireNonNull(fromRef, "fromRef");
+        this.toRef = requireNonNull(toRef, "toRef");
+    }
+
+    public BitbucketPullRequestRef getFromRef() {
+        return fromRef;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public BitbucketPullRequestRef getToRef() {
+        return toRef;
+    }
+}
@@ -0,0 +1,54 @@
+package com.atlassian.bitbucket.jenkins.internal.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A branch or tag as listed by the branches and tags resources of a repository, along with the commit it points to.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BitbucketRefDetails extends BitbucketRef {
+
+    private final String hash;
+    private final String latestCommit;
+
+    @JsonCreator
+    public BitbucketRefDetails(
+            @JsonProperty(value = "id", required = true) String id,
+            @JsonProperty(value = "displayId", required = true) String displayId,
+            @JsonProperty(value = "type", required = true) BitbucketRefType type,
+            @JsonProperty(value = "latestCommit", required = true) String latestCommit,
+            @JsonProperty(value = "hash") @Nullable String hash) {
+        super(id, displayId, type);
+        this.hash = hash;
+        this.latestCommit = requireNonNull(latestCommit, "latestCommit");
+    }
+
+    /**
+     * @return the hash of the tag object of an annotated tag, or the commit of any other ref, if Bitbucket listed it
+     */
+    @CheckForNull
+    public String getHash() {
+        return hash;
+    }
+
+    public String getLatestCommit() {
+        return latestCommit;
+    }
+
+    /**
+     * An annotated tag has a tag object of its own, which records when the tag was made. A lightweight tag points
+     * straight at the commit.
+     *
+     * @return {@code true} if this is an annotated tag
+     */
+    public boolean isAnnotatedTag() {
+        return getType() == BitbucketRefType.TAG && hash != null && !hash.equals(latestCommit);
+    }
+}
@@ -0,0 +1,45 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Singleton;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers when the commits that tags point to were made, so indexing a multibranch project only looks up the
+ * commits of the tags it has not seen before. The time is part of the commit, so commits are kept by their hash alone
+ * whichever server or repository they were found in, and an entry never goes stale.
+ */
+@Singleton
+public class BitbucketCommitTimestampCache {
+
+    private static final int MAX_ENTRIES = 10000;
+
+    private final Map<String, Long> timestamps = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * @param commitId the hash of the commit
+     * @return the committer timestamp of the commit, or {@code null} if it has not been looked up
+     */
+    @CheckForNull
+    public Long get(String commitId) {
+        synchronized (timestamps) {
+            return timestamps.get(commitId);
+        }
+    }
+
+    /**
+     * @param commitId  the hash of the commit
+     * @param timestamp the committer timestamp of the commit
+     */
+    public void put(String commitId, long timestamp) {
+        synchronized (timestamps) {
+            timestamps.put(commitId, timestamp);
+        }
+    }
+}
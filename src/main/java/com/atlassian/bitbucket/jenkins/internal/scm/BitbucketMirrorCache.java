@@ -0,0 +1,216 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.String.format;
+import static java.util.Collections.unmodifiableList;
+import static java.util.logging.Level.FINE;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Caches the mirrors of a repository, keyed by Bitbucket Server and repository ID, so that creating an SCM for a
+ * mirror does not have to ask every mirror for its clone URLs. Entries are refreshed in the background and updated
+ * as soon as a mirror reports that it has synchronized the repository. Entries that have not been read for
+ * {@link #CACHE_EXPIRY} ms are dropped on the next refresh.
+ */
+@Singleton
+public class BitbucketMirrorCache {
+
+    /**
+     * How long an entry is kept without being read. Defaults to 1 hour in ms.
+     */
+    static final long CACHE_EXPIRY =
+            parsePositiveLongFromSystemProperty("bitbucket.mirror.cache.expiry", TimeUnit.HOURS.toMillis(1));
+    /**
+     * How often the cached mirrors are re-fetched. Defaults to 5 minutes in ms.
+     */
+    static final long REFRESH_INTERVAL =
+            parsePositiveLongFromSystemProperty("bitbucket.mirror.cache.refresh.interval", TimeUnit.MINUTES.toMillis(5));
+    private static final Logger LOGGER = Logger.getLogger(BitbucketMirrorCache.class.getName());
+
+    private final Clock clock;
+    private final ConcurrentMap<CacheKey, CacheEntry> entries = new ConcurrentHashMap<>();
+    private final ExecutorService executorService;
+
+    @Inject
+    public BitbucketMirrorCache(Clock clock) {
+        this(clock, Computer.threadPoolForRemoting);
+    }
+
+    BitbucketMirrorCache(Clock clock, ExecutorService executorService) {
+        this.clock = clock;
+        this.executorService = executorService;
+    }
+
+    /**
+     * Returns the cached mirrors of the repository, including the ones that were unavailable when last fetched. If
+     * nothing is cached yet the loader is called and its result cached. The loader is kept and used for the
+     * background refresh.
+     *
+     * @param baseUrl      the base URL of the Bitbucket Server instance
+     * @param repositoryId the ID of the upstream repository
+     * @param loader       fetches the mirrors of the repository from Bitbucket
+     * @return the mirrors of the repository
+     */
+    public List<EnrichedBitbucketMirroredRepository> getMirroredRepositories(
+            String baseUrl, int repositoryId, Supplier<List<EnrichedBitbucketMirroredRepository>> loader) {
+        CacheKey key = new CacheKey(baseUrl, repositoryId);
+        // Loading under computeIfAbsent makes concurrent callers for the same repository wait for a single load
+        CacheEntry entry = entries.computeIfAbsent(key, k -> new CacheEntry(loader, loader.get(), clock.millis()));
+        entry.touch(loader, clock.millis());
+        return entry.getMirroredRepositories();
+    }
+
+    /**
+     * Called when a mirror reports that it has synchronized the repository. If the mirror was unavailable when the
+     * repository was last cached, the entry is refreshed straight away so the mirror can be used again.
+     *
+     * @param repository the upstream repository that was synchronized
+     * @param mirrorName the name of the mirror which synchronized
+     */
+    public void mirrorSynchronized(BitbucketRepository repository, String mirrorName) {
+        String selfLink = repository.getSelfLink();
+        entries.forEach((key, entry) -> {
+            if (key.repositoryId == repository.getId() &&
+                (isBlank(selfLink) || selfLink.startsWith(key.baseUrl)) &&
+                !entry.isAvailable(mirrorName)) {
+                executorService.submit(() -> refresh(key, entry));
+            }
+        });
+    }
+
+    /**
+     * Drops the entries which have not been read recently and re-fetches the rest.
+     */
+    public void refresh() {
+        long expiredBefore = clock.millis() - CACHE_EXPIRY;
+        for (Map.Entry<CacheKey, CacheEntry> entry : entries.entrySet()) {
+            if (entry.getValue().getLastAccessed() < expiredBefore) {
+                entries.remove(entry.getKey(), entry.getValue());
+            } else {
+                refresh(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void refresh(CacheKey key, CacheEntry entry) {
+        try {
+            entry.reload();
+        } catch (BitbucketClientException e) {
+            // Keep serving the last known mirrors, the next refresh will try again
+            LOGGER.log(FINE, format("Failed to refresh the mirrors of repository %d on %s", key.repositoryId,
+                    key.baseUrl), e);
+        }
+    }
+
+    @Extension
+    public static class RefreshWork extends AsyncPeriodicWork {
+
+        @Inject
+        private BitbucketMirrorCache mirrorCache;
+
+        public RefreshWork() {
+            super("Bitbucket mirror cache refresh");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return REFRESH_INTERVAL;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            mirrorCache.refresh();
+        }
+    }
+
+    private static final class CacheEntry {
+
+        private volatile long lastAccessed;
+        private volatile Supplier<List<EnrichedBitbucketMirroredRepository>> loader;
+        private volatile List<EnrichedBitbucketMirroredRepository> mirroredRepositories;
+
+        private CacheEntry(Supplier<List<EnrichedBitbucketMirroredRepository>> loader,
+                           List<EnrichedBitbucketMirroredRepository> mirroredRepositories,
+                           long lastAccessed) {
+            this.loader = loader;
+            this.mirroredRepositories = unmodifiableList(mirroredRepositories);
+            this.lastAccessed = lastAccessed;
+        }
+
+        private long getLastAccessed() {
+            return lastAccessed;
+        }
+
+        private List<EnrichedBitbucketMirroredRepository> getMirroredRepositories() {
+            return mirroredRepositories;
+        }
+
+        private boolean isAvailable(String mirrorName) {
+            return mirroredRepositories.stream()
+                    .map(EnrichedBitbucketMirroredRepository::getMirroringDetails)
+                    .anyMatch(mirror -> mirror.isAvailable() && mirror.getMirrorName().equals(mirrorName));
+        }
+
+        private void reload() {
+            mirroredRepositories = unmodifiableList(loader.get());
+        }
+
+        private void touch(Supplier<List<EnrichedBitbucketMirroredRepository>> loader, long now) {
+            this.loader = loader;
+            lastAccessed = now;
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final String baseUrl;
+        private final int repositoryId;
+
+        private CacheKey(String baseUrl, int repositoryId) {
+            this.baseUrl = baseUrl;
+            this.repositoryId = repositoryId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return repositoryId == cacheKey.repositoryId &&
+                   Objects.equals(baseUrl, cacheKey.baseUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseUrl, repositoryId);
+        }
+    }
+}
@@ -10,14 +10,21 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositor
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryDescriptor;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.ListBoxModel;
 import hudson.util.ListBoxModel.Option;
+import hudson.util.NamingThreadFactory;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
 import static java.lang.String.format;
 import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
@@ -26,30 +33,99 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
 
 public class BitbucketMirrorHandler {
 
+    private static final String AUTO_MIRROR_OPTION = "Nearest available mirror";
     private static final String DEFAULT_UPSTREAM_SERVER = "Primary Server";
     private static final Option DEFAULT_OPTION_SELECTED = new Option(DEFAULT_UPSTREAM_SERVER, "", true);
     private static final Logger LOGGER = Logger.getLogger(BitbucketMirrorHandler.class.getName());
+    private static final int MAX_THREADS = 8;
+    /**
+     * How long to wait for the mirrors to respond with repository details. Mirrors which have not responded in time
+     * are left out of the result. Defaults to 10 seconds in ms.
+     */
+    private static final long MIRROR_FETCH_TIMEOUT =
+            parsePositiveLongFromSystemProperty("bitbucket.mirror.fetch.timeout", 10000);
+    private static final ExecutorService MIRROR_FETCH_EXECUTOR = createExecutor();
 
     private final BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
     private final JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
     private final BitbucketRepoFetcher bitbucketRepoFetcher;
+    private final ExecutorService executorService;
+    private final long fetchTimeoutMillis;
+    private final BitbucketMirrorCache mirrorCache;
+    private final BitbucketMirrorSelector mirrorSelector;
 
     public BitbucketMirrorHandler(
             BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
             JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
             BitbucketRepoFetcher bitbucketRepoFetcher) {
+        this(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials, bitbucketRepoFetcher, null,
+                new BitbucketMirrorSelector());
+    }
+
+    /**
+     * Creates a handler which reads the mirrors of a repository from the given cache, only querying the mirrors
+     * when the repository is not cached yet, and records the latency of the mirrors with the given selector.
+     */
+    public BitbucketMirrorHandler(
+            BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
+            JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
+            BitbucketRepoFetcher bitbucketRepoFetcher,
+            @Nullable BitbucketMirrorCache mirrorCache,
+            BitbucketMirrorSelector mirrorSelector) {
+        this(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials, bitbucketRepoFetcher, mirrorCache,
+                mirrorSelector, MIRROR_FETCH_EXECUTOR, MIRROR_FETCH_TIMEOUT);
+    }
+
+    BitbucketMirrorHandler(
+            BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
+            JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
+            BitbucketRepoFetcher bitbucketRepoFetcher,
+            @Nullable BitbucketMirrorCache mirrorCache,
+            BitbucketMirrorSelector mirrorSelector,
+            ExecutorService executorService,
+            long fetchTimeoutMillis) {
         this.bitbucketClientFactoryProvider = bitbucketClientFactoryProvider;
         this.jenkinsToBitbucketCredentials = jenkinsToBitbucketCredentials;
         this.bitbucketRepoFetcher = bitbucketRepoFetcher;
+        this.mirrorCache = mirrorCache;
+        this.mirrorSelector = requireNonNull(mirrorSelector, "mirrorSelector");
+        this.executorService = executorService;
+        this.fetchTimeoutMillis = fetchTimeoutMillis;
     }
 
+    /**
+     * Fetches the repository on the mirror named by the request.
+     *
+     * @param mirrorFetchRequest the repository and the name of the mirror to fetch it from
+     * @return the repository on the mirror
+     * @throws MirrorUnavailableException if the mirror is one of the mirrors of the repository, but is not available
+     * @throws MirrorFetchException if the mirror is not one of the mirrors of the repository
+     */
     public EnrichedBitbucketMirroredRepository fetchRepository(MirrorFetchRequest mirrorFetchRequest) {
-        return this.fetchRepositories(mirrorFetchRequest)
+        String mirrorName = mirrorFetchRequest.getExistingMirrorSelection();
+        EnrichedBitbucketMirroredRepository mirroredRepo = fetchAllRepositories(mirrorFetchRequest)
                 .stream()
-                .filter(r -> r.getMirroringDetails().getMirrorName().equals(mirrorFetchRequest.getExistingMirrorSelection()))
+                .filter(r -> r.getMirroringDetails().getMirrorName().equals(mirrorName))
                 .findFirst()
-                .orElseThrow(() -> new MirrorFetchException(
-                        "Unable to find the mirror" + mirrorFetchRequest.getExistingMirrorSelection()));
+                .orElseThrow(() -> new MirrorFetchException("Unable to find the mirror " + mirrorName));
+        if (!mirroredRepo.getMirroringDetails().isAvailable()) {
+            throw new MirrorUnavailableException("The mirror " + mirrorName + " is not available");
+        }
+        return mirroredRepo;
+    }
+
+    /**
+     * Fetches the mirror to clone from when the nearest mirror is requested. See
+     * {@link BitbucketMirrorSelector#select(String, List, List)} for how the mirror is chosen.
+     *
+     * @param mirrorFetchRequest   the repository to fetch the mirrors of
+     * @param preferredMirrorNames the names of the mirrors to prefer, in order of preference
+     * @return the chosen mirror, or empty if the repository should be cloned from the primary server
+     */
+    public Optional<EnrichedBitbucketMirroredRepository> fetchNearestRepository(MirrorFetchRequest mirrorFetchRequest,
+                                                                                List<String> preferredMirrorNames) {
+        return mirrorSelector.select(mirrorFetchRequest.getBitbucketServerBaseUrl(),
+                fetchRepositoriesQuietly(mirrorFetchRequest), preferredMirrorNames);
     }
 
     public ListBoxModel fetchAsListBox(MirrorFetchRequest mirrorFetchRequest) {
@@ -73,11 +149,13 @@ public class BitbucketMirrorHandler {
         boolean isPresent = mirrors
                 .stream()
                 .anyMatch(option -> option.selected);
-        if (isPresent) {
+        boolean isAuto = BitbucketMirrorSelector.isAutoMirrorName(existingSelection);
+        if (isPresent || isAuto) {
             options.add(new Option(DEFAULT_UPSTREAM_SERVER, ""));
         } else {
             options.add(DEFAULT_OPTION_SELECTED);
         }
+        options.add(new Option(AUTO_MIRROR_OPTION, BitbucketMirrorSelector.AUTO_MIRROR_NAME, isAuto));
         options.addAll(mirrors);
         return options;
     }
@@ -89,6 +167,15 @@ public class BitbucketMirrorHandler {
     }
 
     private List<EnrichedBitbucketMirroredRepository> fetchRepositories(MirrorFetchRequest mirrorFetchRequest) {
+        return fetchAllRepositories(mirrorFetchRequest).stream()
+                .filter(mirroredRepo -> mirroredRepo.getMirroringDetails().isAvailable())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the repository on every mirror, including the mirrors it is not available on
+     */
+    private List<EnrichedBitbucketMirroredRepository> fetchAllRepositories(MirrorFetchRequest mirrorFetchRequest) {
         String bitbucketBaseUrl =
                 requireNonNull(mirrorFetchRequest.getBitbucketServerBaseUrl(), "Bitbucket base Url not found");
 
@@ -97,12 +184,30 @@ public class BitbucketMirrorHandler {
         BitbucketClientFactory client = bitbucketClientFactoryProvider.getClient(bitbucketBaseUrl, jobOrGlobalConf);
         BitbucketRepository repository =
                 bitbucketRepoFetcher.fetchRepo(client, mirrorFetchRequest.getProjectNameOrKey(), mirrorFetchRequest.getRepoNameOrSlug());
+        // The repository is always looked up with the requester's credentials so the cache cannot be used to
+        // discover the mirrors of a repository the requester has no access to
+        return mirrorCache == null ?
+                fetchMirroredRepos(bitbucketBaseUrl, client, repository) :
+                mirrorCache.getMirroredRepositories(bitbucketBaseUrl, repository.getId(),
+                        () -> fetchMirroredRepos(bitbucketBaseUrl, client, repository));
+    }
+
+    private static ExecutorService createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "BitbucketMirrorHandler"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private List<EnrichedBitbucketMirroredRepository> fetchMirroredRepos(String bitbucketBaseUrl,
+                                                                         BitbucketClientFactory client,
+                                                                         BitbucketRepository repository) {
         BitbucketMirrorClient mirrorClient = client.getMirroredRepositoriesClient(repository.getId());
-        return mirrorClient.getMirroredRepositoryDescriptors()
-                .getValues()
+        List<BitbucketMirroredRepositoryDescriptor> descriptors =
+                mirrorClient.getMirroredRepositoryDescriptors().collect(Collectors.toList());
+        return fetchFromMirrors(bitbucketBaseUrl, mirrorClient, descriptors, repository.getId())
                 .stream()
-                .map(repoDescriptor -> fetchMirroredRepo(mirrorClient, repoDescriptor, repository.getId()))
-                .filter(BitbucketMirroredRepository::isAvailable)
                 .map(mirrorDetails -> new EnrichedBitbucketMirroredRepository(repository, mirrorDetails))
                 .collect(Collectors.toList());
     }
@@ -126,16 +231,74 @@ public class BitbucketMirrorHandler {
         }
     }
 
-    private BitbucketMirroredRepository fetchMirroredRepo(BitbucketMirrorClient client,
+    /**
+     * Each mirror is usually a separate server, so the details are fetched concurrently. Mirrors that fail or do not
+     * respond within the timeout are reported as unavailable so that one unreachable mirror does not hold up the others.
+     * How long each mirror takes to respond is recorded for choosing the nearest mirror.
+     */
+    private List<BitbucketMirroredRepository> fetchFromMirrors(String bitbucketBaseUrl,
+                                                               BitbucketMirrorClient client,
+                                                               List<BitbucketMirroredRepositoryDescriptor> repoDescriptors,
+                                                               int repositoryId) {
+        if (repoDescriptors.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Callable<BitbucketMirroredRepository>> fetches = repoDescriptors.stream()
+                .map(repoDescriptor -> (Callable<BitbucketMirroredRepository>)
+                        () -> fetchMirroredRepo(bitbucketBaseUrl, client, repoDescriptor, repositoryId))
+                .collect(Collectors.toList());
+        List<Future<BitbucketMirroredRepository>> futures;
+        try {
+            futures = executorService.invokeAll(fetches, fetchTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MirrorFetchException("Interrupted while retrieving repository information from mirrors");
+        }
+
+        List<BitbucketMirroredRepository> mirroredRepos = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            BitbucketMirroredRepositoryDescriptor repoDescriptor = repoDescriptors.get(i);
+            try {
+                mirroredRepos.add(futures.get(i).get());
+            } catch (CancellationException e) {
+                LOGGER.log(FINE, "Timed out retrieving repository information from mirror: " +
+                                 repoDescriptor.getMirrorServer().getName());
+                mirrorSelector.recordFailure(bitbucketBaseUrl, repoDescriptor.getMirrorServer().getName());
+                mirroredRepos.add(unavailableMirroredRepo(repoDescriptor, repositoryId));
+            } catch (ExecutionException e) {
+                LOGGER.log(FINE, "Failed to retrieve repository information from mirror: " +
+                                 repoDescriptor.getMirrorServer().getName(), e.getCause());
+                mirrorSelector.recordFailure(bitbucketBaseUrl, repoDescriptor.getMirrorServer().getName());
+                mirroredRepos.add(unavailableMirroredRepo(repoDescriptor, repositoryId));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MirrorFetchException("Interrupted while retrieving repository information from mirrors");
+            }
+        }
+        return mirroredRepos;
+    }
+
+    private BitbucketMirroredRepository fetchMirroredRepo(String bitbucketBaseUrl,
+                                                          BitbucketMirrorClient client,
                                                           BitbucketMirroredRepositoryDescriptor repoDescriptor,
                                                           int repositoryId) {
+        String mirrorName = repoDescriptor.getMirrorServer().getName();
+        long start = System.nanoTime();
         try {
-            return client.getRepositoryDetails(repoDescriptor);
+            BitbucketMirroredRepository mirroredRepo = client.getRepositoryDetails(repoDescriptor);
+            mirrorSelector.recordLatency(bitbucketBaseUrl, mirrorName,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return mirroredRepo;
         } catch (BitbucketClientException e) {
-            LOGGER.log(FINE, "Failed to retrieve repository information from mirror: " +
-                             repoDescriptor.getMirrorServer().getName(), e);
-            return new BitbucketMirroredRepository(false, emptyMap(),
-                    repoDescriptor.getMirrorServer().getName(), repositoryId, BitbucketMirroredRepositoryStatus.NOT_MIRRORED);
+            LOGGER.log(FINE, "Failed to retrieve repository information from mirror: " + mirrorName, e);
+            mirrorSelector.recordFailure(bitbucketBaseUrl, mirrorName);
+            return unavailableMirroredRepo(repoDescriptor, repositoryId);
         }
     }
+
+    private BitbucketMirroredRepository unavailableMirroredRepo(BitbucketMirroredRepositoryDescriptor repoDescriptor,
+                                                                int repositoryId) {
+        return new BitbucketMirroredRepository(false, emptyMap(),
+                repoDescriptor.getMirrorServer().getName(), repositoryId, BitbucketMirroredRepositoryStatus.NOT_MIRRORED);
+    }
 }
@@ -0,0 +1,189 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import javax.inject.Singleton;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.AVAILABLE;
+
+/**
+ * Picks the mirror to clone from when a job is configured to use the nearest mirror. The latency of each mirror is
+ * measured every time its repository details are fetched, which also happens on every background refresh of the
+ * {@link BitbucketMirrorCache}, and the mirror with the lowest latency is chosen. Mirrors which have not been measured
+ * yet, for instance because their details came from the cache, can still be chosen after the measured ones. Mirrors
+ * which failed to respond are not chosen until they respond again.
+ * <p>
+ * Git only recognises the previous builds of a job when they cloned from the same URL, so every switch to another
+ * mirror makes the next poll find changes. The mirror chosen for a repository is therefore kept until it is no longer
+ * healthy or another mirror is clearly faster.
+ */
+@Singleton
+public class BitbucketMirrorSelector {
+
+    /**
+     * The mirror name used to ask for the nearest available mirror instead of a specific one.
+     */
+    public static final String AUTO_MIRROR_NAME = "@auto";
+    /**
+     * The weight of the latest measurement in the moving average of a mirror's latency.
+     */
+    private static final double SMOOTHING_FACTOR = 0.3;
+    /**
+     * How much lower the latency of another mirror has to be before it replaces the mirror chosen before.
+     */
+    private static final double SWITCH_FACTOR = 0.8;
+
+    private final Set<MirrorKey> failures = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<MirrorKey, Double> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<RepositoryKey, String> selections = new ConcurrentHashMap<>();
+
+    public static boolean isAutoMirrorName(String mirrorName) {
+        return AUTO_MIRROR_NAME.equals(mirrorName);
+    }
+
+    /**
+     * Records how long a mirror took to respond.
+     *
+     * @param baseUrl       the base URL of the upstream Bitbucket Server instance
+     * @param mirrorName    the name of the mirror
+     * @param latencyMillis how long the mirror took to respond, in ms
+     */
+    public void recordLatency(String baseUrl, String mirrorName, long latencyMillis) {
+        MirrorKey key = new MirrorKey(baseUrl, mirrorName);
+        latencies.merge(key, (double) latencyMillis,
+                (previous, latest) -> previous + SMOOTHING_FACTOR * (latest - previous));
+        failures.remove(key);
+    }
+
+    /**
+     * Records that a mirror failed to respond, so it is not chosen until it responds again.
+     *
+     * @param baseUrl    the base URL of the upstream Bitbucket Server instance
+     * @param mirrorName the name of the mirror
+     */
+    public void recordFailure(String baseUrl, String mirrorName) {
+        MirrorKey key = new MirrorKey(baseUrl, mirrorName);
+        failures.add(key);
+        latencies.remove(key);
+    }
+
+    /**
+     * Chooses a mirror to clone from. The first of the preferred mirrors which is healthy is chosen, otherwise the
+     * mirror chosen for the repository before is kept while it is healthy and no other mirror is clearly faster, and
+     * failing that the healthy mirror with the lowest latency is chosen.
+     *
+     * @param baseUrl              the base URL of the upstream Bitbucket Server instance
+     * @param mirroredRepositories the mirrors of the repository
+     * @param preferredMirrorNames the names of the mirrors to prefer, in order of preference
+     * @return the chosen mirror, or empty if no mirror is healthy and the primary server should be used
+     */
+    public Optional<EnrichedBitbucketMirroredRepository> select(
+            String baseUrl,
+            List<EnrichedBitbucketMirroredRepository> mirroredRepositories,
+            List<String> preferredMirrorNames) {
+        for (String preferredMirrorName : preferredMirrorNames) {
+            Optional<EnrichedBitbucketMirroredRepository> preferred = mirroredRepositories.stream()
+                    .filter(mirroredRepo -> preferredMirrorName.equals(getMirrorName(mirroredRepo)))
+                    .filter(mirroredRepo -> isHealthy(baseUrl, mirroredRepo))
+                    .findFirst();
+            if (preferred.isPresent()) {
+                return preferred;
+            }
+        }
+        Optional<EnrichedBitbucketMirroredRepository> fastest = mirroredRepositories.stream()
+                .filter(mirroredRepo -> isHealthy(baseUrl, mirroredRepo))
+                .min(Comparator.comparingDouble(mirroredRepo -> getLatency(baseUrl, mirroredRepo)));
+        if (!fastest.isPresent()) {
+            return fastest;
+        }
+        RepositoryKey repositoryKey = new RepositoryKey(baseUrl, fastest.get().getRepository().getId());
+        String previousMirrorName = selections.get(repositoryKey);
+        Optional<EnrichedBitbucketMirroredRepository> previous = mirroredRepositories.stream()
+                .filter(mirroredRepo -> getMirrorName(mirroredRepo).equals(previousMirrorName))
+                .filter(mirroredRepo -> isHealthy(baseUrl, mirroredRepo))
+                .findFirst();
+        if (previous.isPresent() &&
+            getLatency(baseUrl, fastest.get()) >= SWITCH_FACTOR * getLatency(baseUrl, previous.get())) {
+            return previous;
+        }
+        selections.put(repositoryKey, getMirrorName(fastest.get()));
+        return fastest;
+    }
+
+    private static String getMirrorName(EnrichedBitbucketMirroredRepository mirroredRepository) {
+        return mirroredRepository.getMirroringDetails().getMirrorName();
+    }
+
+    private double getLatency(String baseUrl, EnrichedBitbucketMirroredRepository mirroredRepository) {
+        return latencies.getOrDefault(new MirrorKey(baseUrl, getMirrorName(mirroredRepository)), Double.MAX_VALUE);
+    }
+
+    private boolean isHealthy(String baseUrl, EnrichedBitbucketMirroredRepository mirroredRepository) {
+        return mirroredRepository.getMirroringDetails().isAvailable() &&
+               mirroredRepository.getMirroringDetails().getStatus() == AVAILABLE &&
+               !failures.contains(new MirrorKey(baseUrl, getMirrorName(mirroredRepository)));
+    }
+
+    private static final class MirrorKey {
+
+        private final String baseUrl;
+        private final String mirrorName;
+
+        private MirrorKey(String baseUrl, String mirrorName) {
+            this.baseUrl = baseUrl;
+            this.mirrorName = mirrorName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            MirrorKey mirrorKey = (MirrorKey) o;
+            return Objects.equals(baseUrl, mirrorKey.baseUrl) &&
+                   Objects.equals(mirrorName, mirrorKey.mirrorName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseUrl, mirrorName);
+        }
+    }
+
+    private static final class RepositoryKey {
+
+        private final String baseUrl;
+        private final int repositoryId;
+
+        private RepositoryKey(String baseUrl, int repositoryId) {
+            this.baseUrl = baseUrl;
+            this.repositoryId = repositoryId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            RepositoryKey repositoryKey = (RepositoryKey) o;
+            return repositoryId == repositoryKey.repositoryId &&
+                   Objects.equals(baseUrl, repositoryKey.baseUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseUrl, repositoryId);
+        }
+    }
+}
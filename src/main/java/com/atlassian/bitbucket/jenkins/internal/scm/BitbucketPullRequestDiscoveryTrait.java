@@ -0,0 +1,45 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import hudson.Extension;
+import jenkins.scm.api.SCMHeadCategory;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.impl.ChangeRequestSCMHeadCategory;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Discovers the open pull requests of the repository, so each gets a job of its own built from its source branch.
+ * Pull requests are listed through Bitbucket, and rebuilt when a pull request webhook says they were opened or their
+ * source branch was updated.
+ */
+public class BitbucketPullRequestDiscoveryTrait extends SCMSourceTrait {
+
+    @DataBoundConstructor
+    public BitbucketPullRequestDiscoveryTrait() {
+    }
+
+    @Override
+    protected boolean includeCategory(@Nonnull SCMHeadCategory category) {
+        return category instanceof ChangeRequestSCMHeadCategory;
+    }
+
+    @Symbol("bitbucketPullRequestDiscovery")
+    @Extension
+    public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return "Discover pull requests";
+        }
+
+        @Override
+        public boolean isApplicableToSCMSource(@Nonnull Class<? extends SCMSource> sourceClass) {
+            return BitbucketSCMSource.class.isAssignableFrom(sourceClass);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadOrigin;
+import jenkins.scm.api.mixin.ChangeRequestCheckoutStrategy;
+import jenkins.scm.api.mixin.ChangeRequestSCMHead2;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An open pull request of a Bitbucket repository. The pull request is built from the head of its source branch, which
+ * Bitbucket keeps in the target repository as {@code refs/pull-requests/<id>/from}, so pull requests from forks are
+ * fetched from the same remote as the branches.
+ */
+public class BitbucketPullRequestSCMHead extends SCMHead implements ChangeRequestSCMHead2 {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+    private final SCMHeadOrigin origin;
+    private final String originName;
+    private final SCMHead target;
+
+    public BitbucketPullRequestSCMHead(BitbucketPullRequest pullRequest) {
+        super("PR-" + pullRequest.getId());
+        id = String.valueOf(pullRequest.getId());
+        originName = pullRequest.getFromRef().getDisplayId();
+        target = new GitBranchSCMHead(pullRequest.getToRef().getDisplayId());
+        BitbucketRepository fromRepository = pullRequest.getFromRef().getRepository();
+        BitbucketRepository toRepository = pullRequest.getToRef().getRepository();
+        String fromRepositoryKey = BitbucketSCMRepository.toRepositoryKey(fromRepository.getProject().getKey(),
+                fromRepository.getSlug());
+        origin = fromRepositoryKey.equals(BitbucketSCMRepository.toRepositoryKey(
+                toRepository.getProject().getKey(), toRepository.getSlug())) ?
+                SCMHeadOrigin.DEFAULT : new SCMHeadOrigin.Fork(fromRepositoryKey);
+    }
+
+    @Nonnull
+    @Override
+    public ChangeRequestCheckoutStrategy getCheckoutStrategy() {
+        return ChangeRequestCheckoutStrategy.HEAD;
+    }
+
+    @Nonnull
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Nonnull
+    @Override
+    public SCMHeadOrigin getOrigin() {
+        return origin;
+    }
+
+    @Nonnull
+    @Override
+    public String getOriginName() {
+        return originName;
+    }
+
+    /**
+     * @return the ref Bitbucket keeps the head of the source branch of the pull request in
+     */
+    public String getRef() {
+        return "refs/pull-requests/" + id + "/from";
+    }
+
+    @Nonnull
+    @Override
+    public SCMHead getTarget() {
+        return target;
+    }
+}
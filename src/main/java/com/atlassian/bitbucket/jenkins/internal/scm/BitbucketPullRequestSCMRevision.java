@@ -0,0 +1,44 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.plugins.git.GitBranchSCMRevision;
+import jenkins.scm.api.mixin.ChangeRequestSCMRevision;
+
+/**
+ * The revision of an open pull request: the commit its source branch points to, along with the commit of the target
+ * branch at the time.
+ */
+public class BitbucketPullRequestSCMRevision extends ChangeRequestSCMRevision<BitbucketPullRequestSCMHead> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String commit;
+
+    public BitbucketPullRequestSCMRevision(BitbucketPullRequestSCMHead head, BitbucketPullRequest pullRequest) {
+        super(head, new GitBranchSCMRevision((GitBranchSCMHead) head.getTarget(),
+                pullRequest.getToRef().getLatestCommit()));
+        commit = pullRequest.getFromRef().getLatestCommit();
+    }
+
+    @Override
+    public boolean equivalent(ChangeRequestSCMRevision<?> revision) {
+        return revision instanceof BitbucketPullRequestSCMRevision &&
+               getHead().equals(revision.getHead()) &&
+               commit.equals(((BitbucketPullRequestSCMRevision) revision).commit);
+    }
+
+    public String getCommit() {
+        return commit;
+    }
+
+    @Override
+    public String toString() {
+        return commit;
+    }
+
+    @Override
+    protected int _hashCode() {
+        return commit.hashCode();
+    }
+}
@@ -9,12 +9,15 @@ import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCr
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Guice;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.model.Computer;
 import hudson.model.Item;
 import hudson.model.Job;
+import hudson.model.Node;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.plugins.git.BranchSpec;
@@ -105,7 +108,12 @@ public class BitbucketSCM extends SCM {
             return;
         }
 
-        if (!isBlank(mirrorName)) {
+        if (BitbucketMirrorSelector.isAutoMirrorName(mirrorName)) {
+            // The mirror is chosen every time the repository is polled or checked out, the primary server is kept
+            // for when no mirror is available
+            BitbucketRepository repository = scmHelper.getRepository(projectName, repositoryName);
+            setRepositoryDetails(credentialsId, sshCredentialsId, serverId, mirrorName, repository);
+        } else if (!isBlank(mirrorName)) {
             try {
                 EnrichedBitbucketMirroredRepository mirroredRepository =
                         descriptor.createMirrorHandler(scmHelper)
@@ -117,7 +125,8 @@ public class BitbucketSCM extends SCM {
                                                 projectName,
                                                 repositoryName,
                                                 mirrorName));
-                setRepositoryDetails(credentialsId, sshCredentialsId, serverId, mirroredRepository);
+                setRepositoryDetails(credentialsId, sshCredentialsId, serverId,
+                        mirroredRepository.getMirroringDetails().getMirrorName(), mirroredRepository);
                 return;
             } catch (MirrorFetchException ex) {
                 setEmptyRepsitory(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName);
@@ -137,8 +146,25 @@ public class BitbucketSCM extends SCM {
             @CheckForNull String gitTool,
             @CheckForNull String serverId,
             BitbucketRepository repository) {
+        this(id, branches, credentialsId, sshCredentialsId, extensions, gitTool, serverId, repository, "");
+    }
+
+    /**
+     * Creates an SCM which clones the given repository, remembering the mirror it was configured with so the
+     * nearest mirror can be chosen every time the repository is polled or checked out.
+     */
+    public BitbucketSCM(
+            @CheckForNull String id,
+            @CheckForNull List<BranchSpec> branches,
+            @CheckForNull String credentialsId,
+            @CheckForNull String sshCredentialsId,
+            @CheckForNull List<GitSCMExtension> extensions,
+            @CheckForNull String gitTool,
+            @CheckForNull String serverId,
+            BitbucketRepository repository,
+            String mirrorName) {
         this(id, branches, extensions, gitTool, serverId, repository.getName());
-        setRepositoryDetails(credentialsId, sshCredentialsId, serverId, "", repository);
+        setRepositoryDetails(credentialsId, sshCredentialsId, serverId, mirrorName, repository);
     }
 
     /**
@@ -203,7 +229,8 @@ public class BitbucketSCM extends SCM {
             @CheckForNull File changelogFile,
             @CheckForNull SCMRevisionState baseline)
             throws IOException, InterruptedException {
-        gitSCM.checkout(build, launcher, workspace, listener, changelogFile, baseline);
+        selectGitSCM(getNode(workspace), listener)
+                .checkout(build, launcher, workspace, listener, changelogFile, baseline);
     }
 
     @Override
@@ -214,7 +241,8 @@ public class BitbucketSCM extends SCM {
             TaskListener listener,
             SCMRevisionState baseline)
             throws IOException, InterruptedException {
-        return gitSCM.compareRemoteRevisionWith(project, launcher, workspace, listener, baseline);
+        return selectGitSCM(getNode(workspace), listener)
+                .compareRemoteRevisionWith(project, launcher, workspace, listener, baseline);
     }
 
     @Override
@@ -302,6 +330,38 @@ public class BitbucketSCM extends SCM {
         return gitSCM.getUserRemoteConfigs();
     }
 
+    /**
+     * Creates a copy of this SCM for when the base URL of its server has changed. The clone and repository URLs are
+     * moved to the new base URL rather than looked up in Bitbucket again. That only works when cloning the repository
+     * itself over HTTP, as mirrors and SSH have URLs of their own.
+     *
+     * @param oldBaseUrl the base URL the server had
+     * @param newBaseUrl the base URL the server has now
+     * @return the copy, or {@link Optional#empty()} if the URLs have to be looked up in Bitbucket
+     */
+    public Optional<BitbucketSCM> withBaseUrl(String oldBaseUrl, String newBaseUrl) {
+        if (gitSCM == null || repositories.isEmpty() || gitSCM.getUserRemoteConfigs().size() != 1 ||
+            !(gitSCM.getBrowser() instanceof Stash)) {
+            return Optional.empty();
+        }
+        BitbucketSCMRepository repository = getBitbucketSCMRepository();
+        if (!isBlank(repository.getMirrorName()) || !isBlank(repository.getSshCredentialsId())) {
+            return Optional.empty();
+        }
+        Optional<String> cloneUrl = BitbucketServerConfiguration.replaceBaseUrl(
+                gitSCM.getUserRemoteConfigs().get(0).getUrl(), oldBaseUrl, newBaseUrl);
+        Optional<String> repositoryUrl = BitbucketServerConfiguration.replaceBaseUrl(
+                ((Stash) gitSCM.getBrowser()).getRepoUrl(), oldBaseUrl, newBaseUrl);
+        if (!cloneUrl.isPresent() || !repositoryUrl.isPresent()) {
+            return Optional.empty();
+        }
+        BitbucketSCM scm =
+                new BitbucketSCM(id, getBranches(), getExtensions(), gitTool, getServerId(), getRepositoryName());
+        scm.repositories.add(repository);
+        scm.gitSCM = scm.createGitSCMForRepositoryUrl(cloneUrl.get(), repositoryUrl.get(), repository);
+        return Optional.of(scm);
+    }
+
     public void setWebhookRegistered(boolean isWebhookRegistered) {
         this.isWebhookRegistered = isWebhookRegistered;
     }
@@ -322,19 +382,82 @@ public class BitbucketSCM extends SCM {
                 .orElse("");
     }
 
-    private void initialize(String cloneUrl, String selfLink, BitbucketSCMRepository bitbucketSCMRepository) {
-        repositories.add(bitbucketSCMRepository);
+    private GitSCM createGitSCM(String cloneUrl, String selfLink, BitbucketSCMRepository bitbucketSCMRepository) {
+        // self-link include /browse which needs to be trimmed
+        String repositoryUrl = selfLink.substring(0, max(selfLink.indexOf("/browse"), 0));
+        return createGitSCMForRepositoryUrl(cloneUrl, repositoryUrl, bitbucketSCMRepository);
+    }
+
+    private GitSCM createGitSCMForRepositoryUrl(String cloneUrl, String repositoryUrl,
+                                                BitbucketSCMRepository bitbucketSCMRepository) {
         String credentialsId = isBlank(bitbucketSCMRepository.getSshCredentialsId()) ?
                 bitbucketSCMRepository.getCredentialsId() : bitbucketSCMRepository.getSshCredentialsId();
 
         UserRemoteConfig remoteConfig =
                 new UserRemoteConfig(cloneUrl, bitbucketSCMRepository.getRepositorySlug(), null, credentialsId);
-        // self-link include /browse which needs to be trimmed
-        String repositoryUrl = selfLink.substring(0, max(selfLink.indexOf("/browse"), 0));
-        gitSCM = new GitSCM(singletonList(remoteConfig), branches, false, emptyList(), new Stash(repositoryUrl),
+        return new GitSCM(singletonList(remoteConfig), branches, false, emptyList(), new Stash(repositoryUrl),
                 gitTool, extensions);
     }
 
+    @CheckForNull
+    private static Node getNode(@CheckForNull FilePath workspace) {
+        Computer computer = workspace == null ? null : workspace.toComputer();
+        return computer == null ? null : computer.getNode();
+    }
+
+    /**
+     * Chooses what to clone from when cloning from the nearest mirror. The mirror preferences of the server are
+     * matched against the labels of the agent the workspace is on, and otherwise the mirror with the lowest latency is
+     * used. When no mirror is available the primary server, which the job was saved with, is used.
+     */
+    @VisibleForTesting
+    GitSCM selectGitSCM(@CheckForNull Node node, TaskListener listener) {
+        BitbucketSCMRepository repository = getBitbucketSCMRepository();
+        if (!repository.isAutoMirror()) {
+            return gitSCM;
+        }
+        DescriptorImpl descriptor = (DescriptorImpl) getDescriptor();
+        Optional<BitbucketServerConfiguration> mayBeServerConf = descriptor.getConfiguration(getServerId());
+        if (!mayBeServerConf.isPresent()) {
+            return gitSCM;
+        }
+        BitbucketServerConfiguration serverConfiguration = mayBeServerConf.get();
+        List<String> preferredMirrorNames = node == null ? emptyList() :
+                serverConfiguration.getPreferredMirrorNames(node.getAssignedLabels());
+
+        Optional<EnrichedBitbucketMirroredRepository> mirroredRepository =
+                descriptor.createMirrorHandler(
+                        descriptor.getBitbucketScmHelper(serverConfiguration.getBaseUrl(), getCredentialsId()))
+                        .fetchNearestRepository(
+                                new MirrorFetchRequest(
+                                        serverConfiguration.getBaseUrl(),
+                                        getCredentialsId(),
+                                        serverConfiguration.getGlobalCredentialsProvider(
+                                                format("Bitbucket SCM: Choose mirror for [%s]",
+                                                        node == null ? "polling" : node.getNodeName())),
+                                        getProjectName(),
+                                        getRepositoryName(),
+                                        repository.getMirrorName()),
+                                preferredMirrorNames);
+        CloneProtocol cloneProtocol =
+                isBlank(repository.getSshCredentialsId()) ? CloneProtocol.HTTP : CloneProtocol.SSH;
+        String cloneUrl = mirroredRepository
+                .map(mirror -> getCloneUrl(mirror.getMirroringDetails().getCloneUrls(), cloneProtocol))
+                .orElse("");
+        if (isBlank(cloneUrl)) {
+            listener.getLogger().println("No mirror is available, using the primary server");
+            return gitSCM;
+        }
+        listener.getLogger().println(format("Using mirror %s",
+                mirroredRepository.get().getMirroringDetails().getMirrorName()));
+        return createGitSCM(cloneUrl, mirroredRepository.get().getRepository().getSelfLink(), repository);
+    }
+
+    private void initialize(String cloneUrl, String selfLink, BitbucketSCMRepository bitbucketSCMRepository) {
+        repositories.add(bitbucketSCMRepository);
+        gitSCM = createGitSCM(cloneUrl, selfLink, bitbucketSCMRepository);
+    }
+
     private void setEmptyRepsitory(@CheckForNull String credentialsId,
                                    @CheckForNull String sshCredentialsId,
                                    @CheckForNull String projectName,
@@ -361,7 +484,8 @@ public class BitbucketSCM extends SCM {
         initialize(cloneUrl, repository.getSelfLink(), bitbucketSCMRepository);
     }
 
-    private void setRepositoryDetails(@CheckForNull String credentialsId, @CheckForNull String sshCredentialsId, @Nullable String serverId,
+    private void setRepositoryDetails(@CheckForNull String credentialsId, @CheckForNull String sshCredentialsId,
+                                      @Nullable String serverId, String mirrorName,
                                       EnrichedBitbucketMirroredRepository repository) {
         if (isBlank(serverId)) {
             return;
@@ -372,7 +496,7 @@ public class BitbucketSCM extends SCM {
         BitbucketSCMRepository bitbucketSCMRepository =
                 new BitbucketSCMRepository(credentialsId, sshCredentialsId, underlyingRepo.getProject().getName(),
                         underlyingRepo.getProject().getKey(), underlyingRepo.getName(), underlyingRepo.getSlug(),
-                        serverId, repository.getMirroringDetails().getMirrorName());
+                        serverId, mirrorName);
         initialize(cloneUrl, underlyingRepo.getSelfLink(), bitbucketSCMRepository);
     }
 
@@ -390,6 +514,10 @@ public class BitbucketSCM extends SCM {
         @Inject
         private BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
         @Inject
+        private BitbucketMirrorCache mirrorCache;
+        @Inject
+        private BitbucketMirrorSelector mirrorSelector;
+        @Inject
         private BitbucketPluginConfiguration bitbucketPluginConfiguration;
         private transient JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
 
@@ -547,11 +675,13 @@ public class BitbucketSCM extends SCM {
                     credentialsId, jenkinsToBitbucketCredentials);
         }
 
-        private BitbucketMirrorHandler createMirrorHandler(BitbucketScmHelper helper) {
+        BitbucketMirrorHandler createMirrorHandler(BitbucketScmHelper helper) {
             return new BitbucketMirrorHandler(
                     bitbucketClientFactoryProvider,
                     jenkinsToBitbucketCredentials,
-                    (client, project, repo) -> helper.getRepository(project, repo));
+                    (client, project, repo) -> helper.getRepository(project, repo),
+                    mirrorCache,
+                    mirrorSelector);
         }
 
         Optional<BitbucketServerConfiguration> getConfiguration(@Nullable String serverId) {
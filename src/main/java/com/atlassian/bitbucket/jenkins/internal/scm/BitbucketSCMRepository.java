@@ -1,8 +1,10 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import javax.annotation.Nullable;
+import java.util.Locale;
 
 import static org.apache.commons.lang3.StringUtils.isEmpty;
+import static org.apache.commons.lang3.StringUtils.lowerCase;
 
 public class BitbucketSCMRepository {
 
@@ -14,6 +16,7 @@ public class BitbucketSCMRepository {
     private final String repositorySlug;
     private final String serverId;
     private final String mirrorName;
+    private transient volatile String repositoryKey;
 
     public BitbucketSCMRepository(@Nullable String credentialsId, @Nullable String sshCredentialsId, String projectName, String projectKey,
                                   String repositoryName, String repositorySlug, @Nullable String serverId,
@@ -50,6 +53,22 @@ public class BitbucketSCMRepository {
         return repositoryName;
     }
 
+    /**
+     * Returns a key identifying the repository by its project key and slug, ignoring their case. Repositories can be
+     * matched by comparing their keys, which are only worked out once.
+     *
+     * @return the repository key
+     * @see #toRepositoryKey(String, String)
+     */
+    public String getRepositoryKey() {
+        String key = repositoryKey;
+        if (key == null) {
+            key = toRepositoryKey(projectKey, repositorySlug);
+            repositoryKey = key;
+        }
+        return key;
+    }
+
     public String getRepositorySlug() {
         return repositorySlug;
     }
@@ -62,11 +81,34 @@ public class BitbucketSCMRepository {
         return mirrorName;
     }
 
+    /**
+     * @return true if the repository is cloned from the nearest available mirror, which is chosen every time it is
+     *         polled or checked out
+     */
+    public boolean isAutoMirror() {
+        return BitbucketMirrorSelector.isAutoMirrorName(mirrorName);
+    }
+
+    /**
+     * @return true if the repository is cloned from a specific mirror, rather than the primary server or the nearest
+     *         available mirror
+     */
     public boolean isMirrorConfigured() {
-        return !isEmpty(mirrorName);
+        return !isEmpty(mirrorName) && !isAutoMirror();
     }
 
     public boolean isPersonal() {
         return projectKey.startsWith("~");
     }
+
+    /**
+     * Returns the key identifying the repository with the given project key and slug, ignoring their case.
+     *
+     * @param projectKey     the key of the project of the repository
+     * @param repositorySlug the slug of the repository
+     * @return the repository key
+     */
+    public static String toRepositoryKey(String projectKey, String repositorySlug) {
+        return lowerCase(projectKey, Locale.ROOT) + '/' + lowerCase(repositorySlug, Locale.ROOT);
+    }
 }
@@ -1,18 +1,28 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
 import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChangeType;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefDetails;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefType;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
 import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookMultibranchTrigger;
+import com.atlassian.bitbucket.jenkins.internal.trigger.MirrorSynchronizedWebhookEvent;
+import com.atlassian.bitbucket.jenkins.internal.trigger.PullRequestWebhookEvent;
+import com.atlassian.bitbucket.jenkins.internal.trigger.RefsChangedWebhookEvent;
 import com.atlassian.bitbucket.jenkins.internal.trigger.RetryingWebhookHandler;
 import com.cloudbees.hudson.plugins.folder.computed.ComputedFolder;
 import com.google.common.annotations.VisibleForTesting;
 import hudson.Extension;
+import hudson.ExtensionList;
 import hudson.model.Item;
 import hudson.model.TaskListener;
 import hudson.plugins.git.GitTool;
@@ -21,10 +31,19 @@ import hudson.plugins.git.extensions.GitSCMExtensionDescriptor;
 import hudson.scm.SCM;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.plugins.git.GitBranchSCMRevision;
 import jenkins.plugins.git.GitSCMSource;
+import jenkins.plugins.git.GitSCMSourceContext;
+import jenkins.plugins.git.GitSCMSourceRequest;
+import jenkins.plugins.git.GitTagSCMHead;
+import jenkins.plugins.git.GitTagSCMRevision;
+import jenkins.plugins.git.traits.RefSpecsSCMSourceTrait;
 import jenkins.scm.api.*;
+import jenkins.scm.api.trait.SCMSourceRequest;
 import jenkins.scm.api.trait.SCMSourceTrait;
 import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import jenkins.scm.impl.ChangeRequestSCMHeadCategory;
 import jenkins.scm.impl.TagSCMHeadCategory;
 import jenkins.scm.impl.UncategorizedSCMHeadCategory;
 import jenkins.scm.impl.form.NamedArrayList;
@@ -45,13 +64,25 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import static com.atlassian.bitbucket.jenkins.internal.model.RepositoryState.AVAILABLE;
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
 import static java.lang.String.format;
+import static java.util.Collections.emptyList;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 public class BitbucketSCMSource extends SCMSource {
 
     private static final Logger LOGGER = Logger.getLogger(BitbucketSCMSource.class.getName());
+    /**
+     * Set to {@code true} to list the branches and tags of the repository with git rather than through Bitbucket.
+     */
+    private static final String GIT_DISCOVERY_PROPERTY = "bitbucket.scm.discovery.git";
+    /**
+     * The most commits looked up to find when tags were made while listing them through Bitbucket. If more tags need a
+     * lookup, they are listed with git instead. Defaults to 50.
+     */
+    private static final long TAG_COMMIT_LOOKUP_LIMIT =
+            parsePositiveLongFromSystemProperty("bitbucket.scm.discovery.tag.lookup.limit", 50);
     private final List<SCMSourceTrait> traits;
     private CustomGitSCMSource gitSCMSource;
     private BitbucketSCMRepository repository;
@@ -101,7 +132,26 @@ public class BitbucketSCMSource extends SCMSource {
             return;
         }
 
-        if (isNotBlank(mirrorName)) {
+        if (BitbucketMirrorSelector.isAutoMirrorName(mirrorName)) {
+            // Branches are discovered and built on different agents, so the mirror is chosen once for the source
+            Optional<EnrichedBitbucketMirroredRepository> mirroredRepository =
+                    descriptor.createMirrorHandler(scmHelper)
+                            .fetchNearestRepository(
+                                    new MirrorFetchRequest(
+                                            serverConfiguration.getBaseUrl(),
+                                            credentialsId,
+                                            globalCredentialsProvider,
+                                            projectName,
+                                            repositoryName,
+                                            mirrorName),
+                                    emptyList());
+            if (mirroredRepository.isPresent()) {
+                setRepositoryDetails(credentialsId, sshCredentialsId, serverId, mirrorName, mirroredRepository.get());
+            } else {
+                BitbucketRepository localRepo = scmHelper.getRepository(projectName, repositoryName);
+                setRepositoryDetails(credentialsId, sshCredentialsId, serverId, mirrorName, localRepo);
+            }
+        } else if (isNotBlank(mirrorName)) {
             try {
                 EnrichedBitbucketMirroredRepository mirroredRepository =
                         descriptor.createMirrorHandler(scmHelper)
@@ -113,7 +163,8 @@ public class BitbucketSCMSource extends SCMSource {
                                                 projectName,
                                                 repositoryName,
                                                 mirrorName));
-                setRepositoryDetails(credentialsId, sshCredentialsId, serverId, mirroredRepository);
+                setRepositoryDetails(credentialsId, sshCredentialsId, serverId,
+                        mirroredRepository.getMirroringDetails().getMirrorName(), mirroredRepository);
             } catch (MirrorFetchException ex) {
                 setEmptyRepository(credentialsId, sshCredentialsId, projectName, repositoryName, serverId, mirrorName);
             }
@@ -133,14 +184,49 @@ public class BitbucketSCMSource extends SCMSource {
                 oldScm.getProjectName(), oldScm.getRepositoryName(), oldScm.getServerId(), oldScm.getMirrorName());
     }
 
+    private BitbucketSCMSource(BitbucketSCMSource oldScm, String cloneUrl) {
+        super.setId(oldScm.getId());
+        traits = new ArrayList<>(oldScm.getTraits());
+        initialize(cloneUrl, oldScm.getBitbucketSCMRepository());
+    }
+
     @Override
     public SCM build(SCMHead head, @CheckForNull SCMRevision revision) {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Building SCM for " + head.getName() + " at revision " + revision);
         }
+        if (head instanceof BitbucketPullRequestSCMHead && revision instanceof GitBranchSCMRevision &&
+            ((BitbucketPullRequestSCMHead) head).getTarget().equals(revision.getHead())) {
+            // The trusted revision of a pull request from a fork, which is checked out from the target branch
+            return gitSCMSource.build(revision.getHead(), revision);
+        }
+        if (head instanceof BitbucketPullRequestSCMHead) {
+            GitBranchSCMHead gitHead = new GitBranchSCMHead(head.getName());
+            return pullRequestGitSCMSource((BitbucketPullRequestSCMHead) head)
+                    .build(gitHead, toGitRevision(gitHead, revision));
+        }
         return gitSCMSource.build(head, revision);
     }
 
+    /**
+     * Pull requests from forks may be opened by anyone who can read the repository, so the files Jenkins trusts, such
+     * as the Jenkinsfile, are taken from the target branch of the pull request instead of from the fork.
+     */
+    @Override
+    public SCMRevision getTrustedRevision(SCMRevision revision, @CheckForNull TaskListener listener)
+            throws IOException, InterruptedException {
+        if (revision instanceof BitbucketPullRequestSCMRevision &&
+            revision.getHead().getOrigin() instanceof SCMHeadOrigin.Fork) {
+            BitbucketPullRequestSCMRevision pullRequestRevision = (BitbucketPullRequestSCMRevision) revision;
+            if (listener != null) {
+                listener.getLogger().format("Loading trusted files from %s as %s is from a fork%n",
+                        pullRequestRevision.getTarget().getHead().getName(), revision.getHead().getName());
+            }
+            return pullRequestRevision.getTarget();
+        }
+        return super.getTrustedRevision(revision, listener);
+    }
+
     @Override
     public void afterSave() {
         super.afterSave();
@@ -154,6 +240,23 @@ public class BitbucketSCMSource extends SCMSource {
         }
     }
 
+    /**
+     * Creates a copy of this source for when the base URL of its server has changed. The clone URL is moved to the new
+     * base URL rather than looked up in Bitbucket again. That only works when cloning the repository itself over HTTP,
+     * as mirrors and SSH have URLs of their own.
+     *
+     * @param oldBaseUrl the base URL the server had
+     * @param newBaseUrl the base URL the server has now
+     * @return the copy, or {@link Optional#empty()} if the clone URL has to be looked up in Bitbucket
+     */
+    public Optional<BitbucketSCMSource> withBaseUrl(String oldBaseUrl, String newBaseUrl) {
+        if (isNotBlank(getMirrorName()) || isNotBlank(getSshCredentialsId())) {
+            return Optional.empty();
+        }
+        return BitbucketServerConfiguration.replaceBaseUrl(getRemote(), oldBaseUrl, newBaseUrl)
+                .map(cloneUrl -> new BitbucketSCMSource(this, cloneUrl));
+    }
+
     public BitbucketSCMRepository getBitbucketSCMRepository() {
         return repository;
     }
@@ -225,13 +328,265 @@ public class BitbucketSCMSource extends SCMSource {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    protected SCMProbe createProbe(SCMHead head, @CheckForNull SCMRevision revision) throws IOException {
+        if (head instanceof BitbucketPullRequestSCMHead) {
+            GitBranchSCMHead gitHead = new GitBranchSCMHead(head.getName());
+            return pullRequestGitSCMSource((BitbucketPullRequestSCMHead) head)
+                    .accessibleCreateProbe(gitHead, toGitRevision(gitHead, revision));
+        }
+        return gitSCMSource.accessibleCreateProbe(head, revision);
+    }
+
     @Override
     protected void retrieve(@CheckForNull SCMSourceCriteria criteria, SCMHeadObserver observer,
                             @CheckForNull SCMHeadEvent<?> event,
                             TaskListener listener) throws IOException, InterruptedException {
+        if (event != null && isEventScoped(event)) {
+            retrieveFromEvent(criteria, observer, event, listener);
+            return;
+        }
+        if (!useGitDiscovery() && retrieveFromBitbucket(criteria, observer, listener)) {
+            return;
+        }
+        if (wantPullRequests()) {
+            listener.getLogger().format("Pull requests of %s/%s are only discovered through Bitbucket%n",
+                    getProjectKey(), getRepositorySlug());
+        }
         gitSCMSource.accessibleRetrieve(criteria, observer, event, listener);
     }
 
+    private static boolean useGitDiscovery() {
+        return Boolean.getBoolean(GIT_DISCOVERY_PROPERTY);
+    }
+
+    /**
+     * A refs changed webhook carries the new hash of every branch it changed, so the branches can be observed without
+     * listing the refs of the remote repository. Anything the payload can't tell on its own (deleted refs, tags, or
+     * a mirror that may not have been synchronized yet) still goes through the full retrieve, as does indexing that
+     * isn't triggered by an event.
+     * <p>
+     * A pull request webhook carries the commits of the pull request, and only that pull request needs to be rebuilt.
+     */
+    @VisibleForTesting
+    boolean isEventScoped(SCMHeadEvent<?> event) {
+        if (event.getPayload() instanceof PullRequestWebhookEvent) {
+            return true;
+        }
+        if (!(event.getPayload() instanceof RefsChangedWebhookEvent)) {
+            return false;
+        }
+        RefsChangedWebhookEvent payload = (RefsChangedWebhookEvent) event.getPayload();
+        if (repository.isAutoMirror()) {
+            // The mirror was chosen when the source was saved, and it may not have synchronized the payload yet
+            return false;
+        }
+        if (repository.isMirrorConfigured()) {
+            if (!(payload instanceof MirrorSynchronizedWebhookEvent) ||
+                !((MirrorSynchronizedWebhookEvent) payload).getMirrorServer()
+                        .map(mirrorServer -> mirrorServer.getName().equals(getMirrorName()))
+                        .orElse(false)) {
+                return false;
+            }
+        }
+        return !payload.getChanges().isEmpty() &&
+               payload.getChanges().stream().allMatch(change ->
+                       change.getType() != BitbucketRefChangeType.DELETE &&
+                       change.getRef().getType() == BitbucketRefType.BRANCH);
+    }
+
+    private void retrieveFromEvent(@CheckForNull SCMSourceCriteria criteria, SCMHeadObserver observer,
+                                   SCMHeadEvent<?> event,
+                                   TaskListener listener) throws IOException, InterruptedException {
+        // An event for another repository has no heads for this source
+        Map<SCMHead, SCMRevision> heads = event.heads(this);
+        if (heads.isEmpty()) {
+            return;
+        }
+        GitSCMSourceContext<?, ?> context = new GitSCMSourceContext<>(criteria, observer).withTraits(getTraits());
+        boolean wantPullRequests = wantPullRequests();
+        listener.getLogger().format("Checking %d head(s) changed in %s/%s%n", heads.size(), getProjectKey(),
+                getRepositorySlug());
+        try (GitSCMSourceRequest request = context.newRequest(this, listener)) {
+            for (Map.Entry<SCMHead, SCMRevision> head : heads.entrySet()) {
+                if (head.getKey() instanceof BitbucketPullRequestSCMHead ? !wantPullRequests :
+                        !context.wantBranches()) {
+                    continue;
+                }
+                // The heads are processed like a full retrieve would, so the filters of the traits and the criteria
+                // still apply; only the listing of the remote refs is skipped
+                if (request.process(head.getKey(), head.getValue(), this::createProbe,
+                        witness(listener))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the branches, tags and pull requests of the repository through the REST API of Bitbucket rather than with
+     * git, so indexing doesn't need a git process or a copy of the repository on the controller. The heads are
+     * processed like a full retrieve would, so the filters of the traits and the criteria still apply.
+     * <p>
+     * Mirrors may be behind the upstream repository, so their heads are still listed with git, and their pull requests
+     * aren't discovered.
+     * <p>
+     * Tag heads need to know when the tag was made, which the listing doesn't say. For a lightweight tag that is when
+     * its commit was made, which is looked up once and then cached. An annotated tag was made when its tag object was,
+     * which only git can tell, so git is used if any annotated tag is wanted, or if too many commits would need to be
+     * looked up.
+     *
+     * @return {@code true} if the heads were listed, or {@code false}, without observing anything, if they could not
+     *         be listed this way and git should be used instead
+     */
+    private boolean retrieveFromBitbucket(@CheckForNull SCMSourceCriteria criteria, SCMHeadObserver observer,
+                                          TaskListener listener) throws IOException, InterruptedException {
+        if (repository.isMirrorConfigured() || repository.isAutoMirror()) {
+            return false;
+        }
+        DescriptorImpl descriptor = (DescriptorImpl) getDescriptor();
+        Optional<BitbucketServerConfiguration> serverConfiguration = descriptor.getConfiguration(getServerId());
+        if (!serverConfiguration.isPresent()) {
+            return false;
+        }
+        GitSCMSourceContext<?, ?> context = new GitSCMSourceContext<>(criteria, observer).withTraits(getTraits());
+        BitbucketRepositoryClient client;
+        List<BitbucketRefDetails> branches;
+        List<BitbucketPullRequest> pullRequests;
+        List<BitbucketRefDetails> tags;
+        try {
+            client = descriptor.getBitbucketScmHelper(serverConfiguration.get().getBaseUrl(), getCredentialsId())
+                    .getRepositoryClient(getProjectKey(), getRepositorySlug());
+            // Everything is listed before anything is observed, so git can still be used if anything can't be listed
+            branches = context.wantBranches() ? client.getBranches().collect(Collectors.toList()) : emptyList();
+            pullRequests = wantPullRequests() ? client.getPullRequests().collect(Collectors.toList()) : emptyList();
+            tags = context.wantTags() ? client.getTags().collect(Collectors.toList()) : emptyList();
+        } catch (BitbucketClientException e) {
+            listener.getLogger().format("Could not list the branches and tags of %s/%s from Bitbucket, using git " +
+                                        "instead: %s%n", getProjectKey(), getRepositorySlug(), e.getMessage());
+            return false;
+        }
+        listener.getLogger().format("Listed %d branch(es), %d pull request(s) and %d tag(s) of %s/%s from Bitbucket%n",
+                branches.size(), pullRequests.size(), tags.size(), getProjectKey(), getRepositorySlug());
+        try (GitSCMSourceRequest request = context.newRequest(this, listener)) {
+            // Nothing is observed until the tags have their timestamps, so git can still be used if they can't
+            Map<BitbucketRefDetails, Long> tagTimestamps = getTagTimestamps(tags, request, client, listener);
+            if (tagTimestamps == null) {
+                return false;
+            }
+            for (BitbucketRefDetails branch : branches) {
+                GitBranchSCMHead head = new GitBranchSCMHead(branch.getDisplayId());
+                if (request.process(head, new GitBranchSCMRevision(head, branch.getLatestCommit()),
+                        this::createProbe, witness(listener))) {
+                    return true;
+                }
+            }
+            for (BitbucketPullRequest pullRequest : pullRequests) {
+                BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest);
+                if (request.process(head, new BitbucketPullRequestSCMRevision(head, pullRequest), this::createProbe,
+                        witness(listener))) {
+                    return true;
+                }
+            }
+            for (Map.Entry<BitbucketRefDetails, Long> tag : tagTimestamps.entrySet()) {
+                GitTagSCMHead head = new GitTagSCMHead(tag.getKey().getDisplayId(), tag.getValue());
+                if (request.process(head, new GitTagSCMRevision(head, tag.getKey().getLatestCommit()),
+                        this::createProbe, witness(listener))) {
+                    return true;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds when each of the tags that aren't filtered out was made. Commits are only looked up for the tags that
+     * aren't filtered out anyway, and that weren't seen by an earlier retrieve.
+     *
+     * @return the timestamps of the wanted tags, in the order they were listed, or {@code null} if git has to be used
+     *         to find them
+     */
+    @CheckForNull
+    private Map<BitbucketRefDetails, Long> getTagTimestamps(List<BitbucketRefDetails> tags,
+                                                            GitSCMSourceRequest request,
+                                                            BitbucketRepositoryClient client,
+                                                            TaskListener listener) throws IOException,
+            InterruptedException {
+        BitbucketCommitTimestampCache timestampCache = ((DescriptorImpl) getDescriptor()).getCommitTimestampCache();
+        Map<BitbucketRefDetails, Long> timestamps = new LinkedHashMap<>();
+        List<BitbucketRefDetails> lookups = new ArrayList<>();
+        for (BitbucketRefDetails tag : tags) {
+            if (request.isExcluded(new GitTagSCMHead(tag.getDisplayId(), 0L))) {
+                continue;
+            }
+            if (tag.isAnnotatedTag()) {
+                // The commit was made before the tag, possibly long before, so its time would be wrong
+                listener.getLogger().format("Tag %s of %s/%s is annotated, using git to find when it was made%n",
+                        tag.getDisplayId(), getProjectKey(), getRepositorySlug());
+                return null;
+            }
+            Long timestamp = timestampCache.get(tag.getLatestCommit());
+            if (timestamp == null) {
+                lookups.add(tag);
+            }
+            timestamps.put(tag, timestamp);
+        }
+        if (lookups.size() > TAG_COMMIT_LOOKUP_LIMIT) {
+            listener.getLogger().format("%d new tag(s) of %s/%s, using git to find when they were made%n",
+                    lookups.size(), getProjectKey(), getRepositorySlug());
+            return null;
+        }
+        for (BitbucketRefDetails tag : lookups) {
+            long timestamp;
+            try {
+                timestamp = client.getCommit(tag.getLatestCommit()).getCommitterTimestamp();
+            } catch (BitbucketClientException e) {
+                listener.getLogger().format("Could not retrieve the commit of tag %s of %s/%s, using git instead: " +
+                                            "%s%n", tag.getDisplayId(), getProjectKey(), getRepositorySlug(),
+                        e.getMessage());
+                return null;
+            }
+            timestampCache.put(tag.getLatestCommit(), timestamp);
+            timestamps.put(tag, timestamp);
+        }
+        return timestamps;
+    }
+
+    @Nullable
+    private static GitBranchSCMRevision toGitRevision(GitBranchSCMHead gitHead, @CheckForNull SCMRevision revision) {
+        return revision instanceof BitbucketPullRequestSCMRevision ?
+                new GitBranchSCMRevision(gitHead, ((BitbucketPullRequestSCMRevision) revision).getCommit()) : null;
+    }
+
+    private static SCMSourceRequest.Witness witness(TaskListener listener) {
+        return (head, revision, isMatch) -> {
+            if (isMatch) {
+                listener.getLogger().format("Met criteria for %s%n", head.getName());
+            } else {
+                listener.getLogger().format("Does not meet criteria for %s%n", head.getName());
+            }
+        };
+    }
+
+    /**
+     * Pull requests are fetched from the ref Bitbucket keeps their source branch in, under the name of the head, so
+     * they can be built and probed like any branch of a git repository.
+     */
+    private CustomGitSCMSource pullRequestGitSCMSource(BitbucketPullRequestSCMHead head) {
+        CustomGitSCMSource pullRequestSource = new CustomGitSCMSource(getRemote());
+        List<SCMSourceTrait> pullRequestTraits = new ArrayList<>(traits);
+        pullRequestTraits.add(new RefSpecsSCMSourceTrait(
+                "+" + head.getRef() + ":refs/remotes/@{remote}/" + head.getName()));
+        pullRequestSource.setTraits(pullRequestTraits);
+        pullRequestSource.setCredentialsId(gitSCMSource.getCredentialsId());
+        return pullRequestSource;
+    }
+
+    private boolean wantPullRequests() {
+        return !repository.isMirrorConfigured() && !repository.isAutoMirror() &&
+               traits.stream().anyMatch(BitbucketPullRequestDiscoveryTrait.class::isInstance);
+    }
+
     private String getCloneUrl(List<BitbucketNamedLink> cloneUrls, CloneProtocol cloneProtocol) {
         return cloneUrls.stream()
                 .filter(link -> Objects.equals(cloneProtocol.name, link.getName()))
@@ -283,7 +638,8 @@ public class BitbucketSCMSource extends SCMSource {
 
     @SuppressWarnings("Duplicates")
     private void setRepositoryDetails(@Nullable String credentialsId, @Nullable String sshCredentialsId,
-                                      @Nullable String serverId, EnrichedBitbucketMirroredRepository repository) {
+                                      @Nullable String serverId, String mirrorName,
+                                      EnrichedBitbucketMirroredRepository repository) {
         if (isBlank(serverId)) {
             return;
         }
@@ -296,7 +652,7 @@ public class BitbucketSCMSource extends SCMSource {
         BitbucketSCMRepository bitbucketSCMRepository =
                 new BitbucketSCMRepository(credentialsId, sshCredentialsId, underlyingRepo.getProject().getName(),
                         underlyingRepo.getProject().getKey(), underlyingRepo.getName(), underlyingRepo.getSlug(),
-                        serverId, repository.getMirroringDetails().getMirrorName());
+                        serverId, mirrorName);
         initialize(cloneUrl, bitbucketSCMRepository);
     }
 
@@ -310,6 +666,12 @@ public class BitbucketSCMSource extends SCMSource {
         @Inject
         private BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
         @Inject
+        private BitbucketCommitTimestampCache commitTimestampCache;
+        @Inject
+        private BitbucketMirrorCache mirrorCache;
+        @Inject
+        private BitbucketMirrorSelector mirrorSelector;
+        @Inject
         private BitbucketPluginConfiguration bitbucketPluginConfiguration;
         @Inject
         private BitbucketScmFormFillDelegate formFill;
@@ -459,12 +821,18 @@ public class BitbucketSCMSource extends SCMSource {
         }
 
         public List<NamedArrayList<? extends SCMSourceTraitDescriptor>> getTraitsDescriptorLists() {
-            return gitScmSourceDescriptor.getTraitsDescriptorLists();
+            List<NamedArrayList<? extends SCMSourceTraitDescriptor>> descriptorLists =
+                    new ArrayList<>(gitScmSourceDescriptor.getTraitsDescriptorLists());
+            NamedArrayList<SCMSourceTraitDescriptor> pullRequestDescriptors = new NamedArrayList<>("Pull requests");
+            pullRequestDescriptors.addAll(ExtensionList.lookup(BitbucketPullRequestDiscoveryTrait.DescriptorImpl.class));
+            descriptorLists.add(pullRequestDescriptors);
+            return descriptorLists;
         }
 
         @Override
         protected SCMHeadCategory[] createCategories() {
-            return new SCMHeadCategory[]{UncategorizedSCMHeadCategory.DEFAULT, TagSCMHeadCategory.DEFAULT};
+            return new SCMHeadCategory[]{UncategorizedSCMHeadCategory.DEFAULT, ChangeRequestSCMHeadCategory.DEFAULT,
+                    TagSCMHeadCategory.DEFAULT};
         }
 
         BitbucketScmHelper getBitbucketScmHelper(String bitbucketUrl,
@@ -474,6 +842,10 @@ public class BitbucketSCMSource extends SCMSource {
                     credentialsId, jenkinsToBitbucketCredentials);
         }
 
+        BitbucketCommitTimestampCache getCommitTimestampCache() {
+            return commitTimestampCache;
+        }
+
         Optional<BitbucketServerConfiguration> getConfiguration(@Nullable String serverId) {
             return bitbucketPluginConfiguration.getServerById(serverId);
         }
@@ -482,7 +854,9 @@ public class BitbucketSCMSource extends SCMSource {
             return new BitbucketMirrorHandler(
                     bitbucketClientFactoryProvider,
                     jenkinsToBitbucketCredentials,
-                    (client, project, repo) -> helper.getRepository(project, repo));
+                    (client, project, repo) -> helper.getRepository(project, repo),
+                    mirrorCache,
+                    mirrorSelector);
         }
     }
 
@@ -503,5 +877,9 @@ public class BitbucketSCMSource extends SCMSource {
                                        TaskListener listener) throws IOException, InterruptedException {
             super.retrieve(criteria, observer, event, listener);
         }
+
+        public SCMProbe accessibleCreateProbe(SCMHead head, @CheckForNull SCMRevision revision) throws IOException {
+            return super.createProbe(head, revision);
+        }
     }
 }
@@ -28,6 +28,7 @@ import org.kohsuke.stapler.verb.POST;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.*;
+import java.util.logging.Logger;
 
 import static java.lang.String.format;
 import static java.util.Collections.emptyList;
@@ -38,6 +39,8 @@ import static org.apache.commons.lang3.StringUtils.stripToNull;
 
 public class BitbucketSCMStep extends SCMStep {
 
+    private static final Logger LOGGER = Logger.getLogger(BitbucketSCMStep.class.getName());
+
     private List<BranchSpec> branches;
     private String cloneUrl;
     private String credentialsId;
@@ -172,7 +175,7 @@ public class BitbucketSCMStep extends SCMStep {
         BitbucketScmHelper scmHelper =
                 descriptor.getBitbucketScmHelper(serverConfiguration.getBaseUrl(), credentialsId);
         BitbucketRepository repository;
-        if (!isBlank(mirrorName)) {
+        if (!isBlank(mirrorName) && !BitbucketMirrorSelector.isAutoMirrorName(mirrorName)) {
             try {
                 EnrichedBitbucketMirroredRepository mirroredRepository =
                         descriptor.createMirrorHandler(scmHelper)
@@ -186,10 +189,18 @@ public class BitbucketSCMStep extends SCMStep {
                                                 mirrorName));
                 repository = mirroredRepository.getRepository();
                 cloneUrl = getCloneUrl(mirroredRepository.getMirroringDetails().getCloneUrls());
+            } catch (MirrorUnavailableException ex) {
+                // The mirror is unavailable, the primary server always has the repository so clone from there
+                LOGGER.warning(format("Mirror [%s] is not available for project [%s] repo [%s], falling back to " +
+                                      "the primary server: %s", mirrorName, projectName, repositoryName,
+                        ex.getMessage()));
+                repository = scmHelper.getRepository(projectName, repositoryName);
+                cloneUrl = getCloneUrl(repository.getCloneUrls());
             } catch (MirrorFetchException ex) {
                 throw new BitbucketSCMException("Error creating the Bitbucket SCM: " + ex.getMessage());
             }
         } else {
+            // When cloning from the nearest mirror, the SCM chooses the mirror when it checks out
             repository = scmHelper.getRepository(projectName, repositoryName);
             cloneUrl = getCloneUrl(repository.getCloneUrls());
         }
@@ -203,7 +214,8 @@ public class BitbucketSCMStep extends SCMStep {
         BitbucketRepository bitbucketRepository =
                 new BitbucketRepository(repositoryId, repositoryName, bitbucketProject,
                         repositorySlug, RepositoryState.AVAILABLE, cloneUrls, selfLink);
-        return new BitbucketSCM(id, branches, credentialsId, sshCredentialsId, null, null, serverId, bitbucketRepository);
+        return new BitbucketSCM(id, branches, credentialsId, sshCredentialsId, null, null, serverId, bitbucketRepository,
+                BitbucketMirrorSelector.isAutoMirrorName(mirrorName) ? mirrorName : "");
     }
 
     private String getCloneUrl(List<BitbucketNamedLink> cloneUrls) {
@@ -225,6 +237,10 @@ public class BitbucketSCMStep extends SCMStep {
         @Inject
         private BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
         @Inject
+        private BitbucketMirrorCache mirrorCache;
+        @Inject
+        private BitbucketMirrorSelector mirrorSelector;
+        @Inject
         private BitbucketPluginConfiguration bitbucketPluginConfiguration;
         @Inject
         private BitbucketScmFormFillDelegate formFill;
@@ -364,7 +380,9 @@ public class BitbucketSCMStep extends SCMStep {
             return new BitbucketMirrorHandler(
                     bitbucketClientFactoryProvider,
                     jenkinsToBitbucketCredentials,
-                    (client, project, repo) -> helper.getRepository(project, repo));
+                    (client, project, repo) -> helper.getRepository(project, repo),
+                    mirrorCache,
+                    mirrorSelector);
         }
 
         private BitbucketScmHelper getBitbucketScmHelper(String bitbucketUrl,
@@ -1,5 +1,6 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketSearchHelper;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
@@ -23,21 +24,19 @@ import hudson.security.ACL;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
-import net.sf.json.JSONArray;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 import org.kohsuke.stapler.HttpResponse;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.util.Collection;
+import java.time.Clock;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
-import static com.atlassian.bitbucket.jenkins.internal.client.BitbucketSearchHelper.findProjects;
-import static com.atlassian.bitbucket.jenkins.internal.client.BitbucketSearchHelper.findRepositories;
-import static hudson.util.HttpResponses.okJSON;
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
 import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
 import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR;
 import static java.util.Collections.emptyList;
@@ -51,17 +50,33 @@ import static org.kohsuke.stapler.HttpResponses.errorWithoutStack;
 public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
 
     private static final Logger LOGGER = Logger.getLogger(BitbucketScmFormFillDelegate.class.getName());
+    /**
+     * The most results returned by a single project or repository search.
+     */
+    private static final int MAX_SEARCH_RESULTS = 25;
+    /**
+     * How long the results of a search are reused for. Defaults to 1 minute in ms.
+     */
+    private static final long SEARCH_CACHE_EXPIRY =
+            parsePositiveLongFromSystemProperty("bitbucket.search.cache.expiry", TimeUnit.MINUTES.toMillis(1));
+    private static final int SEARCH_CACHE_SIZE = 500;
 
     private final BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
     private final BitbucketPluginConfiguration bitbucketPluginConfiguration;
     private final JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
     private final JenkinsProvider jenkinsProvider;
+    private final BitbucketMirrorCache mirrorCache;
+    private final BitbucketMirrorSelector mirrorSelector;
+    private final BitbucketSearchResultCache<BitbucketProject> projectSearchCache;
+    private final BitbucketSearchResultCache<BitbucketRepository> repositorySearchCache;
 
     @Inject
     public BitbucketScmFormFillDelegate(BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
                                         BitbucketPluginConfiguration bitbucketPluginConfiguration,
                                         JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
-                                        JenkinsProvider jenkinsProvider) {
+                                        JenkinsProvider jenkinsProvider,
+                                        BitbucketMirrorCache mirrorCache,
+                                        BitbucketMirrorSelector mirrorSelector) {
         this.bitbucketClientFactoryProvider =
                 requireNonNull(bitbucketClientFactoryProvider, "bitbucketClientFactoryProvider");
         this.bitbucketPluginConfiguration =
@@ -70,6 +85,12 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
                 requireNonNull(jenkinsToBitbucketCredentials, "jenkinsToBitbucketCredentils");
         this.jenkinsProvider =
                 requireNonNull(jenkinsProvider, "jenkinsProvider");
+        this.mirrorCache = requireNonNull(mirrorCache, "mirrorCache");
+        this.mirrorSelector = requireNonNull(mirrorSelector, "mirrorSelector");
+        projectSearchCache = new BitbucketSearchResultCache<>(Clock.systemUTC(), SEARCH_CACHE_EXPIRY,
+                SEARCH_CACHE_SIZE, BitbucketProject::getName);
+        repositorySearchCache = new BitbucketSearchResultCache<>(Clock.systemUTC(), SEARCH_CACHE_EXPIRY,
+                SEARCH_CACHE_SIZE, BitbucketRepository::getName);
     }
 
     @Override
@@ -129,9 +150,12 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
                         BitbucketCredentials credentials =
                                 jenkinsToBitbucketCredentials.toBitbucketCredentials(
                                         providedCredentials.orElse(null));
-                        Collection<BitbucketProject> projects = findProjects(projectName,
-                                bitbucketClientFactoryProvider.getClient(serverConf.getBaseUrl(), credentials));
-                        return okJSON(JSONArray.fromObject(projects));
+                        BitbucketClientFactory client =
+                                bitbucketClientFactoryProvider.getClient(serverConf.getBaseUrl(), credentials);
+                        List<BitbucketProject> projects = projectSearchCache.search(serverConf.getBaseUrl(),
+                                credentialsId, "", projectName,
+                                searchTerm -> client.getSearchClient(searchTerm).findProjects());
+                        return new SearchResultsResponse(limit(projects));
                     } catch (BitbucketClientException e) {
                         // Something went wrong with the request to Bitbucket
                         LOGGER.info(e.getMessage());
@@ -166,9 +190,12 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
                             jenkinsToBitbucketCredentials.toBitbucketCredentials(
                                     providedCredentials.orElse(null));
                     try {
-                        Collection<BitbucketRepository> repositories = findRepositories(repositoryName, projectName,
-                                bitbucketClientFactoryProvider.getClient(serverConf.getBaseUrl(), credentials));
-                        return okJSON(JSONArray.fromObject(repositories));
+                        BitbucketClientFactory client =
+                                bitbucketClientFactoryProvider.getClient(serverConf.getBaseUrl(), credentials);
+                        List<BitbucketRepository> repositories = repositorySearchCache.search(
+                                serverConf.getBaseUrl(), credentialsId, projectName, repositoryName,
+                                searchTerm -> client.getSearchClient(projectName).findRepositories(searchTerm));
+                        return new SearchResultsResponse(limit(repositories));
                     } catch (BitbucketClientException e) {
                         // Something went wrong with the request to Bitbucket
                         LOGGER.info(e.getMessage());
@@ -232,6 +259,10 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
         return false;
     }
 
+    private static <T> List<T> limit(List<T> results) {
+        return results.size() > MAX_SEARCH_RESULTS ? results.subList(0, MAX_SEARCH_RESULTS) : results;
+    }
+
     private void checkPermissions(@Nullable Item context) {
         if (context != null) {
             context.checkPermission(Item.EXTENDED_READ);
@@ -242,6 +273,7 @@ public class BitbucketScmFormFillDelegate implements BitbucketScmFormFill {
 
     private BitbucketMirrorHandler createMirrorHandlerUsingRepoSearch() {
         return new BitbucketMirrorHandler(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials,
-                (client, project, repo) -> BitbucketSearchHelper.getRepositoryByNameOrSlug(project, repo, client));
+                (client, project, repo) -> BitbucketSearchHelper.getRepositoryByNameOrSlug(project, repo, client),
+                mirrorCache, mirrorSelector);
     }
 }
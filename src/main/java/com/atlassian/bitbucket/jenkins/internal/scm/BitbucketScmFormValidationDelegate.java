@@ -2,6 +2,8 @@ package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketProjectClient;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketSearchClient;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
@@ -12,6 +14,7 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
 import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
 import com.cloudbees.plugins.credentials.Credentials;
+import hudson.model.Computer;
 import hudson.model.Item;
 import hudson.util.FormValidation;
 import jenkins.model.Jenkins;
@@ -21,12 +24,16 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static com.atlassian.bitbucket.jenkins.internal.client.BitbucketSearchHelper.getProjectByNameOrKey;
 import static com.atlassian.bitbucket.jenkins.internal.client.BitbucketSearchHelper.getRepositoryByNameOrSlug;
 import static hudson.util.FormValidation.Kind.ERROR;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 
@@ -37,12 +44,28 @@ public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValid
     private final BitbucketPluginConfiguration bitbucketPluginConfiguration;
     private final JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
     private final JenkinsProvider jenkinsProvider;
+    private final BitbucketMirrorCache mirrorCache;
+    private final BitbucketMirrorSelector mirrorSelector;
+    private final Executor executor;
 
     @Inject
     public BitbucketScmFormValidationDelegate(BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
                                               BitbucketPluginConfiguration bitbucketPluginConfiguration,
                                               JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
-                                              JenkinsProvider jenkinsProvider) {
+                                              JenkinsProvider jenkinsProvider,
+                                              BitbucketMirrorCache mirrorCache,
+                                              BitbucketMirrorSelector mirrorSelector) {
+        this(bitbucketClientFactoryProvider, bitbucketPluginConfiguration, jenkinsToBitbucketCredentials,
+                jenkinsProvider, mirrorCache, mirrorSelector, Computer.threadPoolForRemoting);
+    }
+
+    BitbucketScmFormValidationDelegate(BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
+                                       BitbucketPluginConfiguration bitbucketPluginConfiguration,
+                                       JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials,
+                                       JenkinsProvider jenkinsProvider,
+                                       BitbucketMirrorCache mirrorCache,
+                                       BitbucketMirrorSelector mirrorSelector,
+                                       Executor executor) {
         this.bitbucketClientFactoryProvider =
                 requireNonNull(bitbucketClientFactoryProvider, "bitbucketClientFactoryProvider");
         this.bitbucketPluginConfiguration =
@@ -51,6 +74,9 @@ public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValid
                 requireNonNull(jenkinsToBitbucketCredentials, "jenkinsToBitbucketCredentials");
         this.jenkinsProvider =
                 requireNonNull(jenkinsProvider, "jenkinsProvider");
+        this.mirrorCache = requireNonNull(mirrorCache, "mirrorCache");
+        this.mirrorSelector = requireNonNull(mirrorSelector, "mirrorSelector");
+        this.executor = requireNonNull(executor, "executor");
     }
 
     @Override
@@ -168,6 +194,11 @@ public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValid
         return FormValidation.ok();
     }
 
+    /**
+     * Runs the same checks as the individual fields, but resolves the project and repository only once and shares them
+     * between the checks. The lookups by name and by key or slug are independent of each other so they are all started
+     * at once, which means the connection can usually be confirmed in a single round trip to Bitbucket.
+     */
     @Override
     public FormValidation doTestConnection(@Nullable Item context, String serverId, String credentialsId, String projectName,
                                            String repositoryName, String mirrorName) {
@@ -182,24 +213,29 @@ public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValid
             return credentialsIdValidation;
         }
 
-        FormValidation projectNameValidation = doCheckProjectName(context, serverId, credentialsId, projectName);
-        if (projectNameValidation.kind == ERROR) {
-            return projectNameValidation;
-        }
-
-        FormValidation repositoryNameValidation = doCheckRepositoryName(context, serverId, credentialsId, projectName,
-                repositoryName);
-        if (repositoryNameValidation.kind == ERROR) {
-            return repositoryNameValidation;
+        if (isBlank(projectName)) {
+            return FormValidation.error("Enter a project name");
         }
 
-        FormValidation mirrorNameValidation = doCheckMirrorName(context, serverId, credentialsId, projectName,
-                repositoryName, mirrorName);
-        if (mirrorNameValidation.kind == ERROR) {
-            return mirrorNameValidation;
+        Optional<BitbucketServerConfiguration> serverConfiguration =
+                bitbucketPluginConfiguration.getServerById(serverId);
+        Optional<Credentials> providedCredentials =
+                isBlank(credentialsId) ? Optional.empty() : CredentialUtils.getCredentials(credentialsId);
+        // Without credentials there is nothing more to check, as for the individual fields
+        if (providedCredentials.isPresent()) {
+            if (isEmpty(repositoryName)) {
+                return FormValidation.error("Repository name is required");
+            }
+            if (serverConfiguration.isPresent()) {
+                FormValidation repositoryValidation = validateRepository(serverConfiguration.get(), credentialsId,
+                        providedCredentials.get(), projectName, repositoryName, mirrorName);
+                if (repositoryValidation.kind == ERROR) {
+                    return repositoryValidation;
+                }
+            }
         }
 
-        String serverName = bitbucketPluginConfiguration.getServerById(serverId)
+        String serverName = serverConfiguration
                 .map(BitbucketServerConfiguration::getServerName)
                 .orElse("Bitbucket Server");
         return FormValidation.ok(format("Jenkins successfully connected to %s's %s / %s on %s", serverName, projectName,
@@ -214,32 +250,124 @@ public class BitbucketScmFormValidationDelegate implements BitbucketScmFormValid
         }
     }
 
-    private FormValidation doCheckMirrorName(@Nullable Item context, String serverId, String credentialsId, String projectName,
-                                             String repositoryName, String mirrorName) {
-        checkPermission(context);
-        if (isBlank(serverId) || isBlank(projectName) || isBlank(repositoryName) || isBlank(credentialsId)) {
-            return FormValidation.ok(); // Validation error would have been in one of the other fields
+    private FormValidation validateRepository(BitbucketServerConfiguration serverConfiguration, String credentialsId,
+                                              Credentials credentials, String projectName, String repositoryName,
+                                              String mirrorName) {
+        BitbucketClientFactory clientFactory = bitbucketClientFactoryProvider.getClient(
+                serverConfiguration.getBaseUrl(), jenkinsToBitbucketCredentials.toBitbucketCredentials(credentials));
+        ResolutionContext resolution = new ResolutionContext(clientFactory, projectName, repositoryName, executor);
+        try {
+            resolution.getProject();
+        } catch (NotFoundException e) {
+            return FormValidation.error("The project '" + projectName + "' does not exist or " +
+                                        "you do not have permission to access it.");
+        } catch (BitbucketClientException e) {
+            return FormValidation.error("Something went wrong when trying to contact " +
+                                        "Bitbucket Server: " + e.getMessage());
         }
-        Optional<Credentials> providedCredentials = CredentialUtils.getCredentials(credentialsId);
-        if (!providedCredentials.isPresent()) {
-            return FormValidation.ok(); // There will be an error in the credentials field
+
+        BitbucketRepository repository;
+        try {
+            repository = resolution.getRepository();
+        } catch (NotFoundException e) {
+            return FormValidation.error("The repository '" + repositoryName + "' does not " +
+                                        "exist or you do not have permission to access it.");
+        } catch (BitbucketClientException e) {
+            return FormValidation.error("Something went wrong when trying to contact " +
+                                        "Bitbucket Server: " + e.getMessage());
         }
 
-        return bitbucketPluginConfiguration.getServerById(serverId)
-                .flatMap(serverConfiguration ->
-                        new BitbucketMirrorHandler(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials,
-                                (client, project, repo) -> getRepositoryByNameOrSlug(project, repo, client)).fetchAsListBox(
-                                new MirrorFetchRequest(
-                                        serverConfiguration.getBaseUrl(),
-                                        credentialsId,
-                                        serverConfiguration.getGlobalCredentialsProvider("Bitbucket SCM Fill Mirror list"),
-                                        projectName,
-                                        repositoryName,
-                                        mirrorName))
-                                .stream()
-                                .filter(mirror -> mirrorName.equalsIgnoreCase(mirror.value))
-                                .findAny()
-                                .map(mirror -> FormValidation.ok()))
-                .orElse(FormValidation.ok()); // There will be an error on the server field
+        // Without any mirrors a job cloning from the nearest mirror uses the primary server, so it always connects
+        if (isBlank(mirrorName) || BitbucketMirrorSelector.isAutoMirrorName(mirrorName)) {
+            return FormValidation.ok();
+        }
+        // The repository has already been resolved, so the mirrors are fetched without looking it up again
+        boolean isMirrorAvailable = new BitbucketMirrorHandler(bitbucketClientFactoryProvider,
+                jenkinsToBitbucketCredentials, (client, project, repo) -> repository, mirrorCache, mirrorSelector)
+                .fetchAsListBox(
+                        new MirrorFetchRequest(
+                                serverConfiguration.getBaseUrl(),
+                                credentialsId,
+                                serverConfiguration.getGlobalCredentialsProvider("Bitbucket SCM Test Connection"),
+                                projectName,
+                                repositoryName,
+                                mirrorName))
+                .stream()
+                .anyMatch(mirror -> mirrorName.equals(mirror.value));
+        if (!isMirrorAvailable) {
+            return FormValidation.error("The mirror '" + mirrorName + "' does not mirror the repository '" +
+                                        repositoryName + "' or is not available.");
+        }
+        return FormValidation.ok();
+    }
+
+    /**
+     * The project and repository entered in the form, resolved once for all of the checks. A project can be given by
+     * name or key, and a repository by name or slug, so every lookup that could resolve them is started up front
+     * rather than only trying the key and slug after the search by name has come back empty.
+     */
+    private static final class ResolutionContext {
+
+        private final BitbucketClientFactory clientFactory;
+        private final CompletableFuture<BitbucketProject> projectByKey;
+        private final CompletableFuture<Optional<BitbucketProject>> projectByName;
+        private final String projectName;
+        private final CompletableFuture<Optional<BitbucketRepository>> repositoryByName;
+        private final CompletableFuture<BitbucketRepository> repositoryBySlug;
+        private final String repositoryName;
+
+        private ResolutionContext(BitbucketClientFactory clientFactory, String projectName, String repositoryName,
+                                  Executor executor) {
+            this.clientFactory = clientFactory;
+            this.projectName = projectName;
+            this.repositoryName = repositoryName;
+            BitbucketSearchClient searchClient = clientFactory.getSearchClient(projectName);
+            BitbucketProjectClient projectClient = clientFactory.getProjectClient(projectName);
+            projectByName = supplyAsync(() -> searchClient.findProjects().getValues().stream()
+                    .filter(project -> projectName.equalsIgnoreCase(project.getName()))
+                    // Project names are unique so there will only be one
+                    .findAny(), executor);
+            projectByKey = supplyAsync(projectClient::getProject, executor);
+            repositoryByName = supplyAsync(() -> searchClient.findRepositories(repositoryName).getValues().stream()
+                    .filter(repository -> repositoryName.equalsIgnoreCase(repository.getName()))
+                    // Repo names are unique within a project
+                    .findAny(), executor);
+            // Only of use if the project name is actually a key, in which case it saves a round trip
+            repositoryBySlug = supplyAsync(() -> projectClient.getRepositoryClient(repositoryName).getRepository(),
+                    executor);
+        }
+
+        private BitbucketProject getProject() {
+            Optional<BitbucketProject> project = join(projectByName);
+            return project.isPresent() ? project.get() : join(projectByKey);
+        }
+
+        private BitbucketRepository getRepository() {
+            Optional<BitbucketRepository> repository = join(repositoryByName);
+            if (repository.isPresent()) {
+                return repository.get();
+            }
+            String projectKey = getProject().getKey();
+            if (projectName.equals(projectKey)) {
+                return join(repositoryBySlug);
+            }
+            // The project was given by name, so the repository has to be looked up again with its key
+            return clientFactory.getProjectClient(projectKey).getRepositoryClient(repositoryName).getRepository();
+        }
+
+        private static <T> T join(CompletableFuture<T> future) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
     }
 }
@@ -2,6 +2,7 @@ package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
 import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
@@ -29,6 +30,10 @@ public class BitbucketScmHelper {
                 jenkinsToBitbucketCredentials.toBitbucketCredentials(credentialsId));
     }
 
+    public BitbucketRepositoryClient getRepositoryClient(String projectKey, String repositorySlug) {
+        return clientFactory.getProjectClient(projectKey).getRepositoryClient(repositorySlug);
+    }
+
     public BitbucketRepository getRepository(String projectName, String repositoryName) {
         if (isBlank(projectName) || isBlank(repositoryName)) {
             LOGGER.info("Error creating the Bitbucket SCM: The projectName and repositoryName must not be blank");
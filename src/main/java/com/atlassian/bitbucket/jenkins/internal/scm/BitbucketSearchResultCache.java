@@ -0,0 +1,157 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
+
+import javax.annotation.Nullable;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.stream.Collectors.toList;
+import static org.apache.commons.lang3.StringUtils.containsIgnoreCase;
+import static org.apache.commons.lang3.StringUtils.stripToEmpty;
+
+/**
+ * Caches the results of the project and repository searches made while a user types into the SCM configuration
+ * form. Each keystroke searches for a longer term, so when the results for a shorter term were complete the results
+ * for the longer term are filtered from them instead of searching Bitbucket again. Results are cached per server,
+ * credentials and project, and are kept for a short time only since new projects and repositories should show up
+ * quickly.
+ *
+ * @param <T> the type of the search results
+ */
+class BitbucketSearchResultCache<T> {
+
+    /**
+     * Searches shorter than this are rejected by the form fill, so there are no results to filter from.
+     */
+    private static final int MIN_TERM_LENGTH = 2;
+
+    private final Clock clock;
+    private final long expiryMillis;
+    private final Function<T, String> nameFunction;
+    private final Map<CacheKey, CacheEntry> entries;
+
+    /**
+     * @param clock        the clock used to expire entries
+     * @param expiryMillis how long results are kept, in ms
+     * @param maxEntries   the maximum number of searches kept, the least recently used are dropped first
+     * @param nameFunction returns the name the search matches against
+     */
+    BitbucketSearchResultCache(Clock clock, long expiryMillis, int maxEntries, Function<T, String> nameFunction) {
+        this.clock = clock;
+        this.expiryMillis = expiryMillis;
+        this.nameFunction = nameFunction;
+        entries = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the results of the search, from the cache if possible.
+     *
+     * @param baseUrl       the base URL of the Bitbucket Server instance
+     * @param credentialsId the ID of the credentials the search is made with
+     * @param projectName   the project the search is limited to, or {@code ""} if it is not limited to a project
+     * @param term          the term to search for
+     * @param search        searches Bitbucket for the term
+     * @return the results of the search
+     */
+    List<T> search(String baseUrl, @Nullable String credentialsId, String projectName, String term,
+                   Function<String, BitbucketPage<T>> search) {
+        String normalizedTerm = stripToEmpty(term).toLowerCase(Locale.ROOT);
+        CacheKey key = new CacheKey(baseUrl, credentialsId, projectName, normalizedTerm);
+        long now = clock.millis();
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && !entry.isExpired(now)) {
+                return entry.values;
+            }
+            for (int length = normalizedTerm.length() - 1; length >= MIN_TERM_LENGTH; length--) {
+                CacheEntry shorterEntry = entries.get(key.withTerm(normalizedTerm.substring(0, length)));
+                if (shorterEntry != null && shorterEntry.complete && !shorterEntry.isExpired(now)) {
+                    // Bitbucket matches names ignoring case, so anything matching the longer term also matched the
+                    // shorter one
+                    List<T> values = shorterEntry.values.stream()
+                            .filter(value -> containsIgnoreCase(nameFunction.apply(value), normalizedTerm))
+                            .collect(toList());
+                    CacheEntry filteredEntry = new CacheEntry(values, true, shorterEntry.created);
+                    entries.put(key, filteredEntry);
+                    return filteredEntry.values;
+                }
+            }
+        }
+
+        // Searching Bitbucket is slow, so don't hold the lock while doing it
+        BitbucketPage<T> page = search.apply(term);
+        CacheEntry entry = new CacheEntry(page.getValues(), page.isLastPage(), now);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return entry.values;
+    }
+
+    private final class CacheEntry {
+
+        private final boolean complete;
+        private final long created;
+        private final List<T> values;
+
+        private CacheEntry(List<T> values, boolean complete, long created) {
+            this.values = unmodifiableList(values);
+            this.complete = complete;
+            this.created = created;
+        }
+
+        private boolean isExpired(long now) {
+            return now - created >= expiryMillis;
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final String baseUrl;
+        private final String credentialsId;
+        private final String projectName;
+        private final String term;
+
+        private CacheKey(String baseUrl, @Nullable String credentialsId, String projectName, String term) {
+            this.baseUrl = baseUrl;
+            this.credentialsId = stripToEmpty(credentialsId);
+            this.projectName = projectName;
+            this.term = term;
+        }
+
+        private CacheKey withTerm(String term) {
+            return new CacheKey(baseUrl, credentialsId, projectName, term);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return Objects.equals(baseUrl, cacheKey.baseUrl) &&
+                   Objects.equals(credentialsId, cacheKey.credentialsId) &&
+                   Objects.equals(projectName, cacheKey.projectName) &&
+                   Objects.equals(term, cacheKey.term);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseUrl, credentialsId, projectName, term);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+/**
+ * Thrown when the requested mirror is one of the mirrors of the repository, but it is not available to clone from,
+ * such as when it is unreachable or has not synchronized the repository.
+ */
+public class MirrorUnavailableException extends MirrorFetchException {
+
+    public MirrorUnavailableException(String message) {
+        super(message);
+    }
+}
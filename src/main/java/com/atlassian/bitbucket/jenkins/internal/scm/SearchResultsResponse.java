@@ -0,0 +1,39 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Writes search results in the same {@code {"status": "ok", "data": [...]}} form as
+ * {@link hudson.util.HttpResponses#okJSON(net.sf.json.JSONArray)}, but streams them straight to the response instead
+ * of first converting them to a {@link net.sf.json.JSONArray}.
+ */
+class SearchResultsResponse implements HttpResponse {
+
+    private static final ObjectMapper OBJECT_MAPPER =
+            new ObjectMapper().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final Collection<?> results;
+
+    SearchResultsResponse(Collection<?> results) {
+        this.results = results;
+    }
+
+    @Override
+    public void generateResponse(StaplerRequest req, StaplerResponse rsp, Object node) throws IOException {
+        rsp.setContentType("application/json;charset=UTF-8");
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(rsp.getWriter())) {
+            generator.writeStartObject();
+            generator.writeStringField("status", "ok");
+            generator.writeFieldName("data");
+            OBJECT_MAPPER.writeValue(generator, results);
+            generator.writeEndObject();
+        }
+    }
+}
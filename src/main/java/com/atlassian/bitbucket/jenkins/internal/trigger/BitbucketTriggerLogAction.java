@@ -0,0 +1,43 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import hudson.model.Action;
+import hudson.model.Job;
+
+import java.util.List;
+
+/**
+ * Shows the polling logs of the webhook trigger that {@link BitbucketTriggerLogStore} keeps in memory for a job.
+ */
+public class BitbucketTriggerLogAction implements Action {
+
+    private final Job<?, ?> job;
+    private final BitbucketTriggerLogStore logStore;
+
+    public BitbucketTriggerLogAction(Job<?, ?> job, BitbucketTriggerLogStore logStore) {
+        this.job = job;
+        this.logStore = logStore;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.BitbucketTriggerLogAction_displayname();
+    }
+
+    public List<BitbucketTriggerLogStore.Entry> getEntries() {
+        return logStore.getEntries(job);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clipboard.png";
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "bitbucketTriggerLog";
+    }
+}
@@ -0,0 +1,46 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import jenkins.model.ParameterizedJobMixIn;
+import jenkins.model.TransientActionFactory;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Collections;
+
+@Extension
+public class BitbucketTriggerLogActionFactory extends TransientActionFactory<Job> {
+
+    @Inject
+    private BitbucketTriggerLogStore logStore;
+
+    public BitbucketTriggerLogActionFactory() { }
+
+    public BitbucketTriggerLogActionFactory(BitbucketTriggerLogStore logStore) {
+        this.logStore = logStore;
+    }
+
+    @Nonnull
+    @Override
+    public Collection<? extends Action> createFor(@Nonnull Job target) {
+        if (!logStore.isInMemory() || !(target instanceof ParameterizedJobMixIn.ParameterizedJob)) {
+            return Collections.emptySet();
+        }
+        boolean hasTrigger = ((ParameterizedJobMixIn.ParameterizedJob<?, ?>) target).getTriggers()
+                .values()
+                .stream()
+                .anyMatch(trigger -> trigger instanceof BitbucketWebhookTriggerImpl);
+        if (!hasTrigger) {
+            return Collections.emptySet();
+        }
+        return Collections.singleton(new BitbucketTriggerLogAction((Job<?, ?>) target, logStore));
+    }
+
+    @Override
+    public Class<Job> type() {
+        return Job.class;
+    }
+}
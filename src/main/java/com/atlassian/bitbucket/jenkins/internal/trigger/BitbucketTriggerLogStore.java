@@ -0,0 +1,187 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Job;
+import hudson.model.TaskListener;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.String.format;
+
+/**
+ * Keeps the polling logs of the webhook trigger. By default each poll overwrites {@link #LOG_FILE_NAME} in the job
+ * directory, which means a small synchronous write to {@code JENKINS_HOME} for every trigger. When
+ * {@code bitbucket.trigger.log.memory} is set the logs are instead kept in memory, in a ring of the last
+ * {@link #LOG_COUNT} polls per job, and shown by the {@link BitbucketTriggerLogAction} of the job. If
+ * {@code bitbucket.trigger.log.flush.interval} is also set, the logs of the jobs that were polled since the last flush
+ * are written to {@link #LOG_FILE_NAME} in the background, once per interval.
+ */
+@Singleton
+public class BitbucketTriggerLogStore {
+
+    static final String LOG_FILE_NAME = "bitbucket-webhook-trigger.log";
+    /**
+     * How many polling logs are kept in memory for each job. Defaults to 10.
+     */
+    static final long LOG_COUNT = parsePositiveLongFromSystemProperty("bitbucket.trigger.log.count", 10L);
+    /**
+     * How often the polling logs kept in memory are written to disk. Defaults to 0 ms, which means never.
+     */
+    static final long FLUSH_INTERVAL = parsePositiveLongFromSystemProperty("bitbucket.trigger.log.flush.interval", 0L);
+    private static final Logger LOGGER = Logger.getLogger(BitbucketTriggerLogStore.class.getName());
+
+    private final boolean inMemory;
+    private final Map<Job<?, ?>, JobLog> logs = Collections.synchronizedMap(new WeakHashMap<>());
+    private final int maxEntries;
+
+    @Inject
+    public BitbucketTriggerLogStore() {
+        this(Boolean.getBoolean("bitbucket.trigger.log.memory"), (int) Math.min(Math.max(1L, LOG_COUNT), 1000L));
+    }
+
+    BitbucketTriggerLogStore(boolean inMemory, int maxEntries) {
+        this.inMemory = inMemory;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Keeps the log of a poll, dropping the oldest log of the job if it already has as many as are kept.
+     *
+     * @param job       the job that was polled
+     * @param timestamp when the poll started, in ms
+     * @param log       the output of the poll
+     */
+    public void add(Job<?, ?> job, long timestamp, String log) {
+        logs.computeIfAbsent(job, key -> new JobLog()).add(new Entry(timestamp, log), maxEntries);
+    }
+
+    /**
+     * Writes the logs of every job that was polled since the last flush to {@link #LOG_FILE_NAME} in its directory.
+     */
+    public void flush() {
+        List<Map.Entry<Job<?, ?>, JobLog>> jobLogs;
+        synchronized (logs) {
+            jobLogs = new ArrayList<>(logs.entrySet());
+        }
+        for (Map.Entry<Job<?, ?>, JobLog> jobLog : jobLogs) {
+            List<Entry> entries = jobLog.getValue().takeIfChanged();
+            if (entries.isEmpty()) {
+                continue;
+            }
+            File logFile = new File(jobLog.getKey().getRootDir(), LOG_FILE_NAME);
+            StringBuilder content = new StringBuilder();
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                content.append(entries.get(i).getLog());
+            }
+            try {
+                Files.write(logFile.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, format("Failed to write the polling log of job %s to %s",
+                        jobLog.getKey(), logFile.getPath()), e);
+            }
+        }
+    }
+
+    /**
+     * @param job the job
+     * @return the polling logs kept for the job, newest first
+     */
+    public List<Entry> getEntries(Job<?, ?> job) {
+        JobLog jobLog = logs.get(job);
+        return jobLog == null ? Collections.emptyList() : jobLog.getEntries();
+    }
+
+    /**
+     * @return {@code true} if polling logs are kept in memory, or {@code false} if each poll writes its log to disk
+     */
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    public static final class Entry {
+
+        private final String log;
+        private final long timestamp;
+
+        private Entry(long timestamp, String log) {
+            this.log = log;
+            this.timestamp = timestamp;
+        }
+
+        public String getLog() {
+            return log;
+        }
+
+        public Date getTimestamp() {
+            return new Date(timestamp);
+        }
+    }
+
+    @Extension
+    public static class FlushWork extends AsyncPeriodicWork {
+
+        @Inject
+        private BitbucketTriggerLogStore logStore;
+
+        public FlushWork() {
+            super("Bitbucket webhook trigger log flush");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            // The work is scheduled regardless, so it needs a period even if it is not going to do anything
+            return FLUSH_INTERVAL > 0 ? FLUSH_INTERVAL : TimeUnit.DAYS.toMillis(1);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            if (FLUSH_INTERVAL > 0 && logStore.isInMemory()) {
+                logStore.flush();
+            }
+        }
+    }
+
+    private static final class JobLog {
+
+        private final Deque<Entry> entries = new ArrayDeque<>();
+        private boolean changed;
+
+        private synchronized void add(Entry entry, int maxEntries) {
+            while (entries.size() >= maxEntries) {
+                entries.removeLast();
+            }
+            entries.addFirst(entry);
+            changed = true;
+        }
+
+        private synchronized List<Entry> getEntries() {
+            return new ArrayList<>(entries);
+        }
+
+        private synchronized List<Entry> takeIfChanged() {
+            if (!changed) {
+                return Collections.emptyList();
+            }
+            changed = false;
+            return new ArrayList<>(entries);
+        }
+    }
+}
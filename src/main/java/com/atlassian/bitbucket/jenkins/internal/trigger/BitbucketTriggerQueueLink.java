@@ -0,0 +1,61 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookTriggerImpl.BitbucketWebhookTriggerDescriptor;
+import com.atlassian.bitbucket.jenkins.internal.trigger.PriorityTriggerQueue.WaitStatistics;
+import hudson.Extension;
+import hudson.model.ManagementLink;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+
+/**
+ * Shows administrators how many jobs are waiting to be polled after a webhook, and how long the jobs of each
+ * {@link TriggerPriority priority} waited, so the {@link PriorityTriggerQueue#AGING_INTERVAL aging interval} and the
+ * priorities of jobs can be tuned.
+ */
+@Extension
+public class BitbucketTriggerQueueLink extends ManagementLink {
+
+    public static final String RELATIVE_PATH = "bbs-trigger-queue";
+
+    @Inject
+    private BitbucketWebhookTriggerDescriptor triggerDescriptor;
+
+    @SuppressWarnings("unused") // Stapler
+    public TriggerPriority[] getPriorities() {
+        return TriggerPriority.values();
+    }
+
+    @SuppressWarnings("unused") // Stapler
+    public int getWaitingCount() {
+        return triggerDescriptor.getQueue().getWaitingCount();
+    }
+
+    @SuppressWarnings("unused") // Stapler
+    public WaitStatistics getWaitStatistics(TriggerPriority priority) {
+        return triggerDescriptor.getQueue().getWaitStatistics(priority);
+    }
+
+    @CheckForNull
+    @Override
+    public String getIconFileName() {
+        return "clock.gif";
+    }
+
+    @CheckForNull
+    @Override
+    public String getDisplayName() {
+        return Messages.BitbucketTriggerQueueLink_displayname();
+    }
+
+    @CheckForNull
+    @Override
+    public String getUrlName() {
+        return RELATIVE_PATH;
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.BitbucketTriggerQueueLink_description();
+    }
+}
@@ -8,9 +8,11 @@ import hudson.util.StreamTaskListener;
 import jenkins.triggers.SCMTriggerItem;
 
 import javax.annotation.CheckForNull;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.util.*;
 import java.util.logging.Level;
@@ -23,6 +25,8 @@ public class BitbucketTriggerWorker implements Runnable {
     private final List<Action> actions = new ArrayList<>();
     @CheckForNull
     private final Job<?, ?> job;
+    @CheckForNull
+    private final BitbucketTriggerLogStore logStore;
     private final SCMTriggerItem triggerItem;
 
     public BitbucketTriggerWorker(
@@ -30,10 +34,24 @@ public class BitbucketTriggerWorker implements Runnable {
             SCMTriggerItem triggerItem,
             Action causeAction,
             List<Action> additionalActions) {
+        this(job, triggerItem, causeAction, additionalActions, null);
+    }
+
+    /**
+     * @param logStore keeps the polling log in memory if it is enabled to, or {@code null} to always write the log to
+     *                 the job directory
+     */
+    public BitbucketTriggerWorker(
+            @CheckForNull Job<?, ?> job,
+            SCMTriggerItem triggerItem,
+            Action causeAction,
+            List<Action> additionalActions,
+            @CheckForNull BitbucketTriggerLogStore logStore) {
         actions.add(causeAction);
         actions.addAll(additionalActions);
         this.triggerItem = triggerItem;
         this.job = job;
+        this.logStore = logStore;
     }
 
     @Override
@@ -58,22 +76,13 @@ public class BitbucketTriggerWorker implements Runnable {
         if (job == null) {
             return;
         }
-        File logFile = new File(job.getRootDir(), "bitbucket-webhook-trigger.log");
+        if (logStore != null && logStore.isInMemory()) {
+            runInMemory(logStore);
+            return;
+        }
+        File logFile = new File(job.getRootDir(), BitbucketTriggerLogStore.LOG_FILE_NAME);
         try (StreamTaskListener listener = new StreamTaskListener(logFile)) {
-
-            long start = System.currentTimeMillis();
-            PrintStream logger = listener.getLogger();
-            logger.println(
-                    "Starting polling: "
-                            + DateFormat.getDateTimeInstance().format(new Date(start)));
-
-            PollingResult result = triggerItem.poll(listener);
-            logger.println("Poll complete. Took " + Util.getTimeSpanString(System.currentTimeMillis() - start));
-
-            if (result.hasChanges()) {
-                logger.println("Changes since last build: " + result.change);
-                triggerItem.scheduleBuild2(0, actions.toArray(ACTION_ARRAY));
-            }
+            poll(listener, System.currentTimeMillis());
         } catch (IOException | RuntimeException e) {
             LOGGER.log(Level.SEVERE, String.format(
                     "Failed to trigger job %s because an error occurred while writing the polling log to %s",
@@ -95,5 +104,35 @@ public class BitbucketTriggerWorker implements Runnable {
     public SCMTriggerItem getTriggerItem() {
         return triggerItem;
     }
+
+    private void poll(StreamTaskListener listener, long start) {
+        PrintStream logger = listener.getLogger();
+        logger.println(
+                "Starting polling: "
+                        + DateFormat.getDateTimeInstance().format(new Date(start)));
+
+        PollingResult result = triggerItem.poll(listener);
+        logger.println("Poll complete. Took " + Util.getTimeSpanString(System.currentTimeMillis() - start));
+
+        if (result.hasChanges()) {
+            logger.println("Changes since last build: " + result.change);
+            triggerItem.scheduleBuild2(0, actions.toArray(ACTION_ARRAY));
+        }
+    }
+
+    private void runInMemory(BitbucketTriggerLogStore logStore) {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        StreamTaskListener listener = new StreamTaskListener(log, StandardCharsets.UTF_8);
+        long start = System.currentTimeMillis();
+        try {
+            poll(listener, start);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, String.format("Failed to trigger job %s", job), e);
+            e.printStackTrace(listener.error("Polling failed"));
+        } finally {
+            listener.getLogger().flush();
+            logStore.add(job, start, new String(log.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
 }
 
@@ -1,13 +1,30 @@
 package com.atlassian.bitbucket.jenkins.internal.trigger;
 
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketChange;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirrorServer;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPath;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChange;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefChangeType;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorCache;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketPullRequestSCMHead;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketPullRequestSCMRevision;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
+import com.cloudbees.plugins.credentials.Credentials;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import hudson.model.AbstractProject;
+import hudson.plugins.git.BranchSpec;
 import hudson.plugins.git.GitSCM;
 import hudson.scm.SCM;
 import hudson.security.ACL;
@@ -20,6 +37,7 @@ import jenkins.plugins.git.GitBranchSCMHead;
 import jenkins.plugins.git.GitBranchSCMRevision;
 import jenkins.scm.api.*;
 import jenkins.triggers.SCMTriggerItem;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
@@ -31,8 +49,12 @@ import java.util.*;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import static com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorSelector.isAutoMirrorName;
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
 import static java.lang.String.format;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static java.util.Collections.unmodifiableMap;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -41,9 +63,39 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 public class BitbucketWebhookConsumer {
 
     private static final Logger LOGGER = Logger.getLogger(BitbucketWebhookConsumer.class.getName());
+    /**
+     * The branches whose pushes get jobs polled with a {@link TriggerPriority#HIGH high} priority, as comma separated
+     * branch specifiers. Pushes of tags always get a high priority. Defaults to {@code master}.
+     */
+    private static final List<BranchSpec> PRIORITY_BRANCHES =
+            Arrays.stream(System.getProperty("bitbucket.trigger.priority.branches", "master").split(","))
+                    .map(String::trim)
+                    .filter(name -> !name.isEmpty())
+                    .map(BranchSpec::new)
+                    .collect(Collectors.toList());
+    private static final BranchSpecMatcher PRIORITY_BRANCH_MATCHER =
+            new BranchSpecMatcher(PRIORITY_BRANCHES, Collections.emptyList());
+    /**
+     * The most changed files listed for a push before every job is triggered as if all files had changed. Bitbucket
+     * returns up to 1000 files a page. Defaults to 5000.
+     */
+    private static final long MAX_CHANGED_PATHS =
+            parsePositiveLongFromSystemProperty("bitbucket.trigger.paths.max", 5000L);
 
+    @Inject
+    private BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
+    @Inject
+    private BitbucketMirrorCache bitbucketMirrorCache;
     @Inject
     private BitbucketPluginConfiguration bitbucketPluginConfiguration;
+    @Inject
+    private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
+    /**
+     * The branch specifiers of each job, compiled the first time the job matches the repository of an event. The jobs
+     * are weakly referenced, so deleted jobs are dropped.
+     */
+    private final Map<ParameterizedJobMixIn.ParameterizedJob<?, ?>, BranchSpecMatcher> branchSpecMatchers =
+            Collections.synchronizedMap(new WeakHashMap<>());
 
     void process(RefsChangedWebhookEvent event) {
         BitbucketRepository repository = event.getRepository();
@@ -58,6 +110,8 @@ public class BitbucketWebhookConsumer {
     void process(MirrorSynchronizedWebhookEvent event) {
         BitbucketRepository repository = event.getRepository();
         LOGGER.fine(format("Received Mirror Synchronized changed event from repo: %s/%s  ", repository.getProject().getKey(), repository.getSlug()));
+        event.getMirrorServer().ifPresent(mirrorServer ->
+                bitbucketMirrorCache.mirrorSynchronized(repository, mirrorServer.getName()));
         if (!isEligibleRefs(event)) {
             return;
         }
@@ -65,6 +119,22 @@ public class BitbucketWebhookConsumer {
         triggerJob(event, refChangedDetails);
     }
 
+    /**
+     * Pull requests only get jobs in multibranch projects, so the event only goes to the {@link SCMSource sources}.
+     * Only the pull request the event is about is rebuilt, the branches and other pull requests are left alone.
+     */
+    void process(PullRequestWebhookEvent event) {
+        BitbucketRepository repository = event.getPullRequest().getToRef().getRepository();
+        LOGGER.fine(format("Received pull request event %s from repo: %s/%s  ", event.getEventKey(),
+                repository.getProject().getKey(), repository.getSlug()));
+        SCMEvent.Type type =
+                BitbucketWebhookEvent.findByEventId(event.getEventKey()) == BitbucketWebhookEvent.PULL_REQUEST_OPENED ?
+                        SCMEvent.Type.CREATED : SCMEvent.Type.UPDATED;
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+            SCMHeadEvent.fireNow(new BitbucketPullRequestSCMHeadEvent(type, event, repository.getSlug()));
+        }
+    }
+
     private static Set<String> eligibleRefs(RefsChangedWebhookEvent event) {
         return event.getChanges()
                 .stream()
@@ -73,6 +143,14 @@ public class BitbucketWebhookConsumer {
                 .collect(Collectors.toSet());
     }
 
+    private static TriggerPriority priority(Set<String> refIds) {
+        if (refIds.stream().anyMatch(refId -> refId.startsWith(Constants.R_TAGS)) ||
+            (!PRIORITY_BRANCHES.isEmpty() && PRIORITY_BRANCH_MATCHER.matchesAny(refIds))) {
+            return TriggerPriority.HIGH;
+        }
+        return TriggerPriority.NORMAL;
+    }
+
     private static Optional<? extends SCM> getScmFromWorkflowJob(WorkflowJob job) {
         if (job.getDefinition() instanceof CpsScmFlowDefinition) {
             CpsScmFlowDefinition scmFlowDefinition = (CpsScmFlowDefinition) job.getDefinition();
@@ -109,9 +187,8 @@ public class BitbucketWebhookConsumer {
         });
     }
 
-    private static boolean matchingRepo(BitbucketRepository repository, BitbucketSCMRepository scmRepo) {
-        return scmRepo.getProjectKey().equalsIgnoreCase(repository.getProject().getKey()) &&
-               scmRepo.getRepositorySlug().equalsIgnoreCase(repository.getSlug());
+    private static String repositoryKey(BitbucketRepository repository) {
+        return BitbucketSCMRepository.toRepositoryKey(repository.getProject().getKey(), repository.getSlug());
     }
 
     private static Optional<TriggerDetails> toTriggerDetails(ParameterizedJobMixIn.ParameterizedJob<?, ?> job) {
@@ -133,6 +210,96 @@ public class BitbucketWebhookConsumer {
         return null;
     }
 
+    /**
+     * Lists the files changed by the pushed commits, so jobs can be skipped when none of the files they care about
+     * changed. The repository is looked up on the Bitbucket Server instance its self link points to.
+     *
+     * This runs while Bitbucket waits for the webhook to be answered, so at most {@link #MAX_CHANGED_PATHS} paths are
+     * listed. A push that changes more files than that is treated as changing every file.
+     *
+     * @return the paths of the changed files, or nothing if they could not be listed or there are too many, in which
+     *         case every job is triggered as if it had no path filter
+     */
+    private Optional<Set<String>> getChangedPaths(RefsChangedWebhookEvent event) {
+        BitbucketRepository repository = event.getRepository();
+        String selfLink = repository.getSelfLink();
+        if (isBlank(selfLink)) {
+            return empty();
+        }
+        Optional<BitbucketServerConfiguration> maybeServer = bitbucketPluginConfiguration.getValidServerList()
+                .stream()
+                .filter(server -> selfLink.startsWith(server.getBaseUrl()))
+                .findFirst();
+        if (!maybeServer.isPresent()) {
+            return empty();
+        }
+        BitbucketServerConfiguration server = maybeServer.get();
+        Set<String> changedPaths = new HashSet<>();
+        Credentials globalAdminCredentials =
+                server.getGlobalCredentialsProvider("Bitbucket webhook: list the changed files")
+                        .getGlobalAdminCredentials()
+                        .orElse(null);
+        try {
+            BitbucketRepositoryClient client = bitbucketClientFactoryProvider
+                    .getClient(server.getBaseUrl(),
+                            jenkinsToBitbucketCredentials.toBitbucketCredentials(globalAdminCredentials))
+                    .getProjectClient(repository.getProject().getKey())
+                    .getRepositoryClient(repository.getSlug());
+            for (BitbucketRefChange change : event.getChanges()) {
+                if (change.getType() == BitbucketRefChangeType.DELETE) {
+                    continue;
+                }
+                if (change.getType() != BitbucketRefChangeType.UPDATE) {
+                    // A new branch has no previous commit to compare with
+                    return empty();
+                }
+                // Pages are only fetched as they are iterated over, so a large push stops being listed at the limit
+                Iterator<BitbucketChange> pathChanges =
+                        client.getChanges(change.getFromHash(), change.getToHash()).iterator();
+                while (pathChanges.hasNext()) {
+                    BitbucketChange pathChange = pathChanges.next();
+                    changedPaths.add(pathChange.getPath().getPath());
+                    pathChange.getSrcPath().map(BitbucketPath::getPath).ifPresent(changedPaths::add);
+                    if (changedPaths.size() > MAX_CHANGED_PATHS) {
+                        LOGGER.fine(format("More than %d files changed in %s/%s, triggering all jobs",
+                                MAX_CHANGED_PATHS, repository.getProject().getKey(), repository.getSlug()));
+                        return empty();
+                    }
+                }
+            }
+        } catch (BitbucketClientException e) {
+            LOGGER.info(format("Could not list the files changed in %s/%s, triggering all jobs: %s",
+                    repository.getProject().getKey(), repository.getSlug(), e.getMessage()));
+            return empty();
+        }
+        return of(changedPaths);
+    }
+
+    /**
+     * Checks the pushed refs against the branches the job builds, so jobs that don't build any of them aren't polled.
+     * Only the SCM of a freestyle or other {@link AbstractProject} is the one its builds check out. The SCM of a
+     * pipeline is the one its Jenkinsfile is loaded from, and the pipeline may check out other branches, so pipelines
+     * are always polled.
+     */
+    private boolean hasMatchingBranch(RefChangedDetails refChangedDetails,
+                                      ParameterizedJobMixIn.ParameterizedJob<?, ?> job,
+                                      BitbucketSCM scm) {
+        if (!(job instanceof AbstractProject)) {
+            return true;
+        }
+        List<BranchSpec> branches = scm.getBranches();
+        BranchSpecMatcher matcher = branchSpecMatchers.get(job);
+        if (matcher == null || !matcher.isFor(branches)) {
+            matcher = new BranchSpecMatcher(branches, scm.getUserRemoteConfigs());
+            branchSpecMatchers.put(job, matcher);
+        }
+        if (matcher.matchesAny(refChangedDetails.getRefIds())) {
+            return true;
+        }
+        LOGGER.fine("Skipping " + job.getFullDisplayName() + " because it does not build any of the pushed refs");
+        return false;
+    }
+
     private boolean hasMatchingRepository(RefChangedDetails refChangedDetails,
                                           ParameterizedJobMixIn.ParameterizedJob<?, ?> job) {
         Collection<? extends SCM> scms = getScms(job);
@@ -140,7 +307,8 @@ public class BitbucketWebhookConsumer {
             if (scm instanceof GitSCM) {
                 return hasMatchingRepository(refChangedDetails, (GitSCM) scm);
             } else if (scm instanceof BitbucketSCM) {
-                return hasMatchingRepository(refChangedDetails, (BitbucketSCM) scm);
+                return hasMatchingRepository(refChangedDetails, (BitbucketSCM) scm) &&
+                       hasMatchingBranch(refChangedDetails, job, (BitbucketSCM) scm);
             }
         }
         return false;
@@ -148,7 +316,9 @@ public class BitbucketWebhookConsumer {
 
     private boolean hasMatchingRepository(RefChangedDetails refChangedDetails,
                                           BitbucketSCM scm) {
-        if (refChangedDetails.isMirrorSyncEvent() && !refChangedDetails.getMirrorName().equals(scm.getMirrorName())) {
+        // A job cloning from the nearest mirror may be using any of the mirrors
+        if (refChangedDetails.isMirrorSyncEvent() && !isAutoMirrorName(scm.getMirrorName()) &&
+            !refChangedDetails.getMirrorName().equals(scm.getMirrorName())) {
             return false;
         }
         return bitbucketPluginConfiguration.getServerById(scm.getServerId())
@@ -156,7 +326,8 @@ public class BitbucketWebhookConsumer {
                     String selfLink = refChangedDetails.getRepository().getSelfLink();
                     if (isBlank(selfLink) || selfLink.startsWith(serverConfig.getBaseUrl())) {
                         return scm.getRepositories().stream()
-                                .anyMatch(scmRepo -> matchingRepo(refChangedDetails.getRepository(), scmRepo));
+                                .anyMatch(scmRepo ->
+                                        refChangedDetails.getRepositoryKey().equals(scmRepo.getRepositoryKey()));
                     }
                     LOGGER.info(format("Base URL of incoming repository selflink - [%s] and bitbucket server configured URL - [%s] seems to be be different",
                             isBlank(selfLink) ? "unknown" : selfLink,
@@ -173,11 +344,25 @@ public class BitbucketWebhookConsumer {
         return true;
     }
 
+    private static boolean isTriggeredByChanges(TriggerDetails triggerDetails,
+                                                Supplier<Optional<Set<String>>> changedPaths) {
+        BitbucketWebhookTriggerImpl trigger = triggerDetails.getTrigger();
+        if (!trigger.hasPathFilter() || changedPaths.get().map(trigger::isTriggeredBy).orElse(true)) {
+            return true;
+        }
+        LOGGER.fine("Skipping " + triggerDetails.getJob().getFullDisplayName() +
+                    " because none of the files it builds have changed");
+        return false;
+    }
+
     private void triggerJob(RefsChangedWebhookEvent event,
                             RefChangedDetails refChangedDetails) {
         try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
-            BitbucketWebhookTriggerRequest.Builder requestBuilder = BitbucketWebhookTriggerRequest.builder();
+            BitbucketWebhookTriggerRequest.Builder requestBuilder = BitbucketWebhookTriggerRequest.builder()
+                    .priority(priority(refChangedDetails.getRefIds()));
             event.getActor().ifPresent(requestBuilder::actor);
+            // Only listed when a matching job has a path filter, and then only once for all of them
+            Supplier<Optional<Set<String>>> changedPaths = Suppliers.memoize(() -> getChangedPaths(event));
 
             Jenkins.get().getAllItems(ParameterizedJobMixIn.ParameterizedJob.class)
                     .stream()
@@ -185,6 +370,7 @@ public class BitbucketWebhookConsumer {
                     .filter(Optional::isPresent)
                     .map(Optional::get)
                     .filter(triggerDetails -> hasMatchingRepository(refChangedDetails, triggerDetails.getJob()))
+                    .filter(triggerDetails -> isTriggeredByChanges(triggerDetails, changedPaths))
                     .peek(triggerDetails -> LOGGER.fine("Triggering " + triggerDetails.getJob().getFullDisplayName()))
                     .forEach(triggerDetails -> triggerDetails.getTrigger().trigger(requestBuilder.build()));
             //fire the head event to indicate to the SCMSources that changes have happened.
@@ -192,10 +378,28 @@ public class BitbucketWebhookConsumer {
         }
     }
 
-    private static class BitbucketSCMHeadEvent extends SCMHeadEvent<RefsChangedWebhookEvent> {
+    /**
+     * The event is passed to every {@link SCMSource} in Jenkins, so everything that does not depend on the source is
+     * worked out once up front. Sources for other repositories are told apart by comparing repository keys, and the
+     * sources for the repository all get the same heads.
+     */
+    static final class BitbucketSCMHeadEvent extends SCMHeadEvent<RefsChangedWebhookEvent> {
+
+        private final Map<SCMHead, SCMRevision> heads;
+        private final String repositoryKey;
 
-        public BitbucketSCMHeadEvent(Type type, RefsChangedWebhookEvent payload, String origin) {
+        BitbucketSCMHeadEvent(Type type, RefsChangedWebhookEvent payload, String origin) {
             super(type, payload, origin);
+            heads = unmodifiableMap(payload.getChanges().stream()
+                    .collect(Collectors.toMap(change -> new GitBranchSCMHead(change.getRef().getDisplayId()),
+                            change -> new GitBranchSCMRevision(new GitBranchSCMHead(change.getRef().getDisplayId()),
+                                    change.getToHash()),
+                            (first, second) -> second)));
+            repositoryKey = repositoryKey(payload.getRepository());
+        }
+
+        String getRepositoryKey() {
+            return repositoryKey;
         }
 
         @Override
@@ -209,10 +413,10 @@ public class BitbucketWebhookConsumer {
                 return emptyMap();
             }
             BitbucketSCMSource src = (BitbucketSCMSource) source;
-            if (!matchingRepo(getPayload().getRepository(), src.getBitbucketSCMRepository())) {
+            if (!repositoryKey.equals(src.getBitbucketSCMRepository().getRepositoryKey())) {
                 return emptyMap();
             }
-            return getPayload().getChanges().stream().collect(Collectors.toMap(change -> new GitBranchSCMHead(change.getRef().getDisplayId()), change -> new GitBranchSCMRevision(new GitBranchSCMHead(change.getRef().getDisplayId()), change.getToHash())));
+            return heads;
         }
 
         @Override
@@ -226,23 +430,70 @@ public class BitbucketWebhookConsumer {
         }
     }
 
+    static final class BitbucketPullRequestSCMHeadEvent extends SCMHeadEvent<PullRequestWebhookEvent> {
+
+        private final Map<SCMHead, SCMRevision> heads;
+        private final String repositoryKey;
+
+        BitbucketPullRequestSCMHeadEvent(Type type, PullRequestWebhookEvent payload, String origin) {
+            super(type, payload, origin);
+            BitbucketPullRequest pullRequest = payload.getPullRequest();
+            BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest);
+            heads = singletonMap(head, new BitbucketPullRequestSCMRevision(head, pullRequest));
+            repositoryKey = repositoryKey(pullRequest.getToRef().getRepository());
+        }
+
+        @Override
+        public String getSourceName() {
+            return getPayload().getPullRequest().getToRef().getRepository().getName();
+        }
+
+        @Override
+        public Map<SCMHead, SCMRevision> heads(SCMSource source) {
+            if (!(source instanceof BitbucketSCMSource)) {
+                return emptyMap();
+            }
+            BitbucketSCMSource src = (BitbucketSCMSource) source;
+            if (!repositoryKey.equals(src.getBitbucketSCMRepository().getRepositoryKey())) {
+                return emptyMap();
+            }
+            return heads;
+        }
+
+        @Override
+        public boolean isMatch(SCMNavigator navigator) {
+            return false;
+        }
+
+        @Override
+        public boolean isMatch(SCM scm) {
+            return false;
+        }
+    }
+
     private static final class RefChangedDetails {
 
         private final Set<String> cloneLinks;
         private final boolean isMirrorSyncEvent;
         private final String mirrorName;
+        private final Set<String> refIds;
         private final BitbucketRepository repository;
+        private final String repositoryKey;
 
         private RefChangedDetails(RefsChangedWebhookEvent event) {
             this.cloneLinks = cloneLinks(event);
+            this.refIds = eligibleRefs(event);
             this.repository = event.getRepository();
+            this.repositoryKey = repositoryKey(repository);
             this.mirrorName = "";
             this.isMirrorSyncEvent = false;
         }
 
         private RefChangedDetails(MirrorSynchronizedWebhookEvent event) {
             this.cloneLinks = cloneLinks(event);
+            this.refIds = eligibleRefs(event);
             this.repository = event.getRepository();
+            this.repositoryKey = repositoryKey(repository);
             this.mirrorName = event.getMirrorServer().map(BitbucketMirrorServer::getName).orElse("");
             this.isMirrorSyncEvent = true;
         }
@@ -255,10 +506,18 @@ public class BitbucketWebhookConsumer {
             return mirrorName;
         }
 
+        public Set<String> getRefIds() {
+            return refIds;
+        }
+
         public BitbucketRepository getRepository() {
             return repository;
         }
 
+        public String getRepositoryKey() {
+            return repositoryKey;
+        }
+
         public boolean isMirrorSyncEvent() {
             return isMirrorSyncEvent;
         }
@@ -275,9 +534,9 @@ public class BitbucketWebhookConsumer {
     private static final class TriggerDetails {
 
         private final ParameterizedJobMixIn.ParameterizedJob<?, ?> job;
-        private final BitbucketWebhookTrigger trigger;
+        private final BitbucketWebhookTriggerImpl trigger;
 
-        private TriggerDetails(ParameterizedJobMixIn.ParameterizedJob<?, ?> job, BitbucketWebhookTrigger trigger) {
+        private TriggerDetails(ParameterizedJobMixIn.ParameterizedJob<?, ?> job, BitbucketWebhookTriggerImpl trigger) {
             this.job = job;
             this.trigger = trigger;
         }
@@ -286,7 +545,7 @@ public class BitbucketWebhookConsumer {
             return job;
         }
 
-        public BitbucketWebhookTrigger getTrigger() {
+        public BitbucketWebhookTriggerImpl getTrigger() {
             return trigger;
         }
     }
@@ -43,6 +43,9 @@ public class BitbucketWebhookEndpoint implements UnprotectedRootAction {
                 return processRefChangedEvent(request);
             case MIRROR_SYNCHRONIZED_EVENT:
                 return processMirrorSynchronizedEvent(request);
+            case PULL_REQUEST_OPENED:
+            case PULL_REQUEST_FROM_REF_UPDATED:
+                return processPullRequestEvent(request);
             default:
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 return HttpResponses.errorJSON("Event is not supported: " + eventKey);
@@ -94,6 +97,12 @@ public class BitbucketWebhookEndpoint implements UnprotectedRootAction {
         return org.kohsuke.stapler.HttpResponses.ok();
     }
 
+    private HttpResponse processPullRequestEvent(StaplerRequest request) {
+        PullRequestWebhookEvent event = parse(request, PullRequestWebhookEvent.class);
+        webhookConsumer.process(event);
+        return org.kohsuke.stapler.HttpResponses.ok();
+    }
+
     private HttpResponse processRefChangedEvent(StaplerRequest request) {
         RefsChangedWebhookEvent event = parse(request, RefsChangedWebhookEvent.class);
         webhookConsumer.process(event);
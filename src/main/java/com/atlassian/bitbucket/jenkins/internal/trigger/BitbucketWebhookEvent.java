@@ -5,6 +5,8 @@ public enum BitbucketWebhookEvent {
     REPO_REF_CHANGE("repo:refs_changed"),
     MIRROR_SYNCHRONIZED_EVENT("mirror:repo_synchronized"),
     DIAGNOSTICS_PING_EVENT("diagnostics:ping"),
+    PULL_REQUEST_OPENED("pr:opened"),
+    PULL_REQUEST_FROM_REF_UPDATED("pr:from_ref_updated"),
     UNSUPPORTED("");
 
     private final String eventId;
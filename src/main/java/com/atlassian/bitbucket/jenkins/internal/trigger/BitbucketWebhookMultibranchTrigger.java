@@ -4,6 +4,7 @@ import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClient
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketPullRequestDiscoveryTrait;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
 import com.google.common.annotations.VisibleForTesting;
@@ -67,7 +68,8 @@ public class BitbucketWebhookMultibranchTrigger extends Trigger<MultiBranchProje
 
         public boolean addTrigger(Item item, BitbucketSCMSource scm) {
             try {
-                registerWebhook(item, scm.getBitbucketSCMRepository());
+                registerWebhook(item, scm.getBitbucketSCMRepository(), scm.getTraits().stream()
+                        .anyMatch(BitbucketPullRequestDiscoveryTrait.class::isInstance));
                 return true;
             } catch (Exception ex) {
                 LOGGER.log(Level.SEVERE, "There was a problem while trying to add webhook", ex);
@@ -82,14 +84,15 @@ public class BitbucketWebhookMultibranchTrigger extends Trigger<MultiBranchProje
                             "Server config not found for input server id " + serverId));
         }
 
-        private void registerWebhook(Item item, BitbucketSCMRepository repository) {
+        private void registerWebhook(Item item, BitbucketSCMRepository repository, boolean pullRequests) {
             requireNonNull(repository.getServerId());
             BitbucketServerConfiguration bitbucketServerConfiguration = getServer(repository.getServerId());
 
             BitbucketWebhook webhook = retryingWebhookHandler.register(
                     bitbucketServerConfiguration.getBaseUrl(),
                     bitbucketServerConfiguration.getGlobalCredentialsProvider(item),
-                    repository);
+                    repository,
+                    pullRequests);
             LOGGER.info("Webhook returned - " + webhook);
         }
     }
@@ -18,40 +18,129 @@ import hudson.security.ACL;
 import hudson.security.ACLContext;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
+import hudson.util.ListBoxModel;
 import hudson.util.NamingThreadFactory;
-import hudson.util.SequentialExecutionQueue;
 import jenkins.model.ParameterizedJobMixIn;
 import jenkins.triggers.SCMTriggerItem;
 import net.sf.json.JSONObject;
 import org.jenkinsci.Symbol;
 import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.io.File;
+import java.time.Clock;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
 import static jenkins.triggers.SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem;
-import static org.apache.commons.lang3.StringUtils.isEmpty;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.stripToNull;
 
 public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
         implements BitbucketWebhookTrigger {
 
     private static final Logger LOGGER = Logger.getLogger(BitbucketWebhookTriggerImpl.class.getName());
 
+    private String excludedPaths;
+    private String includedPaths;
+    private TriggerPriority priority;
+    private transient volatile List<String> excludedPatterns;
+    private transient volatile List<String> includedPatterns;
+
     @SuppressWarnings("RedundantNoArgConstructor") // Required for Stapler
     @DataBoundConstructor
     public BitbucketWebhookTriggerImpl() {
     }
 
+    @CheckForNull
+    public String getExcludedPaths() {
+        return excludedPaths;
+    }
+
+    @DataBoundSetter
+    public void setExcludedPaths(@CheckForNull String excludedPaths) {
+        this.excludedPaths = stripToNull(excludedPaths);
+        excludedPatterns = null;
+    }
+
+    @CheckForNull
+    public String getIncludedPaths() {
+        return includedPaths;
+    }
+
+    @DataBoundSetter
+    public void setIncludedPaths(@CheckForNull String includedPaths) {
+        this.includedPaths = stripToNull(includedPaths);
+        includedPatterns = null;
+    }
+
+    /**
+     * @return the name of the {@link TriggerPriority priority} the job is always polled with, or {@code null} if it is
+     *         worked out from the changed refs
+     */
+    @CheckForNull
+    public String getPriority() {
+        return priority == null ? null : priority.name();
+    }
+
+    @DataBoundSetter
+    public void setPriority(@CheckForNull String priority) {
+        this.priority = isBlank(priority) ? null : TriggerPriority.valueOf(priority);
+    }
+
+    /**
+     * @return {@code true} if the job is only triggered when some of the files it cares about have changed
+     */
+    public boolean hasPathFilter() {
+        return !isBlank(includedPaths) || !isBlank(excludedPaths);
+    }
+
+    /**
+     * Tells whether changes to the given files should trigger the job. A file counts if it matches one of the included
+     * patterns, or there are none, and matches none of the excluded patterns. Patterns are Ant-style, such as
+     * {@code src/main/**} or {@code docs/*.md}, and are matched against paths relative to the root of the repository.
+     * Patterns are separated by commas or new lines.
+     *
+     * @param changedPaths the paths of the changed files
+     * @return {@code true} if any of the files counts
+     */
+    public boolean isTriggeredBy(Collection<String> changedPaths) {
+        if (!hasPathFilter()) {
+            return true;
+        }
+        List<String> included = includedPatterns;
+        if (included == null) {
+            includedPatterns = included = toPatterns(includedPaths);
+        }
+        List<String> excluded = excludedPatterns;
+        if (excluded == null) {
+            excludedPatterns = excluded = toPatterns(excludedPaths);
+        }
+        for (String changedPath : changedPaths) {
+            String path = toPlatformPath(changedPath);
+            if ((included.isEmpty() || matchesAny(included, path)) && !matchesAny(excluded, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public BitbucketWebhookTriggerDescriptor getDescriptor() {
         return (BitbucketWebhookTriggerDescriptor) super.getDescriptor();
@@ -61,7 +150,8 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
     public void trigger(BitbucketWebhookTriggerRequest triggerRequest) {
         SCMTriggerItem triggerItem = asSCMTriggerItem(job);
         if (triggerItem != null) {
-            getDescriptor().schedule(job, triggerItem, triggerRequest);
+            getDescriptor().schedule(job, triggerItem,
+                    priority == null ? triggerRequest : triggerRequest.withPriority(priority));
         }
     }
 
@@ -96,6 +186,30 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
         }
     }
 
+    private static boolean matchesAny(List<String> patterns, String path) {
+        return patterns.stream().anyMatch(pattern -> SelectorUtils.matchPath(pattern, path));
+    }
+
+    private static List<String> toPatterns(@CheckForNull String paths) {
+        if (isBlank(paths)) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(paths.split("[,\\r\\n]+"))
+                .map(String::trim)
+                .filter(pattern -> !pattern.isEmpty())
+                // A directory matches everything in it, like it does for the Ant file sets
+                .map(pattern -> pattern.endsWith("/") ? pattern + "**" : pattern)
+                .map(BitbucketWebhookTriggerImpl::toPlatformPath)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Ant splits paths on the separator of the platform, while Bitbucket always separates them with {@code /}.
+     */
+    private static String toPlatformPath(String path) {
+        return path.replace('/', File.separatorChar);
+    }
+
     private boolean checkTriggerExists(BitbucketWebhookTriggerDescriptor descriptor,
                                        BitbucketSCM scm) {
         boolean isExists = descriptor.webhookExists(job, scm);
@@ -158,16 +272,18 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
         @Inject
         private BitbucketPluginConfiguration bitbucketPluginConfiguration;
         private transient JenkinsProvider jenkinsProvider;
+        @Inject
+        private BitbucketTriggerLogStore logStore;
 
         @SuppressWarnings("TransientFieldInNonSerializableClass")
-        private final transient SequentialExecutionQueue queue;
+        private final transient PriorityTriggerQueue queue;
 
         @SuppressWarnings("unused")
         public BitbucketWebhookTriggerDescriptor() {
-            this.queue = createSequentialQueue();
+            this.queue = createPriorityQueue();
         }
 
-        public BitbucketWebhookTriggerDescriptor(SequentialExecutionQueue queue,
+        public BitbucketWebhookTriggerDescriptor(PriorityTriggerQueue queue,
                                                  RetryingWebhookHandler webhookHandler,
                                                  JenkinsProvider jenkinsProvider,
                                                  BitbucketPluginConfiguration bitbucketPluginConfiguration) {
@@ -192,6 +308,22 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
             return super.newInstance(req, formData);
         }
 
+        public ListBoxModel doFillPriorityItems() {
+            ListBoxModel options = new ListBoxModel();
+            options.add(Messages.BitbucketWebhookTrigger_priority_automatic(), "");
+            for (TriggerPriority priority : TriggerPriority.values()) {
+                options.add(priority.getDisplayName(), priority.name());
+            }
+            return options;
+        }
+
+        /**
+         * @return the queue of jobs waiting to be polled, for its statistics
+         */
+        public PriorityTriggerQueue getQueue() {
+            return queue;
+        }
+
         @Inject
         public void setJenkinsProvider(JenkinsProvider jenkinsProvider) {
             this.jenkinsProvider = jenkinsProvider;
@@ -202,7 +334,8 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
                 SCMTriggerItem triggerItem,
                 BitbucketWebhookTriggerRequest triggerRequest) {
             CauseAction causeAction = new CauseAction(new BitbucketWebhookTriggerCause(triggerRequest));
-            queue.execute(new BitbucketTriggerWorker(job, triggerItem, causeAction, triggerRequest.getAdditionalActions()));
+            queue.execute(new BitbucketTriggerWorker(job, triggerItem, causeAction,
+                    triggerRequest.getAdditionalActions(), logStore), triggerRequest.getPriority());
         }
 
         private boolean addTrigger(Item item, BitbucketSCM scm) {
@@ -215,11 +348,13 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
             }
         }
 
-        private static SequentialExecutionQueue createSequentialQueue() {
-            return new SequentialExecutionQueue(
+        private static PriorityTriggerQueue createPriorityQueue() {
+            return new PriorityTriggerQueue(
                     Executors.newFixedThreadPool(
                             MAX_THREADS,
-                            new NamingThreadFactory(Executors.defaultThreadFactory(), "BitbucketWebhookTrigger")));
+                            new NamingThreadFactory(Executors.defaultThreadFactory(), "BitbucketWebhookTrigger")),
+                    MAX_THREADS,
+                    Clock.systemUTC());
         }
 
         private void registerWebhook(Item item, BitbucketSCMRepository repository) {
@@ -266,11 +401,11 @@ public class BitbucketWebhookTriggerImpl extends Trigger<Job<?, ?>>
                    scm.getRepositories().stream().allMatch(r -> r.getServerId().equals(repository.getServerId()) &&
                                                                 r.getProjectKey().equals(repository.getProjectKey()) &&
                                                                 r.getRepositorySlug().equals(repository.getRepositorySlug()) &&
-                                                                !isMirrorConfigurationDifferent(r));
+                                                                !isMirrorConfigurationDifferent(r, repository));
         }
 
-        private boolean isMirrorConfigurationDifferent(BitbucketSCMRepository r) {
-            return isEmpty(r.getMirrorName()) ^ isEmpty(r.getMirrorName());
+        private boolean isMirrorConfigurationDifferent(BitbucketSCMRepository r, BitbucketSCMRepository other) {
+            return r.isMirrorConfigured() != other.isMirrorConfigured() || r.isAutoMirror() != other.isAutoMirror();
         }
 
         private BitbucketServerConfiguration getServer(String serverId) {
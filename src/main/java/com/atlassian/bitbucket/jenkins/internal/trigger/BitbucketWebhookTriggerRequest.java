@@ -12,10 +12,12 @@ public final class BitbucketWebhookTriggerRequest {
 
     private final BitbucketUser actor;
     private final List<Action> additionalActions;
+    private final TriggerPriority priority;
 
     private BitbucketWebhookTriggerRequest(Builder builder) {
         actor = builder.actor;
         additionalActions = builder.additionalActions;
+        priority = builder.priority;
     }
 
     public static Builder builder() {
@@ -31,7 +33,8 @@ public final class BitbucketWebhookTriggerRequest {
             return false;
         }
         BitbucketWebhookTriggerRequest that = (BitbucketWebhookTriggerRequest) o;
-        return Objects.equals(actor, that.actor) && Objects.equals(additionalActions, that.additionalActions);
+        return Objects.equals(actor, that.actor) && Objects.equals(additionalActions, that.additionalActions) &&
+               priority == that.priority;
     }
 
     public Optional<BitbucketUser> getActor() {
@@ -42,15 +45,35 @@ public final class BitbucketWebhookTriggerRequest {
         return additionalActions;
     }
 
+    /**
+     * @return how urgently the job should be polled, worked out from the refs that were changed
+     */
+    public TriggerPriority getPriority() {
+        return priority;
+    }
+
     @Override
     public int hashCode() {
-        return Objects.hash(actor, additionalActions);
+        return Objects.hash(actor, additionalActions, priority);
+    }
+
+    /**
+     * @param value the priority of the job
+     * @return a copy of this request with the given priority
+     */
+    public BitbucketWebhookTriggerRequest withPriority(TriggerPriority value) {
+        return builder()
+                .actor(actor)
+                .additionalActions(additionalActions.toArray(new Action[0]))
+                .priority(value)
+                .build();
     }
 
     public static final class Builder {
 
         private final List<Action> additionalActions = new ArrayList<>();
         private BitbucketUser actor;
+        private TriggerPriority priority = TriggerPriority.NORMAL;
 
         public Builder actor(@Nullable BitbucketUser value) {
             actor = value;
@@ -62,6 +85,11 @@ public final class BitbucketWebhookTriggerRequest {
             return this;
         }
 
+        public Builder priority(TriggerPriority value) {
+            priority = value;
+            return this;
+        }
+
         public BitbucketWebhookTriggerRequest build() {
             return new BitbucketWebhookTriggerRequest(this);
         }
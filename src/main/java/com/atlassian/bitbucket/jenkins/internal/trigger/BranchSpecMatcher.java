@@ -0,0 +1,103 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.UserRemoteConfig;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Tells whether a pushed ref is one of the branches a job builds, without polling the repository. The branch
+ * specifiers are compiled once, following the same rules as {@link BranchSpec}, and a ref matches if any of them
+ * matches the ref itself (such as {@code refs/heads/master}) or the remote tracking branch it is fetched into (such as
+ * {@code repo/master}).
+ * <p>
+ * Specifiers that use variables can only be expanded when the job is polled or built, so a job with any of them
+ * matches every ref.
+ */
+final class BranchSpecMatcher {
+
+    private static final String BRANCH_PREFIX = "refs/heads/";
+
+    private final List<BranchSpec> branches;
+    private final boolean matchesAll;
+    private final List<Pattern> patterns;
+    private final List<String> remoteNames;
+
+    BranchSpecMatcher(List<BranchSpec> branches, List<UserRemoteConfig> remoteConfigs) {
+        this.branches = branches;
+        matchesAll = branches.isEmpty() || branches.stream().anyMatch(branch -> branch.getName().contains("$"));
+        patterns = matchesAll ? Collections.<Pattern>emptyList() : branches.stream()
+                .map(branch -> toPattern(branch.getName().trim()))
+                .collect(Collectors.toList());
+        remoteNames = remoteConfigs.stream()
+                .map(UserRemoteConfig::getName)
+                .filter(name -> name != null && !name.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param branches the branch specifiers of the job now
+     * @return {@code true} if this was compiled from the given specifiers, and can still be used for the job
+     */
+    boolean isFor(List<BranchSpec> branches) {
+        return this.branches == branches;
+    }
+
+    /**
+     * @param refIds the IDs of the pushed refs, such as {@code refs/heads/master}
+     * @return {@code true} if any of the refs is built by the job
+     */
+    boolean matchesAny(Collection<String> refIds) {
+        return matchesAll || refIds.stream().anyMatch(this::matches);
+    }
+
+    private boolean matches(String refId) {
+        if (patterns.stream().anyMatch(pattern -> pattern.matcher(refId).matches())) {
+            return true;
+        }
+        if (!refId.startsWith(BRANCH_PREFIX)) {
+            return false;
+        }
+        String branchName = refId.substring(BRANCH_PREFIX.length());
+        return remoteNames.stream().anyMatch(remoteName -> {
+            String trackingBranch = remoteName + '/' + branchName;
+            return patterns.stream().anyMatch(pattern -> pattern.matcher(trackingBranch).matches());
+        });
+    }
+
+    private static Pattern toPattern(String name) {
+        if (name.startsWith(":")) {
+            return Pattern.compile(name.substring(1));
+        }
+        StringBuilder regex = new StringBuilder("(refs/heads/");
+        // An unqualified branch name matches the branch in any remote, like it does for BranchSpec
+        if (!name.contains("**") && !name.contains("/")) {
+            regex.append("|refs/remotes/[^/]+/|remotes/[^/]+/|[^/]+/");
+        } else {
+            regex.append("|refs/remotes/|remotes/");
+        }
+        regex.append(")?");
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '*') {
+                if (i + 1 < name.length() && name.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (Character.isLetterOrDigit(c) || c == '/' || c == '-' || c == '_') {
+                regex.append(c);
+            } else {
+                regex.append('\\').append(c);
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,216 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.atlassian.bitbucket.jenkins.internal.util.SystemPropertyUtils.parsePositiveLongFromSystemProperty;
+import static java.lang.String.format;
+import static java.util.logging.Level.FINE;
+
+/**
+ * Runs the webhook trigger work like {@link hudson.util.SequentialExecutionQueue}, but in order of
+ * {@link TriggerPriority priority} instead of in the order it was queued. Work that is equal to work already waiting is
+ * dropped, keeping the higher of the two priorities, and work that is equal to work already running is run again once
+ * that finishes, so a job is never polled twice at the same time.
+ * <p>
+ * Each class of priority below {@link TriggerPriority#HIGH} counts as having waited {@link #AGING_INTERVAL} ms less,
+ * so the work is ordered by the time it was queued plus its handicap. This is equivalent to work gaining priority as it
+ * waits, but does not need the waiting work to be reordered, and guarantees that no work waits more than the aging
+ * interval for each class it is below the work queued after it.
+ */
+public class PriorityTriggerQueue {
+
+    /**
+     * How long waiting work takes to catch up one class of priority. Defaults to 1 minute in ms.
+     */
+    static final long AGING_INTERVAL =
+            parsePositiveLongFromSystemProperty("bitbucket.trigger.priority.aging", TimeUnit.MINUTES.toMillis(1));
+    private static final Logger LOGGER = Logger.getLogger(PriorityTriggerQueue.class.getName());
+
+    private final long agingInterval;
+    private final Clock clock;
+    private final Map<Runnable, QueueEntry> entries = new HashMap<>();
+    private final Executor executor;
+    private final int maxRunning;
+    private final PriorityQueue<QueueEntry> waiting = new PriorityQueue<>(
+            Comparator.comparingLong((QueueEntry entry) -> entry.deadline).thenComparingLong(entry -> entry.sequence));
+    private final Map<TriggerPriority, WaitStatistics> waitStatistics = new EnumMap<>(TriggerPriority.class);
+    private int running;
+    private long sequence;
+
+    public PriorityTriggerQueue(Executor executor, int maxRunning, Clock clock) {
+        this(executor, maxRunning, clock, AGING_INTERVAL);
+    }
+
+    PriorityTriggerQueue(Executor executor, int maxRunning, Clock clock, long agingInterval) {
+        this.agingInterval = agingInterval;
+        this.clock = clock;
+        this.executor = executor;
+        this.maxRunning = maxRunning;
+        for (TriggerPriority priority : TriggerPriority.values()) {
+            waitStatistics.put(priority, new WaitStatistics());
+        }
+    }
+
+    /**
+     * Queues the work, unless equal work is already waiting.
+     *
+     * @param task     the work to run
+     * @param priority the priority of the work
+     */
+    public void execute(Runnable task, TriggerPriority priority) {
+        List<QueueEntry> ready;
+        synchronized (this) {
+            long now = clock.millis();
+            QueueEntry entry = entries.get(task);
+            if (entry == null) {
+                entry = new QueueEntry(task, priority, now);
+                entries.put(task, entry);
+                enqueue(entry);
+            } else if (entry.running) {
+                // Run it again once it is done, as the running work may have missed the changes
+                if (entry.next == null) {
+                    entry.next = new QueueEntry(task, priority, now);
+                } else if (priority.isHigherThan(entry.next.priority)) {
+                    entry.next.priority = priority;
+                }
+            } else if (priority.isHigherThan(entry.priority)) {
+                waiting.remove(entry);
+                entry.priority = priority;
+                enqueue(entry);
+            }
+            ready = takeReady(now);
+        }
+        ready.forEach(this::submit);
+    }
+
+    /**
+     * @return the number of items of work waiting to be run
+     */
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * @param priority the class of priority
+     * @return how long the work of the given priority waited before it was run
+     */
+    public WaitStatistics getWaitStatistics(TriggerPriority priority) {
+        return waitStatistics.get(priority);
+    }
+
+    private void enqueue(QueueEntry entry) {
+        entry.deadline = entry.queuedAt + entry.priority.ordinal() * agingInterval;
+        entry.sequence = sequence++;
+        waiting.add(entry);
+    }
+
+    private void run(QueueEntry entry) {
+        try {
+            entry.task.run();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to run the webhook trigger for " + entry.task, e);
+        } finally {
+            List<QueueEntry> ready;
+            synchronized (this) {
+                running--;
+                if (entry.next == null) {
+                    entries.remove(entry.task);
+                } else {
+                    QueueEntry next = entry.next;
+                    entries.put(next.task, next);
+                    enqueue(next);
+                }
+                ready = takeReady(clock.millis());
+            }
+            ready.forEach(this::submit);
+        }
+    }
+
+    private void submit(QueueEntry entry) {
+        executor.execute(() -> run(entry));
+    }
+
+    private List<QueueEntry> takeReady(long now) {
+        List<QueueEntry> ready = new ArrayList<>();
+        while (running < maxRunning && !waiting.isEmpty()) {
+            QueueEntry entry = waiting.poll();
+            entry.running = true;
+            running++;
+            long waited = now - entry.queuedAt;
+            waitStatistics.get(entry.priority).record(waited);
+            if (LOGGER.isLoggable(FINE)) {
+                LOGGER.fine(format("Running the webhook trigger for %s with %s priority after %d ms, %d waiting",
+                        entry.task, entry.priority, waited, waiting.size()));
+            }
+            ready.add(entry);
+        }
+        return ready;
+    }
+
+    /**
+     * How long the work of one class of priority waited before it was run, since Jenkins started.
+     */
+    public static final class WaitStatistics {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong maxMillis = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+
+        /**
+         * @return the number of items of work run
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return the average time waited, in ms, or 0 if nothing was run
+         */
+        public long getAverageMillis() {
+            long n = count.get();
+            return n == 0 ? 0 : totalMillis.get() / n;
+        }
+
+        /**
+         * @return the longest time waited, in ms
+         */
+        public long getMaxMillis() {
+            return maxMillis.get();
+        }
+
+        private void record(long waitedMillis) {
+            count.incrementAndGet();
+            totalMillis.addAndGet(waitedMillis);
+            maxMillis.accumulateAndGet(waitedMillis, Math::max);
+        }
+    }
+
+    private static final class QueueEntry {
+
+        private final long queuedAt;
+        private final Runnable task;
+        private long deadline;
+        private QueueEntry next;
+        private TriggerPriority priority;
+        private boolean running;
+        private long sequence;
+
+        private QueueEntry(Runnable task, TriggerPriority priority, long queuedAt) {
+            this.priority = priority;
+            this.queuedAt = queuedAt;
+            this.task = task;
+        }
+    }
+}
@@ -53,6 +53,24 @@ public class RetryingWebhookHandler {
     public BitbucketWebhook register(String bitbucketBaseUrl,
                                      GlobalCredentialsProvider globalCredentialsProvider,
                                      BitbucketSCMRepository repository) {
+        return register(bitbucketBaseUrl, globalCredentialsProvider, repository, false);
+    }
+
+    /**
+     * Registers the webhooks of a repository.
+     *
+     * @param bitbucketBaseUrl          the base URL of the Bitbucket Server instance
+     * @param globalCredentialsProvider provides the global credentials to retry with
+     * @param repository                the repository
+     * @param pullRequests              whether pull requests are discovered, in which case a webhook for the pull
+     *                                  request events is registered as well. Pull requests aren't discovered from
+     *                                  mirrors, so this is ignored for them.
+     * @return the webhook for the ref changes
+     */
+    public BitbucketWebhook register(String bitbucketBaseUrl,
+                                     GlobalCredentialsProvider globalCredentialsProvider,
+                                     BitbucketSCMRepository repository,
+                                     boolean pullRequests) {
         if (isBlank(bitbucketBaseUrl)) {
             throw new IllegalArgumentException("Invalid Bitbucket base URL. Input - " + bitbucketBaseUrl);
         }
@@ -69,7 +87,28 @@ public class RetryingWebhookHandler {
                 .build();
         String jobCredentials = repository.getCredentialsId();
         try {
-            return registerWithRetry(bitbucketBaseUrl, globalCredentialsProvider, jobCredentials, request);
+            BitbucketWebhook webhook =
+                    registerWithRetry(bitbucketBaseUrl, globalCredentialsProvider, jobCredentials, request);
+            if (repository.isAutoMirror()) {
+                // The nearest mirror can be any of them, so the job also needs to hear when a mirror has synchronized
+                registerWithRetry(bitbucketBaseUrl, globalCredentialsProvider, jobCredentials,
+                        WebhookRegisterRequest.Builder
+                                .aRequest(repository.getProjectKey(), repository.getRepositorySlug())
+                                .withJenkinsBaseUrl(jenkinsUrl)
+                                .isMirror(true)
+                                .withName(request.getName())
+                                .build());
+            }
+            if (pullRequests && !repository.isMirrorConfigured() && !repository.isAutoMirror()) {
+                registerWithRetry(bitbucketBaseUrl, globalCredentialsProvider, jobCredentials,
+                        WebhookRegisterRequest.Builder
+                                .aRequest(repository.getProjectKey(), repository.getRepositorySlug())
+                                .withJenkinsBaseUrl(jenkinsUrl)
+                                .isPullRequests(true)
+                                .withName(request.getName())
+                                .build());
+            }
+            return webhook;
         } catch (Exception ex) {
             String message =
                     "Failed to register webhook in bitbucket server with url " + bitbucketBaseUrl;
@@ -0,0 +1,32 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+/**
+ * How urgently a job should be polled after a webhook, compared to the other jobs waiting to be polled. Jobs are polled
+ * in order of priority, but a job waiting longer than the {@link PriorityTriggerQueue#AGING_INTERVAL aging interval}
+ * for each class it is below another job goes first, so that jobs with a low priority are still polled when there are
+ * always jobs with a higher one waiting.
+ */
+public enum TriggerPriority {
+
+    HIGH("High"),
+    NORMAL("Normal"),
+    LOW("Low");
+
+    private final String displayName;
+
+    TriggerPriority(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @param other the priority to compare with
+     * @return {@code true} if this priority is more urgent than the other one
+     */
+    public boolean isHigherThan(TriggerPriority other) {
+        return ordinal() < other.ordinal();
+    }
+}
@@ -10,6 +10,7 @@ import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhookSupportedE
 import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent;
 
 import javax.annotation.Nullable;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -17,13 +18,17 @@ import java.util.logging.Logger;
 
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEndpoint.BIBUCKET_WEBHOOK_URL;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.MIRROR_SYNCHRONIZED_EVENT;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_FROM_REF_UPDATED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_OPENED;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
 import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static java.util.Arrays.copyOfRange;
 import static java.util.stream.Collectors.toList;
 
 /**
  * The following assumptions is made while handling webhooks,
- * 1. Separate webhooks will be added for repo ref and mirror sync events
+ * 1. Separate webhooks will be added for repo ref and mirror sync events, and one more for the pull request events
  * 2. Input name is unique across all jenkins instance and will not shared by any system. Wrong URL with the given name
  * will be corrected.
  * 3. The callback URL is unique to this instance. Wrong name for given callback will be corrected.
@@ -37,6 +42,8 @@ public class BitbucketWebhookHandler implements WebhookHandler {
 
     private static final String CALLBACK_URL_SUFFIX = BIBUCKET_WEBHOOK_URL + "/trigger";
     private static final Logger LOGGER = Logger.getLogger(BitbucketWebhookHandler.class.getName());
+    private static final List<BitbucketWebhookEvent> PULL_REQUEST_EVENTS =
+            asList(PULL_REQUEST_OPENED, PULL_REQUEST_FROM_REF_UPDATED);
 
     private final BitbucketCapabilitiesClient serverCapabilities;
     private final BitbucketWebhookClient webhookClient;
@@ -50,6 +57,9 @@ public class BitbucketWebhookHandler implements WebhookHandler {
 
     @Override
     public BitbucketWebhook register(WebhookRegisterRequest request) {
+        if (request.isPullRequests()) {
+            return processPullRequests(request, getPullRequestEvents());
+        }
         BitbucketWebhookEvent event = getEvent(request);
         return process(request, event);
     }
@@ -68,6 +78,14 @@ public class BitbucketWebhookHandler implements WebhookHandler {
                 .build();
     }
 
+    private BitbucketWebhookRequest createRequest(WebhookRegisterRequest request, Set<String> events) {
+        String[] eventIds = events.toArray(new String[0]);
+        return BitbucketWebhookRequest.Builder.aRequestFor(eventIds[0], copyOfRange(eventIds, 1, eventIds.length))
+                .withCallbackTo(constructCallbackUrl(request))
+                .name(request.getName())
+                .build();
+    }
+
     private void deleteWebhooks(List<BitbucketWebhook> webhooks) {
         webhooks.stream()
                 .map(BitbucketWebhook::getId)
@@ -121,6 +139,29 @@ public class BitbucketWebhookHandler implements WebhookHandler {
         return REPO_REF_CHANGE;
     }
 
+    /**
+     * Returns the pull request events to subscribe to, which are those of {@link #PULL_REQUEST_EVENTS} the server
+     * supports. If the webhook capability is not there, all of them are subscribed to.
+     *
+     * @return the pull request events to subscribe to, in the order of {@link #PULL_REQUEST_EVENTS}
+     */
+    private Set<String> getPullRequestEvents() {
+        Set<String> events = new LinkedHashSet<>();
+        try {
+            Set<String> hooks = serverCapabilities.getWebhookSupportedEvents().getApplicationWebHooks();
+            PULL_REQUEST_EVENTS.stream()
+                    .map(BitbucketWebhookEvent::getEventId)
+                    .filter(hooks::contains)
+                    .forEach(events::add);
+        } catch (BitbucketMissingCapabilityException exception) {
+            PULL_REQUEST_EVENTS.stream().map(BitbucketWebhookEvent::getEventId).forEach(events::add);
+        }
+        if (events.isEmpty()) {
+            throw new WebhookNotSupportedException("Remote server does not support the pull request events.");
+        }
+        return events;
+    }
+
     private BitbucketWebhook process(WebhookRegisterRequest request,
                                      BitbucketWebhookEvent event) {
         String callback = constructCallbackUrl(request);
@@ -157,6 +198,43 @@ public class BitbucketWebhookHandler implements WebhookHandler {
         }
     }
 
+    /**
+     * The pull request events share a single webhook, kept apart from the repo ref and mirror sync webhooks so those
+     * are handled as before.
+     */
+    private BitbucketWebhook processPullRequests(WebhookRegisterRequest request, Set<String> events) {
+        String callback = constructCallbackUrl(request);
+        List<BitbucketWebhook> ownedHooks = webhookClient.getWebhooks(PULL_REQUEST_EVENTS.stream()
+                .map(BitbucketWebhookEvent::getEventId)
+                .toArray(String[]::new))
+                .filter(hook -> hook.getName().equals(request.getName()) || hook.getUrl().equals(callback))
+                .collect(toList());
+        if (ownedHooks.isEmpty()) {
+            BitbucketWebhook result = webhookClient.registerWebhook(createRequest(request, events));
+            LOGGER.info("New Webhook registered - " + result);
+            return result;
+        }
+
+        BitbucketWebhook result = ownedHooks.stream()
+                .filter(hook -> hook.getName().equals(request.getName()))
+                .filter(hook -> hook.getUrl().equals(callback))
+                .filter(BitbucketWebhookRequest::isActive)
+                .filter(hook -> hook.getEvents().equals(events))
+                .peek(hook -> LOGGER.info("Found an existing webhook - " + hook))
+                .findFirst()
+                .orElseGet(() -> {
+                    BitbucketWebhook existing = ownedHooks.get(0);
+                    BitbucketWebhookRequest r = createRequest(request, events);
+                    BitbucketWebhook updated = webhookClient.updateWebhook(existing.getId(), r);
+                    LOGGER.info(format("Exising webhook updtated - %s with new webhook %s", existing, r));
+                    return updated;
+                });
+        deleteWebhooks(ownedHooks.stream()
+                .filter(hook -> hook.getId() != result.getId())
+                .collect(toList()));
+        return result;
+    }
+
     @Nullable
     private BitbucketWebhook handleExistingWebhook(WebhookRegisterRequest request,
                                                    List<BitbucketWebhook> existingWebhooks,
@@ -9,17 +9,19 @@ public class WebhookRegisterRequest {
 
     private final String jenkinsUrl;
     private final boolean isMirror;
+    private final boolean isPullRequests;
     private final String name;
     private final String projectKey;
     private final String repoSlug;
 
     private WebhookRegisterRequest(String projectKey, String repoSlug, String name, String jenkinsUrl,
-                                   boolean isMirror) {
+                                   boolean isMirror, boolean isPullRequests) {
         this.projectKey = requireNonNull(projectKey);
         this.repoSlug = requireNonNull(repoSlug);
         this.name = requireNonNull(name);
         this.jenkinsUrl = requireNonNull(jenkinsUrl);
         this.isMirror = isMirror;
+        this.isPullRequests = isPullRequests;
     }
 
     public String getName() {
@@ -42,11 +44,19 @@ public class WebhookRegisterRequest {
         return isMirror;
     }
 
+    /**
+     * @return {@code true} if the webhook is for the pull request events, rather than for the ref changes
+     */
+    public boolean isPullRequests() {
+        return isPullRequests;
+    }
+
     public static class Builder {
 
         private final String projectKey;
         private final String repoSlug;
         private boolean isMirror;
+        private boolean isPullRequests;
         private String jenkinsUrl;
         private String serverId;
 
@@ -60,7 +70,7 @@ public class WebhookRegisterRequest {
         }
 
         public WebhookRegisterRequest build() {
-            return new WebhookRegisterRequest(projectKey, repoSlug, serverId, jenkinsUrl, isMirror);
+            return new WebhookRegisterRequest(projectKey, repoSlug, serverId, jenkinsUrl, isMirror, isPullRequests);
         }
 
         public Builder isMirror(boolean isMirror) {
@@ -68,6 +78,11 @@ public class WebhookRegisterRequest {
             return this;
         }
 
+        public Builder isPullRequests(boolean isPullRequests) {
+            this.isPullRequests = isPullRequests;
+            return this;
+        }
+
         public Builder withJenkinsBaseUrl(String jenkinsUrl) {
             this.jenkinsUrl = jenkinsUrl;
             return this;
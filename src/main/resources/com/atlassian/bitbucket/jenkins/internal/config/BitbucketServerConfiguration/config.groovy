@@ -22,6 +22,12 @@ f.section() {
         c.select(context: app, includeUser: false, expressionAllowed: false, checkMethod: "post")
     }
 
+    f.advanced() {
+        f.entry(title: _("bitbucket.mirror.preferences"), field: "mirrorPreferences") {
+            f.textarea(checkMethod: "post")
+        }
+    }
+
     f.block() {
         f.validateButton(
                 title: _("bitbucket.test.connection"),
@@ -0,0 +1,7 @@
+package com.atlassian.bitbucket.jenkins.internal.scm.BitbucketPullRequestDiscoveryTrait
+
+def f = namespace(lib.FormTagLib)
+
+f.block() {
+    text(_("bitbucket.scm.pullRequests.description"))
+}
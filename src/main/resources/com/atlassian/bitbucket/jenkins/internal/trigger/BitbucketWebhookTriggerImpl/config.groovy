@@ -0,0 +1,20 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookTriggerImpl
+
+def f = namespace(lib.FormTagLib)
+
+f.advanced() {
+    f.entry(title: _("bitbucket.trigger.includedPaths"), field: "includedPaths",
+            description: _("bitbucket.trigger.includedPaths.description")) {
+        f.textarea()
+    }
+
+    f.entry(title: _("bitbucket.trigger.excludedPaths"), field: "excludedPaths",
+            description: _("bitbucket.trigger.excludedPaths.description")) {
+        f.textarea()
+    }
+
+    f.entry(title: _("bitbucket.trigger.priority"), field: "priority",
+            description: _("bitbucket.trigger.priority.description")) {
+        f.select()
+    }
+}
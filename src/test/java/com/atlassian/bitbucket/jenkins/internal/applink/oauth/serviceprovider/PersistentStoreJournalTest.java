@@ -0,0 +1,105 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class PersistentStoreJournalTest {
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File file;
+    private PersistentStoreJournal journal;
+
+    @Before
+    public void setup() {
+        file = new File(tempFolder.getRoot(), "store.xml.journal");
+        journal = new PersistentStoreJournal(file);
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        journal.append("P key1 value1");
+        journal.append("R key1");
+
+        PersistentStoreJournal reopened = new PersistentStoreJournal(file);
+        assertThat(reopened.read(), contains("P key1 value1", "R key1"));
+        assertThat(reopened.size(), is(2));
+    }
+
+    @Test
+    public void testAppendBatch() throws IOException {
+        journal.append("P key1 value1");
+        journal.append(Arrays.asList("P key2 value2", "R key1"));
+
+        assertThat(journal.size(), is(3));
+        assertThat(new PersistentStoreJournal(file).read(), contains("P key1 value1", "P key2 value2", "R key1"));
+    }
+
+    @Test
+    public void testReadMissingFile() throws IOException {
+        assertThat(journal.read(), empty());
+        assertThat(journal.size(), is(0));
+    }
+
+    @Test
+    public void testIncompleteRecordIsIgnored() throws IOException {
+        journal.append("P key1 value1");
+        Files.write(file.toPath(), "P key2 val".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+        PersistentStoreJournal reopened = new PersistentStoreJournal(file);
+        assertThat(reopened.read(), contains("P key1 value1"));
+
+        reopened.append("R key1");
+        assertThat(new PersistentStoreJournal(file).read(), contains("P key1 value1", "P key2 val", "R key1"));
+    }
+
+    @Test
+    public void testTruncate() throws IOException {
+        journal.append("P key1 value1");
+
+        journal.truncate();
+
+        assertThat(file.exists(), is(false));
+        assertThat(journal.size(), is(0));
+        journal.append("R key1");
+        assertThat(new PersistentStoreJournal(file).read(), contains("R key1"));
+    }
+
+    @Test
+    public void testTruncateCount() throws IOException {
+        journal.append("P key1 value1");
+        journal.append("P key2 value2");
+        journal.append("R key1");
+
+        journal.truncate(2);
+
+        assertThat(journal.size(), is(1));
+        journal.append("R key2");
+        assertThat(new PersistentStoreJournal(file).read(), contains("R key1", "R key2"));
+    }
+
+    @Test
+    public void testTruncateCountOfAllRecords() throws IOException {
+        journal.append("P key1 value1");
+
+        journal.truncate(1);
+
+        assertThat(file.exists(), is(false));
+        assertThat(journal.size(), is(0));
+    }
+}
@@ -259,6 +259,16 @@ public class OAuth1aRequestFilterTest {
                 any(FilterChain.class));
     }
 
+    @Test
+    public void testRequestWithoutOAuthHeaderOnlyReadsHeader() throws Exception {
+        filter.doFilter(request, response, chain);
+
+        verify(request).getHeader(AUTHORIZATION);
+        verifyNoMoreInteractions(request);
+        verifyZeroInteractions(securityChecker, store, consumerStore, validator);
+        verify(chain).doFilter(request, response);
+    }
+
     @Test
     public void testNotAuthorizingAnonymousUsers() throws IOException, ServletException {
         setupRequestWithParameters(rsaConsumerParameterMap);
@@ -0,0 +1,128 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
+
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.Consumer;
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.TestData.Consumers.RSA_CONSUMER;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.TestData.USER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class OAuthAccessorCacheTest {
+
+    private static final String TOKEN = "1234";
+
+    private final OAuthAccessorCache cache = new OAuthAccessorCache(10);
+
+    @Test
+    public void testGetAccessor() {
+        OAuthAccessor accessor = cache.getAccessor(accessToken("5678"), RSA_CONSUMER);
+
+        assertThat(accessor.accessToken, equalTo(TOKEN));
+        assertThat(accessor.tokenSecret, equalTo("5678"));
+        assertThat(accessor.consumer.consumerKey, equalTo(RSA_CONSUMER.getKey()));
+        assertThat(accessor.getProperty("user"), equalTo(USER));
+    }
+
+    @Test
+    public void testGetAccessorReturnsCopy() {
+        ServiceProviderToken token = accessToken("5678");
+        OAuthAccessor accessor = cache.getAccessor(token, RSA_CONSUMER);
+        accessor.setProperty("user", "someone-else");
+
+        OAuthAccessor cachedAccessor = cache.getAccessor(token, RSA_CONSUMER);
+
+        assertThat(cachedAccessor, not(sameInstance(accessor)));
+        assertThat(cachedAccessor.consumer, sameInstance(accessor.consumer));
+        assertThat(cachedAccessor.getProperty("user"), equalTo(USER));
+    }
+
+    @Test
+    public void testGetAccessorAfterConsumerChanged() {
+        ServiceProviderToken token = accessToken("5678");
+        OAuthAccessor accessor = cache.getAccessor(token, RSA_CONSUMER);
+        Consumer updatedConsumer = Consumer.key(RSA_CONSUMER.getKey())
+                .name("Updated consumer")
+                .signatureMethod(Consumer.SignatureMethod.HMAC_SHA1)
+                .consumerSecret("consumer-secret")
+                .build();
+
+        OAuthAccessor updatedAccessor = cache.getAccessor(token, updatedConsumer);
+
+        assertThat(updatedAccessor.consumer, not(sameInstance(accessor.consumer)));
+    }
+
+    @Test
+    public void testGetAccessorUsesConsumerFromStore() {
+        ServiceProviderToken token = accessToken("5678");
+        Consumer updatedConsumer = Consumer.key(RSA_CONSUMER.getKey())
+                .name("Updated consumer")
+                .signatureMethod(Consumer.SignatureMethod.HMAC_SHA1)
+                .consumerSecret("new-consumer-secret")
+                .build();
+        cache.getAccessor(token, RSA_CONSUMER);
+
+        OAuthAccessor accessor = cache.getAccessor(token, updatedConsumer);
+
+        // The token still holds the consumer it was issued to, but requests have to be signed with the new secret
+        assertThat(token.getConsumer(), sameInstance(RSA_CONSUMER));
+        assertThat(accessor.consumer.consumerSecret, equalTo("new-consumer-secret"));
+        assertThat(accessor.consumer.getProperty(OAuth.OAUTH_SIGNATURE_METHOD), equalTo(OAuth.HMAC_SHA1));
+    }
+
+    @Test
+    public void testGetAccessorTiming() {
+        ServiceProviderToken token = accessToken("5678");
+        int lookups = 100_000;
+        for (int i = 0; i < lookups; i++) {
+            cache.getAccessor(token, RSA_CONSUMER);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            cache.getAccessor(token, RSA_CONSUMER);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // A lookup is a map read and a copy of the accessor, so even a slow build agent manages 100k in well under 2s
+        assertThat(elapsedMillis, lessThan(2000L));
+    }
+
+    @Test
+    public void testGetAccessorAfterTokenChanged() {
+        cache.getAccessor(accessToken("5678"), RSA_CONSUMER);
+
+        OAuthAccessor accessor = cache.getAccessor(accessToken("8765"), RSA_CONSUMER);
+
+        assertThat(accessor.tokenSecret, equalTo("8765"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAccessorIsDropped() {
+        OAuthAccessorCache smallCache = new OAuthAccessorCache(1);
+        ServiceProviderToken token = accessToken("5678");
+        OAuthAccessor accessor = smallCache.getAccessor(token, RSA_CONSUMER);
+        smallCache.getAccessor(ServiceProviderToken.newAccessToken("other-token")
+                .tokenSecret("secret")
+                .consumer(RSA_CONSUMER)
+                .authorizedBy(USER)
+                .build(), RSA_CONSUMER);
+
+        OAuthAccessor recreatedAccessor = smallCache.getAccessor(token, RSA_CONSUMER);
+
+        assertThat(recreatedAccessor.consumer, not(sameInstance(accessor.consumer)));
+    }
+
+    private static ServiceProviderToken accessToken(String secret) {
+        return ServiceProviderToken.newAccessToken(TOKEN)
+                .tokenSecret(secret)
+                .consumer(RSA_CONSUMER)
+                .authorizedBy(USER)
+                .build();
+    }
+}
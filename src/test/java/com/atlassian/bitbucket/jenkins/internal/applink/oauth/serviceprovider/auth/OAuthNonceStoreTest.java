@@ -0,0 +1,84 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class OAuthNonceStoreTest {
+
+    private static final long NOW = 1_000_000L;
+
+    private final OAuthNonceStore store = new OAuthNonceStore(1000L, 100L, 10L);
+
+    @Test
+    public void testAdd() {
+        assertThat(store.add("nonce1", NOW, NOW), is(true));
+        assertThat(store.add("nonce2", NOW, NOW), is(true));
+
+        assertThat(store.size(), is(2L));
+        assertThat(store.contains("nonce1", NOW), is(true));
+        assertThat(store.contains("nonce3", NOW), is(false));
+    }
+
+    @Test
+    public void testAddReplayedNonce() {
+        store.add("nonce", NOW, NOW);
+
+        assertThat(store.add("nonce", NOW, NOW + 500L), is(false));
+        assertThat(store.size(), is(1L));
+    }
+
+    @Test
+    public void testAddTimestampOutsideWindow() {
+        assertThat(store.add("nonce1", NOW - 1001L, NOW), is(false));
+        assertThat(store.add("nonce2", NOW + 1001L, NOW), is(false));
+
+        assertThat(store.size(), is(0L));
+    }
+
+    @Test
+    public void testAddWhenFullEvictsOldestBucket() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(store.add("old-nonce" + i, NOW - 500L, NOW), is(true));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertThat(store.add("nonce" + i, NOW, NOW), is(true));
+        }
+
+        assertThat(store.add("one-more", NOW, NOW), is(true));
+
+        assertThat(store.size(), is(6L));
+        // The evicted nonces are forgotten, so their timestamps are refused rather than allowing a replay
+        assertThat(store.isTimestampAccepted(NOW - 500L, NOW), is(false));
+        assertThat(store.add("old-nonce0", NOW - 500L, NOW), is(false));
+        assertThat(store.isTimestampAccepted(NOW - 400L, NOW), is(true));
+    }
+
+    @Test
+    public void testAddWhenFullDropsExpiredBucketsFirst() {
+        for (int i = 0; i < 5; i++) {
+            store.add("old-nonce" + i, NOW - 900L, NOW);
+        }
+        for (int i = 0; i < 5; i++) {
+            store.add("nonce" + i, NOW, NOW);
+        }
+        long later = NOW + 200L;
+
+        assertThat(store.add("one-more", later, later), is(true));
+
+        assertThat(store.size(), is(6L));
+        // Only the expired bucket was dropped, so nothing still in the window is refused
+        assertThat(store.isTimestampAccepted(NOW - 700L, later), is(true));
+    }
+
+    @Test
+    public void testSlotIsReusedOnceExpired() {
+        store.add("nonce", NOW, NOW);
+        long later = NOW + 2300L;
+
+        // The ring holds 23 buckets of 100ms, so this timestamp lands in the same slot as NOW
+        assertThat(store.add("nonce", later, later), is(true));
+        assertThat(store.size(), is(1L));
+    }
+}
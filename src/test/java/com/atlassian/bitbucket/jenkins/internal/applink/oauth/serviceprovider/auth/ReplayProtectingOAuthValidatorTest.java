@@ -0,0 +1,134 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.auth;
+
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthException;
+import net.oauth.OAuthMessage;
+import net.oauth.OAuthProblemException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class ReplayProtectingOAuthValidatorTest {
+
+    private static final long NOW = 1_600_000_000_000L;
+
+    private OAuthAccessor accessor;
+    private OAuthNonceStore nonceStore;
+    private ReplayProtectingOAuthValidator validator;
+
+    @Before
+    public void setup() {
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC);
+        nonceStore = new OAuthNonceStore(300_000L, 10_000L, 100L);
+        validator = new ReplayProtectingOAuthValidator(clock, nonceStore);
+        accessor = new OAuthAccessor(new OAuthConsumer(null, "consumer", "consumer-secret", null));
+        accessor.accessToken = "token";
+        accessor.tokenSecret = "token-secret";
+    }
+
+    @Test
+    public void testValidateMessage() throws IOException, OAuthException, URISyntaxException {
+        validator.validateMessage(signedMessage("token", NOW, "nonce1"), accessor);
+        validator.validateMessage(signedMessage("token", NOW, "nonce2"), accessor);
+
+        assertThat(nonceStore.size(), is(2L));
+    }
+
+    @Test
+    public void testSameNonceForDifferentTokens() throws IOException, OAuthException, URISyntaxException {
+        validator.validateMessage(signedMessage("token", NOW, "nonce"), accessor);
+        accessor.accessToken = "token2";
+        validator.validateMessage(signedMessage("token2", NOW, "nonce"), accessor);
+
+        assertThat(nonceStore.size(), is(2L));
+    }
+
+    @Test
+    public void testReplayedNonce() throws IOException, OAuthException, URISyntaxException {
+        validator.validateMessage(signedMessage("token", NOW, "nonce"), accessor);
+
+        assertProblem(signedMessage("token", NOW, "nonce"), OAuth.Problems.NONCE_USED);
+    }
+
+    @Test
+    public void testNonceIsNotRecordedWhenSignatureIsInvalid() throws IOException, OAuthException, URISyntaxException {
+        OAuthMessage forged = message("token", NOW, "nonce");
+        forged.addParameter(OAuth.OAUTH_SIGNATURE, "forged");
+
+        assertProblem(forged, OAuth.Problems.SIGNATURE_INVALID);
+        assertThat(nonceStore.size(), is(0L));
+        validator.validateMessage(signedMessage("token", NOW, "nonce"), accessor);
+    }
+
+    @Test
+    public void testValidateTimestampAndNonceDoesNotRecordNonce() throws IOException, OAuthProblemException {
+        validator.validateTimestampAndNonce(message("token", NOW, "nonce"));
+        validator.validateTimestampAndNonce(message("token", NOW, "nonce"));
+
+        assertThat(nonceStore.size(), is(0L));
+    }
+
+    @Test
+    public void testTimestampTooOld() throws IOException, OAuthException, URISyntaxException {
+        assertProblem(signedMessage("token", NOW - 600_000L, "nonce"), OAuth.Problems.TIMESTAMP_REFUSED);
+    }
+
+    @Test
+    public void testTimestampNotANumber() throws IOException, OAuthException, URISyntaxException {
+        OAuthMessage message = new OAuthMessage("GET", "http://host/service", OAuth.newList(
+                OAuth.OAUTH_CONSUMER_KEY, "consumer",
+                OAuth.OAUTH_TIMESTAMP, "yesterday",
+                OAuth.OAUTH_NONCE, "nonce"));
+
+        assertProblem(message, OAuth.Problems.TIMESTAMP_REFUSED);
+    }
+
+    @Test
+    public void testRefusedRequestsAreCounted() throws IOException, OAuthException, URISyntaxException {
+        validator.validateMessage(signedMessage("token", NOW, "nonce"), accessor);
+        assertProblem(signedMessage("token", NOW, "nonce"), OAuth.Problems.NONCE_USED);
+        assertProblem(signedMessage("token", NOW, "nonce"), OAuth.Problems.NONCE_USED);
+        assertProblem(signedMessage("token", NOW - 600_000L, "nonce2"), OAuth.Problems.TIMESTAMP_REFUSED);
+
+        assertThat(validator.getNonceCount(), is(1L));
+        assertThat(validator.getNonceReusedCount(), is(2L));
+        assertThat(validator.getTimestampRefusedCount(), is(1L));
+    }
+
+    private void assertProblem(OAuthMessage message, String problem) throws IOException, OAuthException,
+            URISyntaxException {
+        try {
+            validator.validateMessage(message, accessor);
+            fail("Expected an OAuthProblemException");
+        } catch (OAuthProblemException e) {
+            assertThat(e.getProblem(), is(problem));
+        }
+    }
+
+    private static OAuthMessage message(String token, long timestampMillis, String nonce) {
+        return new OAuthMessage("GET", "http://host/service", OAuth.newList(
+                OAuth.OAUTH_CONSUMER_KEY, "consumer",
+                OAuth.OAUTH_TOKEN, token,
+                OAuth.OAUTH_SIGNATURE_METHOD, OAuth.HMAC_SHA1,
+                OAuth.OAUTH_TIMESTAMP, Long.toString(timestampMillis / 1000L),
+                OAuth.OAUTH_NONCE, nonce));
+    }
+
+    private OAuthMessage signedMessage(String token, long timestampMillis, String nonce)
+            throws IOException, OAuthException, URISyntaxException {
+        OAuthMessage message = message(token, timestampMillis, nonce);
+        message.sign(accessor);
+        return message;
+    }
+}
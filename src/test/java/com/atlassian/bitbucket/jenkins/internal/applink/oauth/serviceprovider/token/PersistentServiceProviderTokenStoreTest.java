@@ -18,6 +18,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.Session.newSession;
@@ -29,6 +30,7 @@ import static com.spotify.hamcrest.optional.OptionalMatchers.emptyOptional;
 import static com.spotify.hamcrest.optional.OptionalMatchers.optionalWithValue;
 import static java.lang.System.currentTimeMillis;
 import static java.time.Duration.*;
+import static java.util.Arrays.asList;
 import static java.util.Optional.ofNullable;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -111,10 +113,11 @@ public class PersistentServiceProviderTokenStoreTest {
         inMemoryTokenMap = new ConcurrentHashMap<>();
         when(consumerStore.get(RSA_CONSUMER.getKey())).thenReturn(Optional.of(RSA_CONSUMER));
         when(consumerStore.get(RSA_CONSUMER_WITH_2LO.getKey())).thenReturn(Optional.of(RSA_CONSUMER_WITH_2LO));
-        tokenStore = spy(new PersistentServiceProviderTokenStore(consumerStore, inMemoryTokenMap));
+        tokenStore = spy(new TestServiceProviderTokenStore(consumerStore, inMemoryTokenMap, persistedTokenMap));
         doAnswer(invocation -> {
             inMemoryTokenMap.clear();
             inMemoryTokenMap.putAll(persistedTokenMap);
+            tokenStore.onLoad();
             return null;
         }).when(tokenStore).load();
         doAnswer(invocation -> {
@@ -139,6 +142,36 @@ public class PersistentServiceProviderTokenStoreTest {
         assertThat(tokenStore.getAccessTokensForUser("some-random-user"), emptyIterable());
     }
 
+    @Test
+    public void testGetAccessTokensForUserAfterPut() {
+        ServiceProviderToken requestToken = newRequestToken("req-token3")
+                .callback(URI.create("http://some-callback-url/endpoint"))
+                .consumer(RSA_CONSUMER)
+                .creationTime(currentTimeMillis())
+                .timeToLive(ofDays(1L).toMillis())
+                .tokenSecret("the-secret-token")
+                .build();
+        tokenStore.put(requestToken);
+        assertThat(tokenStore.getAccessTokensForUser("test-user4"), emptyIterable());
+
+        ServiceProviderToken authorizedToken = requestToken.authorize("test-user4", "verifier");
+        tokenStore.put(authorizedToken);
+        assertThat(tokenStore.getAccessTokensForUser("test-user4"), contains(requestToken(authorizedToken)));
+
+        tokenStore.remove(authorizedToken.getToken());
+        assertThat(tokenStore.getAccessTokensForUser("test-user4"), emptyIterable());
+    }
+
+    @Test
+    public void testGetAccessTokensForUserPaged() {
+        // test-user2 authorized REQUEST_TOKEN_2 and ACCESS_TOKEN_1, which are kept in order of their token values
+        assertThat(tokenStore.getAccessTokensForUser("test-user2", 0, 1), contains(accessToken(ACCESS_TOKEN_1)));
+        assertThat(tokenStore.getAccessTokensForUser("test-user2", 1, 1), contains(requestToken(REQUEST_TOKEN_2)));
+        assertThat(tokenStore.getAccessTokensForUser("test-user2", 2, 1), empty());
+        assertThat(tokenStore.getAccessTokensForUser("test-user2", 0, 10),
+                contains(accessToken(ACCESS_TOKEN_1), requestToken(REQUEST_TOKEN_2)));
+    }
+
     @Test
     public void testPut() {
         ServiceProviderToken accessToken = newAccessToken("access-token")
@@ -180,6 +213,25 @@ public class PersistentServiceProviderTokenStoreTest {
                 hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
     }
 
+    @Test
+    public void testRemoveAll() {
+        tokenStore.removeAll(asList(REQUEST_TOKEN_2.getToken(), ACCESS_TOKEN_1.getToken(), "non-existent-token"));
+
+        assertThat(tokenStore.getAccessTokensForUser("test-user2"), emptyIterable());
+        assertThat(persistedTokenMap, allOf(aMapWithSize(2),
+                hasEntry(is(REQUEST_TOKEN_1.getToken()), requestToken(REQUEST_TOKEN_1)),
+                hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
+        verify(tokenStore).save();
+    }
+
+    @Test
+    public void testRemoveAllNonExistentTokens() {
+        tokenStore.removeAll(asList("non-existent-token1", "non-existent-token2"));
+
+        assertThat(inMemoryTokenMap, aMapWithSize(4));
+        verify(tokenStore, never()).save();
+    }
+
     @Test
     public void testRemoveNonExistentToken() {
         String token = "non-existent-token";
@@ -219,6 +271,62 @@ public class PersistentServiceProviderTokenStoreTest {
                 hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
     }
 
+    @Test
+    public void testRemoveExpiredTokensKeepsTokensWithSession() {
+        long now = currentTimeMillis();
+        ServiceProviderToken expiredTokenWithSession = newAccessToken("expired-token-with-session")
+                .callback(URI.create("http://some-callback-url/endpoint"))
+                .consumer(RSA_CONSUMER)
+                .creationTime(now - ofMinutes(5L).toMillis())
+                .timeToLive(ofMinutes(2L).toMillis())
+                .tokenSecret("some-random-secret")
+                .authorizedBy("test-user4")
+                .session(newSession("session")
+                        .creationTime(now)
+                        .lastRenewalTime(now)
+                        .timeToLive(ofHours(1L).toMillis())
+                        .build())
+                .build();
+        tokenStore.put(expiredTokenWithSession);
+
+        tokenStore.removeExpiredTokens();
+
+        assertThat(tokenStore.get(expiredTokenWithSession.getToken()),
+                optionalWithValue(accessToken(expiredTokenWithSession)));
+    }
+
+    @Test
+    public void testRemoveExpiredTokensAndSessions() {
+        long now = currentTimeMillis();
+        ServiceProviderToken expiredToken = newRequestToken("expired-token")
+                .consumer(RSA_CONSUMER)
+                .creationTime(now - ofMinutes(5L).toMillis())
+                .timeToLive(ofMinutes(2L).toMillis())
+                .tokenSecret("some-random-secret")
+                .build();
+        ServiceProviderToken tokenWithExpiredSession = newAccessToken("token-with-expired-session")
+                .consumer(RSA_CONSUMER)
+                .creationTime(now)
+                .timeToLive(ofDays(2L).toMillis())
+                .tokenSecret("some-random-secret")
+                .authorizedBy("test-user4")
+                .session(newSession("expired-session")
+                        .creationTime(now - ofMinutes(10L).toMillis())
+                        .lastRenewalTime(now - ofMinutes(5L).toMillis())
+                        .timeToLive(ofMinutes(2L).toMillis())
+                        .build())
+                .build();
+        tokenStore.put(expiredToken);
+        tokenStore.put(tokenWithExpiredSession);
+
+        tokenStore.removeExpiredTokensAndSessions();
+
+        assertThat(tokenStore.get(expiredToken.getToken()), emptyOptional());
+        assertThat(tokenStore.get(tokenWithExpiredSession.getToken()), emptyOptional());
+        assertThat(inMemoryTokenMap, aMapWithSize(4));
+        verify(tokenStore).save();
+    }
+
     @Test
     public void testRemoveExpiredSessions() {
         long now = currentTimeMillis();
@@ -253,6 +361,7 @@ public class PersistentServiceProviderTokenStoreTest {
                 hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
     }
 
+    @Test
     public void testRemoveByConsumer() {
         tokenStore.removeByConsumer(RSA_CONSUMER.getKey());
 
@@ -384,4 +493,32 @@ public class PersistentServiceProviderTokenStoreTest {
             return true;
         }
     }
+
+    /*
+     * Journaling a change for real needs Jenkins to encrypt it, so the changes are made to the map simulating
+     * persistence instead
+     */
+    private static class TestServiceProviderTokenStore extends PersistentServiceProviderTokenStore {
+
+        private final transient Map<String, ServiceProviderToken> persistedTokenMap;
+
+        private TestServiceProviderTokenStore(ServiceProviderConsumerStore consumerStore,
+                                              Map<String, ServiceProviderToken> tokenMap,
+                                              Map<String, ServiceProviderToken> persistedTokenMap) {
+            super(consumerStore, tokenMap);
+            this.persistedTokenMap = persistedTokenMap;
+        }
+
+        @Override
+        protected CompletableFuture<Void> journalPut(String key, ServiceProviderToken entity) {
+            persistedTokenMap.put(key, entity);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        protected CompletableFuture<Void> journalRemove(String key) {
+            persistedTokenMap.remove(key);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
 }
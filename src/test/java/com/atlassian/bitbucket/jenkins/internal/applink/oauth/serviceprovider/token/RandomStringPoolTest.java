@@ -0,0 +1,82 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token;
+
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.Randomizer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RandomStringPoolTest {
+
+    private static final int LENGTH = 80;
+
+    @Mock
+    private Randomizer randomizer;
+
+    @Before
+    public void setup() {
+        AtomicInteger counter = new AtomicInteger();
+        when(randomizer.randomUrlSafeString(LENGTH)).thenAnswer(invocation -> "value-" + counter.incrementAndGet());
+    }
+
+    @Test
+    public void testNextGeneratesOnTheSpotWhenEmpty() {
+        List<Runnable> refills = new ArrayList<>();
+        RandomStringPool pool = new RandomStringPool(randomizer, LENGTH, 4, refills::add);
+
+        assertThat(pool.next(), is("value-1"));
+        assertThat(pool.next(), is("value-2"));
+        // A refill has been asked for, but not run yet, so no second refill is asked for
+        assertThat(refills, hasSize(1));
+    }
+
+    @Test
+    public void testNextTakesFromPool() {
+        RandomStringPool pool = new RandomStringPool(randomizer, LENGTH, 4, sameThreadExecutor());
+
+        // The pool is filled with values 1-4 before value 5 is generated on the spot
+        assertThat(pool.next(), is("value-5"));
+        assertThat(pool.next(), is("value-1"));
+        // The pool is still more than half full, so nothing else has been generated
+        verify(randomizer, times(5)).randomUrlSafeString(LENGTH);
+    }
+
+    @Test
+    public void testNextNeverRepeatsValues() {
+        RandomStringPool pool = new RandomStringPool(randomizer, LENGTH, 4, sameThreadExecutor());
+        Set<String> values = new HashSet<>();
+
+        for (int i = 0; i < 100; i++) {
+            values.add(pool.next());
+        }
+
+        assertThat(values, hasSize(100));
+    }
+
+    @Test
+    public void testNextWhenRefillIsRejected() {
+        RandomStringPool pool = new RandomStringPool(randomizer, LENGTH, 4, command -> {
+            throw new RejectedExecutionException();
+        });
+
+        assertThat(pool.next(), is("value-1"));
+        assertThat(pool.next(), is("value-2"));
+    }
+}
@@ -4,9 +4,9 @@ import com.atlassian.bitbucket.jenkins.internal.applink.oauth.Randomizer;
 import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.exception.InvalidTokenException;
 import org.hamcrest.Description;
 import org.hamcrest.TypeSafeDiagnosingMatcher;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -17,6 +17,7 @@ import java.util.Objects;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newAccessToken;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newRequestToken;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.TestData.Consumers.RSA_CONSUMER;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
 import static java.lang.System.currentTimeMillis;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -29,9 +30,13 @@ public class ServiceProviderTokenFactoryImplTest {
     @Mock
     private Randomizer randomizer;
 
-    @InjectMocks
     private ServiceProviderTokenFactoryImpl tokenFactory;
 
+    @Before
+    public void setup() {
+        tokenFactory = new ServiceProviderTokenFactoryImpl(randomizer, sameThreadExecutor());
+    }
+
     private static TokenMatcher accessToken(@Nullable URI callback, String consumerKey, String secret) {
         return new TokenMatcher(true, callback, consumerKey, secret);
     }
@@ -0,0 +1,138 @@
+package com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token;
+
+import org.junit.Test;
+
+import java.net.URI;
+
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.Session.newSession;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newAccessToken;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newRequestToken;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.TestData.Consumers.RSA_CONSUMER;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.TestData.Consumers.RSA_CONSUMER_WITH_2LO;
+import static java.lang.System.currentTimeMillis;
+import static java.time.Duration.ofDays;
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+
+public class ServiceProviderTokenIndexTest {
+
+    private static final ServiceProviderToken ACCESS_TOKEN_1 = accessToken("access-token1", RSA_CONSUMER.getKey(),
+            "test-user1");
+    private static final ServiceProviderToken ACCESS_TOKEN_2 = accessToken("access-token2",
+            RSA_CONSUMER_WITH_2LO.getKey(), "test-user1");
+    private static final ServiceProviderToken ACCESS_TOKEN_3 = accessToken("access-token3", RSA_CONSUMER.getKey(),
+            "test-user2");
+
+    @Test
+    public void testGetTokensForConsumer() {
+        ServiceProviderTokenIndex index = ServiceProviderTokenIndex.of(asList(ACCESS_TOKEN_1, ACCESS_TOKEN_2,
+                ACCESS_TOKEN_3));
+
+        assertThat(index.getTokensForConsumer(RSA_CONSUMER.getKey()),
+                containsInAnyOrder("access-token1", "access-token3"));
+        assertThat(index.getTokensForConsumer(RSA_CONSUMER_WITH_2LO.getKey()), contains("access-token2"));
+        assertThat(index.getTokensForConsumer("unknown-consumer"), empty());
+    }
+
+    @Test
+    public void testGetTokensForUser() {
+        ServiceProviderTokenIndex index = ServiceProviderTokenIndex.of(asList(ACCESS_TOKEN_1, ACCESS_TOKEN_2,
+                ACCESS_TOKEN_3));
+
+        assertThat(index.getTokensForUser("test-user1"), containsInAnyOrder("access-token1", "access-token2"));
+        assertThat(index.getTokensForUser("test-user2"), contains("access-token3"));
+        assertThat(index.getTokensForUser("unknown-user"), empty());
+    }
+
+    @Test
+    public void testGetTokensForUserInOrder() {
+        ServiceProviderTokenIndex index = ServiceProviderTokenIndex.of(asList(
+                accessToken("token-c", RSA_CONSUMER.getKey(), "test-user1"),
+                accessToken("token-a", RSA_CONSUMER.getKey(), "test-user1"),
+                accessToken("token-b", RSA_CONSUMER_WITH_2LO.getKey(), "test-user1")));
+
+        assertThat(index.getTokensForUser("test-user1"), contains("token-a", "token-b", "token-c"));
+    }
+
+    @Test
+    public void testGetTokensExpiredBefore() {
+        ServiceProviderToken expiresFirst = newRequestToken("req-token1")
+                .consumer(RSA_CONSUMER)
+                .tokenSecret("secret")
+                .creationTime(1000L)
+                .timeToLive(100L)
+                .build();
+        ServiceProviderToken expiresLast = newRequestToken("req-token2")
+                .consumer(RSA_CONSUMER)
+                .tokenSecret("secret")
+                .creationTime(1000L)
+                .timeToLive(200L)
+                .build();
+        ServiceProviderTokenIndex index = ServiceProviderTokenIndex.of(asList(expiresFirst, expiresLast));
+
+        assertThat(index.getTokensExpiredBefore(1100L), empty());
+        assertThat(index.getTokensExpiredBefore(1101L), contains("req-token1"));
+        assertThat(index.getTokensExpiredBefore(1201L), containsInAnyOrder("req-token1", "req-token2"));
+        index.remove(expiresFirst);
+        assertThat(index.getTokensExpiredBefore(1201L), contains("req-token2"));
+    }
+
+    @Test
+    public void testGetSessionsExpiredBefore() {
+        ServiceProviderToken tokenWithSession = newAccessToken("access-token")
+                .consumer(RSA_CONSUMER)
+                .tokenSecret("secret")
+                .authorizedBy("test-user1")
+                .creationTime(1000L)
+                .timeToLive(100L)
+                .session(newSession("session")
+                        .creationTime(1000L)
+                        .lastRenewalTime(1500L)
+                        .timeToLive(100L)
+                        .build())
+                .build();
+        ServiceProviderTokenIndex index = ServiceProviderTokenIndex.of(asList(tokenWithSession));
+
+        // The token itself has expired, but it is kept for its session
+        assertThat(index.getTokensExpiredBefore(1601L), empty());
+        assertThat(index.getSessionsExpiredBefore(1600L), empty());
+        assertThat(index.getSessionsExpiredBefore(1601L), contains("access-token"));
+    }
+
+    @Test
+    public void testRemove() {
+        ServiceProviderTokenIndex index = ServiceProviderTokenIndex.of(asList(ACCESS_TOKEN_1, ACCESS_TOKEN_3));
+
+        index.remove(ACCESS_TOKEN_3);
+
+        assertThat(index.getTokensForConsumer(RSA_CONSUMER.getKey()), contains("access-token1"));
+        assertThat(index.getTokensForUser("test-user2"), empty());
+    }
+
+    @Test
+    public void testUnauthorizedTokenIsNotIndexedByUser() {
+        ServiceProviderToken requestToken = newRequestToken("req-token")
+                .consumer(RSA_CONSUMER)
+                .tokenSecret("secret")
+                .build();
+        ServiceProviderTokenIndex index = ServiceProviderTokenIndex.of(asList(requestToken));
+
+        assertThat(index.getTokensForConsumer(RSA_CONSUMER.getKey()), contains("req-token"));
+        index.remove(requestToken);
+        assertThat(index.getTokensForConsumer(RSA_CONSUMER.getKey()), empty());
+    }
+
+    private static ServiceProviderToken accessToken(String token, String consumerKey, String user) {
+        return newAccessToken(token)
+                .callback(URI.create("http://some-callback-url/endpoint"))
+                .consumer(RSA_CONSUMER.getKey().equals(consumerKey) ? RSA_CONSUMER : RSA_CONSUMER_WITH_2LO)
+                .creationTime(currentTimeMillis())
+                .timeToLive(ofDays(1L).toMillis())
+                .tokenSecret("secret-" + token)
+                .authorizedBy(user)
+                .build();
+    }
+}
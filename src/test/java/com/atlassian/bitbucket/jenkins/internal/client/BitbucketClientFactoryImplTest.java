@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.security.interfaces.RSAPrivateKey;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.*;
@@ -126,13 +127,11 @@ public class BitbucketClientFactoryImplTest {
     public void testGetMirroredRepositories() {
         mockExecutor.mapUrlToResult(
                 BITBUCKET_BASE_URL + "/rest/mirroring/1.0/repos/1/mirrors", readMirroredRepositoriesResponseFromFile());
-        BitbucketPage<BitbucketMirroredRepositoryDescriptor> repositoryPage =
-                anonymousClientFactory.getMirroredRepositoriesClient(1).getMirroredRepositoryDescriptors();
-        assertEquals(2, repositoryPage.getSize());
-        assertEquals(25, repositoryPage.getLimit());
-        assertEquals(true, repositoryPage.isLastPage());
-        assertEquals(2, repositoryPage.getValues().size());
-        BitbucketMirroredRepositoryDescriptor mirroredRepo = repositoryPage.getValues().get(0);
+        List<BitbucketMirroredRepositoryDescriptor> mirroredRepos =
+                anonymousClientFactory.getMirroredRepositoriesClient(1).getMirroredRepositoryDescriptors()
+                        .collect(Collectors.toList());
+        assertEquals(2, mirroredRepos.size());
+        BitbucketMirroredRepositoryDescriptor mirroredRepo = mirroredRepos.get(0);
         assertEquals(MIRROR_SELF_LINK, mirroredRepo.getSelfLink());
         BitbucketMirror mirrorServer = mirroredRepo.getMirrorServer();
         assertEquals("US East Mirror", mirrorServer.getName());
@@ -0,0 +1,103 @@
+package com.atlassian.bitbucket.jenkins.internal.client;
+
+import com.atlassian.bitbucket.jenkins.internal.fixture.FakeRemoteHttpServer;
+import com.atlassian.bitbucket.jenkins.internal.http.HttpRequestExecutorImpl;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketChange;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketCommit;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPath;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPullRequest;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefDetails;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRefType;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials.ANONYMOUS_CREDENTIALS;
+import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.*;
+import static java.lang.String.format;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class BitbucketRepositoryClientImplTest {
+
+    private static final String REPOSITORY_URL = "%s/rest/api/1.0/projects/%s/repos/%s";
+
+    private final FakeRemoteHttpServer fakeRemoteHttpServer = new FakeRemoteHttpServer();
+    private final HttpRequestExecutor requestExecutor = new HttpRequestExecutorImpl(fakeRemoteHttpServer);
+    private final BitbucketRequestExecutor bitbucketRequestExecutor = new BitbucketRequestExecutor(BITBUCKET_BASE_URL,
+            requestExecutor, OBJECT_MAPPER, ANONYMOUS_CREDENTIALS);
+    private final BitbucketRepositoryClientImpl client =
+            new BitbucketRepositoryClientImpl(bitbucketRequestExecutor, PROJECT, REPO);
+
+    @Test
+    public void testGetBranches() {
+        String url = format(REPOSITORY_URL, BITBUCKET_BASE_URL, PROJECT, REPO) + "/branches?limit=1000";
+        fakeRemoteHttpServer.mapUrlToResult(url, readFileToString("/branches-first-page-response.json"));
+        fakeRemoteHttpServer.mapUrlToResult(url + "&start=2", readFileToString("/branches-last-page-response.json"));
+
+        List<BitbucketRefDetails> branches = client.getBranches().collect(toList());
+
+        assertThat(branches.stream().map(BitbucketRefDetails::getDisplayId).collect(toList()),
+                contains("master", "feature/first", "feature/second"));
+        assertThat(branches.get(0).getLatestCommit(), is("8d51122def5632836d1cb1026e879069e10a1e13"));
+        assertThat(branches.get(0).getType(), is(BitbucketRefType.BRANCH));
+    }
+
+    @Test
+    public void testGetChanges() {
+        String url = format(REPOSITORY_URL, BITBUCKET_BASE_URL, PROJECT, REPO) +
+                     "/compare/changes?from=8d51122def5632836d1cb1026e879069e10a1e13" +
+                     "&to=0a943a29376f2336b78312d99e65da17048951db&limit=1000";
+        fakeRemoteHttpServer.mapUrlToResult(url, readFileToString("/compare-changes-response.json"));
+
+        List<BitbucketChange> changes = client.getChanges("0a943a29376f2336b78312d99e65da17048951db",
+                "8d51122def5632836d1cb1026e879069e10a1e13").collect(toList());
+
+        assertThat(changes.stream().map(change -> change.getPath().getPath()).collect(toList()),
+                contains("src/main/java/Main.java", "docs/guide.md"));
+        assertThat(changes.get(0).getSrcPath().isPresent(), is(false));
+        assertThat(changes.get(1).getSrcPath().map(BitbucketPath::getPath).orElse(null), is("guide.md"));
+    }
+
+    @Test
+    public void testGetCommit() {
+        String url = format(REPOSITORY_URL, BITBUCKET_BASE_URL, PROJECT, REPO) +
+                     "/commits/8d51122def5632836d1cb1026e879069e10a1e13";
+        fakeRemoteHttpServer.mapUrlToResult(url, readFileToString("/commit-response.json"));
+
+        BitbucketCommit commit = client.getCommit("8d51122def5632836d1cb1026e879069e10a1e13");
+
+        assertThat(commit.getId(), is("8d51122def5632836d1cb1026e879069e10a1e13"));
+        assertThat(commit.getCommitterTimestamp(), is(1548720847609L));
+    }
+
+    @Test
+    public void testGetPullRequests() {
+        String url = format(REPOSITORY_URL, BITBUCKET_BASE_URL, PROJECT, REPO) + "/pull-requests?state=OPEN&limit=100";
+        fakeRemoteHttpServer.mapUrlToResult(url, readFileToString("/pull-requests-response.json"));
+
+        List<BitbucketPullRequest> pullRequests = client.getPullRequests().collect(toList());
+
+        assertThat(pullRequests.stream().map(BitbucketPullRequest::getId).collect(toList()), contains(1L));
+        BitbucketPullRequest pullRequest = pullRequests.get(0);
+        assertThat(pullRequest.getFromRef().getDisplayId(), is("feature/first"));
+        assertThat(pullRequest.getFromRef().getLatestCommit(), is("0a943a29376f2336b78312d99e65da17048951db"));
+        assertThat(pullRequest.getToRef().getDisplayId(), is("master"));
+        assertThat(pullRequest.getToRef().getRepository().getSlug(), is("repo"));
+    }
+
+    @Test
+    public void testGetTags() {
+        String url = format(REPOSITORY_URL, BITBUCKET_BASE_URL, PROJECT, REPO) + "/tags?limit=1000";
+        fakeRemoteHttpServer.mapUrlToResult(url, readFileToString("/tags-response.json"));
+
+        List<BitbucketRefDetails> tags = client.getTags().collect(toList());
+
+        assertThat(tags.stream().map(BitbucketRefDetails::getId).collect(toList()), contains("refs/tags/v1.0"));
+        assertThat(tags.get(0).getLatestCommit(), is("8d51122def5632836d1cb1026e879069e10a1e13"));
+        assertThat(tags.get(0).getType(), is(BitbucketRefType.TAG));
+        assertThat(tags.get(0).isAnnotatedTag(), is(true));
+    }
+}
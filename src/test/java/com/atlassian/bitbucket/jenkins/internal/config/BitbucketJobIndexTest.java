@@ -0,0 +1,99 @@
+package com.atlassian.bitbucket.jenkins.internal.config;
+
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import hudson.ExtensionList;
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Arrays;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class BitbucketJobIndexTest {
+
+    @ClassRule
+    public static final JenkinsRule jenkins = new JenkinsRule();
+    private BitbucketJobIndex jobIndex;
+
+    @Before
+    public void setup() {
+        jobIndex = ExtensionList.lookupSingleton(BitbucketJobIndex.class);
+        // Build the index up front, so the tests check it is kept up to date rather than built from the items
+        jobIndex.getItems(emptyList());
+    }
+
+    @Test
+    public void testCreatedItemIsIndexed() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(scm("created"));
+
+        FreeStyleProject copy = jenkins.jenkins.copy(project, "copy-of-" + project.getName());
+
+        assertThat(jobIndex.getItems(singleton("created")), containsInAnyOrder((Item) project, copy));
+    }
+
+    @Test
+    public void testDeletedItemIsRemoved() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(scm("deleted"));
+        assertThat(jobIndex.getItems(singleton("deleted")), contains((Item) project));
+
+        project.delete();
+
+        assertThat(jobIndex.getItems(singleton("deleted")), is(empty()));
+    }
+
+    @Test
+    public void testGetItemsForSeveralServers() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(scm("first"));
+        WorkflowJob workflowJob = jenkins.createProject(WorkflowJob.class);
+        workflowJob.setDefinition(new CpsScmFlowDefinition(scm("second"), "Jenkinsfile"));
+
+        assertThat(jobIndex.getItems(Arrays.asList("first", "second")), containsInAnyOrder((Item) project, workflowJob));
+        assertThat(jobIndex.getItems(singleton("second")), contains((Item) workflowJob));
+    }
+
+    @Test
+    public void testRenamedItemIsIndexedUnderNewName() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(scm("renamed"));
+
+        project.renameTo("renamed-" + project.getName());
+
+        assertThat(jobIndex.getItems(singleton("renamed")), contains((Item) project));
+        assertThat(jobIndex.getItems(singleton("renamed")).get(0).getFullName(),
+                is(equalTo(project.getFullName())));
+    }
+
+    @Test
+    public void testSavedItemIsIndexedUnderNewServer() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(scm("before-save"));
+        assertThat(jobIndex.getItems(singleton("before-save")), contains((Item) project));
+
+        project.setScm(scm("after-save"));
+
+        assertThat(jobIndex.getItems(singleton("before-save")), is(empty()));
+        assertThat(jobIndex.getItems(singleton("after-save")), contains((Item) project));
+    }
+
+    private static BitbucketSCM scm(String serverId) {
+        // There is no such server, so the SCM is created without looking up the repository
+        return new BitbucketSCM(null, emptyList(), "credentialsId", "", emptyList(), "", "project", "repo", serverId,
+                "");
+    }
+}
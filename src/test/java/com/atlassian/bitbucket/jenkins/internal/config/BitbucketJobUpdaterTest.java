@@ -0,0 +1,151 @@
+package com.atlassian.bitbucket.jenkins.internal.config;
+
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
+import hudson.model.FreeStyleProject;
+import hudson.util.PersistedList;
+import jenkins.branch.BranchPropertyStrategy;
+import jenkins.branch.BranchSource;
+import jenkins.scm.api.SCMSource;
+import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketJobUpdaterTest {
+
+    @ClassRule
+    public static final JenkinsRule jenkins = new JenkinsRule();
+    private static final String NEW_BASE_URL = "http://bitbucket.example.com";
+    private static final String OLD_BASE_URL = "http://localhost:7990/bitbucket";
+    private static final String SERVER_ID = "serverId";
+    private static final Map<String, String> NEW_BASE_URLS = singletonMap(SERVER_ID, NEW_BASE_URL);
+    private static final Map<String, String> OLD_BASE_URLS = singletonMap(SERVER_ID, OLD_BASE_URL);
+
+    @Mock
+    private BitbucketJobIndex jobIndex;
+    private final BitbucketJobUpdateMonitor monitor = new BitbucketJobUpdateMonitor();
+    @Mock
+    private FreeStyleProject project;
+    @Mock
+    private BitbucketSCM scm;
+    private BitbucketJobUpdater updater;
+
+    @Before
+    public void setup() {
+        updater = new BitbucketJobUpdater(jobIndex, monitor, Runnable::run);
+    }
+
+    @Test
+    public void testBaseUrlIsSubstituted() throws Exception {
+        BitbucketSCM rebasedScm = mock(BitbucketSCM.class);
+        givenProject();
+        when(scm.withBaseUrl(OLD_BASE_URL, NEW_BASE_URL)).thenReturn(Optional.of(rebasedScm));
+
+        update();
+
+        verify(project).setScm(rebasedScm);
+        assertThat(monitor.getUpdated(), is(1));
+        assertThat(monitor.getFailed(), is(0));
+        assertThat(monitor.isActivated(), is(false));
+    }
+
+    @Test
+    public void testScmIsLookedUpWhenBaseUrlCannotBeSubstituted() throws Exception {
+        givenProject();
+        when(scm.withBaseUrl(OLD_BASE_URL, NEW_BASE_URL)).thenReturn(Optional.empty());
+
+        update();
+
+        ArgumentCaptor<BitbucketSCM> newScm = ArgumentCaptor.forClass(BitbucketSCM.class);
+        verify(project).setScm(newScm.capture());
+        assertThat(newScm.getValue(), is(not(sameInstance(scm))));
+        assertThat(newScm.getValue().getServerId(), is(equalTo(SERVER_ID)));
+    }
+
+    @Test
+    public void testFailedItemIsCounted() throws Exception {
+        givenProject();
+        when(scm.withBaseUrl(OLD_BASE_URL, NEW_BASE_URL)).thenReturn(Optional.of(scm));
+        doThrow(new IOException("Disk full")).when(project).setScm(any());
+
+        update();
+
+        assertThat(monitor.getUpdated(), is(1));
+        assertThat(monitor.getFailed(), is(1));
+    }
+
+    @Test
+    public void testMultibranchSourcesAreRebuiltKeepingStrategies() throws Exception {
+        WorkflowMultiBranchProject multibranchProject = mock(WorkflowMultiBranchProject.class);
+        BitbucketSCMSource source = mock(BitbucketSCMSource.class);
+        BitbucketSCMSource rebasedSource = mock(BitbucketSCMSource.class);
+        BranchPropertyStrategy strategy = mock(BranchPropertyStrategy.class);
+        BranchSource otherBranchSource = new BranchSource(mock(SCMSource.class));
+        PersistedList<BranchSource> sources = new PersistedList<>(multibranchProject);
+        sources.add(new BranchSource(source, strategy));
+        sources.add(otherBranchSource);
+        when(source.getServerId()).thenReturn(SERVER_ID);
+        when(source.withBaseUrl(OLD_BASE_URL, NEW_BASE_URL)).thenReturn(Optional.of(rebasedSource));
+        when(multibranchProject.getSources()).thenReturn(sources);
+        when(jobIndex.getItems(singleton(SERVER_ID))).thenReturn(singletonList(multibranchProject));
+
+        update();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<BranchSource>> newSources = ArgumentCaptor.forClass(List.class);
+        verify(multibranchProject).setSourcesList(newSources.capture());
+        assertThat(newSources.getValue(), hasSize(2));
+        assertThat(newSources.getValue().get(0).getSource(), is(sameInstance(rebasedSource)));
+        assertThat(newSources.getValue().get(0).getStrategy(), is(sameInstance(strategy)));
+        assertThat(newSources.getValue().get(1), is(sameInstance(otherBranchSource)));
+    }
+
+    @Test
+    public void testMultibranchProjectWithoutChangedSourcesIsNotSaved() throws Exception {
+        WorkflowMultiBranchProject multibranchProject = mock(WorkflowMultiBranchProject.class);
+        PersistedList<BranchSource> sources = new PersistedList<>(multibranchProject);
+        sources.add(new BranchSource(mock(SCMSource.class)));
+        when(multibranchProject.getSources()).thenReturn(sources);
+        when(jobIndex.getItems(singleton(SERVER_ID))).thenReturn(singletonList(multibranchProject));
+
+        update();
+
+        verify(multibranchProject, never()).setSourcesList(any());
+        assertThat(monitor.getUpdated(), is(1));
+    }
+
+    private void givenProject() {
+        when(scm.getServerId()).thenReturn(SERVER_ID);
+        when(project.getScm()).thenReturn(scm);
+        when(jobIndex.getItems(singleton(SERVER_ID))).thenReturn(singletonList(project));
+    }
+
+    private void update() throws Exception {
+        updater.update(OLD_BASE_URLS, NEW_BASE_URLS).get(30, TimeUnit.SECONDS);
+    }
+}
@@ -6,6 +6,7 @@ import hudson.scm.SCM;
 import hudson.util.FormValidation;
 import net.sf.json.JSONObject;
 import org.hamcrest.Matchers;
+import org.apache.commons.io.FileUtils;
 import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.junit.Before;
@@ -21,9 +22,13 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Collections.singletonList;
 import static org.hamcrest.Matchers.not;
@@ -94,6 +99,7 @@ public class BitbucketPluginConfigurationTest {
         }).when(request).bindJSON(pluginConfiguration, formData);
 
         assertTrue(pluginConfiguration.configure(request, formData));
+        pluginConfiguration.getJobUpdate().get(30, TimeUnit.SECONDS);
 
         SCM newScm = jenkins.getInstance().getAllItems(FreeStyleProject.class).get(0).getScm();
         assertThat(newScm, not(equalTo(bitbucketSCMInitial)));
@@ -104,6 +110,33 @@ public class BitbucketPluginConfigurationTest {
         assertThat(((BitbucketSCM) newScm).getServerId(), equalTo("0"));
     }
 
+    @Test
+    public void testResumeJobUpdatesFinishesUpdateFromBeforeRestart() throws Exception {
+        FreeStyleProject freeStyleProject = jenkins.createFreeStyleProject();
+        BitbucketSCM bitbucketSCMInitial = mock(BitbucketSCM.class);
+        when(bitbucketSCMInitial.getServerId()).thenReturn("0");
+        freeStyleProject.setScm(bitbucketSCMInitial);
+        File configFile = new File(jenkins.getInstance().getRootDir(), BitbucketPluginConfiguration.class.getName() + ".xml");
+        FileUtils.writeStringToFile(configFile,
+                "<?xml version='1.1' encoding='UTF-8'?>\n" +
+                "<" + BitbucketPluginConfiguration.class.getName() + ">" +
+                "<pendingJobUpdates><atl-bbs-job-update>" +
+                "<newBaseUrls><entry><string>0</string><string>http://localhost:4990/bitbucket</string></entry></newBaseUrls>" +
+                "<oldBaseUrls><entry><string>0</string><string>http://localhost:5990/bitbucket</string></entry></oldBaseUrls>" +
+                "</atl-bbs-job-update></pendingJobUpdates>" +
+                "<serverList/>" +
+                "</" + BitbucketPluginConfiguration.class.getName() + ">", StandardCharsets.UTF_8);
+
+        BitbucketPluginConfiguration restartedConfiguration = new BitbucketPluginConfiguration();
+        restartedConfiguration.resumeJobUpdates();
+        restartedConfiguration.getJobUpdate().get(30, TimeUnit.SECONDS);
+
+        SCM newScm = ((FreeStyleProject) jenkins.getInstance().getItemByFullName(freeStyleProject.getFullName())).getScm();
+        assertThat(newScm, not(equalTo(bitbucketSCMInitial)));
+        assertThat(((BitbucketSCM) newScm).getServerId(), equalTo("0"));
+        assertFalse(FileUtils.readFileToString(configFile, StandardCharsets.UTF_8).contains("atl-bbs-job-update"));
+    }
+
     @Test
     public void testConfigureMultipleInvalid() {
         pluginConfiguration.setServerList(Arrays.asList(validServerConfiguration, invalidServerConfigurationOne, invalidServerConfigurationTwo));
@@ -137,6 +170,26 @@ public class BitbucketPluginConfigurationTest {
         assertThat(validServerList, Matchers.contains(validServerConfiguration));
     }
 
+    @Test
+    public void testGetServerById() {
+        pluginConfiguration.setServerList(Arrays.asList(validServerConfiguration, invalidServerConfigurationOne));
+
+        assertThat(pluginConfiguration.getServerById("1"), equalTo(Optional.of(invalidServerConfigurationOne)));
+        assertThat(pluginConfiguration.getServerById("2"), equalTo(Optional.empty()));
+        assertThat(pluginConfiguration.getServerById(null), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void testGetServerByIdAfterServerListChanged() {
+        pluginConfiguration.setServerList(singletonList(validServerConfiguration));
+        assertThat(pluginConfiguration.getServerById("0"), equalTo(Optional.of(validServerConfiguration)));
+
+        pluginConfiguration.setServerList(singletonList(invalidServerConfigurationTwo));
+
+        assertThat(pluginConfiguration.getServerById("0"), equalTo(Optional.empty()));
+        assertThat(pluginConfiguration.getServerById("2"), equalTo(Optional.of(invalidServerConfigurationTwo)));
+    }
+
     @Test
     public void testGetValidServerListEmpty() {
         pluginConfiguration.setServerList(Collections.emptyList());
@@ -2,7 +2,12 @@ package com.atlassian.bitbucket.jenkins.internal.config;
 
 import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
 import com.atlassian.bitbucket.jenkins.internal.fixture.BitbucketMockJenkinsRule;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsStore;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import hudson.model.labels.LabelAtom;
 import hudson.util.FormValidation;
+import hudson.util.SecretFactory;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,6 +15,8 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.Arrays;
+import java.util.Optional;
 import java.util.UUID;
 
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
@@ -133,6 +140,36 @@ public class BitbucketServerConfigurationTest {
         assertEquals(FormValidation.Kind.ERROR, descriptor.doCheckBaseUrl("http://www.bitbucket.org").kind);
     }
 
+    @Test
+    public void testValidMirrorPreferences() {
+        assertEquals(FormValidation.Kind.OK,
+                descriptor.doCheckMirrorPreferences("linux && sydney=Sydney mirror\n\nwindows=Amsterdam").kind);
+    }
+
+    @Test
+    public void testMirrorPreferenceWithoutMirrorName() {
+        assertEquals(FormValidation.Kind.WARNING, descriptor.doCheckMirrorPreferences("linux=").kind);
+    }
+
+    @Test
+    public void testMirrorPreferenceWithInvalidLabelExpression() {
+        assertEquals(FormValidation.Kind.WARNING, descriptor.doCheckMirrorPreferences("linux &&=Sydney").kind);
+    }
+
+    @Test
+    public void testPreferredMirrorNames() {
+        BitbucketServerConfiguration serverConfiguration = new BitbucketServerConfiguration(
+                bbJenkins.getTokenCredentialsId(),
+                "http://localhost:7990/bitbucket",
+                UUID.randomUUID().toString()
+        );
+        serverConfiguration.setMirrorPreferences("windows=Amsterdam\nlinux && sydney=Sydney\nlinux=Singapore\n" +
+                                                 "linux &&=Invalid");
+
+        assertEquals(Arrays.asList("Sydney", "Singapore"), serverConfiguration.getPreferredMirrorNames(
+                Arrays.asList(new LabelAtom("linux"), new LabelAtom("sydney"))));
+    }
+
     @Test
     public void testValidateValidServer() {
         BitbucketServerConfiguration serverConfiguration = new BitbucketServerConfiguration(
@@ -187,4 +224,53 @@ public class BitbucketServerConfigurationTest {
         serverConfiguration.setServerName(null);
         assertEquals(FormValidation.Kind.ERROR, serverConfiguration.validate().kind);
     }
+
+    @Test
+    public void testReplaceBaseUrl() {
+        assertEquals(Optional.of("http://bitbucket.example.com/scm/proj/repo.git"),
+                BitbucketServerConfiguration.replaceBaseUrl("http://localhost:7990/bitbucket/scm/proj/repo.git",
+                        "http://localhost:7990/bitbucket/", "http://bitbucket.example.com"));
+    }
+
+    @Test
+    public void testReplaceBaseUrlNotUnderOldBaseUrl() {
+        assertEquals(Optional.empty(),
+                BitbucketServerConfiguration.replaceBaseUrl("http://localhost:7990/bitbucket2/scm/proj/repo.git",
+                        "http://localhost:7990/bitbucket", "http://bitbucket.example.com"));
+        assertEquals(Optional.empty(),
+                BitbucketServerConfiguration.replaceBaseUrl(null, "http://localhost:7990/bitbucket",
+                        "http://bitbucket.example.com"));
+    }
+
+    @Test
+    public void testValidateAfterConfigurationChanged() {
+        BitbucketServerConfiguration serverConfiguration = new BitbucketServerConfiguration(
+                bbJenkins.getTokenCredentialsId(),
+                "http://localhost:7990/bitbucket",
+                UUID.randomUUID().toString()
+        );
+        assertEquals(FormValidation.Kind.ERROR, serverConfiguration.validate().kind);
+
+        serverConfiguration.setServerName("Server Name");
+
+        assertEquals(FormValidation.Kind.OK, serverConfiguration.validate().kind);
+    }
+
+    @Test
+    public void testValidateAfterCredentialsAdded() throws Exception {
+        String credentialsId = UUID.randomUUID().toString();
+        BitbucketServerConfiguration serverConfiguration = new BitbucketServerConfiguration(
+                credentialsId,
+                "http://localhost:7990/bitbucket",
+                UUID.randomUUID().toString()
+        );
+        serverConfiguration.setServerName("Server Name");
+        assertEquals(FormValidation.Kind.ERROR, serverConfiguration.validate().kind);
+
+        CredentialsStore store = CredentialsProvider.lookupStores(bbJenkins.jenkins).iterator().next();
+        store.addCredentials(Domain.global(),
+                new BitbucketTokenCredentialsImpl(credentialsId, "", SecretFactory.getSecret("secret")));
+
+        assertEquals(FormValidation.Kind.OK, serverConfiguration.validate().kind);
+    }
 }
@@ -0,0 +1,35 @@
+package com.atlassian.bitbucket.jenkins.internal.jenkins.auth;
+
+import hudson.security.SecurityRealm;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class JenkinsSecurityModeCheckerTest {
+
+    @ClassRule
+    public static final JenkinsRule jenkins = new JenkinsRule();
+
+    private final JenkinsSecurityModeChecker checker = new JenkinsSecurityModeChecker();
+
+    @After
+    public void tearDown() {
+        jenkins.jenkins.setSecurityRealm(SecurityRealm.NO_AUTHENTICATION);
+    }
+
+    @Test
+    public void testSecurityRealmChange() {
+        jenkins.jenkins.setSecurityRealm(SecurityRealm.NO_AUTHENTICATION);
+        assertThat(checker.isSecurityEnabled(), is(false));
+
+        jenkins.jenkins.setSecurityRealm(jenkins.createDummySecurityRealm());
+        assertThat(checker.isSecurityEnabled(), is(true));
+
+        jenkins.jenkins.setSecurityRealm(SecurityRealm.NO_AUTHENTICATION);
+        assertThat(checker.isSecurityEnabled(), is(false));
+    }
+}
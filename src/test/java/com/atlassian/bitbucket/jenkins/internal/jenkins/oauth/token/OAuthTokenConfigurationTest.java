@@ -10,24 +10,33 @@ import org.junit.runner.RunWith;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
 import java.time.Clock;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.TestData.Tokens.*;
+import static com.atlassian.bitbucket.jenkins.internal.jenkins.oauth.token.OAuthTokenConfiguration.PAGE_SIZE;
 import static com.atlassian.bitbucket.jenkins.internal.jenkins.oauth.token.OAuthTokenConfiguration.REVOKE_BUTTON_NAME;
 import static java.lang.String.format;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.collection.IsIterableWithSize.iterableWithSize;
 import static org.hamcrest.core.IsIterableContaining.hasItems;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -59,7 +68,7 @@ public class OAuthTokenConfigurationTest {
     public void returnsTokenForTheLoggedInUser() {
         ServiceProviderToken token1 = createAccessTokenForUser(TEST_USER);
         ServiceProviderToken token2 = createAccessTokenForUser(TEST_USER);
-        when(store.getAccessTokensForUser(TEST_USER)).thenReturn(Arrays.asList(token1, token2));
+        when(store.getAccessTokensForUser(TEST_USER, 0, PAGE_SIZE + 1)).thenReturn(Arrays.asList(token1, token2));
 
         List<DisplayAccessToken> tokens = instance.getTokens();
 
@@ -69,6 +78,35 @@ public class OAuthTokenConfigurationTest {
         assertThat(tokenName, hasItems(token1.getToken(), token2.getToken()));
     }
 
+    @Test
+    public void returnsPageOfTokens() {
+        List<ServiceProviderToken> tokens = new ArrayList<>();
+        for (int i = 0; i <= PAGE_SIZE; i++) {
+            tokens.add(createAccessTokenForUser(TEST_USER));
+        }
+        when(store.getAccessTokensForUser(TEST_USER, PAGE_SIZE, PAGE_SIZE + 1)).thenReturn(tokens);
+
+        OAuthTokenConfiguration.TokenPage page = instance.getTokenPage(PAGE_SIZE);
+
+        assertThat(page.getTokens(), iterableWithSize(PAGE_SIZE));
+        assertThat(page.isFirstPage(), is(false));
+        assertThat(page.isLastPage(), is(false));
+        assertThat(page.getPreviousStart(), is(0));
+        assertThat(page.getNextStart(), is(2 * PAGE_SIZE));
+    }
+
+    @Test
+    public void returnsLastPageOfTokens() {
+        ServiceProviderToken token = createAccessTokenForUser(TEST_USER);
+        when(store.getAccessTokensForUser(TEST_USER, 0, PAGE_SIZE + 1)).thenReturn(singletonList(token));
+
+        OAuthTokenConfiguration.TokenPage page = instance.getTokenPage(0);
+
+        assertThat(page.getTokens(), iterableWithSize(1));
+        assertThat(page.isFirstPage(), is(true));
+        assertThat(page.isLastPage(), is(true));
+    }
+
     @Test
     public void revokeAndSuccessfulRedirect() throws IOException, ServletException {
         when(request.getParameterMap()).thenReturn(
@@ -77,11 +115,33 @@ public class OAuthTokenConfigurationTest {
         HttpResponse r = instance.doRevoke(request);
         r.generateResponse(request, response, null);
 
-        verify(store).remove(TOKEN_VALUE);
+        verify(store).removeAll(singletonList(TOKEN_VALUE));
         verify(response).sendRedirect(HttpStatus.SC_MOVED_TEMPORARILY,
                 format(".", TOKEN_VALUE, VERIFIER));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void revokeRemovesAllTokensTogether() throws IOException, ServletException {
+        when(request.getParameterMap()).thenReturn(
+                mapOf("token1", new String[]{REVOKE_BUTTON_NAME}, "token2", new String[]{REVOKE_BUTTON_NAME}));
+        ArgumentCaptor<Collection<String>> captor = ArgumentCaptor.forClass(Collection.class);
+
+        instance.doRevoke(request);
+
+        verify(store).removeAll(captor.capture());
+        assertThat(captor.getValue(), containsInAnyOrder("token1", "token2"));
+    }
+
+    @Test
+    public void revokeWithoutTokensDoesNotRemove() {
+        when(request.getParameterMap()).thenReturn(mapOf("other", new String[]{"value"}));
+
+        instance.doRevoke(request);
+
+        verify(store, never()).removeAll(any());
+    }
+
     private Map<String, String[]> mapOf(String k1, String[] v1) {
         Map<String, String[]> result = new HashMap<>();
         result.put(k1, v1);
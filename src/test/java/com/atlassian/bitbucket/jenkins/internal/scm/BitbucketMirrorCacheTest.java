@@ -0,0 +1,161 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.client.exception.BitbucketClientException;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepository;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.AVAILABLE;
+import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.NOT_MIRRORED;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketMirrorCacheTest {
+
+    private static final String BASE_URL = "http://bitbucket.example.com";
+    private static final String MIRROR_NAME = "Mirror0";
+    private static final int REPO_ID = 42;
+
+    @Mock
+    private Clock clock;
+    private BitbucketMirrorCache mirrorCache;
+
+    @Before
+    public void setup() {
+        when(clock.millis()).thenReturn(0L);
+        mirrorCache = new BitbucketMirrorCache(clock, MoreExecutors.sameThreadExecutor());
+    }
+
+    @Test
+    public void testCachedMirrorsAreNotReloaded() {
+        CountingLoader loader = new CountingLoader(true);
+
+        mirrorCache.getMirroredRepositories(BASE_URL, REPO_ID, loader);
+        List<EnrichedBitbucketMirroredRepository> mirrors =
+                mirrorCache.getMirroredRepositories(BASE_URL, REPO_ID, loader);
+
+        assertThat(loader.count.get(), is(1));
+        assertThat(mirrors.size(), is(1));
+    }
+
+    @Test
+    public void testMirrorsAreCachedPerServer() {
+        CountingLoader loader = new CountingLoader(true);
+
+        mirrorCache.getMirroredRepositories(BASE_URL, REPO_ID, loader);
+        mirrorCache.getMirroredRepositories("http://other.example.com", REPO_ID, loader);
+
+        assertThat(loader.count.get(), is(2));
+        assertThat(mirrorCache.size(), is(2));
+    }
+
+    @Test
+    public void testRefreshReloadsRecentlyReadEntries() {
+        CountingLoader loader = new CountingLoader(true);
+        mirrorCache.getMirroredRepositories(BASE_URL, REPO_ID, loader);
+
+        mirrorCache.refresh();
+
+        assertThat(loader.count.get(), is(2));
+        assertThat(mirrorCache.size(), is(1));
+    }
+
+    @Test
+    public void testRefreshDropsExpiredEntries() {
+        CountingLoader loader = new CountingLoader(true);
+        mirrorCache.getMirroredRepositories(BASE_URL, REPO_ID, loader);
+        when(clock.millis()).thenReturn(BitbucketMirrorCache.CACHE_EXPIRY + 1);
+
+        mirrorCache.refresh();
+
+        assertThat(loader.count.get(), is(1));
+        assertThat(mirrorCache.size(), is(0));
+    }
+
+    @Test
+    public void testRefreshKeepsMirrorsWhenReloadFails() {
+        mirrorCache.getMirroredRepositories(BASE_URL, REPO_ID, new CountingLoader(true));
+        mirrorCache.getMirroredRepositories(BASE_URL, REPO_ID, () -> {
+            throw new BitbucketClientException("Failed", 500, null);
+        });
+
+        mirrorCache.refresh();
+
+        List<EnrichedBitbucketMirroredRepository> mirrors =
+                mirrorCache.getMirroredRepositories(BASE_URL, REPO_ID, new CountingLoader(false));
+        assertThat(mirrors.get(0).getMirroringDetails().isAvailable(), is(true));
+    }
+
+    @Test
+    public void testMirrorSynchronizedReloadsUnavailableMirror() {
+        CountingLoader loader = new CountingLoader(false);
+        mirrorCache.getMirroredRepositories(BASE_URL, REPO_ID, loader);
+
+        mirrorCache.mirrorSynchronized(createRepository(BASE_URL + "/projects/PROJ/repos/repo"), MIRROR_NAME);
+
+        assertThat(loader.count.get(), is(2));
+    }
+
+    @Test
+    public void testMirrorSynchronizedSkipsAvailableMirror() {
+        CountingLoader loader = new CountingLoader(true);
+        mirrorCache.getMirroredRepositories(BASE_URL, REPO_ID, loader);
+
+        mirrorCache.mirrorSynchronized(createRepository(BASE_URL + "/projects/PROJ/repos/repo"), MIRROR_NAME);
+
+        assertThat(loader.count.get(), is(1));
+    }
+
+    @Test
+    public void testMirrorSynchronizedSkipsOtherServers() {
+        CountingLoader loader = new CountingLoader(false);
+        mirrorCache.getMirroredRepositories(BASE_URL, REPO_ID, loader);
+
+        mirrorCache.mirrorSynchronized(createRepository("http://other.example.com/projects/PROJ/repos/repo"),
+                MIRROR_NAME);
+
+        assertThat(loader.count.get(), is(1));
+    }
+
+    private static BitbucketRepository createRepository(String selfLink) {
+        BitbucketRepository repository = mock(BitbucketRepository.class);
+        when(repository.getId()).thenReturn(REPO_ID);
+        when(repository.getSelfLink()).thenReturn(selfLink);
+        return repository;
+    }
+
+    private static final class CountingLoader implements Supplier<List<EnrichedBitbucketMirroredRepository>> {
+
+        private final boolean available;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private CountingLoader(boolean available) {
+            this.available = available;
+        }
+
+        @Override
+        public List<EnrichedBitbucketMirroredRepository> get() {
+            count.incrementAndGet();
+            BitbucketRepository repository = mock(BitbucketRepository.class);
+            when(repository.getId()).thenReturn(REPO_ID);
+            BitbucketMirroredRepository mirroredRepository = new BitbucketMirroredRepository(available, emptyMap(),
+                    MIRROR_NAME, REPO_ID, available ? AVAILABLE : NOT_MIRRORED);
+            return singletonList(new EnrichedBitbucketMirroredRepository(repository, mirroredRepository));
+        }
+    }
+}
@@ -17,6 +17,9 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.AVAILABLE;
@@ -24,11 +27,15 @@ import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRe
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.*;
 import static java.lang.String.format;
 import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.collection.IsIterableWithSize.iterableWithSize;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsIterableContaining.hasItems;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -48,24 +55,26 @@ public class BitbucketMirrorHandlerTest {
     private BitbucketRepository bitbucketRepository;
     @Mock
     private GlobalCredentialsProvider globalCredentialsProvider;
+    private BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
     private BitbucketMirrorHandler bitbucketMirrorHandler;
+    private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
+    private BitbucketRepoFetcher repoFetcher;
 
     @Before
     public void setup() {
         BitbucketCredentials bitbucketCredentials = mock(BitbucketCredentials.class);
-        BitbucketClientFactoryProvider bitbucketClientFactoryProvider = mock(BitbucketClientFactoryProvider.class);
+        bitbucketClientFactoryProvider = mock(BitbucketClientFactoryProvider.class);
         BitbucketClientFactory clientFactory = mockClientFactory(bitbucketClientFactoryProvider, bitbucketCredentials);
 
-        JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials =
-                mockCredentialConversion(bitbucketCredentials);
+        jenkinsToBitbucketCredentials = mockCredentialConversion(bitbucketCredentials);
 
-        BitbucketRepoFetcher repoFetcher = mock(BitbucketRepoFetcher.class);
+        repoFetcher = mock(BitbucketRepoFetcher.class);
         when(repoFetcher.fetchRepo(clientFactory, PROJECT, REPO)).thenReturn(bitbucketRepository);
         when(bitbucketRepository.getId()).thenReturn(REPO_ID);
         createInstance(bitbucketClientFactoryProvider, jenkinsToBitbucketCredentials, repoFetcher);
     }
 
-    @Test(expected = MirrorFetchException.class)
+    @Test(expected = MirrorUnavailableException.class)
     public void testDoesNotFetchUnAvailableRepository() {
         Map<String, BitbucketMirroredRepositoryDescriptor> descriptors = createMirroredRepoDescriptors(2);
 
@@ -76,6 +85,20 @@ public class BitbucketMirrorHandlerTest {
         bitbucketMirrorHandler.fetchRepository(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, "Mirror1"));
     }
 
+    @Test
+    public void testFetchUnknownMirrorIsNotReportedAsUnavailable() {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors = createMirroredRepoDescriptors(1);
+        mockMirroredRepo(descriptors.get("Mirror0"));
+
+        try {
+            bitbucketMirrorHandler.fetchRepository(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID,
+                    globalCredentialsProvider, PROJECT, REPO, "Mirror100"));
+            fail("Expected MirrorFetchException");
+        } catch (MirrorFetchException e) {
+            assertThat(e, not(instanceOf(MirrorUnavailableException.class)));
+        }
+    }
+
     @Test
     public void testFetchAsListBox() {
         Map<String, BitbucketMirroredRepositoryDescriptor> descriptors =
@@ -127,6 +150,76 @@ public class BitbucketMirrorHandlerTest {
                 .collect(Collectors.toList()), hasItems("Primary Server=[selected]", "Mirror0=Mirror0"));
     }
 
+    @Test
+    public void testUnresponsiveMirrorDoesNotBlockOtherMirrors() throws Exception {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors =
+                createMirroredRepoDescriptors(2);
+        mockMirroredRepo(descriptors.get("Mirror0"));
+        CountDownLatch release = new CountDownLatch(1);
+        when(bbRepoMirrorsClient.getRepositoryDetails(descriptors.get("Mirror1"))).thenAnswer(invocation -> {
+            release.await();
+            return null;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            bitbucketMirrorHandler = new BitbucketMirrorHandler(bitbucketClientFactoryProvider,
+                    jenkinsToBitbucketCredentials, repoFetcher, null, new BitbucketMirrorSelector(), executor, 200);
+
+            List<Option> options =
+                    bitbucketMirrorHandler.fetchAsListBox(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID, globalCredentialsProvider, PROJECT, REPO, "Mirror0"));
+
+            assertThat(options.stream()
+                    .map(Option::toString)
+                    .collect(Collectors.toList()),
+                    contains("Primary Server=", "Nearest available mirror=@auto", "Mirror0=Mirror0[selected]"));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAutoMirrorSelectionIsSelectedInListBox() {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors = createMirroredRepoDescriptors(1);
+        mockMirroredRepo(descriptors.get("Mirror0"));
+
+        List<Option> options =
+                bitbucketMirrorHandler.fetchAsListBox(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID,
+                        globalCredentialsProvider, PROJECT, REPO, BitbucketMirrorSelector.AUTO_MIRROR_NAME));
+
+        assertThat(options.stream()
+                .map(Option::toString)
+                .collect(Collectors.toList()),
+                contains("Primary Server=", "Nearest available mirror=@auto[selected]", "Mirror0=Mirror0"));
+    }
+
+    @Test
+    public void testFetchNearestRepositoryPrefersPreferredMirror() {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors = createMirroredRepoDescriptors(2);
+        mockMirroredRepo(descriptors.get("Mirror0"));
+        mockMirroredRepo(descriptors.get("Mirror1"));
+
+        Optional<EnrichedBitbucketMirroredRepository> repository =
+                bitbucketMirrorHandler.fetchNearestRepository(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID,
+                        globalCredentialsProvider, PROJECT, REPO, BitbucketMirrorSelector.AUTO_MIRROR_NAME),
+                        singletonList("Mirror1"));
+
+        assertThat(repository.get().getMirroringDetails().getMirrorName(), is(equalTo("Mirror1")));
+    }
+
+    @Test
+    public void testFetchNearestRepositoryWithoutAvailableMirrors() {
+        Map<String, BitbucketMirroredRepositoryDescriptor> descriptors = createMirroredRepoDescriptors(1);
+        mockMirroredRepo(descriptors.get("Mirror0"), NOT_MIRRORED);
+
+        Optional<EnrichedBitbucketMirroredRepository> repository =
+                bitbucketMirrorHandler.fetchNearestRepository(new MirrorFetchRequest(BITBUCKET_BASE_URL, CREDENTIAL_ID,
+                        globalCredentialsProvider, PROJECT, REPO, BitbucketMirrorSelector.AUTO_MIRROR_NAME),
+                        Collections.emptyList());
+
+        assertThat(repository.isPresent(), is(false));
+    }
+
     private BitbucketClientFactory mockClientFactory(BitbucketClientFactoryProvider bitbucketClientFactoryProvider,
                                                      BitbucketCredentials bitbucketCredentials) {
         BitbucketClientFactory bbClientFactory = mock(BitbucketClientFactory.class);
@@ -169,7 +262,6 @@ public class BitbucketMirrorHandlerTest {
 
     private Map<String, BitbucketMirroredRepositoryDescriptor> createMirroredRepoDescriptors(int count) {
         Map<String, BitbucketMirroredRepositoryDescriptor> r = new HashMap<>();
-        BitbucketPage<BitbucketMirroredRepositoryDescriptor> page = new BitbucketPage<>();
         List<BitbucketMirroredRepositoryDescriptor> mirroredRepoDescs = new ArrayList<>();
         for (int i = 0; i < count; i++) {
             Map<String, List<BitbucketNamedLink>> links = new HashMap<>();
@@ -183,8 +275,7 @@ public class BitbucketMirrorHandlerTest {
             mirroredRepoDescs.add(descriptor);
             r.put(mirrorName, descriptor);
         }
-        page.setValues(mirroredRepoDescs);
-        when(bbRepoMirrorsClient.getMirroredRepositoryDescriptors()).thenReturn(page);
+        when(bbRepoMirrorsClient.getMirroredRepositoryDescriptors()).thenAnswer(invocation -> mirroredRepoDescs.stream());
         return r;
     }
 
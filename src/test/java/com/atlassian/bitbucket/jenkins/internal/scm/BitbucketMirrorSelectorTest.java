@@ -0,0 +1,171 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepository;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.AVAILABLE;
+import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.ERROR_AVAILABLE;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BitbucketMirrorSelectorTest {
+
+    private static final String BASE_URL = "http://bitbucket.example.com";
+    private static final int REPO_ID = 7;
+
+    private final BitbucketMirrorSelector selector = new BitbucketMirrorSelector();
+
+    @Test
+    public void testSelectsLowestLatency() {
+        selector.recordLatency(BASE_URL, "Sydney", 120);
+        selector.recordLatency(BASE_URL, "Amsterdam", 40);
+
+        Optional<EnrichedBitbucketMirroredRepository> mirror =
+                selector.select(BASE_URL, asList(mirror("Sydney", AVAILABLE), mirror("Amsterdam", AVAILABLE)),
+                        emptyList());
+
+        assertThat(mirror.get().getMirroringDetails().getMirrorName(), is(equalTo("Amsterdam")));
+    }
+
+    @Test
+    public void testLatencyIsSmoothed() {
+        selector.recordLatency(BASE_URL, "Sydney", 50);
+        selector.recordLatency(BASE_URL, "Amsterdam", 60);
+        // A single slow response should not outweigh the history of the mirror
+        selector.recordLatency(BASE_URL, "Sydney", 70);
+
+        Optional<EnrichedBitbucketMirroredRepository> mirror =
+                selector.select(BASE_URL, asList(mirror("Sydney", AVAILABLE), mirror("Amsterdam", AVAILABLE)),
+                        emptyList());
+
+        assertThat(mirror.get().getMirroringDetails().getMirrorName(), is(equalTo("Sydney")));
+    }
+
+    @Test
+    public void testSelectsPreferredMirror() {
+        selector.recordLatency(BASE_URL, "Sydney", 120);
+        selector.recordLatency(BASE_URL, "Amsterdam", 40);
+
+        Optional<EnrichedBitbucketMirroredRepository> mirror =
+                selector.select(BASE_URL, asList(mirror("Sydney", AVAILABLE), mirror("Amsterdam", AVAILABLE)),
+                        singletonList("Sydney"));
+
+        assertThat(mirror.get().getMirroringDetails().getMirrorName(), is(equalTo("Sydney")));
+    }
+
+    @Test
+    public void testSkipsUnhealthyPreferredMirror() {
+        selector.recordLatency(BASE_URL, "Sydney", 120);
+        selector.recordLatency(BASE_URL, "Amsterdam", 40);
+
+        Optional<EnrichedBitbucketMirroredRepository> mirror =
+                selector.select(BASE_URL, asList(mirror("Sydney", ERROR_AVAILABLE), mirror("Amsterdam", AVAILABLE)),
+                        singletonList("Sydney"));
+
+        assertThat(mirror.get().getMirroringDetails().getMirrorName(), is(equalTo("Amsterdam")));
+    }
+
+    @Test
+    public void testSkipsFailedMirror() {
+        selector.recordLatency(BASE_URL, "Sydney", 120);
+        selector.recordLatency(BASE_URL, "Amsterdam", 40);
+        selector.recordFailure(BASE_URL, "Amsterdam");
+
+        Optional<EnrichedBitbucketMirroredRepository> mirror =
+                selector.select(BASE_URL, asList(mirror("Sydney", AVAILABLE), mirror("Amsterdam", AVAILABLE)),
+                        emptyList());
+
+        assertThat(mirror.get().getMirroringDetails().getMirrorName(), is(equalTo("Sydney")));
+    }
+
+    @Test
+    public void testLatencyIsTrackedPerServer() {
+        selector.recordLatency("http://other.example.com", "Sydney", 40);
+        selector.recordLatency(BASE_URL, "Amsterdam", 120);
+
+        Optional<EnrichedBitbucketMirroredRepository> mirror =
+                selector.select(BASE_URL, asList(mirror("Sydney", AVAILABLE), mirror("Amsterdam", AVAILABLE)),
+                        emptyList());
+
+        assertThat(mirror.get().getMirroringDetails().getMirrorName(), is(equalTo("Amsterdam")));
+    }
+
+    @Test
+    public void testSelectsMirrorWhichHasNotBeenMeasured() {
+        Optional<EnrichedBitbucketMirroredRepository> mirror =
+                selector.select(BASE_URL, singletonList(mirror("Sydney", AVAILABLE)), emptyList());
+
+        assertThat(mirror.get().getMirroringDetails().getMirrorName(), is(equalTo("Sydney")));
+    }
+
+    @Test
+    public void testKeepsSelectedMirrorUnlessAnotherIsClearlyFaster() {
+        List<EnrichedBitbucketMirroredRepository> mirrors =
+                asList(mirror("Sydney", AVAILABLE), mirror("Amsterdam", AVAILABLE));
+        selector.recordLatency(BASE_URL, "Sydney", 100);
+        selector.recordLatency(BASE_URL, "Amsterdam", 200);
+        selector.select(BASE_URL, mirrors, emptyList());
+
+        selector.recordLatency(BASE_URL, "Amsterdam", 0);
+        assertThat(selector.select(BASE_URL, mirrors, emptyList()).get().getMirroringDetails().getMirrorName(),
+                is(equalTo("Sydney")));
+
+        selector.recordLatency(BASE_URL, "Amsterdam", 0);
+        selector.recordLatency(BASE_URL, "Amsterdam", 0);
+        assertThat(selector.select(BASE_URL, mirrors, emptyList()).get().getMirroringDetails().getMirrorName(),
+                is(equalTo("Amsterdam")));
+    }
+
+    @Test
+    public void testSwitchesAwayFromFailedMirror() {
+        List<EnrichedBitbucketMirroredRepository> mirrors =
+                asList(mirror("Sydney", AVAILABLE), mirror("Amsterdam", AVAILABLE));
+        selector.recordLatency(BASE_URL, "Sydney", 40);
+        selector.recordLatency(BASE_URL, "Amsterdam", 120);
+        selector.select(BASE_URL, mirrors, emptyList());
+
+        selector.recordFailure(BASE_URL, "Sydney");
+
+        assertThat(selector.select(BASE_URL, mirrors, emptyList()).get().getMirroringDetails().getMirrorName(),
+                is(equalTo("Amsterdam")));
+    }
+
+    @Test
+    public void testFailedMirrorIsSelectedAgainOnceItResponds() {
+        selector.recordFailure(BASE_URL, "Sydney");
+        assertThat(selector.select(BASE_URL, singletonList(mirror("Sydney", AVAILABLE)), emptyList()).isPresent(),
+                is(false));
+
+        selector.recordLatency(BASE_URL, "Sydney", 40);
+
+        assertThat(selector.select(BASE_URL, singletonList(mirror("Sydney", AVAILABLE)), emptyList()).isPresent(),
+                is(true));
+    }
+
+    @Test
+    public void testNoMirrors() {
+        List<EnrichedBitbucketMirroredRepository> mirrors = emptyList();
+
+        assertThat(selector.select(BASE_URL, mirrors, singletonList("Sydney")).isPresent(), is(false));
+    }
+
+    private static EnrichedBitbucketMirroredRepository mirror(String mirrorName,
+                                                              BitbucketMirroredRepositoryStatus status) {
+        BitbucketRepository repository = mock(BitbucketRepository.class);
+        when(repository.getId()).thenReturn(REPO_ID);
+        return new EnrichedBitbucketMirroredRepository(repository,
+                new BitbucketMirroredRepository(true, emptyMap(), mirrorName, REPO_ID, status));
+    }
+}
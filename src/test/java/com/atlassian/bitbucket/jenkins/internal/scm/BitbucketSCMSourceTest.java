@@ -1,33 +1,58 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
-import com.atlassian.bitbucket.jenkins.internal.model.BitbucketNamedLink;
-import com.atlassian.bitbucket.jenkins.internal.model.BitbucketProject;
-import com.atlassian.bitbucket.jenkins.internal.model.BitbucketRepository;
+import com.atlassian.bitbucket.jenkins.internal.model.*;
 import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookMultibranchTrigger;
+import com.atlassian.bitbucket.jenkins.internal.trigger.PullRequestWebhookEvent;
+import com.atlassian.bitbucket.jenkins.internal.trigger.RefsChangedWebhookEvent;
 import com.atlassian.bitbucket.jenkins.internal.trigger.RetryingWebhookHandler;
+import hudson.model.TaskListener;
 import hudson.plugins.git.GitSCM;
 import hudson.plugins.git.UserRemoteConfig;
 import hudson.scm.SCM;
+import hudson.util.StreamTaskListener;
 import jenkins.branch.MultiBranchProject;
-import jenkins.scm.api.SCMHead;
-import jenkins.scm.api.SCMSourceDescriptor;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.plugins.git.GitBranchSCMRevision;
+import jenkins.plugins.git.GitTagSCMHead;
+import jenkins.plugins.git.GitTagSCMRevision;
+import jenkins.plugins.git.traits.BranchDiscoveryTrait;
+import jenkins.plugins.git.traits.TagDiscoveryTrait;
+import jenkins.scm.api.*;
+import jenkins.scm.api.trait.SCMSourceTrait;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 
 import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_OPENED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.hamcrest.collection.IsMapContaining.hasEntry;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.StringContains.containsString;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.*;
@@ -37,6 +62,9 @@ public class BitbucketSCMSourceTest {
     private static final String httpCloneLink = "http://localhost:7990/fake.git";
     private static final String sshCloneLink = "ssh://git@localhost:7990/fake.git";
 
+    private final BitbucketCommitTimestampCache commitTimestampCache = new BitbucketCommitTimestampCache();
+    private final BitbucketRepositoryClient repositoryClient = mock(BitbucketRepositoryClient.class);
+
     @Test
     public void testBuildHttp() {
         BitbucketSCMSource scmSource = createInstance("credentialsId", "serverId", "project", "repo");
@@ -64,6 +92,240 @@ public class BitbucketSCMSourceTest {
         assertEquals(sshCloneLink, userRemoteConfigs.get(0).getUrl());
     }
 
+    @Test
+    public void testBuildPullRequest() {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "serverId", "project", "repo");
+        BitbucketPullRequest pullRequest = pullRequest();
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest);
+
+        SCM scm = scmSource.build(head, new BitbucketPullRequestSCMRevision(head, pullRequest));
+
+        assertTrue(scm instanceof GitSCM);
+        List<UserRemoteConfig> userRemoteConfigs = ((GitSCM) scm).getUserRemoteConfigs();
+        assertEquals(1, userRemoteConfigs.size());
+        assertEquals(httpCloneLink, userRemoteConfigs.get(0).getUrl());
+        assertThat(userRemoteConfigs.get(0).getRefspec(), containsString("+refs/pull-requests/1/from:"));
+    }
+
+    @Test
+    public void testBuildTrustedRevisionOfForkPullRequestChecksOutTarget() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "serverId", "project", "repo");
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(forkPullRequest());
+        SCMRevision trustedRevision = scmSource.getTrustedRevision(
+                new BitbucketPullRequestSCMRevision(head, forkPullRequest()), null);
+
+        SCM scm = scmSource.build(head, trustedRevision);
+
+        List<UserRemoteConfig> userRemoteConfigs = ((GitSCM) scm).getUserRemoteConfigs();
+        assertEquals(1, userRemoteConfigs.size());
+        assertThat(userRemoteConfigs.get(0).getRefspec(), not(containsString("refs/pull-requests")));
+    }
+
+    @Test
+    public void testTrustedRevisionOfForkPullRequestIsTarget() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "serverId", "project", "repo");
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(forkPullRequest());
+        BitbucketPullRequestSCMRevision revision = new BitbucketPullRequestSCMRevision(head, forkPullRequest());
+
+        SCMRevision trustedRevision = scmSource.getTrustedRevision(revision, null);
+
+        assertEquals(revision.getTarget(), trustedRevision);
+        assertEquals(new GitBranchSCMRevision(new GitBranchSCMHead("master"), "tohash"), trustedRevision);
+    }
+
+    @Test
+    public void testTrustedRevisionOfPullRequestFromSameRepositoryIsUnchanged() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "serverId", "project", "repo");
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest());
+        BitbucketPullRequestSCMRevision revision = new BitbucketPullRequestSCMRevision(head, pullRequest());
+
+        assertEquals(revision, scmSource.getTrustedRevision(revision, null));
+    }
+
+    @Test
+    public void testEventScopedRetrieveObservesChangedBranches() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "", "serverId", "project", "repo",
+                singletonList(new BranchDiscoveryTrait()));
+        GitBranchSCMHead head = new GitBranchSCMHead("master");
+        GitBranchSCMRevision revision = new GitBranchSCMRevision(head, "tohash");
+        SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+
+        scmSource.retrieve(null, observer,
+                headEvent(refChange(BitbucketRefType.BRANCH, BitbucketRefChangeType.UPDATE),
+                        singletonMap(head, revision)), TaskListener.NULL);
+
+        assertThat(observer.result(), hasEntry(head, revision));
+    }
+
+    @Test
+    public void testEventScopedRetrieveWithoutBranchDiscovery() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "serverId", "project", "repo");
+        GitBranchSCMHead head = new GitBranchSCMHead("master");
+        SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+
+        scmSource.retrieve(null, observer,
+                headEvent(refChange(BitbucketRefType.BRANCH, BitbucketRefChangeType.UPDATE),
+                        singletonMap(head, new GitBranchSCMRevision(head, "tohash"))), TaskListener.NULL);
+
+        assertThat(observer.result().keySet(), is(empty()));
+    }
+
+    @Test
+    public void testEventScopedRetrieveForOtherRepository() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "", "serverId", "project", "repo",
+                singletonList(new BranchDiscoveryTrait()));
+        SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+
+        scmSource.retrieve(null, observer,
+                headEvent(refChange(BitbucketRefType.BRANCH, BitbucketRefChangeType.UPDATE), emptyMap()),
+                TaskListener.NULL);
+
+        assertThat(observer.result().keySet(), is(empty()));
+    }
+
+    @Test
+    public void testEventScopedRetrieveObservesPullRequest() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "", "serverId", "project", "repo",
+                Arrays.asList(new BranchDiscoveryTrait(), new BitbucketPullRequestDiscoveryTrait()));
+        BitbucketPullRequest pullRequest = pullRequest();
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest);
+        BitbucketPullRequestSCMRevision revision = new BitbucketPullRequestSCMRevision(head, pullRequest);
+        SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+
+        scmSource.retrieve(null, observer, pullRequestEvent(pullRequest, singletonMap(head, revision)),
+                TaskListener.NULL);
+
+        assertThat(observer.result(), hasEntry(head, revision));
+        verifyZeroInteractions(repositoryClient);
+    }
+
+    @Test
+    public void testEventScopedRetrieveWithoutPullRequestDiscovery() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "", "serverId", "project", "repo",
+                singletonList(new BranchDiscoveryTrait()));
+        BitbucketPullRequest pullRequest = pullRequest();
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest);
+        SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+
+        scmSource.retrieve(null, observer, pullRequestEvent(pullRequest,
+                singletonMap(head, new BitbucketPullRequestSCMRevision(head, pullRequest))), TaskListener.NULL);
+
+        assertThat(observer.result().keySet(), is(empty()));
+    }
+
+    @Test
+    public void testRetrieveListsBranchesFromBitbucket() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "", "serverId", "project", "repo",
+                singletonList(new BranchDiscoveryTrait()));
+        when(repositoryClient.getBranches()).thenReturn(Stream.of(
+                new BitbucketRefDetails("refs/heads/master", "master", BitbucketRefType.BRANCH, "masterhash", null)));
+        SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+
+        scmSource.retrieve(null, observer, null, TaskListener.NULL);
+
+        GitBranchSCMHead head = new GitBranchSCMHead("master");
+        assertThat(observer.result(), hasEntry(head, new GitBranchSCMRevision(head, "masterhash")));
+        verify(repositoryClient, never()).getTags();
+    }
+
+    @Test
+    public void testRetrieveListsTagsFromBitbucket() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "", "serverId", "project", "repo",
+                singletonList(new TagDiscoveryTrait()));
+        when(repositoryClient.getTags()).thenReturn(Stream.of(
+                new BitbucketRefDetails("refs/tags/v1", "v1", BitbucketRefType.TAG, "taghash", "taghash")));
+        when(repositoryClient.getCommit("taghash")).thenReturn(new BitbucketCommit("taghash", 1000L));
+        SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+
+        scmSource.retrieve(null, observer, null, TaskListener.NULL);
+
+        GitTagSCMHead head = new GitTagSCMHead("v1", 1000L);
+        assertThat(observer.result(), hasEntry(head, new GitTagSCMRevision(head, "taghash")));
+        assertThat(((GitTagSCMHead) observer.result().keySet().iterator().next()).getTimestamp(), is(1000L));
+        verify(repositoryClient, never()).getBranches();
+    }
+
+    @Test
+    public void testRetrieveLooksUpTagCommitsOnce() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "", "serverId", "project", "repo",
+                singletonList(new TagDiscoveryTrait()));
+        when(repositoryClient.getTags()).thenAnswer(invocation -> Stream.of(
+                new BitbucketRefDetails("refs/tags/v1", "v1", BitbucketRefType.TAG, "taghash", "taghash")));
+        when(repositoryClient.getCommit("taghash")).thenReturn(new BitbucketCommit("taghash", 1000L));
+
+        scmSource.retrieve(null, SCMHeadObserver.collect(), null, TaskListener.NULL);
+        SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+        scmSource.retrieve(null, observer, null, TaskListener.NULL);
+
+        GitTagSCMHead head = new GitTagSCMHead("v1", 1000L);
+        assertThat(observer.result(), hasEntry(head, new GitTagSCMRevision(head, "taghash")));
+        assertThat(((GitTagSCMHead) observer.result().keySet().iterator().next()).getTimestamp(), is(1000L));
+        verify(repositoryClient, times(1)).getCommit("taghash");
+    }
+
+    @Test
+    public void testRetrieveUsesGitForAnnotatedTags() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "", "serverId", "project", "repo",
+                singletonList(new TagDiscoveryTrait()));
+        when(repositoryClient.getTags()).thenReturn(Stream.of(
+                new BitbucketRefDetails("refs/tags/v1", "v1", BitbucketRefType.TAG, "taghash", "tagobjecthash")));
+        SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+        retrieveFallingBackToGit(scmSource, observer, new StreamTaskListener(log, UTF_8));
+
+        assertThat(log.toString(UTF_8.name()), containsString("is annotated, using git to find when it was made"));
+        assertThat(observer.result().keySet(), is(empty()));
+        verify(repositoryClient, never()).getCommit(anyString());
+    }
+
+    @Test
+    public void testRetrieveUsesGitWhenTooManyTagCommitsAreNeeded() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "", "serverId", "project", "repo",
+                singletonList(new TagDiscoveryTrait()));
+        when(repositoryClient.getTags()).thenReturn(IntStream.range(0, 51)
+                .mapToObj(i -> new BitbucketRefDetails("refs/tags/v" + i, "v" + i, BitbucketRefType.TAG,
+                        "taghash" + i, "taghash" + i)));
+        SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+        retrieveFallingBackToGit(scmSource, observer, new StreamTaskListener(log, UTF_8));
+
+        assertThat(log.toString(UTF_8.name()), containsString("51 new tag(s)"));
+        assertThat(observer.result().keySet(), is(empty()));
+        verify(repositoryClient, never()).getCommit(anyString());
+    }
+
+    @Test
+    public void testRetrieveListsPullRequestsFromBitbucket() throws Exception {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "", "serverId", "project", "repo",
+                singletonList(new BitbucketPullRequestDiscoveryTrait()));
+        BitbucketPullRequest pullRequest = pullRequest();
+        when(repositoryClient.getPullRequests()).thenReturn(Stream.of(pullRequest));
+        SCMHeadObserver.Collector observer = SCMHeadObserver.collect();
+
+        scmSource.retrieve(null, observer, null, TaskListener.NULL);
+
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest);
+        assertThat(observer.result(), hasEntry(head, new BitbucketPullRequestSCMRevision(head, pullRequest)));
+        assertThat(head.getName(), equalTo("PR-1"));
+        assertThat(head.getOriginName(), equalTo("feature"));
+        assertThat(head.getTarget().getName(), equalTo("master"));
+        verify(repositoryClient, never()).getBranches();
+    }
+
+    @Test
+    public void testIsEventScoped() {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "serverId", "project", "repo");
+
+        assertTrue(scmSource.isEventScoped(
+                headEvent(refChange(BitbucketRefType.BRANCH, BitbucketRefChangeType.ADD), emptyMap())));
+        assertFalse(scmSource.isEventScoped(
+                headEvent(refChange(BitbucketRefType.BRANCH, BitbucketRefChangeType.DELETE), emptyMap())));
+        assertFalse(scmSource.isEventScoped(
+                headEvent(refChange(BitbucketRefType.TAG, BitbucketRefChangeType.ADD), emptyMap())));
+    }
+
     @Test
     public void testCredentialAndServerIdSaved() {
         String credentialsId = "valid-credentials";
@@ -144,6 +406,44 @@ public class BitbucketSCMSourceTest {
         verify(triggerDesc).addTrigger(any(), same(bitbucketSCMsource));
     }
 
+    @Test
+    public void testWithBaseUrlMovesCloneUrlToNewBaseUrl() {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "serverId", "project", "repo");
+
+        Optional<BitbucketSCMSource> rebased =
+                scmSource.withBaseUrl("http://localhost:7990", "http://bitbucket.example.com/");
+
+        assertTrue(rebased.isPresent());
+        assertEquals("http://bitbucket.example.com/fake.git", rebased.get().getRemote());
+        assertEquals(scmSource.getId(), rebased.get().getId());
+        assertEquals("serverId", rebased.get().getServerId());
+        assertEquals(scmSource.getTraits(), rebased.get().getTraits());
+    }
+
+    @Test
+    public void testWithBaseUrlLooksUpSshCloneUrl() {
+        BitbucketSCMSource scmSource =
+                createInstance("credentialsId", "sshCredentialsId", "serverId", "project", "repo");
+
+        assertFalse(scmSource.withBaseUrl("http://localhost:7990", "http://bitbucket.example.com").isPresent());
+    }
+
+    @Test
+    public void testWithBaseUrlLooksUpCloneUrlOutsideOldBaseUrl() {
+        BitbucketSCMSource scmSource = createInstance("credentialsId", "serverId", "project", "repo");
+
+        assertFalse(scmSource.withBaseUrl("http://localhost:7991", "http://bitbucket.example.com").isPresent());
+    }
+
+    private static void retrieveFallingBackToGit(BitbucketSCMSource scmSource, SCMHeadObserver observer,
+                                                 TaskListener listener) {
+        try {
+            scmSource.retrieve(null, observer, null, listener);
+        } catch (Exception e) {
+            // Expected, there is neither Jenkins nor a repository for git to list the heads with
+        }
+    }
+
     private BitbucketSCMSource createInstance(String credentialId) {
         return createInstance(credentialId, null);
     }
@@ -165,11 +465,17 @@ public class BitbucketSCMSourceTest {
 
     private BitbucketSCMSource createInstance(String credentialsId, String sshCredentialId, @Nullable String serverId,
                                               @Nullable String projectName, @Nullable String repo) {
+        return createInstance(credentialsId, sshCredentialId, serverId, projectName, repo, Collections.emptyList());
+    }
+
+    private BitbucketSCMSource createInstance(String credentialsId, String sshCredentialId, @Nullable String serverId,
+                                              @Nullable String projectName, @Nullable String repo,
+                                              List<SCMSourceTrait> traits) {
         return new BitbucketSCMSource(
                 "1",
                 credentialsId,
                 sshCredentialId,
-                Collections.emptyList(),
+                traits,
                 projectName,
                 repo,
                 serverId,
@@ -190,7 +496,10 @@ public class BitbucketSCMSourceTest {
                         nullable(String.class)))
                         .thenReturn(scmHelper);
                 when(descriptor.getRetryingWebhookHandler()).thenReturn(mock(RetryingWebhookHandler.class));
+                when(descriptor.getCommitTimestampCache()).thenReturn(commitTimestampCache);
                 when(scmHelper.getRepository(nullable(String.class), nullable(String.class))).thenReturn(repository);
+                when(scmHelper.getRepositoryClient(nullable(String.class), nullable(String.class)))
+                        .thenReturn(repositoryClient);
                 when(repository.getProject()).thenReturn(mock(BitbucketProject.class));
                 when(repository.getCloneUrls()).thenReturn(Arrays.asList(new BitbucketNamedLink("http", httpCloneLink), new BitbucketNamedLink("ssh", sshCloneLink)));
 
@@ -198,4 +507,83 @@ public class BitbucketSCMSourceTest {
             }
         };
     }
+
+    private static SCMHeadEvent<RefsChangedWebhookEvent> headEvent(BitbucketRefChange change,
+                                                                  Map<SCMHead, SCMRevision> heads) {
+        BitbucketRepository repository = new BitbucketRepository(1, "repo", null,
+                new BitbucketProject("PROJECT", null, "project"), "repo", RepositoryState.AVAILABLE);
+        RefsChangedWebhookEvent payload = new RefsChangedWebhookEvent(null, REPO_REF_CHANGE.getEventId(), new Date(),
+                singletonList(change), repository);
+        return new SCMHeadEvent<RefsChangedWebhookEvent>(SCMEvent.Type.UPDATED, payload, "origin") {
+            @Override
+            public String getSourceName() {
+                return "repo";
+            }
+
+            @Override
+            public Map<SCMHead, SCMRevision> heads(SCMSource source) {
+                return heads;
+            }
+
+            @Override
+            public boolean isMatch(SCMNavigator navigator) {
+                return false;
+            }
+
+            @Override
+            public boolean isMatch(SCM scm) {
+                return false;
+            }
+        };
+    }
+
+    private static SCMHeadEvent<PullRequestWebhookEvent> pullRequestEvent(BitbucketPullRequest pullRequest,
+                                                                         Map<SCMHead, SCMRevision> heads) {
+        PullRequestWebhookEvent payload = new PullRequestWebhookEvent(null, PULL_REQUEST_OPENED.getEventId(),
+                new Date(), pullRequest);
+        return new SCMHeadEvent<PullRequestWebhookEvent>(SCMEvent.Type.CREATED, payload, "origin") {
+            @Override
+            public String getSourceName() {
+                return "repo";
+            }
+
+            @Override
+            public Map<SCMHead, SCMRevision> heads(SCMSource source) {
+                return heads;
+            }
+
+            @Override
+            public boolean isMatch(SCMNavigator navigator) {
+                return false;
+            }
+
+            @Override
+            public boolean isMatch(SCM scm) {
+                return false;
+            }
+        };
+    }
+
+    private static BitbucketPullRequest pullRequest() {
+        BitbucketRepository repository = new BitbucketRepository(1, "repo", null,
+                new BitbucketProject("PROJECT", null, "project"), "repo", RepositoryState.AVAILABLE);
+        return new BitbucketPullRequest(1L, "My pull request",
+                new BitbucketPullRequestRef("refs/heads/feature", "feature", "fromhash", repository),
+                new BitbucketPullRequestRef("refs/heads/master", "master", "tohash", repository));
+    }
+
+    private static BitbucketPullRequest forkPullRequest() {
+        BitbucketRepository fork = new BitbucketRepository(2, "repo", null,
+                new BitbucketProject("~USER", null, "user"), "repo", RepositoryState.AVAILABLE);
+        BitbucketRepository repository = new BitbucketRepository(1, "repo", null,
+                new BitbucketProject("PROJECT", null, "project"), "repo", RepositoryState.AVAILABLE);
+        return new BitbucketPullRequest(1L, "My pull request",
+                new BitbucketPullRequestRef("refs/heads/feature", "feature", "fromhash", fork),
+                new BitbucketPullRequestRef("refs/heads/master", "master", "tohash", repository));
+    }
+
+    private static BitbucketRefChange refChange(BitbucketRefType refType, BitbucketRefChangeType changeType) {
+        BitbucketRef ref = new BitbucketRef("refs/heads/master", "master", refType);
+        return new BitbucketRefChange(ref, "refs/heads/master", "fromhash", "tohash", changeType);
+    }
 }
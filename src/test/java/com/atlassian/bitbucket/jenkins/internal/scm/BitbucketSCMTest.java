@@ -1,16 +1,32 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
+import com.atlassian.bitbucket.jenkins.internal.model.*;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM.DescriptorImpl;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitSCM;
+import hudson.plugins.git.browser.Stash;
 import hudson.scm.SCMDescriptor;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static com.atlassian.bitbucket.jenkins.internal.model.BitbucketMirroredRepositoryStatus.AVAILABLE;
+import static com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorSelector.AUTO_MIRROR_NAME;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.argThat;
@@ -19,6 +35,11 @@ import static org.mockito.Mockito.*;
 
 public class BitbucketSCMTest {
 
+    private static final String BASE_URL = "http://bitbucket.example.com";
+    private static final String NEW_BASE_URL = "http://bitbucket.new.example.com";
+    private static final String MIRROR_CLONE_URL = "http://mirror.example.com/scm/proj1/repo1.git";
+    private static final String PRIMARY_CLONE_URL = BASE_URL + "/scm/proj1/repo1.git";
+
     @Test
     public void testCredentialsIdAreSavedIfServerIdNotSelected() {
         String credentialsId = "valid-credentials";
@@ -81,6 +102,110 @@ public class BitbucketSCMTest {
         assertEquals(projectName, scm.getProjectName());
     }
 
+    @Test
+    public void testSelectGitSCMUsesNearestMirror() {
+        BitbucketMirrorHandler mirrorHandler = mock(BitbucketMirrorHandler.class);
+        BitbucketSCM scm = createAutoMirrorInstance(mirrorHandler);
+        EnrichedBitbucketMirroredRepository mirroredRepository = new EnrichedBitbucketMirroredRepository(
+                repository(PRIMARY_CLONE_URL),
+                new BitbucketMirroredRepository(true, links(MIRROR_CLONE_URL), "mirror1", 1, AVAILABLE));
+        when(mirrorHandler.fetchNearestRepository(any(), eq(emptyList()))).thenReturn(Optional.of(mirroredRepository));
+
+        GitSCM gitSCM = scm.selectGitSCM(null, listener());
+
+        assertThat(gitSCM.getUserRemoteConfigs().get(0).getUrl(), is(equalTo(MIRROR_CLONE_URL)));
+    }
+
+    @Test
+    public void testSelectGitSCMFallsBackToPrimaryWhenNoMirrorIsAvailable() {
+        BitbucketMirrorHandler mirrorHandler = mock(BitbucketMirrorHandler.class);
+        BitbucketSCM scm = createAutoMirrorInstance(mirrorHandler);
+        when(mirrorHandler.fetchNearestRepository(any(), eq(emptyList()))).thenReturn(Optional.empty());
+
+        GitSCM gitSCM = scm.selectGitSCM(null, listener());
+
+        assertThat(gitSCM, is(sameInstance(scm.getGitSCM())));
+        assertThat(gitSCM.getUserRemoteConfigs().get(0).getUrl(), is(equalTo(PRIMARY_CLONE_URL)));
+    }
+
+    @Test
+    public void testWithBaseUrlMovesUrlsToNewBaseUrl() {
+        BitbucketSCM scm = new BitbucketSCM("1", emptyList(), "valid-credentials", "", emptyList(), "", "serverId1",
+                repository(PRIMARY_CLONE_URL));
+
+        Optional<BitbucketSCM> rebased = scm.withBaseUrl(BASE_URL, NEW_BASE_URL + "/");
+
+        assertThat(rebased.isPresent(), is(true));
+        GitSCM gitSCM = rebased.get().getGitSCM();
+        assertThat(gitSCM.getUserRemoteConfigs().get(0).getUrl(), is(equalTo(NEW_BASE_URL + "/scm/proj1/repo1.git")));
+        assertThat(((Stash) gitSCM.getBrowser()).getRepoUrl(), is(equalTo(NEW_BASE_URL + "/projects/PROJ1/repos/repo1")));
+        assertThat(rebased.get().getId(), is(equalTo(scm.getId())));
+        assertThat(rebased.get().getServerId(), is(equalTo("serverId1")));
+        assertThat(rebased.get().getBitbucketSCMRepository(), is(sameInstance(scm.getBitbucketSCMRepository())));
+    }
+
+    @Test
+    public void testWithBaseUrlLooksUpMirrors() {
+        BitbucketSCM scm = new BitbucketSCM("1", emptyList(), "valid-credentials", "", emptyList(), "", "serverId1",
+                repository(PRIMARY_CLONE_URL), "mirror1");
+
+        assertThat(scm.withBaseUrl(BASE_URL, NEW_BASE_URL).isPresent(), is(false));
+    }
+
+    @Test
+    public void testWithBaseUrlLooksUpSsh() {
+        BitbucketSCM scm = new BitbucketSCM("1", emptyList(), "valid-credentials", "ssh-credentials", emptyList(), "",
+                "serverId1", repository(PRIMARY_CLONE_URL));
+
+        assertThat(scm.withBaseUrl(BASE_URL, NEW_BASE_URL).isPresent(), is(false));
+    }
+
+    @Test
+    public void testWithBaseUrlLooksUpUrlsOutsideOldBaseUrl() {
+        BitbucketSCM scm = new BitbucketSCM("1", emptyList(), "valid-credentials", "", emptyList(), "", "serverId1",
+                repository(PRIMARY_CLONE_URL));
+
+        assertThat(scm.withBaseUrl("http://other.example.com", NEW_BASE_URL).isPresent(), is(false));
+    }
+
+    private BitbucketSCM createAutoMirrorInstance(BitbucketMirrorHandler mirrorHandler) {
+        BitbucketServerConfiguration serverConfiguration = mock(BitbucketServerConfiguration.class);
+        when(serverConfiguration.getBaseUrl()).thenReturn(BASE_URL);
+        when(serverConfiguration.getGlobalCredentialsProvider(anyString()))
+                .thenReturn(mock(GlobalCredentialsProvider.class));
+        BitbucketScmHelper scmHelper = mock(BitbucketScmHelper.class);
+        when(scmHelper.getRepository("proj1", "repo1")).thenReturn(repository(PRIMARY_CLONE_URL));
+        DescriptorImpl descriptor = mock(DescriptorImpl.class);
+        when(descriptor.getConfiguration("serverId1")).thenReturn(Optional.of(serverConfiguration));
+        when(descriptor.getBitbucketScmHelper(BASE_URL, "valid-credentials")).thenReturn(scmHelper);
+        when(descriptor.createMirrorHandler(scmHelper)).thenReturn(mirrorHandler);
+        return new BitbucketSCM("1", Collections.emptyList(), "valid-credentials", "", Collections.emptyList(), "",
+                "proj1", "repo1", "serverId1", AUTO_MIRROR_NAME) {
+            @Override
+            public SCMDescriptor<?> getDescriptor() {
+                return descriptor;
+            }
+        };
+    }
+
+    private static Map<String, List<BitbucketNamedLink>> links(String cloneUrl) {
+        Map<String, List<BitbucketNamedLink>> links = new HashMap<>();
+        links.put("clone", singletonList(new BitbucketNamedLink("http", cloneUrl)));
+        links.put("self", singletonList(new BitbucketNamedLink("self", BASE_URL + "/projects/PROJ1/repos/repo1/browse")));
+        return links;
+    }
+
+    private static TaskListener listener() {
+        TaskListener listener = mock(TaskListener.class);
+        when(listener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        return listener;
+    }
+
+    private static BitbucketRepository repository(String cloneUrl) {
+        return new BitbucketRepository(1, "repo1", links(cloneUrl), new BitbucketProject("PROJ1", null, "proj1"),
+                "repo1", RepositoryState.AVAILABLE);
+    }
+
     private BitbucketSCM createInstance(String credentialId) {
         return createInstance(credentialId, null);
     }
@@ -19,7 +19,6 @@ import com.cloudbees.plugins.credentials.domains.Domain;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
 import hudson.model.Item;
 import hudson.util.FormValidation;
-import hudson.util.JsonResponseFactory;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
@@ -38,6 +37,8 @@ import org.mockito.stubbing.Answer;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.*;
 
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
@@ -85,6 +86,10 @@ public class BitbucketScmFormFillDelegateTest {
     private Item parent;
     @Mock
     private GlobalCredentialsProvider globalCredentialsProvider;
+    @Mock
+    private BitbucketMirrorCache mirrorCache;
+    @Mock
+    private BitbucketMirrorSelector mirrorSelector;
 
     @Before
     public void setup() {
@@ -259,6 +264,35 @@ public class BitbucketScmFormFillDelegateTest {
                 "An error occurred in Bitbucket: Bitbucket had an exception");
     }
 
+    @Test
+    public void testDoFillProjectNameItemsReusesResults() {
+        String searchTerm = "test";
+        delegate.doFillProjectNameItems(parent, SERVER_ID_VALID, null, searchTerm);
+        HttpResponse response = delegate.doFillProjectNameItems(parent, SERVER_ID_VALID, null, searchTerm);
+
+        verifyProjectSearchResponse(searchTerm, response);
+        verify(bitbucketClientFactory).getSearchClient(searchTerm);
+    }
+
+    @Test
+    public void testDoFillProjectNameItemsFiltersCompleteResults() {
+        BitbucketSearchClient searchClient = mock(BitbucketSearchClient.class);
+        BitbucketPage<BitbucketProject> page = new BitbucketPage<>();
+        page.setValues(Arrays.asList(new BitbucketProject("TE", emptyMap(), "Team"),
+                new BitbucketProject("TS", emptyMap(), "Test project")));
+        page.setLastPage(true);
+        when(searchClient.findProjects()).thenReturn(page);
+        when(bitbucketClientFactory.getSearchClient("te")).thenReturn(searchClient);
+
+        delegate.doFillProjectNameItems(parent, SERVER_ID_VALID, null, "te");
+        HttpResponse response = delegate.doFillProjectNameItems(parent, SERVER_ID_VALID, null, "tes");
+
+        JSONArray values = getJsonObject(response).getJSONArray("data");
+        assertThat(values.size(), equalTo(1));
+        verifyProject(values.getJSONObject(0), "TS", "Test project");
+        verify(bitbucketClientFactory, never()).getSearchClient("tes");
+    }
+
     @Test
     public void testDoFillRepositoryNameItemsCredentialsIdBlank() {
         String searchTerm = "test";
@@ -410,6 +444,18 @@ public class BitbucketScmFormFillDelegateTest {
         assertTrue(modelContains(model, serverConfigurationValid, true));
     }
 
+    private static JSONObject getJsonObject(HttpResponse response) {
+        StringWriter body = new StringWriter();
+        StaplerResponse resp = mock(StaplerResponse.class);
+        try {
+            when(resp.getWriter()).thenReturn(new PrintWriter(body));
+            response.generateResponse(null, resp, null);
+        } catch (IOException | ServletException e) {
+            throw new AssertionError("Failed to write the response", e);
+        }
+        return JSONObject.fromObject(body.toString());
+    }
+
     private static JSONObject getJsonObject(JSONArray values, String key, String value) {
         return values.stream()
                 .map(v -> (JSONObject) v)
@@ -451,7 +497,7 @@ public class BitbucketScmFormFillDelegateTest {
     }
 
     private static void verifyProjectSearchResponse(String searchTerm, HttpResponse response) {
-        JSONObject responseBody = JsonResponseFactory.getJsonObject(response);
+        JSONObject responseBody = getJsonObject(response);
         assertEquals("ok", responseBody.get("status"));
         JSONArray values = responseBody.getJSONArray("data");
         assertThat(values.size(), equalTo(2));
@@ -465,7 +511,7 @@ public class BitbucketScmFormFillDelegateTest {
     }
 
     private static void verifyRepositorySearchResponse(String searchTerm, String projectName, HttpResponse response) {
-        JSONObject responseBody = JsonResponseFactory.getJsonObject(response);
+        JSONObject responseBody = getJsonObject(response);
         assertEquals("ok", responseBody.get("status"));
         JSONArray values = responseBody.getJSONArray("data");
         assertThat(values.size(), equalTo(2));
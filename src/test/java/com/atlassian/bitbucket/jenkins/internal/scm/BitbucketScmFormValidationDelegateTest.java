@@ -1,6 +1,7 @@
 package com.atlassian.bitbucket.jenkins.internal.scm;
 
 import com.atlassian.bitbucket.jenkins.internal.client.*;
+import com.atlassian.bitbucket.jenkins.internal.client.exception.NotFoundException;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.credentials.BitbucketCredentials;
@@ -17,7 +18,6 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
@@ -25,12 +25,15 @@ import org.mockito.stubbing.Answer;
 import java.util.*;
 
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static java.util.Optional.of;
+import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -49,7 +52,6 @@ public class BitbucketScmFormValidationDelegateTest {
     private static String SERVER_ID_VALID = "ServerID_Valid";
     private static String SERVER_NAME_INVALID = "ServerName_Invalid";
     private static String SERVER_NAME_VALID = "ServerName_Valid";
-    @InjectMocks
     BitbucketScmFormValidationDelegate delegate;
     @Mock
     private BitbucketClientFactory bitbucketClientFactory;
@@ -66,6 +68,8 @@ public class BitbucketScmFormValidationDelegateTest {
     @Mock
     private JenkinsProvider jenkinsProvider;
     @Mock
+    private BitbucketMirrorCache mirrorCache;
+    @Mock
     private Jenkins jenkins;
     @Mock
     private GlobalCredentialsProvider globalCredentialsProvider;
@@ -74,6 +78,9 @@ public class BitbucketScmFormValidationDelegateTest {
 
     @Before
     public void setup() {
+        delegate = new BitbucketScmFormValidationDelegate(clientFactoryProvider, pluginConfiguration,
+                jenkinsToBitbucketCredentials, jenkinsProvider, mirrorCache, new BitbucketMirrorSelector(),
+                sameThreadExecutor());
         when(serverConfigurationValid.getId()).thenReturn(SERVER_ID_VALID);
         when(serverConfigurationValid.getServerName()).thenReturn(SERVER_NAME_VALID);
         when(serverConfigurationValid.getBaseUrl()).thenReturn(SERVER_BASE_URL_VALID);
@@ -248,19 +255,92 @@ public class BitbucketScmFormValidationDelegateTest {
 
     @Test
     public void testTestConnection() {
-        BitbucketMirrorClient mirrorClient = mock(BitbucketMirrorClient.class);
-        when(bitbucketClientFactory.getMirroredRepositoriesClient(0)).thenReturn(mirrorClient);
-        when(mirrorClient.getMirroredRepositoryDescriptors()).thenReturn(new BitbucketPage<>());
         assertEquals(FormValidation.Kind.OK, delegate.doTestConnection(parent, serverConfigurationValid.getId(),
                 bbJenkins.getUsernamePasswordCredentialsId(), "PROJECT_1", "repo", "").kind);
     }
 
+    @Test
+    public void testTestConnectionResolvesRepositoryOnce() {
+        when(mirrorCache.getMirroredRepositories(eq(SERVER_BASE_URL_VALID), eq(0), any()))
+                .thenReturn(singletonList(mirroredRepository("mirror")));
+
+        assertEquals(FormValidation.Kind.OK, delegate.doTestConnection(parent, serverConfigurationValid.getId(),
+                bbJenkins.getUsernamePasswordCredentialsId(), "PROJECT_1", "repo", "mirror").kind);
+        verify(bitbucketClientFactory).getSearchClient("PROJECT_1");
+        verify(bitbucketClientFactory).getProjectClient("PROJECT_1");
+    }
+
+    @Test
+    public void testTestConnectionMirrorNotAvailable() {
+        when(mirrorCache.getMirroredRepositories(eq(SERVER_BASE_URL_VALID), eq(0), any()))
+                .thenReturn(singletonList(mirroredRepository("other-mirror")));
+
+        FormValidation validation = delegate.doTestConnection(parent, serverConfigurationValid.getId(),
+                bbJenkins.getUsernamePasswordCredentialsId(), "PROJECT_1", "repo", "mirror");
+
+        assertEquals(FormValidation.Kind.ERROR, validation.kind);
+        assertThat(validation.getMessage(), containsString("mirror"));
+    }
+
+    @Test
+    public void testTestConnectionNearestMirror() {
+        assertEquals(FormValidation.Kind.OK, delegate.doTestConnection(parent, serverConfigurationValid.getId(),
+                bbJenkins.getUsernamePasswordCredentialsId(), "PROJECT_1", "repo",
+                BitbucketMirrorSelector.AUTO_MIRROR_NAME).kind);
+        verifyZeroInteractions(mirrorCache);
+    }
+
+    @Test
+    public void testTestConnectionRepositoryNameNotCheckedWithoutCredentials() {
+        assertEquals(FormValidation.Kind.OK, delegate.doTestConnection(parent, serverConfigurationValid.getId(),
+                "", "PROJECT_1", "", "").kind);
+    }
+
+    @Test
+    public void testTestConnectionProjectNotFound() {
+        BitbucketProjectClient projectClient = mock(BitbucketProjectClient.class);
+        when(bitbucketClientFactory.getProjectClient("MISSING")).thenReturn(projectClient);
+        when(projectClient.getProject()).thenThrow(new NotFoundException("Not found", null));
+
+        FormValidation validation = delegate.doTestConnection(parent, serverConfigurationValid.getId(),
+                bbJenkins.getUsernamePasswordCredentialsId(), "MISSING", "repo", "");
+
+        assertEquals(FormValidation.Kind.ERROR, validation.kind);
+        assertThat(validation.getMessage(), containsString("MISSING"));
+        assertThat(validation.getMessage(), containsString("does not exist"));
+    }
+
+    @Test
+    public void testTestConnectionRepositoryNotFound() {
+        BitbucketRepositoryClient repositoryClient = mock(BitbucketRepositoryClient.class);
+        BitbucketProjectClient projectClient = mock(BitbucketProjectClient.class);
+        when(bitbucketClientFactory.getProjectClient("PROJECT_1")).thenReturn(projectClient);
+        when(projectClient.getProject()).thenReturn(
+                new BitbucketProject("PROJECT_1", getSelfLink("PROJECT_1"), "Project 1"));
+        when(projectClient.getRepositoryClient("missing")).thenReturn(repositoryClient);
+        when(repositoryClient.getRepository()).thenThrow(new NotFoundException("Not found", null));
+
+        FormValidation validation = delegate.doTestConnection(parent, serverConfigurationValid.getId(),
+                bbJenkins.getUsernamePasswordCredentialsId(), "PROJECT_1", "missing", "");
+
+        assertEquals(FormValidation.Kind.ERROR, validation.kind);
+        assertThat(validation.getMessage(), containsString("repository"));
+        assertThat(validation.getMessage(), containsString("does not exist"));
+    }
+
     @Test(expected = AccessDeniedException.class)
     public void testTestConnectionNoPermissions() {
         doThrow(AccessDeniedException.class).when(parent).checkPermission(Item.EXTENDED_READ);
         delegate.doTestConnection(parent, serverConfigurationValid.getId(), "", "PROEJECT_1", "repo", "");
     }
 
+    private static EnrichedBitbucketMirroredRepository mirroredRepository(String mirrorName) {
+        BitbucketRepository repository = mock(BitbucketRepository.class);
+        when(repository.getId()).thenReturn(0);
+        return new EnrichedBitbucketMirroredRepository(repository, new BitbucketMirroredRepository(true, emptyMap(),
+                mirrorName, 0, BitbucketMirroredRepositoryStatus.AVAILABLE));
+    }
+
     private static Map<String, List<BitbucketNamedLink>> getSelfLink(String projectKey) {
         return singletonMap("self", singletonList(new BitbucketNamedLink(null,
                 "http://localhost:7990/bitbucket/projects/" + projectKey)));
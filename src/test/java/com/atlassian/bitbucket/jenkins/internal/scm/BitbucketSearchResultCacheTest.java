@@ -0,0 +1,112 @@
+package com.atlassian.bitbucket.jenkins.internal.scm;
+
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketPage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketSearchResultCacheTest {
+
+    private static final String BASE_URL = "http://bitbucket.example.com";
+    private static final long EXPIRY = 1000;
+
+    @Mock
+    private Clock clock;
+    private BitbucketSearchResultCache<String> cache;
+    private List<String> searches;
+
+    @Before
+    public void setup() {
+        when(clock.millis()).thenReturn(0L);
+        cache = new BitbucketSearchResultCache<>(clock, EXPIRY, 2, Function.identity());
+        searches = new ArrayList<>();
+    }
+
+    @Test
+    public void testSameSearchIsReused() {
+        cache.search(BASE_URL, "creds", "", "pro", search(false, "Project 1"));
+        List<String> results = cache.search(BASE_URL, "creds", "", "PRO ", search(false, "Project 2"));
+
+        assertThat(results, contains("Project 1"));
+        assertThat(searches, contains("pro"));
+    }
+
+    @Test
+    public void testLongerSearchIsFilteredFromCompleteResults() {
+        cache.search(BASE_URL, "creds", "", "pr", search(true, "Project", "Prune", "Apricot"));
+        List<String> results = cache.search(BASE_URL, "creds", "", "pro", search(true, "Unexpected"));
+
+        assertThat(results, contains("Project"));
+        assertThat(searches, contains("pr"));
+    }
+
+    @Test
+    public void testLongerSearchIsNotFilteredFromIncompleteResults() {
+        cache.search(BASE_URL, "creds", "", "pr", search(false, "Project", "Prune"));
+        List<String> results = cache.search(BASE_URL, "creds", "", "pro", search(false, "Project", "Prospect"));
+
+        assertThat(results, contains("Project", "Prospect"));
+        assertThat(searches, contains("pr", "pro"));
+    }
+
+    @Test
+    public void testResultsAreCachedPerCredentials() {
+        cache.search(BASE_URL, "creds", "", "pro", search(true, "Project"));
+        cache.search(BASE_URL, "other-creds", "", "pro", search(true, "Project"));
+
+        assertThat(searches, contains("pro", "pro"));
+    }
+
+    @Test
+    public void testResultsAreCachedPerProject() {
+        cache.search(BASE_URL, "creds", "PROJECT_1", "re", search(true, "Repository"));
+        cache.search(BASE_URL, "creds", "PROJECT_2", "rep", search(true, "Repository"));
+
+        assertThat(searches, contains("re", "rep"));
+    }
+
+    @Test
+    public void testExpiredResultsAreNotReused() {
+        cache.search(BASE_URL, "creds", "", "pr", search(true, "Project"));
+        when(clock.millis()).thenReturn(EXPIRY);
+        cache.search(BASE_URL, "creds", "", "pr", search(true, "Project"));
+        cache.search(BASE_URL, "creds", "", "pro", search(true, "Project"));
+
+        assertThat(searches, contains("pr", "pr"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedSearchIsDropped() {
+        cache.search(BASE_URL, "creds", "", "aa", search(false, "Aardvark"));
+        cache.search(BASE_URL, "creds", "", "bb", search(false, "Bbq"));
+        cache.search(BASE_URL, "creds", "", "aa", search(false, "Aardvark"));
+        cache.search(BASE_URL, "creds", "", "cc", search(false, "Ccc"));
+        cache.search(BASE_URL, "creds", "", "bb", search(false, "Bbq"));
+
+        assertThat(searches.size(), equalTo(4));
+    }
+
+    private Function<String, BitbucketPage<String>> search(boolean lastPage, String... values) {
+        return term -> {
+            searches.add(term.trim().toLowerCase());
+            BitbucketPage<String> page = new BitbucketPage<>();
+            page.setValues(Arrays.asList(values));
+            page.setLastPage(lastPage);
+            return page;
+        };
+    }
+}
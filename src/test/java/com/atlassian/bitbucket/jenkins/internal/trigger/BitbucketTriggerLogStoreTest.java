@@ -0,0 +1,85 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import hudson.model.Job;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BitbucketTriggerLogStoreTest {
+
+    @Mock
+    private Job job;
+    @Mock
+    private Job otherJob;
+
+    private final BitbucketTriggerLogStore logStore = new BitbucketTriggerLogStore(true, 2);
+    private File tempDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("BitbucketTriggerLogStoreTest").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void testGetEntriesNewestFirst() {
+        logStore.add(job, 1000L, "first\n");
+        logStore.add(job, 2000L, "second\n");
+
+        assertThat(logStore.getEntries(job).stream()
+                .map(BitbucketTriggerLogStore.Entry::getLog)
+                .collect(Collectors.toList()), contains("second\n", "first\n"));
+        assertThat(logStore.getEntries(job).get(0).getTimestamp().getTime(), equalTo(2000L));
+        assertThat(logStore.getEntries(otherJob), is(empty()));
+    }
+
+    @Test
+    public void testOldestEntryIsDropped() {
+        logStore.add(job, 1000L, "first\n");
+        logStore.add(job, 2000L, "second\n");
+        logStore.add(job, 3000L, "third\n");
+
+        assertThat(logStore.getEntries(job).stream()
+                .map(BitbucketTriggerLogStore.Entry::getLog)
+                .collect(Collectors.toList()), contains("third\n", "second\n"));
+    }
+
+    @Test
+    public void testFlushWritesChangedLogsOnce() throws Exception {
+        when(job.getRootDir()).thenReturn(tempDir);
+        File logFile = new File(tempDir, BitbucketTriggerLogStore.LOG_FILE_NAME);
+        logStore.add(job, 1000L, "first\n");
+        logStore.add(job, 2000L, "second\n");
+
+        logStore.flush();
+
+        assertThat(FileUtils.readFileToString(logFile, StandardCharsets.UTF_8), equalTo("first\nsecond\n"));
+
+        // Nothing was polled since, so the file is left alone
+        FileUtils.write(logFile, "unchanged", StandardCharsets.UTF_8);
+        logStore.flush();
+
+        assertThat(FileUtils.readFileToString(logFile, StandardCharsets.UTF_8), equalTo("unchanged"));
+    }
+}
@@ -0,0 +1,35 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookTriggerImpl.BitbucketWebhookTriggerDescriptor;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import hudson.model.ManagementLink;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static com.atlassian.bitbucket.jenkins.internal.trigger.TriggerPriority.HIGH;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.TriggerPriority.LOW;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+public class BitbucketTriggerQueueLinkTest {
+
+    @ClassRule
+    public static JenkinsRule jenkins = new JenkinsRule();
+
+    @Test
+    public void testShowsWaitStatisticsOfTheTriggerQueue() throws Exception {
+        BitbucketTriggerQueueLink link = ManagementLink.all().get(BitbucketTriggerQueueLink.class);
+        PriorityTriggerQueue queue =
+                jenkins.jenkins.getDescriptorByType(BitbucketWebhookTriggerDescriptor.class).getQueue();
+
+        queue.execute(() -> { }, HIGH);
+
+        assertThat(link.getWaitStatistics(HIGH).getCount(), is(1L));
+        assertThat(link.getWaitStatistics(LOW).getCount(), is(0L));
+        HtmlPage page = jenkins.createWebClient().goTo(BitbucketTriggerQueueLink.RELATIVE_PATH);
+        assertThat(page.asText(), containsString(HIGH.getDisplayName()));
+        assertThat(page.asText(), containsString(LOW.getDisplayName()));
+    }
+}
@@ -19,6 +19,10 @@ import java.nio.file.Files;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -38,7 +42,7 @@ public class BitbucketTriggerWorkerTest {
     @Before
     public void setUp() throws Exception {
         tempDir = Files.createTempDirectory("BitbucketTriggerWorkerTest").toFile();
-        when(job.getRootDir()).thenReturn(tempDir);
+        lenient().when(job.getRootDir()).thenReturn(tempDir);
     }
 
     @After
@@ -56,6 +60,36 @@ public class BitbucketTriggerWorkerTest {
         verify(triggerItem).scheduleBuild2(eq(0), eq(causeAction));
     }
 
+    @Test
+    public void testTriggerKeepsLogInMemory() {
+        when(triggerItem.poll(any(StreamTaskListener.class))).thenAnswer(invocation -> {
+            invocation.<StreamTaskListener>getArgument(0).getLogger().println("Polled the repository");
+            return PollingResult.NO_CHANGES;
+        });
+        BitbucketTriggerLogStore logStore = new BitbucketTriggerLogStore(true, 10);
+
+        BitbucketTriggerWorker worker =
+                new BitbucketTriggerWorker(job, triggerItem, causeAction, emptyList(), logStore);
+        worker.run();
+
+        assertThat(logStore.getEntries(job), hasSize(1));
+        assertThat(logStore.getEntries(job).get(0).getLog(), containsString("Polled the repository"));
+        assertThat(new File(tempDir, BitbucketTriggerLogStore.LOG_FILE_NAME).exists(), is(false));
+    }
+
+    @Test
+    public void testTriggerKeepsLogInMemoryWhenPollingFails() {
+        when(triggerItem.poll(any(StreamTaskListener.class))).thenThrow(new IllegalStateException("Polling broke"));
+        BitbucketTriggerLogStore logStore = new BitbucketTriggerLogStore(true, 10);
+
+        BitbucketTriggerWorker worker =
+                new BitbucketTriggerWorker(job, triggerItem, causeAction, emptyList(), logStore);
+        worker.run();
+
+        assertThat(logStore.getEntries(job).get(0).getLog(), containsString("Polling broke"));
+        verify(triggerItem, never()).scheduleBuild2(anyInt(), any(CauseAction.class));
+    }
+
     @Test
     public void testTriggerNoChanges() {
         when(triggerItem.poll(any(StreamTaskListener.class))).thenReturn(PollingResult.NO_CHANGES);
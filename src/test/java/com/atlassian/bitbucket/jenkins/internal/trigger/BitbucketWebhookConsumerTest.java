@@ -1,12 +1,31 @@
 package com.atlassian.bitbucket.jenkins.internal.trigger;
 
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactory;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketClientFactoryProvider;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketProjectClient;
+import com.atlassian.bitbucket.jenkins.internal.client.BitbucketRepositoryClient;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
+import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
+import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
 import com.atlassian.bitbucket.jenkins.internal.model.*;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorCache;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketPullRequestSCMHead;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketPullRequestSCMRevision;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCM;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
+import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookConsumer.BitbucketPullRequestSCMHeadEvent;
+import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookConsumer.BitbucketSCMHeadEvent;
 import hudson.model.FreeStyleProject;
+import hudson.plugins.git.BranchSpec;
 import hudson.plugins.git.GitSCM;
+import jenkins.plugins.git.GitBranchSCMHead;
+import jenkins.plugins.git.GitBranchSCMRevision;
+import jenkins.scm.api.SCMEvent;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMRevision;
+import jenkins.scm.api.SCMSource;
 import org.apache.groovy.util.Maps;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
@@ -27,12 +46,27 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import static com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorSelector.AUTO_MIRROR_NAME;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.MIRROR_SYNCHRONIZED_EVENT;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_OPENED;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.TriggerPriority.HIGH;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.TriggerPriority.NORMAL;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.aMapWithSize;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -52,6 +86,10 @@ public class BitbucketWebhookConsumerTest {
     @ClassRule
     public static JenkinsRule jenkins = new JenkinsRule();
     @Mock
+    private BitbucketClientFactoryProvider bitbucketClientFactoryProvider;
+    @Mock
+    private BitbucketMirrorCache bitbucketMirrorCache;
+    @Mock
     private BitbucketPluginConfiguration bitbucketPluginConfiguration;
     private FreeStyleProject freeStyleProject;
     private BitbucketRepository bitbucketRepository;
@@ -67,6 +105,8 @@ public class BitbucketWebhookConsumerTest {
     @Mock
     private BitbucketWebhookTriggerImpl gitTrigger;
     @Mock
+    private JenkinsToBitbucketCredentials jenkinsToBitbucketCredentials;
+    @Mock
     private BitbucketWebhookTriggerImpl nullBitbucketTrigger;
     private FreeStyleProject nullProject;
     private RefsChangedWebhookEvent refsChangedEvent;
@@ -121,6 +161,81 @@ public class BitbucketWebhookConsumerTest {
         workflowJob.delete();
     }
 
+    @Test
+    public void testHeadEventDoesNotMatchOtherRepository() {
+        BitbucketSCMHeadEvent headEvent =
+                new BitbucketSCMHeadEvent(SCMEvent.Type.UPDATED, refsChangedEvent, JENKINS_REPO_SLUG);
+
+        assertThat(headEvent.heads(scmSource("readme", "readme")), is(emptyMap()));
+        assertThat(headEvent.heads(mock(SCMSource.class)), is(emptyMap()));
+    }
+
+    @Test
+    public void testHeadEventMatchesRepositoryIgnoringCase() {
+        BitbucketSCMHeadEvent headEvent =
+                new BitbucketSCMHeadEvent(SCMEvent.Type.UPDATED, refsChangedEvent, JENKINS_REPO_SLUG);
+
+        Map<SCMHead, SCMRevision> heads =
+                headEvent.heads(scmSource(JENKINS_PROJECT_KEY.toUpperCase(), JENKINS_REPO_SLUG.toUpperCase()));
+
+        GitBranchSCMHead head = new GitBranchSCMHead("master");
+        assertThat(heads, hasEntry(head, new GitBranchSCMRevision(head, "tohash")));
+        assertThat(heads, aMapWithSize(1));
+    }
+
+    @Test
+    public void testPullRequestHeadEventOnlyHasThePullRequest() {
+        BitbucketPullRequest pullRequest = new BitbucketPullRequest(1L, "Add a feature",
+                new BitbucketPullRequestRef("refs/heads/feature", "feature", "fromhash", bitbucketRepository),
+                new BitbucketPullRequestRef("refs/heads/master", "master", "tohash", bitbucketRepository));
+        BitbucketPullRequestSCMHeadEvent headEvent = new BitbucketPullRequestSCMHeadEvent(SCMEvent.Type.CREATED,
+                new PullRequestWebhookEvent(BITBUCKET_USER, PULL_REQUEST_OPENED.getEventId(), new Date(),
+                        pullRequest), JENKINS_REPO_SLUG);
+
+        Map<SCMHead, SCMRevision> heads = headEvent.heads(scmSource(JENKINS_PROJECT_KEY, JENKINS_REPO_SLUG));
+
+        BitbucketPullRequestSCMHead head = new BitbucketPullRequestSCMHead(pullRequest);
+        assertThat(heads, hasEntry(head, new BitbucketPullRequestSCMRevision(head, pullRequest)));
+        assertThat(heads, aMapWithSize(1));
+        assertThat(headEvent.heads(scmSource("readme", "readme")), is(emptyMap()));
+    }
+
+    @Test
+    public void testHeadEventSharesHeadsBetweenSources() {
+        BitbucketSCMHeadEvent headEvent =
+                new BitbucketSCMHeadEvent(SCMEvent.Type.UPDATED, refsChangedEvent, JENKINS_REPO_SLUG);
+
+        Map<SCMHead, SCMRevision> heads = headEvent.heads(scmSource(JENKINS_PROJECT_KEY, JENKINS_REPO_SLUG));
+
+        assertThat(headEvent.heads(scmSource(JENKINS_PROJECT_KEY, JENKINS_REPO_SLUG)), sameInstance(heads));
+        assertThat(headEvent.getRepositoryKey(),
+                equalTo(BitbucketSCMRepository.toRepositoryKey(JENKINS_PROJECT_KEY, JENKINS_REPO_SLUG)));
+    }
+
+    @Test
+    public void testMirrorSynchronizedTriggersBitbucketSCMCloningFromNearestMirror() {
+        BitbucketServerConfiguration serverConfiguration = mock(BitbucketServerConfiguration.class);
+        when(bitbucketPluginConfiguration.getServerById(serverId)).thenReturn(Optional.of(serverConfiguration));
+        when(serverConfiguration.getBaseUrl()).thenReturn(BITBUCKET_BASE_URL);
+        when(bitbucketSCM.getMirrorName()).thenReturn(AUTO_MIRROR_NAME);
+        when(workflowSCM.getMirrorName()).thenReturn("mirror2");
+        MirrorSynchronizedWebhookEvent event = new MirrorSynchronizedWebhookEvent(
+                BITBUCKET_USER,
+                new BitbucketMirrorServer("1", "mirror1"),
+                MIRROR_SYNCHRONIZED_EVENT.getEventId(),
+                new Date(),
+                refChanges(),
+                bitbucketRepository,
+                BitbucketRepositorySynchronizationType.INCREMENTAL);
+
+        consumer.process(event);
+
+        verify(bitbucketTrigger)
+                .trigger(
+                        eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
+        verify(workflowTrigger, never()).trigger(any());
+    }
+
     @Test
     public void testRefsChangedShouldNotTriggerBitbucketSCMIfMirrorNameDoesNotMatch() {
         BitbucketRepository repository =
@@ -165,10 +280,40 @@ public class BitbucketWebhookConsumerTest {
 
         verify(bitbucketTrigger, never())
                 .trigger(
-                        eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
+                        eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
         verify(workflowTrigger, never())
                 .trigger(
-                        eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
+                        eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
+    }
+
+    @Test
+    public void testRefsChangedShouldNotTriggerIfBranchIsNotBuilt() {
+        BitbucketServerConfiguration serverConfiguration = mock(BitbucketServerConfiguration.class);
+        when(bitbucketPluginConfiguration.getServerById(bitbucketSCM.getServerId())).thenReturn(Optional.of(serverConfiguration));
+        when(serverConfiguration.getBaseUrl()).thenReturn(BITBUCKET_BASE_URL);
+        when(bitbucketSCM.getBranches()).thenReturn(singletonList(new BranchSpec("*/release/*")));
+        RefsChangedWebhookEvent event = new RefsChangedWebhookEvent(
+                BITBUCKET_USER, REPO_REF_CHANGE.getEventId(), new Date(), refChanges(), bitbucketRepository);
+
+        consumer.process(event);
+
+        verify(bitbucketTrigger, never()).trigger(any());
+        verify(workflowTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
+    }
+
+    @Test
+    public void testRefsChangedShouldTriggerPipelineWhoseJenkinsfileIsOnAnotherBranch() {
+        BitbucketServerConfiguration serverConfiguration = mock(BitbucketServerConfiguration.class);
+        when(bitbucketPluginConfiguration.getServerById(bitbucketSCM.getServerId())).thenReturn(Optional.of(serverConfiguration));
+        when(serverConfiguration.getBaseUrl()).thenReturn(BITBUCKET_BASE_URL);
+        // The pipeline may check out the pushed branch even though its Jenkinsfile is loaded from another one
+        lenient().when(workflowSCM.getBranches()).thenReturn(singletonList(new BranchSpec("*/release/*")));
+        RefsChangedWebhookEvent event = new RefsChangedWebhookEvent(
+                BITBUCKET_USER, REPO_REF_CHANGE.getEventId(), new Date(), refChanges(), bitbucketRepository);
+
+        consumer.process(event);
+
+        verify(workflowTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
     }
 
     @Test
@@ -195,8 +340,8 @@ public class BitbucketWebhookConsumerTest {
 
         consumer.process(event);
 
-        verify(bitbucketTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
-        verify(workflowTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
+        verify(bitbucketTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
+        verify(workflowTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
     }
 
     @Test
@@ -211,10 +356,50 @@ public class BitbucketWebhookConsumerTest {
 
         verify(bitbucketTrigger)
                 .trigger(
-                        eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
+                        eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
         verify(workflowTrigger)
                 .trigger(
-                        eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
+                        eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
+    }
+
+    @Test
+    public void testRefsChangedSkipsJobsWhosePathsWereNotChanged() {
+        BitbucketRepositoryClient repositoryClient = mockRepositoryClient();
+        when(repositoryClient.getChanges("fromHash", "tohash")).thenReturn(Stream.of(
+                new BitbucketChange(new BitbucketPath("docs/README.md"), null)));
+        when(bitbucketTrigger.hasPathFilter()).thenReturn(true);
+        when(bitbucketTrigger.isTriggeredBy(singleton("docs/README.md"))).thenReturn(false);
+        when(workflowTrigger.hasPathFilter()).thenReturn(true);
+        when(workflowTrigger.isTriggeredBy(singleton("docs/README.md"))).thenReturn(true);
+        RefsChangedWebhookEvent event = new RefsChangedWebhookEvent(BITBUCKET_USER, REPO_REF_CHANGE.getEventId(),
+                new Date(), refChanges(BitbucketRefChangeType.UPDATE), bitbucketRepository);
+
+        consumer.process(event);
+
+        verify(bitbucketTrigger, never()).trigger(any());
+        verify(workflowTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
+        verify(gitTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
+        verify(repositoryClient).getChanges("fromHash", "tohash");
+    }
+
+    @Test
+    public void testRefsChangedTriggersJobsWithPathFilterWhenTooManyPathsChanged() {
+        BitbucketRepositoryClient repositoryClient = mockRepositoryClient();
+        AtomicInteger listed = new AtomicInteger();
+        when(repositoryClient.getChanges("fromHash", "tohash")).thenReturn(IntStream.range(0, 100_000)
+                .peek(i -> listed.incrementAndGet())
+                .mapToObj(i -> new BitbucketChange(new BitbucketPath("src/File" + i + ".java"), null)));
+        when(bitbucketTrigger.hasPathFilter()).thenReturn(true);
+        when(workflowTrigger.hasPathFilter()).thenReturn(true);
+        RefsChangedWebhookEvent event = new RefsChangedWebhookEvent(BITBUCKET_USER, REPO_REF_CHANGE.getEventId(),
+                new Date(), refChanges(BitbucketRefChangeType.UPDATE), bitbucketRepository);
+
+        consumer.process(event);
+
+        verify(bitbucketTrigger, never()).isTriggeredBy(any());
+        verify(bitbucketTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
+        verify(workflowTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
+        assertThat(listed.get(), lessThan(100_000));
     }
 
     @Test
@@ -223,10 +408,22 @@ public class BitbucketWebhookConsumerTest {
 
         verify(gitTrigger)
                 .trigger(
-                        eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).build()));
+                        eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(HIGH).build()));
         verify(nullBitbucketTrigger, never()).trigger(any());
     }
 
+    @Test
+    public void testRefsChangedTriggerBuildWithNormalPriorityForOtherBranches() {
+        BitbucketRef ref = new BitbucketRef("refs/heads/feature", "feature", BitbucketRefType.BRANCH);
+        RefsChangedWebhookEvent event = new RefsChangedWebhookEvent(BITBUCKET_USER, REPO_REF_CHANGE.getEventId(),
+                new Date(), singletonList(new BitbucketRefChange(ref, "refs/heads/feature", "fromHash", "tohash",
+                BitbucketRefChangeType.ADD)), bitbucketRepository);
+
+        consumer.process(event);
+
+        verify(gitTrigger).trigger(eq(BitbucketWebhookTriggerRequest.builder().actor(BITBUCKET_USER).priority(NORMAL).build()));
+    }
+
     @Test
     public void testShouldNotTriggerBuildIfRepositoryDoesNotMatch() {
         BitbucketRepository repository =
@@ -247,6 +444,23 @@ public class BitbucketWebhookConsumerTest {
         return singletonList(remoteConfig);
     }
 
+    private BitbucketRepositoryClient mockRepositoryClient() {
+        BitbucketServerConfiguration serverConfiguration = mock(BitbucketServerConfiguration.class);
+        when(bitbucketPluginConfiguration.getServerById(bitbucketSCM.getServerId())).thenReturn(Optional.of(serverConfiguration));
+        when(bitbucketPluginConfiguration.getValidServerList()).thenReturn(singletonList(serverConfiguration));
+        when(serverConfiguration.getBaseUrl()).thenReturn(BITBUCKET_BASE_URL);
+        GlobalCredentialsProvider globalCredentialsProvider = mock(GlobalCredentialsProvider.class);
+        when(serverConfiguration.getGlobalCredentialsProvider(anyString())).thenReturn(globalCredentialsProvider);
+        when(globalCredentialsProvider.getGlobalAdminCredentials()).thenReturn(Optional.empty());
+        BitbucketClientFactory clientFactory = mock(BitbucketClientFactory.class);
+        BitbucketProjectClient projectClient = mock(BitbucketProjectClient.class);
+        BitbucketRepositoryClient repositoryClient = mock(BitbucketRepositoryClient.class);
+        when(bitbucketClientFactoryProvider.getClient(eq(BITBUCKET_BASE_URL), any())).thenReturn(clientFactory);
+        when(clientFactory.getProjectClient(JENKINS_PROJECT_KEY)).thenReturn(projectClient);
+        when(projectClient.getRepositoryClient(JENKINS_REPO_SLUG)).thenReturn(repositoryClient);
+        return repositoryClient;
+    }
+
     private List<BitbucketRefChange> refChanges() {
         return refChanges(BitbucketRefChangeType.ADD);
     }
@@ -259,6 +473,13 @@ public class BitbucketWebhookConsumerTest {
         return singletonList(change);
     }
 
+    private BitbucketSCMSource scmSource(String projectKey, String repoSlug) {
+        BitbucketSCMSource source = mock(BitbucketSCMSource.class);
+        when(source.getBitbucketSCMRepository()).thenReturn(new BitbucketSCMRepository("credentialId", "",
+                JENKINS_PROJECT_NAME, projectKey, JENKINS_REPO_NAME, repoSlug, serverId, ""));
+        return source;
+    }
+
     private BitbucketRepository repository(String cloneUrl, String projectKey, String repoSlug) {
         BitbucketNamedLink selfLink =
                 new BitbucketNamedLink("self", BITBUCKET_BASE_URL + "projects/jenkins/repos/jenkins/browse");
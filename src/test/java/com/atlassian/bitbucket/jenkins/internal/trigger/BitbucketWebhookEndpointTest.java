@@ -80,6 +80,24 @@ public class BitbucketWebhookEndpointTest {
                 .statusCode(HttpServletResponse.SC_OK);
     }
 
+    @Test
+    public void testPullRequestOpenedWebhook() throws URISyntaxException, IOException {
+        given().contentType(ContentType.JSON)
+                .header(X_EVENT_KEY, PULL_REQUEST_OPENED.getEventId())
+                .log()
+                .ifValidationFails()
+                .body(
+                        IOUtils.toString(
+                                getClass()
+                                        .getResource("/webhook/pr_opened_body.json")
+                                        .toURI(),
+                                StandardCharsets.UTF_8))
+                .when()
+                .post(BB_WEBHOOK_URL)
+                .then()
+                .statusCode(HttpServletResponse.SC_OK);
+    }
+
     @Test
     public void testWebhookShouldFailIfContentTypeNotSet() {
         given().log()
@@ -3,6 +3,7 @@ package com.atlassian.bitbucket.jenkins.internal.trigger;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketPluginConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.config.BitbucketServerConfiguration;
 import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsProvider;
+import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketPullRequestDiscoveryTrait;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMSource;
 import hudson.model.FreeStyleProject;
@@ -18,6 +19,7 @@ import org.jvnet.hudson.test.JenkinsRule;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import static java.util.Collections.singletonList;
 import static java.util.Optional.of;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
@@ -59,7 +61,29 @@ public class BitbucketWebhookMultibranchTriggerTest {
         boolean result = descriptor.addTrigger(project, scmSource);
 
         assertThat(result, is(true));
-        verify(webhookHandler).register(baseUrl, credentialsProvider, bbsRepo);
+        verify(webhookHandler).register(baseUrl, credentialsProvider, bbsRepo, false);
+    }
+
+    @Test
+    public void testAddWebhookWithPullRequestDiscovery() {
+        String serverId = "myServerId";
+        MultiBranchProject project = new WorkflowMultiBranchProject(jenkins.jenkins, "name");
+        String baseUrl = "http://example.com";
+        BitbucketSCMSource scmSource = mock(BitbucketSCMSource.class);
+        GlobalCredentialsProvider credentialsProvider = mock(GlobalCredentialsProvider.class);
+        BitbucketSCMRepository bbsRepo = mock(BitbucketSCMRepository.class);
+
+        when(scmSource.getBitbucketSCMRepository()).thenReturn(bbsRepo);
+        when(scmSource.getTraits()).thenReturn(singletonList(new BitbucketPullRequestDiscoveryTrait()));
+        when(pluginConfig.getServerById(serverId)).thenReturn(of(bbsConfig));
+        when(bbsRepo.getServerId()).thenReturn(serverId);
+        when(bbsConfig.getBaseUrl()).thenReturn(baseUrl);
+        when(bbsConfig.getGlobalCredentialsProvider(project)).thenReturn(credentialsProvider);
+
+        boolean result = descriptor.addTrigger(project, scmSource);
+
+        assertThat(result, is(true));
+        verify(webhookHandler).register(baseUrl, credentialsProvider, bbsRepo, true);
     }
 
     @Test
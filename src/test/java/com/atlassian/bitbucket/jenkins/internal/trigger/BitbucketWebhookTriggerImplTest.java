@@ -10,7 +10,6 @@ import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
 import com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookTriggerImpl.BitbucketWebhookTriggerDescriptor;
 import hudson.model.*;
 import hudson.scm.SCM;
-import hudson.util.SequentialExecutionQueue;
 import jenkins.model.Jenkins;
 import jenkins.triggers.SCMTriggerItem;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
@@ -26,6 +25,8 @@ import java.util.*;
 
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.*;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.argThat;
@@ -42,7 +43,7 @@ public class BitbucketWebhookTriggerImplTest {
     @Mock
     private JenkinsProvider jenkinsProvider;
     @Mock
-    private SequentialExecutionQueue queue;
+    private PriorityTriggerQueue queue;
     @Mock
     private RetryingWebhookHandler webhookHandler;
 
@@ -81,7 +82,8 @@ public class BitbucketWebhookTriggerImplTest {
                 causeAction, request.getAdditionalActions());
 
         descriptor.schedule(job, triggerItem, request);
-        verify(queue).execute(argThat((ArgumentMatcher<BitbucketTriggerWorker>) argument -> deepEqual(expectedValue, argument)));
+        verify(queue).execute(argThat((ArgumentMatcher<BitbucketTriggerWorker>) argument -> deepEqual(expectedValue, argument)),
+                eq(TriggerPriority.NORMAL));
     }
 
     @Test
@@ -98,6 +100,37 @@ public class BitbucketWebhookTriggerImplTest {
         assertThat(t.skipWebhookRegistration(workflowJob, true), is(false));
     }
 
+    @Test
+    public void testIsTriggeredByExcludedPaths() {
+        BitbucketWebhookTriggerImpl trigger = new BitbucketWebhookTriggerImpl();
+        trigger.setExcludedPaths("docs/\n**/*.md");
+
+        assertTrue(trigger.hasPathFilter());
+        assertFalse(trigger.isTriggeredBy(asList("docs/guide/index.html", "README.md")));
+        assertTrue(trigger.isTriggeredBy(asList("README.md", "src/main/java/Main.java")));
+    }
+
+    @Test
+    public void testIsTriggeredByIncludedAndExcludedPaths() {
+        BitbucketWebhookTriggerImpl trigger = new BitbucketWebhookTriggerImpl();
+        trigger.setIncludedPaths("service/**, shared/**");
+        trigger.setExcludedPaths("service/docs/**");
+
+        assertTrue(trigger.isTriggeredBy(singletonList("shared/build.gradle")));
+        assertFalse(trigger.isTriggeredBy(singletonList("service/docs/index.md")));
+        assertFalse(trigger.isTriggeredBy(singletonList("other/Main.java")));
+        assertFalse(trigger.isTriggeredBy(emptyList()));
+    }
+
+    @Test
+    public void testIsTriggeredByWithoutPathFilter() {
+        BitbucketWebhookTriggerImpl trigger = new BitbucketWebhookTriggerImpl();
+        trigger.setIncludedPaths("  ");
+
+        assertFalse(trigger.hasPathFilter());
+        assertTrue(trigger.isTriggeredBy(emptyList()));
+    }
+
     @Test
     public void testReregisterWebhook() {
         BitbucketSCMRepository repo = createSCMRepo();
@@ -141,6 +174,27 @@ public class BitbucketWebhookTriggerImplTest {
         verify(mockDescriptor).schedule(eq(project), eq(project), eq(request));
     }
 
+    @Test
+    public void testTriggerWithPriority() {
+        BitbucketWebhookTriggerDescriptor mockDescriptor =
+                mock(BitbucketWebhookTriggerDescriptor.class);
+        BitbucketWebhookTriggerImpl trigger = createInstance(mockDescriptor);
+        trigger.setPriority("LOW");
+        FreeStyleProject project = createFreeStyleProject();
+        BitbucketUser user = new BitbucketUser("me", "me@test.atlassian", "Me");
+        BitbucketWebhookTriggerRequest request = BitbucketWebhookTriggerRequest.builder()
+                .actor(user)
+                .priority(TriggerPriority.HIGH)
+                .build();
+
+        trigger.start(project, true);
+        trigger.trigger(request);
+        verify(mockDescriptor).schedule(eq(project), eq(project), eq(BitbucketWebhookTriggerRequest.builder()
+                .actor(user)
+                .priority(TriggerPriority.LOW)
+                .build()));
+    }
+
     @Test
     public void testWebhookRegisterForExistingJobs() {
         BitbucketSCMRepository repo = createSCMRepo();
@@ -0,0 +1,86 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.UserRemoteConfig;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BranchSpecMatcherTest {
+
+    private static final List<UserRemoteConfig> REMOTE_CONFIGS =
+            singletonList(new UserRemoteConfig("http://localhost:7990/scm/proj/repo.git", "repo", null, null));
+
+    @Test
+    public void testMatchesAllWithoutBranches() {
+        BranchSpecMatcher matcher = new BranchSpecMatcher(emptyList(), REMOTE_CONFIGS);
+
+        assertTrue(matcher.matchesAny(singletonList("refs/heads/feature/anything")));
+    }
+
+    @Test
+    public void testMatchesAllWithVariables() {
+        BranchSpecMatcher matcher = new BranchSpecMatcher(singletonList(new BranchSpec("${BRANCH}")), REMOTE_CONFIGS);
+
+        assertTrue(matcher.matchesAny(singletonList("refs/heads/feature/anything")));
+    }
+
+    @Test
+    public void testMatchesBranchName() {
+        BranchSpecMatcher matcher = new BranchSpecMatcher(singletonList(new BranchSpec("master")), REMOTE_CONFIGS);
+
+        assertTrue(matcher.matchesAny(singletonList("refs/heads/master")));
+        assertFalse(matcher.matchesAny(singletonList("refs/heads/feature/master")));
+    }
+
+    @Test
+    public void testMatchesDoubleWildcard() {
+        BranchSpecMatcher matcher = new BranchSpecMatcher(singletonList(new BranchSpec("**")), REMOTE_CONFIGS);
+
+        assertTrue(matcher.matchesAny(singletonList("refs/heads/feature/deep/branch")));
+    }
+
+    @Test
+    public void testMatchesFullRef() {
+        BranchSpecMatcher matcher =
+                new BranchSpecMatcher(singletonList(new BranchSpec("refs/heads/release/*")), REMOTE_CONFIGS);
+
+        assertTrue(matcher.matchesAny(singletonList("refs/heads/release/1.0")));
+        assertFalse(matcher.matchesAny(singletonList("refs/heads/release/1.0/hotfix")));
+    }
+
+    @Test
+    public void testMatchesRegex() {
+        BranchSpecMatcher matcher =
+                new BranchSpecMatcher(singletonList(new BranchSpec(":refs/heads/(master|develop)")), REMOTE_CONFIGS);
+
+        assertTrue(matcher.matchesAny(singletonList("refs/heads/develop")));
+        assertFalse(matcher.matchesAny(singletonList("refs/heads/feature")));
+    }
+
+    @Test
+    public void testMatchesRemoteTrackingBranch() {
+        BranchSpecMatcher matcher = new BranchSpecMatcher(asList(new BranchSpec("*/master"),
+                new BranchSpec("repo/release/*")), REMOTE_CONFIGS);
+
+        assertTrue(matcher.matchesAny(asList("refs/heads/feature", "refs/heads/master")));
+        assertTrue(matcher.matchesAny(singletonList("refs/heads/release/2.0")));
+        assertFalse(matcher.matchesAny(singletonList("refs/heads/feature")));
+        assertFalse(matcher.matchesAny(singletonList("refs/tags/master")));
+    }
+
+    @Test
+    public void testIsFor() {
+        List<BranchSpec> branches = singletonList(new BranchSpec("master"));
+        BranchSpecMatcher matcher = new BranchSpecMatcher(branches, REMOTE_CONFIGS);
+
+        assertTrue(matcher.isFor(branches));
+        assertFalse(matcher.isFor(singletonList(new BranchSpec("master"))));
+    }
+}
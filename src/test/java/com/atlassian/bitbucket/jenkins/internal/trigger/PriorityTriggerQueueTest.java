@@ -0,0 +1,114 @@
+package com.atlassian.bitbucket.jenkins.internal.trigger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static com.atlassian.bitbucket.jenkins.internal.trigger.TriggerPriority.HIGH;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.TriggerPriority.LOW;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.TriggerPriority.NORMAL;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PriorityTriggerQueueTest {
+
+    private static final long AGING_INTERVAL = 1000L;
+
+    @Mock
+    private Clock clock;
+    private final Deque<Runnable> executor = new ArrayDeque<>();
+    private PriorityTriggerQueue queue;
+    private final List<String> ran = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        when(clock.millis()).thenReturn(0L);
+        queue = new PriorityTriggerQueue(executor::add, 1, clock, AGING_INTERVAL);
+    }
+
+    @Test
+    public void testHigherPriorityRunsFirst() {
+        queue.execute(task("running"), NORMAL);
+        queue.execute(task("low"), LOW);
+        queue.execute(task("normal"), NORMAL);
+        queue.execute(task("high"), HIGH);
+
+        runAll();
+
+        assertThat(ran, contains("running", "high", "normal", "low"));
+    }
+
+    @Test
+    public void testLowerPriorityRunsFirstOnceAged() {
+        queue.execute(task("running"), NORMAL);
+        queue.execute(task("low"), LOW);
+        when(clock.millis()).thenReturn(2 * AGING_INTERVAL + 1);
+        queue.execute(task("high"), HIGH);
+
+        runAll();
+
+        assertThat(ran, contains("running", "low", "high"));
+    }
+
+    @Test
+    public void testEqualWorkIsDroppedKeepingHigherPriority() {
+        Runnable low = task("low");
+        queue.execute(task("running"), NORMAL);
+        queue.execute(task("normal"), NORMAL);
+        queue.execute(low, LOW);
+        queue.execute(low, HIGH);
+
+        assertThat(queue.getWaitingCount(), is(2));
+        runAll();
+
+        assertThat(ran, contains("running", "low", "normal"));
+    }
+
+    @Test
+    public void testEqualWorkIsRunAgainAfterRunningWork() {
+        Runnable running = task("running");
+        queue.execute(running, NORMAL);
+        queue.execute(running, NORMAL);
+        queue.execute(running, NORMAL);
+
+        runAll();
+
+        assertThat(ran, contains("running", "running"));
+    }
+
+    @Test
+    public void testWaitStatistics() {
+        queue.execute(task("running"), NORMAL);
+        queue.execute(task("high"), HIGH);
+        when(clock.millis()).thenReturn(500L);
+
+        runAll();
+
+        assertThat(queue.getWaitStatistics(NORMAL).getCount(), is(1L));
+        assertThat(queue.getWaitStatistics(NORMAL).getMaxMillis(), is(0L));
+        assertThat(queue.getWaitStatistics(HIGH).getCount(), is(1L));
+        assertThat(queue.getWaitStatistics(HIGH).getAverageMillis(), is(500L));
+        assertThat(queue.getWaitStatistics(LOW).getCount(), is(0L));
+    }
+
+    private void runAll() {
+        while (!executor.isEmpty()) {
+            executor.poll().run();
+        }
+    }
+
+    private Runnable task(String name) {
+        return () -> ran.add(name);
+    }
+}
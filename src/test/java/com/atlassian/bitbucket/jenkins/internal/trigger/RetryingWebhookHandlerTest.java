@@ -8,6 +8,7 @@ import com.atlassian.bitbucket.jenkins.internal.credentials.GlobalCredentialsPro
 import com.atlassian.bitbucket.jenkins.internal.credentials.JenkinsToBitbucketCredentials;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhook;
 import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhookRequest;
+import com.atlassian.bitbucket.jenkins.internal.model.BitbucketWebhookSupportedEvents;
 import com.atlassian.bitbucket.jenkins.internal.provider.JenkinsProvider;
 import com.atlassian.bitbucket.jenkins.internal.scm.BitbucketSCMRepository;
 import com.atlassian.bitbucket.jenkins.internal.trigger.register.WebhookRegistrationFailed;
@@ -20,9 +21,16 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.HashSet;
 import java.util.Optional;
 
+import static com.atlassian.bitbucket.jenkins.internal.scm.BitbucketMirrorSelector.AUTO_MIRROR_NAME;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.MIRROR_SYNCHRONIZED_EVENT;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_FROM_REF_UPDATED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_OPENED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.*;
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
@@ -109,6 +117,50 @@ public class RetryingWebhookHandlerTest {
         verify(bitbucketWebhookClient).registerWebhook(argThat((BitbucketWebhookRequest request) -> request.getName().equals(WEBHOOK_NAME)));
     }
 
+    @Test
+    public void testNearestMirrorRegistersRefsChangedAndMirrorSynchronizedWebhooks() {
+        BitbucketWebhook t = new BitbucketWebhook(1, WEBHOOK_NAME, emptySet(), "", true);
+        BitbucketSCMRepository bitbucketSCMRepository =
+                new BitbucketSCMRepository(JOB_CREDENTIALS, "", PROJECT, PROJECT, REPO, REPO, SERVER_ID,
+                        AUTO_MIRROR_NAME);
+        when(bitbucketWebhookClient.registerWebhook(any(BitbucketWebhookRequest.class))).thenReturn(t);
+
+        retryingWebhookHandler.register(BITBUCKET_BASE_URL, globalCredentialsProvider, bitbucketSCMRepository);
+
+        verify(bitbucketWebhookClient).registerWebhook(argThat((BitbucketWebhookRequest request) ->
+                request.getEvents().contains(REPO_REF_CHANGE.getEventId())));
+        verify(bitbucketWebhookClient).registerWebhook(argThat((BitbucketWebhookRequest request) ->
+                request.getEvents().contains(MIRROR_SYNCHRONIZED_EVENT.getEventId())));
+    }
+
+    @Test
+    public void testPullRequestDiscoveryRegistersPullRequestWebhook() {
+        BitbucketWebhook t = new BitbucketWebhook(1, WEBHOOK_NAME, emptySet(), "", true);
+        when(bitbucketWebhookClient.registerWebhook(any(BitbucketWebhookRequest.class))).thenReturn(t);
+
+        retryingWebhookHandler.register(BITBUCKET_BASE_URL, globalCredentialsProvider, createSCMRepository(), true);
+
+        verify(bitbucketWebhookClient).registerWebhook(argThat((BitbucketWebhookRequest request) ->
+                request.getEvents().contains(REPO_REF_CHANGE.getEventId())));
+        verify(bitbucketWebhookClient).registerWebhook(argThat((BitbucketWebhookRequest request) ->
+                request.getEvents().containsAll(asList(PULL_REQUEST_OPENED.getEventId(),
+                        PULL_REQUEST_FROM_REF_UPDATED.getEventId())) &&
+                !request.getEvents().contains(REPO_REF_CHANGE.getEventId())));
+    }
+
+    @Test
+    public void testPullRequestWebhookIsNotRegisteredForMirrors() {
+        BitbucketWebhook t = new BitbucketWebhook(1, WEBHOOK_NAME, emptySet(), "", true);
+        BitbucketSCMRepository bitbucketSCMRepository =
+                new BitbucketSCMRepository(JOB_CREDENTIALS, "", PROJECT, PROJECT, REPO, REPO, SERVER_ID, "mirror");
+        when(bitbucketWebhookClient.registerWebhook(any(BitbucketWebhookRequest.class))).thenReturn(t);
+
+        retryingWebhookHandler.register(BITBUCKET_BASE_URL, globalCredentialsProvider, bitbucketSCMRepository, true);
+
+        verify(bitbucketWebhookClient, never()).registerWebhook(argThat((BitbucketWebhookRequest request) ->
+                request.getEvents().contains(PULL_REQUEST_OPENED.getEventId())));
+    }
+
     private BitbucketSCMRepository createSCMRepository() {
         return new BitbucketSCMRepository(JOB_CREDENTIALS, "", PROJECT, PROJECT, REPO, REPO, SERVER_ID, "");
     }
@@ -118,6 +170,9 @@ public class RetryingWebhookHandlerTest {
         BitbucketProjectClient projectClient = mock(BitbucketProjectClient.class);
         BitbucketCapabilitiesClient client = mock(BitbucketCapabilitiesClient.class);
         when(clientFactory.getCapabilityClient()).thenReturn(client);
+        lenient().when(client.getWebhookSupportedEvents()).thenReturn(new BitbucketWebhookSupportedEvents(
+                new HashSet<>(asList(REPO_REF_CHANGE.getEventId(), MIRROR_SYNCHRONIZED_EVENT.getEventId(),
+                        PULL_REQUEST_OPENED.getEventId(), PULL_REQUEST_FROM_REF_UPDATED.getEventId()))));
         when(clientFactory.getProjectClient(PROJECT)).thenReturn(projectClient);
         BitbucketRepositoryClient repositoryClient = mock(BitbucketRepositoryClient.class);
         when(projectClient.getRepositoryClient(REPO)).thenReturn(repositoryClient);
@@ -17,6 +17,8 @@ import java.util.HashSet;
 
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEndpoint.BIBUCKET_WEBHOOK_URL;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.MIRROR_SYNCHRONIZED_EVENT;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_FROM_REF_UPDATED;
+import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.PULL_REQUEST_OPENED;
 import static com.atlassian.bitbucket.jenkins.internal.trigger.BitbucketWebhookEvent.REPO_REF_CHANGE;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.PROJECT;
 import static com.atlassian.bitbucket.jenkins.internal.util.TestUtils.REPO;
@@ -247,6 +249,71 @@ public class BitbucketWebhookHandlerTest {
         verify(webhookClient, never()).deleteWebhook(anyInt());
     }
 
+    @Test
+    public void testPullRequestEventSubscription() {
+        when(capabilitiesClient.getWebhookSupportedEvents()).thenReturn(new BitbucketWebhookSupportedEvents(new HashSet<>(asList(REPO_REF_CHANGE.getEventId(), PULL_REQUEST_OPENED.getEventId(), PULL_REQUEST_FROM_REF_UPDATED.getEventId()))));
+
+        BitbucketWebhook result = handler.register(defaultBuilder.isPullRequests(true).build());
+
+        assertThat(result.getUrl(), is(equalTo(EXPECTED_URL)));
+        assertThat(result.getEvents(), iterableWithSize(2));
+        assertThat(result.getEvents(), hasItem(PULL_REQUEST_OPENED.getEventId()));
+        assertThat(result.getEvents(), hasItem(PULL_REQUEST_FROM_REF_UPDATED.getEventId()));
+        verify(webhookClient).registerWebhook(any(BitbucketWebhookRequest.class));
+        verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
+        verify(webhookClient, never()).deleteWebhook(anyInt());
+    }
+
+    @Test
+    public void testPullRequestEventSubscriptionOnlyForSupportedEvents() {
+        when(capabilitiesClient.getWebhookSupportedEvents()).thenReturn(new BitbucketWebhookSupportedEvents(new HashSet<>(asList(REPO_REF_CHANGE.getEventId(), PULL_REQUEST_OPENED.getEventId()))));
+
+        BitbucketWebhook result = handler.register(defaultBuilder.isPullRequests(true).build());
+
+        assertThat(result.getEvents(), iterableWithSize(1));
+        assertThat(result.getEvents(), hasItem(PULL_REQUEST_OPENED.getEventId()));
+    }
+
+    @Test(expected = WebhookNotSupportedException.class)
+    public void testPullRequestEventsNeedToBeSupported() {
+        handler.register(defaultBuilder.isPullRequests(true).build());
+    }
+
+    @Test
+    public void testSkipRegistrationIfPresentForPullRequests() {
+        when(capabilitiesClient.getWebhookSupportedEvents()).thenReturn(new BitbucketWebhookSupportedEvents(new HashSet<>(asList(PULL_REQUEST_OPENED.getEventId(), PULL_REQUEST_FROM_REF_UPDATED.getEventId()))));
+        BitbucketWebhook event = new BitbucketWebhook(1, WEBHOOK_NAME,
+                new HashSet<>(asList(PULL_REQUEST_OPENED.getEventId(), PULL_REQUEST_FROM_REF_UPDATED.getEventId())), EXPECTED_URL, true);
+        when(webhookClient.getWebhooks(PULL_REQUEST_OPENED.getEventId(), PULL_REQUEST_FROM_REF_UPDATED.getEventId()))
+                .thenReturn(asList(event).stream());
+
+        BitbucketWebhook result = handler.register(defaultBuilder.isPullRequests(true).build());
+
+        assertThat(result.getId(), is(equalTo(1)));
+        verify(webhookClient, never()).registerWebhook(any(BitbucketWebhookRequest.class));
+        verify(webhookClient, never()).updateWebhook(anyInt(), any(BitbucketWebhookRequest.class));
+        verify(webhookClient, never()).deleteWebhook(anyInt());
+    }
+
+    @Test
+    public void testUpdateExistingPullRequestWebhookAndDeleteOthers() {
+        when(capabilitiesClient.getWebhookSupportedEvents()).thenReturn(new BitbucketWebhookSupportedEvents(new HashSet<>(asList(PULL_REQUEST_OPENED.getEventId(), PULL_REQUEST_FROM_REF_UPDATED.getEventId()))));
+        BitbucketWebhook event1 =
+                new BitbucketWebhook(1, WEBHOOK_NAME, singleton(PULL_REQUEST_OPENED.getEventId()), EXPECTED_URL, true);
+        BitbucketWebhook event2 =
+                new BitbucketWebhook(2, WEBHOOK_NAME, singleton(PULL_REQUEST_FROM_REF_UPDATED.getEventId()), JENKINS_URL, true);
+        when(webhookClient.getWebhooks(PULL_REQUEST_OPENED.getEventId(), PULL_REQUEST_FROM_REF_UPDATED.getEventId()))
+                .thenReturn(asList(event1, event2).stream());
+
+        BitbucketWebhook result = handler.register(defaultBuilder.isPullRequests(true).build());
+
+        assertThat(result.getId(), is(equalTo(1)));
+        assertThat(result.getEvents(), iterableWithSize(2));
+        verify(webhookClient, never()).registerWebhook(any(BitbucketWebhookRequest.class));
+        verify(webhookClient).updateWebhook(eq(1), argThat((BitbucketWebhookRequest request) -> request.getUrl().equals(EXPECTED_URL)));
+        verify(webhookClient).deleteWebhook(2);
+    }
+
     private BitbucketWebhook create(BitbucketWebhookRequest request) {
         return create(1, request);
     }
@@ -0,0 +1,61 @@
+package it.com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer;
+
+import it.com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.PersistentServiceProviderConsumerStoreTest.TestServiceProviderConsumerStore;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static it.com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.PersistentServiceProviderConsumerStoreTest.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.collection.IsMapWithSize.aMapWithSize;
+
+/**
+ * The compact snapshot encrypts the consumer keys, which needs a running Jenkins, so unlike
+ * {@link PersistentServiceProviderConsumerStoreTest} this test starts one.
+ */
+public class PersistentServiceProviderConsumerStoreSnapshotTest {
+
+    @Rule
+    public final JenkinsRule jenkins = new JenkinsRule();
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File consumersXmlFile;
+
+    private TestServiceProviderConsumerStore consumerStore;
+
+    @Before
+    public void setup() throws IOException {
+        consumersXmlFile = tempFolder.newFile("oauth-consumers.xml");
+        consumerStore = new TestServiceProviderConsumerStore(consumersXmlFile);
+        consumerStore.setCompactSnapshotEnabled(true);
+    }
+
+    @Test
+    public void testCompactSnapshotSaveAndLoad() {
+        consumerStore.setEntityMap(new ConcurrentHashMap<>());
+        consumerStore.getEntityMap().put(RSA_CONSUMER.getKey(), RSA_CONSUMER);
+        consumerStore.getEntityMap().put(HMAC_CONSUMER.getKey(), HMAC_CONSUMER);
+        consumerStore.getEntityMap().put(HMAC_CONSUMER_NO_PUBLIC_KEY.getKey(), HMAC_CONSUMER_NO_PUBLIC_KEY);
+
+        consumerStore.save();
+
+        assertThat(consumerStore.getSnapshotFile().exists(), is(true));
+        assertThat(consumersXmlFile.exists(), is(false));
+        consumerStore.setEntityMap(null);
+        consumerStore.load();
+        assertThat(consumerStore.getEntityMap(), allOf(aMapWithSize(3),
+                hasEntry(is(RSA_CONSUMER.getKey()), matches(RSA_CONSUMER)),
+                hasEntry(is(HMAC_CONSUMER.getKey()), matches(HMAC_CONSUMER)),
+                hasEntry(is(HMAC_CONSUMER_NO_PUBLIC_KEY.getKey()), matches(HMAC_CONSUMER_NO_PUBLIC_KEY))
+        ));
+    }
+}
@@ -39,9 +39,9 @@ public class PersistentServiceProviderConsumerStoreTest {
 
     private static final KeyPair KEY_PAIR1;
     private static final KeyPair KEY_PAIR2;
-    private static final Consumer RSA_CONSUMER;
-    private static final Consumer HMAC_CONSUMER;
-    private static final Consumer HMAC_CONSUMER_NO_PUBLIC_KEY;
+    static final Consumer RSA_CONSUMER;
+    static final Consumer HMAC_CONSUMER;
+    static final Consumer HMAC_CONSUMER_NO_PUBLIC_KEY;
 
     static {
         try {
@@ -110,11 +110,11 @@ public class PersistentServiceProviderConsumerStoreTest {
         ));
     }
 
-    private static ConsumerMatcher matches(Consumer consumer) {
+    static ConsumerMatcher matches(Consumer consumer) {
         return new ConsumerMatcher(consumer);
     }
 
-    private static class ConsumerMatcher extends TypeSafeDiagnosingMatcher<Consumer> {
+    static class ConsumerMatcher extends TypeSafeDiagnosingMatcher<Consumer> {
 
         private final Consumer expected;
 
@@ -213,11 +213,13 @@ public class PersistentServiceProviderConsumerStoreTest {
      * doesn't like mock/spy instances and throws an error when it tries to marshal the mock/spy instance inside the
      * 'save()' method by serializing to XML file: 'getConfigFile().write(this)'
      */
-    private static class TestServiceProviderConsumerStore extends PersistentServiceProviderConsumerStore {
+    static class TestServiceProviderConsumerStore extends PersistentServiceProviderConsumerStore {
 
         private final transient File consumersXmlFile;
 
-        private TestServiceProviderConsumerStore(File consumersXmlFile) {
+        private transient boolean compactSnapshotEnabled;
+
+        TestServiceProviderConsumerStore(File consumersXmlFile) {
             this.consumersXmlFile = consumersXmlFile;
         }
 
@@ -226,6 +228,20 @@ public class PersistentServiceProviderConsumerStoreTest {
             return new XmlFile(xStream, consumersXmlFile);
         }
 
+        @Override
+        public File getSnapshotFile() {
+            return super.getSnapshotFile();
+        }
+
+        @Override
+        protected boolean isCompactSnapshotEnabled() {
+            return compactSnapshotEnabled;
+        }
+
+        public void setCompactSnapshotEnabled(boolean compactSnapshotEnabled) {
+            this.compactSnapshotEnabled = compactSnapshotEnabled;
+        }
+
         @VisibleForTesting
         public Map<String, Consumer> getEntityMap() {
             return entityMap;
@@ -0,0 +1,94 @@
+package it.com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token;
+
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.consumer.ServiceProviderConsumerStore;
+import com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken;
+import it.com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.PersistentServiceProviderTokenStoreTest.TestServiceProviderTokenStore;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.Session.newSession;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newAccessToken;
+import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.util.TestData.Consumers.RSA_CONSUMER;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsMapWithSize.aMapWithSize;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reports how long the token store takes to save and load a compact snapshot of many tokens. Every token has all of
+ * its secrets encrypted, so this includes the cost of encrypting and decrypting them.
+ * <p>
+ * The times depend on the machine, so they are only printed and never asserted on. The class name matches none of the
+ * test patterns, so it is not part of the build and has to be run on its own:
+ * {@code mvn verify -Pit -Dit.test=PersistentServiceProviderTokenStoreBenchmark}
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PersistentServiceProviderTokenStoreBenchmark {
+
+    @Rule
+    public final JenkinsRule jenkins = new JenkinsRule();
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Mock
+    private ServiceProviderConsumerStore consumerStore;
+
+    private TestServiceProviderTokenStore tokenStore;
+
+    @Before
+    public void setup() throws IOException {
+        tokenStore = new TestServiceProviderTokenStore(consumerStore, tempFolder.newFile("oauth-tokens.xml"));
+        tokenStore.setCompactSnapshotEnabled(true);
+        when(consumerStore.get(RSA_CONSUMER.getKey())).thenReturn(Optional.of(RSA_CONSUMER));
+    }
+
+    @Test
+    public void compactSnapshot10k() {
+        saveAndLoad(10_000);
+    }
+
+    @Test
+    public void compactSnapshot100k() {
+        saveAndLoad(100_000);
+    }
+
+    private void saveAndLoad(int tokenCount) {
+        Map<String, ServiceProviderToken> tokens = new HashMap<>();
+        for (int i = 0; i < tokenCount; i++) {
+            ServiceProviderToken token = newAccessToken("access-token-" + i)
+                    .consumer(RSA_CONSUMER)
+                    .tokenSecret("the-secret-" + i)
+                    .authorizedBy("test-user" + (i % 100))
+                    .session(newSession("session-" + i).build())
+                    .verifier("verifier-" + i)
+                    .build();
+            tokens.put(token.getToken(), token);
+        }
+        tokenStore.setEntityMap(tokens);
+
+        long saveStart = System.nanoTime();
+        tokenStore.save();
+        long saveMillis = NANOSECONDS.toMillis(System.nanoTime() - saveStart);
+
+        tokenStore.setEntityMap(null);
+        long loadStart = System.nanoTime();
+        tokenStore.load();
+        long loadMillis = NANOSECONDS.toMillis(System.nanoTime() - loadStart);
+
+        assertThat(tokenStore.getEntityMap(), aMapWithSize(tokenCount));
+        System.out.printf("Compact snapshot of %d tokens: save %dms, load %dms (%d bytes)%n", tokenCount, saveMillis,
+                loadMillis, tokenStore.getSnapshotFile().length());
+    }
+}
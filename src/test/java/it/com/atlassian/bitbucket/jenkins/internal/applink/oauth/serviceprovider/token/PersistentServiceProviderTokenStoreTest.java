@@ -23,9 +23,15 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.Session.newSession;
 import static com.atlassian.bitbucket.jenkins.internal.applink.oauth.serviceprovider.token.ServiceProviderToken.newAccessToken;
@@ -36,6 +42,7 @@ import static java.lang.System.currentTimeMillis;
 import static java.time.Duration.ofDays;
 import static java.time.Duration.ofHours;
 import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -138,6 +145,150 @@ public class PersistentServiceProviderTokenStoreTest {
                 hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
     }
 
+    @Test
+    public void testJournalIsReplayedOnLoad() {
+        tokenStore.setEntityMap(new HashMap<>());
+        tokenStore.getEntityMap().put(REQUEST_TOKEN_1.getToken(), REQUEST_TOKEN_1);
+        tokenStore.getEntityMap().put(REQUEST_TOKEN_2.getToken(), REQUEST_TOKEN_2);
+        tokenStore.save();
+
+        tokenStore.put(ACCESS_TOKEN_1);
+        tokenStore.put(ACCESS_TOKEN_2);
+        tokenStore.remove(REQUEST_TOKEN_1.getToken());
+
+        // clear the token map so they are loaded from disk (temp XML file and journal) next time 'load()' is called
+        tokenStore.setEntityMap(null);
+
+        tokenStore.load();
+
+        assertThat(tokenStore.getEntityMap(), allOf(aMapWithSize(3),
+                hasEntry(is(REQUEST_TOKEN_2.getToken()), requestToken(REQUEST_TOKEN_2)),
+                hasEntry(is(ACCESS_TOKEN_1.getToken()), accessToken(ACCESS_TOKEN_1)),
+                hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
+    }
+
+    @Test
+    public void testConcurrentChangesAreJournaledBeforeReturning() throws Exception {
+        tokenStore.setEntityMap(new HashMap<>());
+        tokenStore.save();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> puts = Stream.of(REQUEST_TOKEN_1, REQUEST_TOKEN_2, ACCESS_TOKEN_1, ACCESS_TOKEN_2)
+                    .map(token -> executor.submit(() -> tokenStore.put(token)))
+                    .collect(toList());
+            for (Future<?> put : puts) {
+                put.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        tokenStore.setEntityMap(null);
+        tokenStore.load();
+
+        assertThat(tokenStore.getEntityMap(), allOf(aMapWithSize(4),
+                hasEntry(is(REQUEST_TOKEN_1.getToken()), requestToken(REQUEST_TOKEN_1)),
+                hasEntry(is(REQUEST_TOKEN_2.getToken()), requestToken(REQUEST_TOKEN_2)),
+                hasEntry(is(ACCESS_TOKEN_1.getToken()), accessToken(ACCESS_TOKEN_1)),
+                hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
+    }
+
+    @Test
+    public void testSaveEmptiesJournal() {
+        tokenStore.setEntityMap(new HashMap<>());
+        tokenStore.put(ACCESS_TOKEN_1);
+        assertThat(tokenStore.getJournalFile().exists(), is(true));
+
+        tokenStore.save();
+
+        assertThat(tokenStore.getJournalFile().exists(), is(false));
+        tokenStore.setEntityMap(null);
+        tokenStore.load();
+        assertThat(tokenStore.getEntityMap(), allOf(aMapWithSize(1),
+                hasEntry(is(ACCESS_TOKEN_1.getToken()), accessToken(ACCESS_TOKEN_1))));
+    }
+
+    @Test
+    public void testSavesRequestedTogetherAreWrittenOnce() {
+        tokenStore.setEntityMap(new HashMap<>());
+        tokenStore.save();
+        tokenStore.getEntityMap().put(ACCESS_TOKEN_1.getToken(), ACCESS_TOKEN_1);
+
+        // The previous write has only just started, so these wait for the write interval and share the next write
+        CompletableFuture<Void> firstSave = tokenStore.requestSave();
+        tokenStore.getEntityMap().put(ACCESS_TOKEN_2.getToken(), ACCESS_TOKEN_2);
+        CompletableFuture<Void> secondSave = tokenStore.requestSave();
+
+        assertThat(secondSave, sameInstance(firstSave));
+        secondSave.join();
+        tokenStore.setEntityMap(null);
+        tokenStore.load();
+        assertThat(tokenStore.getEntityMap(), allOf(aMapWithSize(2),
+                hasEntry(is(ACCESS_TOKEN_1.getToken()), accessToken(ACCESS_TOKEN_1)),
+                hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
+    }
+
+    @Test
+    public void testCompactSnapshotSaveAndLoad() {
+        tokenStore.setCompactSnapshotEnabled(true);
+        tokenStore.setEntityMap(new HashMap<>());
+        tokenStore.getEntityMap().put(REQUEST_TOKEN_1.getToken(), REQUEST_TOKEN_1);
+        tokenStore.getEntityMap().put(REQUEST_TOKEN_2.getToken(), REQUEST_TOKEN_2);
+        tokenStore.getEntityMap().put(ACCESS_TOKEN_1.getToken(), ACCESS_TOKEN_1);
+        tokenStore.getEntityMap().put(ACCESS_TOKEN_2.getToken(), ACCESS_TOKEN_2);
+
+        tokenStore.save();
+
+        assertThat(tokenStore.getSnapshotFile().exists(), is(true));
+        assertThat(tokensXmlFile.exists(), is(false));
+        tokenStore.setEntityMap(null);
+        tokenStore.load();
+        assertThat(tokenStore.getEntityMap(), allOf(aMapWithSize(4),
+                hasEntry(is(REQUEST_TOKEN_1.getToken()), requestToken(REQUEST_TOKEN_1)),
+                hasEntry(is(REQUEST_TOKEN_2.getToken()), requestToken(REQUEST_TOKEN_2)),
+                hasEntry(is(ACCESS_TOKEN_1.getToken()), accessToken(ACCESS_TOKEN_1)),
+                hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
+    }
+
+    @Test
+    public void testXmlIsMigratedToCompactSnapshot() {
+        tokenStore.setEntityMap(new HashMap<>());
+        tokenStore.getEntityMap().put(ACCESS_TOKEN_1.getToken(), ACCESS_TOKEN_1);
+        tokenStore.getEntityMap().put(ACCESS_TOKEN_2.getToken(), ACCESS_TOKEN_2);
+        tokenStore.save();
+        tokenStore.setCompactSnapshotEnabled(true);
+        tokenStore.setEntityMap(null);
+
+        tokenStore.load();
+        tokenStore.requestSave().join();
+
+        assertThat(tokenStore.getSnapshotFile().exists(), is(true));
+        assertThat(tokensXmlFile.exists(), is(false));
+        tokenStore.setEntityMap(null);
+        tokenStore.load();
+        assertThat(tokenStore.getEntityMap(), allOf(aMapWithSize(2),
+                hasEntry(is(ACCESS_TOKEN_1.getToken()), accessToken(ACCESS_TOKEN_1)),
+                hasEntry(is(ACCESS_TOKEN_2.getToken()), accessToken(ACCESS_TOKEN_2))));
+    }
+
+    @Test
+    public void testCompactSnapshotIsMigratedToXml() {
+        tokenStore.setCompactSnapshotEnabled(true);
+        tokenStore.setEntityMap(new HashMap<>());
+        tokenStore.getEntityMap().put(ACCESS_TOKEN_1.getToken(), ACCESS_TOKEN_1);
+        tokenStore.save();
+        tokenStore.setCompactSnapshotEnabled(false);
+        tokenStore.setEntityMap(null);
+
+        tokenStore.load();
+        tokenStore.requestSave().join();
+
+        assertThat(tokenStore.getSnapshotFile().exists(), is(false));
+        assertThat(tokensXmlFile.exists(), is(true));
+        assertThat(tokenStore.getEntityMap(), allOf(aMapWithSize(1),
+                hasEntry(is(ACCESS_TOKEN_1.getToken()), accessToken(ACCESS_TOKEN_1))));
+    }
+
     private static TokenMatcher accessToken(ServiceProviderToken token) {
         return new TokenMatcher(true, token.getCallback(),
                 ofNullable(token.getConsumer()).map(Consumer::getKey).orElse(null), token.getTokenSecret(),
@@ -265,11 +416,13 @@ public class PersistentServiceProviderTokenStoreTest {
      * doesn't like mock/spy instances and throws an error when it tries to marshal the mock/spy instance inside the
      * 'save()' method by serializing to XML file: 'getConfigFile().write(this)'
      */
-    private static class TestServiceProviderTokenStore extends PersistentServiceProviderTokenStore {
+    static class TestServiceProviderTokenStore extends PersistentServiceProviderTokenStore {
 
         private final transient File tokensXmlFile;
 
-        private TestServiceProviderTokenStore(ServiceProviderConsumerStore consumerStore, File tokensXmlFile) {
+        private transient boolean compactSnapshotEnabled;
+
+        TestServiceProviderTokenStore(ServiceProviderConsumerStore consumerStore, File tokensXmlFile) {
             super(consumerStore);
             this.tokensXmlFile = tokensXmlFile;
         }
@@ -279,6 +432,30 @@ public class PersistentServiceProviderTokenStoreTest {
             return new XmlFile(xStream, tokensXmlFile);
         }
 
+        @Override
+        public File getJournalFile() {
+            return super.getJournalFile();
+        }
+
+        @Override
+        public CompletableFuture<Void> requestSave() {
+            return super.requestSave();
+        }
+
+        @Override
+        public File getSnapshotFile() {
+            return super.getSnapshotFile();
+        }
+
+        @Override
+        protected boolean isCompactSnapshotEnabled() {
+            return compactSnapshotEnabled;
+        }
+
+        public void setCompactSnapshotEnabled(boolean compactSnapshotEnabled) {
+            this.compactSnapshotEnabled = compactSnapshotEnabled;
+        }
+
         @VisibleForTesting
         public Map<String, ServiceProviderToken> getEntityMap() {
             return entityMap;
@@ -28,6 +28,8 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.FileHandler;
@@ -62,7 +64,10 @@ public class BitbucketJenkinsRule extends JenkinsRule {
         ExtensionList<BitbucketPluginConfiguration> configExtensions =
                 jenkins.getExtensionList(BitbucketPluginConfiguration.class);
         bitbucketPluginConfiguration = configExtensions.get(0);
-        bitbucketPluginConfiguration.getServerList().add(bitbucketServer);
+        List<BitbucketServerConfiguration> serverList =
+                new ArrayList<>(bitbucketPluginConfiguration.getServerList());
+        serverList.add(bitbucketServer);
+        bitbucketPluginConfiguration.setServerList(serverList);
         bitbucketPluginConfiguration.save();
     }
 